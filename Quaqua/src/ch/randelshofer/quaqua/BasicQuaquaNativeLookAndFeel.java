@@ -1,7 +1,7 @@
 /*
  * @(#)BasicQuaquaNativeLookAndFeel.java
  *
- * Copyright (c) 2011-2013 Werner Randelshofer, Switzerland.
+ * Copyright (c) 2011-2015 Werner Randelshofer, Switzerland.
  * You may not use, copy or modify this file, except in compliance with the
  * accompanying license terms.
  */
@@ -11,6 +11,8 @@ import ch.randelshofer.quaqua.border.VisualMarginBorder;
 import ch.randelshofer.quaqua.osx.OSXConfiguration;
 import ch.randelshofer.quaqua.osx.OSXPreferences;
 import ch.randelshofer.quaqua.color.*;
+import ch.randelshofer.quaqua.util.ImagePreloader;
+import ch.randelshofer.quaqua.util.Images;
 import ch.randelshofer.quaqua.osx.OSXAquaPainter;
 import javax.swing.*;
 import javax.swing.plaf.*;
@@ -80,6 +82,7 @@ public class BasicQuaquaNativeLookAndFeel extends LookAndFeelProxy15 {
         initClassDefaults(table);
         initSystemColorDefaults(table);
         initComponentDefaults(table);
+        ImagePreloader.preload(table);
 
         installKeyboardFocusManager();
         installPopupFactory();
@@ -199,7 +202,7 @@ public class BasicQuaquaNativeLookAndFeel extends LookAndFeelProxy15 {
             }
         }
 
-        boolean isGraphite = OSXPreferences.getString(OSXPreferences.GLOBAL_PREFERENCES, "AppleAquaColorVariant", "1").equals("6");
+        boolean isGraphite = Images.updateGraphite();
 
 
         Object[] uiDefaults = {
@@ -274,7 +277,7 @@ public class BasicQuaquaNativeLookAndFeel extends LookAndFeelProxy15 {
                 ((Color) inactiveSelectionForeground).getRGB());
 
         ColorUIResource listSelectionBorderColor = (ColorUIResource) table.get("listHighlightBorder");
-        ColorUIResource listAlternateBackground = OSXPreferences.getString(OSXPreferences.GLOBAL_PREFERENCES, "AppleAquaColorVariant", "1").equals("6") ? new ColorUIResource(0xf0f0f0) : new ColorUIResource(0xedf3fe);
+        ColorUIResource listAlternateBackground = Images.isGraphite() ? new ColorUIResource(0xf0f0f0) : new ColorUIResource(0xedf3fe);
 
 
 
@@ -1992,49 +1995,57 @@ public class BasicQuaquaNativeLookAndFeel extends LookAndFeelProxy15 {
     }
 
     protected Object makeImage(String location) {
-        return new UIDefaults.ProxyLazyValue(
+        return ImagePreloader.register(new UIDefaults.ProxyLazyValue(
                 "ch.randelshofer.quaqua.QuaquaIconFactory", "createImage",
-                new Object[]{location});
+                new Object[]{location}),
+                QuaquaIconFactory.class, location);
     }
 
     protected Object makeBufferedImage(String location) {
-        return new UIDefaults.ProxyLazyValue(
+        return ImagePreloader.register(new UIDefaults.ProxyLazyValue(
                 "ch.randelshofer.quaqua.QuaquaIconFactory", "createBufferedImage",
-                new Object[]{location});
+                new Object[]{location}),
+                QuaquaIconFactory.class, location);
     }
     protected Object makeBufferedImage(String location, Rectangle subimage) {
-        return new UIDefaults.ProxyLazyValue(
+        return ImagePreloader.register(new UIDefaults.ProxyLazyValue(
                 "ch.randelshofer.quaqua.QuaquaIconFactory", "createBufferedImage",
-                new Object[]{location, subimage});
+                new Object[]{location, subimage}),
+                QuaquaIconFactory.class, location);
     }
 
     public static Object makeIcon(Class baseClass, String location) {
-        return new UIDefaults.ProxyLazyValue(
+        return ImagePreloader.register(new UIDefaults.ProxyLazyValue(
                 "ch.randelshofer.quaqua.QuaquaIconFactory", "createIcon",
-                new Object[]{baseClass, location});
+                new Object[]{baseClass, location}),
+                baseClass, location);
     }
 
     public static Object makeIcon(Class baseClass, String location, Point shift) {
-        return new UIDefaults.ProxyLazyValue(
+        return ImagePreloader.register(new UIDefaults.ProxyLazyValue(
                 "ch.randelshofer.quaqua.QuaquaIconFactory", "createIcon",
-                new Object[]{baseClass, location, shift});
+                new Object[]{baseClass, location, shift}),
+                baseClass, location);
     }
 
     public static Object makeIcon(Class baseClass, String location, Rectangle shiftAndSize) {
-        return new UIDefaults.ProxyLazyValue(
+        return ImagePreloader.register(new UIDefaults.ProxyLazyValue(
                 "ch.randelshofer.quaqua.QuaquaIconFactory", "createIcon",
-                new Object[]{baseClass, location, shiftAndSize});
+                new Object[]{baseClass, location, shiftAndSize}),
+                baseClass, location);
     }
 
     protected static Object makeIcons(String location, int states, boolean horizontal) {
-        return new UIDefaults.ProxyLazyValue(
+        return ImagePreloader.register(new UIDefaults.ProxyLazyValue(
                 "ch.randelshofer.quaqua.QuaquaIconFactory", "createIcons",
-                new Object[]{location, states, horizontal});
+                new Object[]{location, states, horizontal}),
+                QuaquaIconFactory.class, location);
     }
     protected static Object makeIcons(String location,Rectangle subimage, int states, boolean horizontal) {
-        return new UIDefaults.ProxyLazyValue(
+        return ImagePreloader.register(new UIDefaults.ProxyLazyValue(
                 "ch.randelshofer.quaqua.QuaquaIconFactory", "createIcons",
-                new Object[]{location,subimage, states, horizontal});
+                new Object[]{location,subimage, states, horizontal}),
+                QuaquaIconFactory.class, location);
     }
 
     public static Object makeNativeSidebarIcon(String path, int size, Color color, Color selectionColor) {
@@ -2062,51 +2073,58 @@ public class BasicQuaquaNativeLookAndFeel extends LookAndFeelProxy15 {
     }
 
     protected static Object makeButtonStateIcon(String location, int states) {
-        return new UIDefaults.ProxyLazyValue(
+        return ImagePreloader.register(new UIDefaults.ProxyLazyValue(
                 "ch.randelshofer.quaqua.QuaquaIconFactory", "createButtonStateIcon",
-                new Object[]{location, states});
+                new Object[]{location, states}),
+                QuaquaIconFactory.class, location);
     }
 
     protected static Object makeButtonStateIcon(String location, int states, Point shift) {
-        return new UIDefaults.ProxyLazyValue(
+        return ImagePreloader.register(new UIDefaults.ProxyLazyValue(
                 "ch.randelshofer.quaqua.QuaquaIconFactory", "createButtonStateIcon",
-                new Object[]{location, states, shift});
+                new Object[]{location, states, shift}),
+                QuaquaIconFactory.class, location);
     }
 
     protected static Object makeButtonStateIcon(String location, int states, Rectangle shift) {
-        return new UIDefaults.ProxyLazyValue(
+        return ImagePreloader.register(new UIDefaults.ProxyLazyValue(
                 "ch.randelshofer.quaqua.QuaquaIconFactory", "createButtonStateIcon",
-                new Object[]{location, states, shift});
+                new Object[]{location, states, shift}),
+                QuaquaIconFactory.class, location);
     }
 
     protected static Object makeFrameButtonStateIcon(String location, int states) {
-        return new UIDefaults.ProxyLazyValue(
+        return ImagePreloader.register(new UIDefaults.ProxyLazyValue(
                 "ch.randelshofer.quaqua.QuaquaIconFactory", "createFrameButtonStateIcon",
-                new Object[]{location, states});
+                new Object[]{location, states}),
+                QuaquaIconFactory.class, location);
     }
 
     protected static Object makeSliderThumbIcon(String location) {
-        return new UIDefaults.ProxyLazyValue(
+        return ImagePreloader.register(new UIDefaults.ProxyLazyValue(
                 "ch.randelshofer.quaqua.QuaquaIconFactory", "createSliderThumbIcon",
-                new Object[]{location});
+                new Object[]{location}),
+                QuaquaIconFactory.class, location);
     }
 
     protected Object makeOverlaidButtonStateIcon(
             String location1, int states1,
             String location2, int states2,
             Rectangle layoutRect) {
-        return new UIDefaults.ProxyLazyValue(
+        return ImagePreloader.register(new UIDefaults.ProxyLazyValue(
                 "ch.randelshofer.quaqua.QuaquaIconFactory", "createOverlaidButtonStateIcon",
                 new Object[]{
                     location1, states1,
                     location2, states2,
                     layoutRect
-                });
+                }),
+                QuaquaIconFactory.class, location1, location2);
     }
     protected Object makeImageBevelBorder(String location, Rectangle subimage, Insets insets, boolean fill) {
-        return new UIDefaults.ProxyLazyValue(
+        return ImagePreloader.register(new UIDefaults.ProxyLazyValue(
                 "ch.randelshofer.quaqua.QuaquaBorderFactory", "create",
-                new Object[]{location, subimage, insets, insets, fill});
+                new Object[]{location, subimage, insets, insets, fill}),
+                QuaquaIconFactory.class, location);
     }
 
 
@@ -2116,33 +2134,38 @@ public class BasicQuaquaNativeLookAndFeel extends LookAndFeelProxy15 {
     }
 
     protected Object makeImageBevelBorder(String location, Insets insets, boolean fill) {
-        return new UIDefaults.ProxyLazyValue(
+        return ImagePreloader.register(new UIDefaults.ProxyLazyValue(
                 "ch.randelshofer.quaqua.QuaquaBorderFactory", "create",
-                new Object[]{location, insets, fill});
+                new Object[]{location, insets, fill}),
+                QuaquaIconFactory.class, location);
     }
 
     protected Object makeImageBevelBorder(String location, Insets insets, boolean fill, Color fillColor) {
-        return new UIDefaults.ProxyLazyValue(
+        return ImagePreloader.register(new UIDefaults.ProxyLazyValue(
                 "ch.randelshofer.quaqua.QuaquaBorderFactory", "create",
-                new Object[]{location, insets, insets, fill, fillColor});
+                new Object[]{location, insets, insets, fill, fillColor}),
+                QuaquaIconFactory.class, location);
     }
 
     protected Object makeImageBevelBorder(String location, Insets imageInsets, Insets borderInsets, boolean fill) {
-        return new UIDefaults.ProxyLazyValue(
+        return ImagePreloader.register(new UIDefaults.ProxyLazyValue(
                 "ch.randelshofer.quaqua.QuaquaBorderFactory", "create",
-                new Object[]{location, imageInsets, borderInsets, fill});
+                new Object[]{location, imageInsets, borderInsets, fill}),
+                QuaquaIconFactory.class, location);
     }
 
     protected Object makeImageBevelBackgroundBorder(String location, Insets imageInsets, Insets borderInsets, boolean fill) {
-        return new UIDefaults.ProxyLazyValue(
+        return ImagePreloader.register(new UIDefaults.ProxyLazyValue(
                 "ch.randelshofer.quaqua.QuaquaBorderFactory", "createBackgroundBorder",
-                new Object[]{location, imageInsets, borderInsets, fill});
+                new Object[]{location, imageInsets, borderInsets, fill}),
+                QuaquaIconFactory.class, location);
     }
 
     protected Object makeImageBevelBorders(String location, Insets insets, int states, boolean horizontal) {
-        return new UIDefaults.ProxyLazyValue(
+        return ImagePreloader.register(new UIDefaults.ProxyLazyValue(
                 "ch.randelshofer.quaqua.QuaquaBorderFactory", "create",
-                new Object[]{location, insets, states, horizontal});
+                new Object[]{location, insets, states, horizontal}),
+                QuaquaIconFactory.class, location);
     }
     protected Object makeNativeImageBevelBorder(OSXAquaPainter.Widget widget, Insets painterInsets, Insets imageBevelInsets, Insets borderInsets, boolean fill) {
         return new UIDefaults.ProxyLazyValue(
@@ -2151,15 +2174,17 @@ public class BasicQuaquaNativeLookAndFeel extends LookAndFeelProxy15 {
     }
 
     protected Object makeTextureColor(int rgb, String location) {
-        return new UIDefaults.ProxyLazyValue(
+        return ImagePreloader.register(new UIDefaults.ProxyLazyValue(
                 "ch.randelshofer.quaqua.color.TextureColor$UIResource",
-                new Object[]{rgb, location});
+                new Object[]{rgb, location}),
+                QuaquaIconFactory.class, location);
     }
     protected Object makeButtonStateBorder(String location, int tileCount, boolean isTiledHorizontaly,
             Insets imageInsets, Insets borderInsets, boolean fill) {
-        return new UIDefaults.ProxyLazyValue(
+        return ImagePreloader.register(new UIDefaults.ProxyLazyValue(
                 "ch.randelshofer.quaqua.QuaquaBorderFactory", "createButtonStateBorder",
-                new Object[]{location, tileCount, isTiledHorizontaly, imageInsets, borderInsets, fill});
+                new Object[]{location, tileCount, isTiledHorizontaly, imageInsets, borderInsets, fill}),
+                QuaquaIconFactory.class, location);
 
     }
 
@@ -1,7 +1,7 @@
 /*
  * @(#)JBrowser.java
  *
- * Copyright (c) 2003-2013 Werner Randelshofer, Switzerland.
+ * Copyright (c) 2003-2015 Werner Randelshofer, Switzerland.
  * http://www.randelshofer.ch
  * All rights reserved.
  *
@@ -112,11 +112,18 @@ public class JBrowser extends javax.swing.JComponent implements Scrollable {
      */
     private transient TreeSelectionUpdater treeSelectionUpdater = new TreeSelectionUpdater();
     /**
-     * Handles changes in the tree root.
-     * We need this special handler, because we do not display the root node
-     * using one of our columns and would thus miss changes on the root node.
+     * Handles all events of the tree model.
+     * Routes events on a node to the column which displays the children of
+     * the node, and handles changes in the tree root, which is not displayed
+     * by one of our columns.
      */
-    private TreeRootHandler treeRootHandler = new TreeRootHandler();
+    private TreeModelHandler treeModelHandler = new TreeModelHandler();
+    /**
+     * Maps the path of each column to the model of the column. The map is
+     * keyed by the whole path, because equal nodes may appear at different
+     * paths.
+     */
+    private transient HashMap<TreePath, ColumnListModel> columnModelMap = new HashMap<TreePath, ColumnListModel>();
     /**
      * Changes the selection when mouse events occur on the columns.
      */
@@ -1356,11 +1363,11 @@ public class JBrowser extends javax.swing.JComponent implements Scrollable {
         TreeModel oldModel = treeModel;
 
         if (oldModel != null) {
-            oldModel.removeTreeModelListener(treeRootHandler);
+            oldModel.removeTreeModelListener(treeModelHandler);
         }
         treeModel = newModel;
         if (newModel != null) {
-            newModel.addTreeModelListener(treeRootHandler);
+            newModel.addTreeModelListener(treeModelHandler);
         }
 
         for (int i = getListColumnCount() - 1; i >= 0; i--) {
@@ -2135,6 +2142,9 @@ public class JBrowser extends javax.swing.JComponent implements Scrollable {
     /**
      * This is the list model used to map a tree node of the {@code treeModel}
      * to a JList displaying its children.
+     * <p>
+     * The list model does not listen to the tree model by itself. The
+     * {@code TreeModelHandler} forwards the events on its tree node to it.
      */
     private class ColumnListModel extends AbstractListModel implements TreeModelListener {
 
@@ -2163,16 +2173,26 @@ public class JBrowser extends javax.swing.JComponent implements Scrollable {
         }
 
         public ColumnListModel(TreePath path, TreeModel model) {
-            this.path = path;
             this.model = model;
-            model.addTreeModelListener(this);
+            setPathInternal(path);
             updateSize();
         }
 
+        /**
+         * Sets the path and updates the column model map.
+         */
+        private void setPathInternal(TreePath newValue) {
+            if (path != null && columnModelMap.get(path) == this) {
+                columnModelMap.remove(path);
+            }
+            path = newValue;
+            columnModelMap.put(path, this);
+        }
+
         public void setPath(TreePath newValue) {
             if (newValue != path) {
                 int oldSize = getSize();
-                this.path = newValue;
+                setPathInternal(newValue);
                 updateSize();
                 int newSize = getSize();
                 if (Math.min(oldSize, newSize) > 0) {
@@ -2187,7 +2207,9 @@ public class JBrowser extends javax.swing.JComponent implements Scrollable {
         }
 
         public void dispose() {
-            model.removeTreeModelListener(this);
+            if (columnModelMap.get(path) == this) {
+                columnModelMap.remove(path);
+            }
         }
 
         public int getSize() {
@@ -2232,16 +2254,8 @@ public class JBrowser extends javax.swing.JComponent implements Scrollable {
                     start = end;
                 } while (start < indices.length);
 
-            } else if (path.getPathCount() == 1) {
-                if (expandedPath != null && expandedPathIsLeaf && e.getTreePath().equals(expandedPath)) {
-                    // Due to the insertion, the last path component of the
-                    // expanded path has been converted from a leaf into an
-                    // inner node. Expand path again.
-                    expandPath(expandedPath);
-                }
+                ensureSelectionVisible();
             }
-
-            ensureSelectionVisible();
         }
 
         public void treeNodesRemoved(TreeModelEvent e) {
@@ -2268,16 +2282,24 @@ public class JBrowser extends javax.swing.JComponent implements Scrollable {
                 } while (start < indices.length);
 
                 // RemovedChildren can't be selected.
+                // A selection path is affected, if it passes through one of
+                // the removed children. We check each selection path once.
                 if (selectionModel.getSelectionCount() > 0) {
+                    TreePath parentPath = e.getTreePath();
+                    int childIndex = parentPath.getPathCount();
+                    HashSet<Object> removedChildren = new HashSet<Object>(Arrays.asList(e.getChildren()));
                     TreePath[] selectionPaths = selectionModel.getSelectionPaths();
-                    Object[] removedChildren = e.getChildren();
-                    for (int i = 0; i < removedChildren.length; i++) {
-                        TreePath removedPath = e.getTreePath().pathByAddingChild(removedChildren[i]);
-                        for (int j = 0; j < selectionPaths.length; j++) {
-                            if (removedPath.isDescendant(selectionPaths[j])) {
-                                selectionPaths[j] = e.getTreePath();
-                            }
+                    boolean isChanged = false;
+                    for (int j = 0; j < selectionPaths.length; j++) {
+                        TreePath selectionPath = selectionPaths[j];
+                        if (selectionPath.getPathCount() > childIndex
+                                && removedChildren.contains(selectionPath.getPathComponent(childIndex))
+                                && parentPath.isDescendant(selectionPath)) {
+                            selectionPaths[j] = parentPath;
+                            isChanged = true;
                         }
+                    }
+                    if (isChanged) {
                         setSelectionPaths(selectionPaths);
                     }
                 }
@@ -2288,12 +2310,11 @@ public class JBrowser extends javax.swing.JComponent implements Scrollable {
 
         public void treeStructureChanged(TreeModelEvent e) {
             TreePath changedPath = e.getTreePath();
-            if (changedPath.equals(path) || path.getPathCount() == 1 && changedPath.getPathCount() == 1) {
+            if (changedPath.equals(path)) {
                 int oldSize = getSize();
-                path = changedPath;
+                setPathInternal(changedPath);
                 updateSize();
                 int newSize = getSize();
-                path = changedPath;
                 int diff = newSize - oldSize;
                 if (diff < 0) {
                     if (newSize > 0) {
@@ -3359,17 +3380,51 @@ public class JBrowser extends javax.swing.JComponent implements Scrollable {
     } // End of class ColumnSelectionModel.
 
     /**
-     * Handles changes of the tree root.
+     * Handles the events of the tree model.
+     * <p>
+     * Events on a node are forwarded to the column which displays the
+     * children of the node. The column is looked up in the
+     * {@code columnModelMap}, so the cost of an event does not depend on the
+     * number of columns.
      */
-    private class TreeRootHandler implements TreeModelListener {
+    private class TreeModelHandler implements TreeModelListener {
+
+        /**
+         * Returns the model of the column which displays the children of
+         * the parent node of the event, or null.
+         */
+        private ColumnListModel getColumnListModel(TreeModelEvent e) {
+            TreePath parentPath = e.getTreePath();
+            if (parentPath == null) {
+                return null;
+            }
+            return columnModelMap.get(parentPath);
+        }
 
         public void treeNodesChanged(TreeModelEvent e) {
+            ColumnListModel m = getColumnListModel(e);
+            if (m != null) {
+                m.treeNodesChanged(e);
+            }
         }
 
         public void treeNodesInserted(TreeModelEvent e) {
+            ColumnListModel m = getColumnListModel(e);
+            if (m != null) {
+                m.treeNodesInserted(e);
+            } else if (expandedPath != null && expandedPathIsLeaf && e.getTreePath().equals(expandedPath)) {
+                // Due to the insertion, the last path component of the
+                // expanded path has been converted from a leaf into an
+                // inner node. Expand path again.
+                expandPath(expandedPath);
+            }
         }
 
         public void treeNodesRemoved(TreeModelEvent e) {
+            ColumnListModel m = getColumnListModel(e);
+            if (m != null) {
+                m.treeNodesRemoved(e);
+            }
         }
 
         public void treeStructureChanged(TreeModelEvent e) {
@@ -3383,9 +3438,14 @@ public class JBrowser extends javax.swing.JComponent implements Scrollable {
                 expandedPath = null;
                 expandRoot();
                 setSelectionPath(e.getTreePath());
+            } else {
+                ColumnListModel m = getColumnListModel(e);
+                if (m != null) {
+                    m.treeStructureChanged(e);
+                }
             }
         }
-    } // End of class TreeRootHandler
+    } // End of class TreeModelHandler
 
     /**
      * Wraps a BrowserCellRenderer into a ListCellRenderer for use in a JBrowser.
@@ -1,7 +1,7 @@
 /*
  * @(#)QuaquaBorderFactory.java  
  *
- * Copyright (c) 2005-2013 Werner Randelshofer, Switzerland.
+ * Copyright (c) 2005-2015 Werner Randelshofer, Switzerland.
  * You may not use, copy or modify this file, except in compliance with the
  * accompanying license terms.
  */
@@ -90,14 +90,17 @@ public class QuaquaBorderFactory {
      * @param borderInsets the border insets
      * @param fillContentArea whether to fill the content area
      * @param fillColor the fill color
-     * @param isCaching whether to cache the rendered border
+     * @param isCaching whether to cache the rendered border, if this is false,
+     * the border paints with pre-sliced tiles
      * @return the created border
      */
     public static Border create(Image img, Insets imageInsets, Insets borderInsets, boolean fillContentArea, Color fillColor, boolean isCaching) {
         if (isCaching) {
             return new CachedImageBevelBorder.UIResource(img, imageInsets, borderInsets, fillContentArea);
         } else {
-            return new ImageBevelBorder.UIResource(img, imageInsets, borderInsets, fillContentArea, fillColor);
+            ImageBevelBorder border = new ImageBevelBorder.UIResource(img, imageInsets, borderInsets, fillContentArea, fillColor);
+            border.setPreSliced(true);
+            return border;
         }
     }
     /**
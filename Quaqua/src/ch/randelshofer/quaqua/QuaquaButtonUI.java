@@ -1,7 +1,7 @@
 /*
  * @(#)QuaquaButtonUI.java
  *
- * Copyright (c) 2005-2013 Werner Randelshofer, Switzerland.
+ * Copyright (c) 2005-2015 Werner Randelshofer, Switzerland.
  * You may not use, copy or modify this file, except in compliance with the
  * accompanying license terms.
  */
@@ -121,12 +121,6 @@ public class QuaquaButtonUI extends BasicButtonUI implements VisuallyLayoutable
 
     @Override
     public void paint(Graphics g, JComponent c) {
-        if (c instanceof JButton) {
-            JButton b = (JButton) c;
-            if (b.isDefaultButton()) {
-                QuaquaDefaultButtonAnimator.addDefaultButton(b);
-            }
-        }
         g.setFont(getFont(c));
 
         String style = (String) c.getClientProperty("Quaqua.Button.style");
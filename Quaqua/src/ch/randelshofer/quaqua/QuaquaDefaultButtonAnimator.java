@@ -1,7 +1,7 @@
 /*
- * @(#)QuaquaDefaultButtonAnimator.java  1.0  2011-08-31
+ * @(#)QuaquaDefaultButtonAnimator.java  1.1  2015-05-09
  * 
- * Copyright (c) 2011-2013 Werner Randelshofer, Switzerland.
+ * Copyright (c) 2011-2015 Werner Randelshofer, Switzerland.
  * All rights reserved.
  * 
  * You may not use, copy or modify this file, except in compliance with the
@@ -10,44 +10,44 @@
  */
 package ch.randelshofer.quaqua;
 
-import java.awt.event.ActionEvent;
-import java.awt.event.ActionListener;
-import java.util.HashSet;
-import java.util.Iterator;
+import ch.randelshofer.quaqua.util.AnimationScheduler;
+import java.awt.Component;
 import javax.swing.JButton;
-import javax.swing.Timer;
 
 /**
  * Animates the default button.
+ * <p>
+ * The repaints are scheduled with the shared {@link AnimationScheduler}.
+ * Painters of pulsing default buttons request a repaint of the area which
+ * they have painted, each time they paint a frame.
  *
  * @author Werner Randelshofer
- * @version 1.0 2011-08-31 Created.
+ * @version 1.1 2015-05-09 Uses the shared AnimationScheduler.
+ * <br>1.0 2011-08-31 Created.
  */
 public class QuaquaDefaultButtonAnimator {
 
-    private final static HashSet<JButton> defaultButtons = new HashSet<JButton>();
-    private final static Timer timer = new Timer(30, new ActionListener() {
-
-        public void actionPerformed(ActionEvent e) {
-            for (Iterator<JButton> i = defaultButtons.iterator(); i.hasNext();) {
-                JButton b = i.next();
-                if (b.isDefaultButton() && QuaquaUtilities.isOnActiveWindow(b)) {
-                    b.repaint();
-                } else {
-                    i.remove();
-                }
-            }
-            if (defaultButtons.isEmpty()) {
-                timer.stop();
-            }
-        }
-    });
+    /**
+     * The delay between two frames of the pulsing animation in milliseconds.
+     */
+    public final static int FRAME_DELAY = 30;
 
+    /**
+     * Requests a repaint of the whole button for the next frame, if it is
+     * the default button on an active window.
+     */
     public static void addDefaultButton(JButton b) {
         if (b.isDefaultButton() && QuaquaUtilities.isOnActiveWindow(b)) {
-            if (defaultButtons.add((JButton) b)) {
-                timer.start();
-            }
+            AnimationScheduler.getSharedInstance().scheduleRepaint(b, FRAME_DELAY, true);
         }
     }
+
+    /**
+     * Requests a repaint of an area of a default button for the next frame.
+     * The repaint is dropped if the button is not showing, or if it is not
+     * on an active window.
+     */
+    public static void scheduleRepaint(Component c, int x, int y, int width, int height) {
+        AnimationScheduler.getSharedInstance().scheduleRepaint(c, x, y, width, height, FRAME_DELAY, true);
+    }
 }
@@ -1,7 +1,7 @@
 /*
  * @(#)QuaquaIconFactory.java 
  *
- * Copyright (c) 2005-2013 Werner Randelshofer, Switzerland.
+ * Copyright (c) 2005-2015 Werner Randelshofer, Switzerland.
  * You may not use, copy or modify this file, except in compliance with the
  * accompanying license terms.
  */
@@ -118,14 +118,26 @@ public class QuaquaIconFactory {
         return url;
     }
 
+    /**
+     * Returns the image of the resource at the location relative to this
+     * class. The image is shared and must not be modified.
+     */
     public static Image createImage(String location) {
         return Images.createImage(QuaquaIconFactory.class, location);
     }
 
+    /**
+     * Returns the image of the resource at the location relative to the
+     * base class. The image is shared and must not be modified.
+     */
     public static Image createImage(Class baseClass, String location) {
         return Images.createImage(baseClass, location);
     }
 
+    /**
+     * Returns the image of the resource at the location relative to this
+     * class. The image is shared and must not be modified.
+     */
     public static BufferedImage createBufferedImage(String location) {
         return Images.toBufferedImage(createImage(location));
     }
@@ -161,7 +173,8 @@ public class QuaquaIconFactory {
     }
 
     public static Icon createIcon(String location, int count, boolean horizontal, int index) {
-        return createIcons(location, count, horizontal)[index];
+        return new IconUIResource(new ImageIcon(
+                Images.split(createImage(location), count, horizontal, index)));
     }
 
     public static Icon createButtonStateIcon(String location, int states) {
@@ -1,7 +1,7 @@
 /*
  * @(#)QuaquaManager.java
  *
- * Copyright (c) 2003-2013 Werner Randelshofer, Switzerland.
+ * Copyright (c) 2003-2015 Werner Randelshofer, Switzerland.
  * You may not use, copy or modify this file, except in compliance with the
  * accompanying license terms.
  */
@@ -62,7 +62,13 @@ import ch.randelshofer.quaqua.osx.OSXFile;
  * support. This is a hack, useful only for testing an application with the
  * Quaqua Look and Feel on non-Mac OS X platforms.</li>
  * <li><code><b>Quaqua.Debug.crossPlatform=false</b></code> Chooses native
- * support. This is the default value.</li> </ul> Example:
+ * support. This is the default value.</li> </ul>
+ * <ul> <li>{@code Quaqua.Images.preload=true} Decodes the images of the
+ * look and feel on background threads, when the look and feel is
+ * installed. See {@link ch.randelshofer.quaqua.util.ImagePreloader}.</li>
+ * <li><code><b>Quaqua.Images.preload=false</b></code> Decodes each image
+ * when it is needed for the first time. This is the default value.</li>
+ * </ul> Example:
  * <pre>
  * System.setProperty("Quaqua.design", "panther");
  * System.setProperty("Quaqua.TabbedPane.design", "jaguar");
@@ -1,7 +1,7 @@
 /*
  * @(#)QuaquaNativeButtonBorder.java
  *
- * Copyright (c) 2011-2013 Werner Randelshofer, Switzerland.
+ * Copyright (c) 2011-2015 Werner Randelshofer, Switzerland.
  * All rights reserved.
  *
  * You may not use, copy or modify this file, except in compliance with the
@@ -363,6 +363,7 @@ public class QuaquaNativeButtonBorder extends VisualMarginBorder implements Bord
                     long animationTime = System.currentTimeMillis();
                     args |= animationTime << ARG_ANIM_FRAME;
                     painter.setValueByKey(Key.animationTime, animationTime / 1000d);
+                    QuaquaDefaultButtonAnimator.scheduleRepaint(c, x, y, width, height);
                 }
             } else {
                 state = OSXAquaPainter.State.inactive;
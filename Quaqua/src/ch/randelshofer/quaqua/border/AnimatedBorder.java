@@ -1,29 +1,30 @@
 /*
  * @(#)AnimatedBorder.java
  *
- * Copyright (c) 2005-2013 Werner Randelshofer, Switzerland.
+ * Copyright (c) 2005-2015 Werner Randelshofer, Switzerland.
  * You may not use, copy or modify this file, except in compliance with the
  * accompanying license terms.
  */
 
 package ch.randelshofer.quaqua.border;
 
+import ch.randelshofer.quaqua.util.AnimationScheduler;
 import java.awt.*;
 import javax.swing.border.*;
-import java.util.*;
 /**
  * AnimatedBorder takes an array of borders and a delay value, to draw an
  * animated border.
  * The border to be drawn is selected based on the current time.
+ * <p>
+ * After painting a frame, the border requests a repaint of its area from
+ * the shared {@link AnimationScheduler} for the time when the next frame is
+ * due. The animation pauses while the component is not showing or is not on
+ * an active window.
  *
  * @author  Werner Randelshofer
  * @version $Id$
  */
 public class AnimatedBorder implements Border {
-    /**
-     * In this HashSet we store all components that are scheduled for repainting.
-     */
-    private HashSet scheduledComponents = new HashSet();
     /**
      * Animation borders.
      * All borders must have the same insets.
@@ -58,6 +59,11 @@ public class AnimatedBorder implements Border {
         int frame = (int) (animTime / delay);
 
         borders[frame].paintBorder(c, g, x, y, width, height);
+
+        if (c != null && c.isShowing()) {
+            AnimationScheduler.getSharedInstance().scheduleRepaint(c, x, y, width, height,
+                    delay - animTime % delay, true);
+        }
     }
 }
 
@@ -1,16 +1,19 @@
 /*
  * @(#)ImageBevelBorder.java 
  *
- * Copyright (c) 2001-2013 Werner Randelshofer, Switzerland.
+ * Copyright (c) 2001-2015 Werner Randelshofer, Switzerland.
  * You may not use, copy or modify this file, except in compliance with the
  * accompanying license terms.
  */
 package ch.randelshofer.quaqua.border;
 
+import ch.randelshofer.quaqua.QuaquaManager;
 import ch.randelshofer.quaqua.util.*;
 import java.awt.*;
 import javax.swing.border.*;
 import java.awt.image.*;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 
 /**
  * Draws a filled bevel border using an image and insets.
@@ -27,6 +30,15 @@ import java.awt.image.*;
  * bottom left: 2,4, bottom right: 4,4 rectangle of the image.
  * The inner area of the image is used to fill the inner area.
  *
+ * <p>In pre-sliced mode, the image is sliced once into corner, edge and
+ * center tiles in the format of the destination. The edge strips and the
+ * center are tiled once for each size, so that painting only consists of
+ * unscaled image blits. The tiled strips of all borders are kept in a shared
+ * cache, which is split into lock stripes. When the byte budget of the cache
+ * is exceeded, the least recently used strips are evicted. The budget is
+ * 4 MB, and can be changed with the property
+ * {@code Quaqua.ImageBevelBorder.maxStripCacheBytes}.
+ *
  * @author  Werner Randelshofer
  * @version $Id$
  */
@@ -54,6 +66,39 @@ public class ImageBevelBorder implements Border {
      * is filled with this color instead with the image.
      */
     private Color fillColor;
+    /**
+     * This attribute is set to true, when the border paints with
+     * pre-sliced tiles.
+     */
+    private boolean preSliced;
+    /**
+     * The pre-sliced tiles. This is null if they have not been
+     * created yet.
+     */
+    private Slices slices;
+    /**
+     * Strips with more pixels than this are not cached.
+     */
+    private final static int MAX_STRIP_PIXELS = 256 * 256;
+    /**
+     * Number of lock stripes of the strip cache. Must be a power of two.
+     */
+    private final static int STRIPE_COUNT = 8;
+    /**
+     * The stripes of the strip cache. Each stripe holds the strips whose key
+     * hash maps to the stripe in least recently used order.
+     */
+    private final static Stripe[] stripes = new Stripe[STRIPE_COUNT];
+    /**
+     * Maximal number of bytes held by the strip cache.
+     */
+    private final static long maxStripCacheBytes = getLongProperty("Quaqua.ImageBevelBorder.maxStripCacheBytes", 4L << 20);
+
+    static {
+        for (int i = 0; i < STRIPE_COUNT; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
 
     /**
      * Creates a new instance with the given image and insets.
@@ -107,6 +152,61 @@ public class ImageBevelBorder implements Border {
         return (Insets) borderInsets.clone();
     }
 
+    /**
+     * Returns true if the border paints with pre-sliced tiles.
+     */
+    public boolean isPreSliced() {
+        return preSliced;
+    }
+
+    /**
+     * Sets whether the border paints with pre-sliced tiles.
+     * The default value is false.
+     */
+    public void setPreSliced(boolean newValue) {
+        preSliced = newValue;
+        slices = null;
+    }
+
+    /**
+     * Returns the number of bytes currently held by the strip cache, which
+     * is shared by all borders.
+     */
+    public static long getStripCacheBytes() {
+        long bytes = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                bytes += stripe.bytes;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the maximal number of bytes held by the strip cache.
+     */
+    public static long getMaxStripCacheBytes() {
+        return maxStripCacheBytes;
+    }
+
+    private static long getLongProperty(String key, long def) {
+        String value = QuaquaManager.getProperty(key);
+        if (value != null) {
+            try {
+                return Long.decode(value.trim()).longValue();
+            } catch (NumberFormatException e) {
+                // continue (we return def below)
+            }
+        }
+        return def;
+    }
+
+    private static Stripe getStripe(StripKey key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return stripes[h & (STRIPE_COUNT - 1)];
+    }
+
     /**
      * Paints the bevel image for the specified component with the
      * specified position and size.
@@ -175,6 +275,16 @@ public class ImageBevelBorder implements Border {
             bottom = height - top;
         }
 
+        // Paint with the pre-sliced tiles, unless the insets had to be
+        // adjusted.
+        if (preSliced
+                && top == imageInsets.top && left == imageInsets.left
+                && bottom == imageInsets.bottom && right == imageInsets.right) {
+            paintSliced(c, g, x, y, width, height, bufImg);
+            g.dispose();
+            return;
+        }
+
         // Draw the Corners
         if (top > 0 && left > 0) {
             g.drawImage(
@@ -266,12 +376,234 @@ public class ImageBevelBorder implements Border {
         g.dispose();
     }
 
+    /**
+     * Paints the border with the pre-sliced tiles. The insets of the image
+     * must fit into the border.
+     */
+    private void paintSliced(Component c, Graphics2D g, int x, int y, int width, int height, BufferedImage bufImg) {
+        GraphicsConfiguration config = g.getDeviceConfiguration();
+        Slices s = slices;
+        if (s == null || s.config != config) {
+            slices = s = new Slices(bufImg, imageInsets, fillContentArea && fillColor == null, config);
+        }
+
+        int top = imageInsets.top;
+        int left = imageInsets.left;
+        int bottom = imageInsets.bottom;
+        int right = imageInsets.right;
+        int imgWidth = bufImg.getWidth();
+        int imgHeight = bufImg.getHeight();
+        int innerWidth = width - left - right;
+        int innerHeight = height - top - bottom;
+
+        // Draw the Corners
+        if (s.topLeft != null) {
+            g.drawImage(s.topLeft, x, y, c);
+        }
+        if (s.topRight != null) {
+            g.drawImage(s.topRight, x + width - right, y, c);
+        }
+        if (s.bottomLeft != null) {
+            g.drawImage(s.bottomLeft, x, y + height - bottom, c);
+        }
+        if (s.bottomRight != null) {
+            g.drawImage(s.bottomRight, x + width - right, y + height - bottom, c);
+        }
+
+        // Draw the edges
+        if (innerWidth > 0) {
+            if (s.north != null) {
+                s.paintStrip(c, g, Slices.NORTH, s.north, x + left, y, innerWidth, top);
+            }
+            if (s.south != null && imgHeight > bottom) {
+                s.paintStrip(c, g, Slices.SOUTH, s.south, x + left, y + height - bottom, innerWidth, bottom);
+            }
+        }
+        if (innerHeight > 0) {
+            if (s.west != null) {
+                s.paintStrip(c, g, Slices.WEST, s.west, x, y + top, left, innerHeight);
+            }
+            if (s.east != null && imgWidth > right + right) {
+                s.paintStrip(c, g, Slices.EAST, s.east, x + width - right, y + top, right, innerHeight);
+            }
+        }
+
+        // Fill the center
+        if (fillContentArea && innerWidth > 0 && innerHeight > 0) {
+            if (fillColor != null) {
+                g.setColor(fillColor);
+                g.fillRect(x + left, y + top, innerWidth, innerHeight);
+            } else if (s.center != null) {
+                s.paintStrip(c, g, Slices.CENTER, s.center, x + left, y + top, innerWidth, innerHeight);
+            }
+        }
+    }
+
     public Image getImage() {
         return image;
     }
 
     public void setImage(BufferedImage image) {
         this.image = image;
+        this.slices = null;
+    }
+
+    /**
+     * Identifies a tiled strip by the slices it has been made of, the part
+     * of the border, and the size of the strip.
+     */
+    private static class StripKey {
+
+        private final Slices slices;
+        private final int part, w, h;
+
+        StripKey(Slices slices, int part, int w, int h) {
+            this.slices = slices;
+            this.part = part;
+            this.w = w;
+            this.h = h;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof StripKey)) {
+                return false;
+            }
+            StripKey that = (StripKey) o;
+            return slices == that.slices && part == that.part && w == that.w && h == that.h;
+        }
+
+        @Override
+        public int hashCode() {
+            return ((System.identityHashCode(slices) * 31 + part) * 31 + w) * 31 + h;
+        }
+    }
+
+    /**
+     * Holds the strips of a subset of the keys in least recently used order.
+     * Each stripe may use an equal share of the byte budget of the cache.
+     */
+    private static class Stripe {
+
+        private final LinkedHashMap<StripKey, Image> entries = new LinkedHashMap<StripKey, Image>(16, 0.75f, true);
+        private long bytes;
+
+        synchronized Image getImage(StripKey key) {
+            return entries.get(key);
+        }
+
+        /**
+         * Puts the strip into the cache, and evicts least recently used
+         * strips until this stripe is within its share of the budget.
+         */
+        synchronized void putImage(StripKey key, Image image) {
+            if (entries.put(key, image) == null) {
+                bytes += getBytes(key);
+            }
+            long maxBytes = maxStripCacheBytes / STRIPE_COUNT;
+            for (Iterator<StripKey> i = entries.keySet().iterator(); bytes > maxBytes && i.hasNext();) {
+                StripKey eldest = i.next();
+                i.remove();
+                bytes -= getBytes(eldest);
+            }
+        }
+
+        private static long getBytes(StripKey key) {
+            return 4L * key.w * key.h;
+        }
+    }
+
+    /**
+     * Holds the tiles of the image in the format of a graphics
+     * configuration. The strips which are tiled from them are kept in the
+     * shared strip cache.
+     */
+    private static class Slices {
+
+        final static int NORTH = 0;
+        final static int SOUTH = 1;
+        final static int WEST = 2;
+        final static int EAST = 3;
+        final static int CENTER = 4;
+        final GraphicsConfiguration config;
+        final Image topLeft, topRight, bottomLeft, bottomRight;
+        final BufferedImage north, south, west, east, center;
+
+        Slices(BufferedImage img, Insets insets, boolean hasCenter, GraphicsConfiguration config) {
+            this.config = config;
+            int top = insets.top;
+            int left = insets.left;
+            int bottom = insets.bottom;
+            int right = insets.right;
+            int imgWidth = img.getWidth();
+            int imgHeight = img.getHeight();
+            int innerWidth = imgWidth - left - right;
+            int innerHeight = imgHeight - top - bottom;
+
+            topLeft = (top > 0 && left > 0) ? slice(img, 0, 0, left, top) : null;
+            topRight = (top > 0 && right > 0) ? slice(img, imgWidth - right, 0, right, top) : null;
+            bottomLeft = (bottom > 0 && left > 0) ? slice(img, 0, imgHeight - bottom, left, bottom) : null;
+            bottomRight = (bottom > 0 && right > 0) ? slice(img, imgWidth - right, imgHeight - bottom, right, bottom) : null;
+            north = (top > 0 && innerWidth > 0) ? slice(img, left, 0, innerWidth, top) : null;
+            south = (bottom > 0 && innerWidth > 0) ? slice(img, left, imgHeight - bottom, innerWidth, bottom) : null;
+            west = (left > 0 && innerHeight > 0) ? slice(img, 0, top, left, innerHeight) : null;
+            east = (right > 0 && innerHeight > 0) ? slice(img, imgWidth - right, top, right, innerHeight) : null;
+            center = (hasCenter && innerWidth > 0 && innerHeight > 0) ? slice(img, left, top, innerWidth, innerHeight) : null;
+        }
+
+        /**
+         * Creates a translucent image in the format of the graphics
+         * configuration.
+         */
+        private BufferedImage createImage(int w, int h) {
+            if (config == null) {
+                return new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB_PRE);
+            }
+            return config.createCompatibleImage(w, h, Transparency.TRANSLUCENT);
+        }
+
+        /**
+         * Copies a region of the image into a new tile.
+         */
+        private BufferedImage slice(BufferedImage img, int sx, int sy, int w, int h) {
+            BufferedImage tile = createImage(w, h);
+            Graphics2D g = tile.createGraphics();
+            g.setComposite(AlphaComposite.Src);
+            g.drawImage(img, 0, 0, w, h, sx, sy, sx + w, sy + h, null);
+            g.dispose();
+            return tile;
+        }
+
+        /**
+         * Fills the specified area with the tile. The tile is anchored at
+         * the location of the area.
+         */
+        void paintStrip(Component c, Graphics2D g, int part, BufferedImage tile, int x, int y, int w, int h) {
+            if (w == tile.getWidth() && h == tile.getHeight()) {
+                g.drawImage(tile, x, y, c);
+                return;
+            }
+            if ((long) w * h > MAX_STRIP_PIXELS) {
+                g.setPaint(new TexturePaint(tile, new Rectangle(x, y, tile.getWidth(), tile.getHeight())));
+                g.fillRect(x, y, w, h);
+                return;
+            }
+
+            StripKey key = new StripKey(this, part, w, h);
+            Stripe stripe = getStripe(key);
+            Image strip = stripe.getImage(key);
+            if (strip == null) {
+                BufferedImage img = createImage(w, h);
+                Graphics2D sg = img.createGraphics();
+                sg.setComposite(AlphaComposite.Src);
+                sg.setPaint(new TexturePaint(tile, new Rectangle(0, 0, tile.getWidth(), tile.getHeight())));
+                sg.fillRect(0, 0, w, h);
+                sg.dispose();
+                strip = img;
+                stripe.putImage(key, strip);
+            }
+            g.drawImage(strip, x, y, c);
+        }
     }
 
     public static class UIResource extends ImageBevelBorder implements javax.swing.plaf.UIResource {
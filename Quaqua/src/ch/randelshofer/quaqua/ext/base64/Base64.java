@@ -69,6 +69,16 @@ public class Base64 {
     private final static byte NEW_LINE = (byte) '\n';
     /** Preferred encoding. */
     private final static String PREFERRED_ENCODING = "UTF-8";
+    /**
+     * Buffers with more bytes or characters than this are converted in
+     * parallel, if the common fork-join pool has more than one thread.
+     */
+    private final static int PARALLEL_THRESHOLD = 1 << 20;
+    /**
+     * Number of bytes or characters converted by a parallel task.
+     * This is a multiple of the 57 bytes that make up a line.
+     */
+    private final static int CHUNK_SIZE = 57 * 1024;
     /** The 64 valid Base64 values. */
     private final static byte[] ALPHABET;
     private final static byte[] _NATIVE_ALPHABET = /* May be something funny like EBCDIC */ {
@@ -120,8 +130,8 @@ public class Base64 {
         -9, -9, -9, -9, -9, -9, // Decimal 91 - 96
         26, 27, 28, 29, 30, 31, 32, 33, 34, 35, 36, 37, 38, // Letters 'a' through 'm'
         39, 40, 41, 42, 43, 44, 45, 46, 47, 48, 49, 50, 51, // Letters 'n' through 'z'
-        -9, -9, -9, -9 // Decimal 123 - 126
-    /*,-9,-9,-9,-9,-9,-9,-9,-9,-9,-9,-9,-9,-9,     // Decimal 127 - 139
+        -9, -9, -9, -9, -9 // Decimal 123 - 127
+    /*,-9,-9,-9,-9,-9,-9,-9,-9,-9,-9,-9,-9,     // Decimal 128 - 139
     -9,-9,-9,-9,-9,-9,-9,-9,-9,-9,-9,-9,-9,     // Decimal 140 - 152
     -9,-9,-9,-9,-9,-9,-9,-9,-9,-9,-9,-9,-9,     // Decimal 153 - 165
     -9,-9,-9,-9,-9,-9,-9,-9,-9,-9,-9,-9,-9,     // Decimal 166 - 178
@@ -445,45 +455,216 @@ public class Base64 {
         } // end if: compress
         // Else, don't compress. Better not to use streams at all then.
         else {
-            // Convert option to boolean in way that code likes it.
-            boolean breakLines = dontBreakLines == 0;
-
-            int len43 = len * 4 / 3;
-            byte[] outBuff = new byte[(len43) // Main 4:3
-                    + ((len % 3) > 0 ? 4 : 0) // Account for padding
-                    + (breakLines ? (len43 / MAX_LINE_LENGTH) : 0)]; // New lines
-            int d = 0;
-            int e = 0;
-            int len2 = len - 2;
-            int lineLength = 0;
-            for (; d < len2; d += 3, e += 4) {
-                encode3to4(source, d + off, 3, outBuff, e);
-
-                lineLength += 4;
-                if (breakLines && lineLength == MAX_LINE_LENGTH) {
-                    outBuff[e + 4] = NEW_LINE;
-                    e++;
-                    lineLength = 0;
-                }   // end if: end of line
-            }   // en dfor: each piece of array
+            char[] outBuff = new char[encodedLength(len, options)];
+            encode(java.nio.ByteBuffer.wrap(source, off, len),
+                    java.nio.CharBuffer.wrap(outBuff), options);
+            return new String(outBuff);
+        }   // end else: don't compress
 
-            if (d < len) {
-                encode3to4(source, d + off, len - d, outBuff, e);
-                e += 4;
-            }   // end if: some padding needed
+    }   // end encodeBytes
 
+    /**
+     * Returns the number of characters needed to encode the specified
+     * number of bytes into Base64 notation.
+     * The GZIP option is not supported.
+     *
+     * @param len Length of data to convert
+     * @param options Specified options
+     * @return the number of characters
+     * @see Base64#DONT_BREAK_LINES
+     */
+    public static int encodedLength(int len, int options) {
+        int length = (len + 2) / 3 * 4;
+        if ((options & DONT_BREAK_LINES) == 0) {
+            // A new line follows each full line of 19 three-byte groups
+            length += len / 3 / (MAX_LINE_LENGTH / 4);
+        }
+        return length;
+    }   // end encodedLength
 
-            // Return value according to relevant encoding.
-            try {
-                return new String(outBuff, 0, e, PREFERRED_ENCODING);
-            } // end try
-            catch (java.io.UnsupportedEncodingException uue) {
-                return new String(outBuff, 0, e);
-            }   // end catch
+    /**
+     * Encodes the remaining bytes of a buffer into Base64 notation and
+     * writes the characters to another buffer. Does not allocate
+     * intermediate arrays. Large buffers are encoded in parallel on the
+     * common fork-join pool.
+     * <p>
+     * The output is the same as the one of
+     * {@link #encodeBytes(byte[], int, int, int)}.
+     * The position of <var>source</var> is advanced to its limit, and
+     * the position of <var>destination</var> is advanced by the number
+     * of characters written.
+     * <p>
+     * Valid options:<pre>
+     *   DONT_BREAK_LINES: don't break lines at 76 characters
+     * </pre>
+     *
+     * @param source The data to convert
+     * @param destination The buffer to hold the conversion
+     * @param options Specified options
+     * @return the number of characters written
+     * @throws IllegalArgumentException if the GZIP option is specified
+     * @throws java.nio.BufferOverflowException if <var>destination</var>
+     * has less than <code>encodedLength(source.remaining(), options)</code>
+     * characters remaining. Nothing is written in this case.
+     * @see Base64#DONT_BREAK_LINES
+     */
+    public static int encode(java.nio.ByteBuffer source, java.nio.CharBuffer destination, int options) {
+        if ((options & GZIP) != 0) {
+            throw new IllegalArgumentException("GZIP is not supported");
+        }
+        int len = source.remaining();
+        int length = encodedLength(len, options);
+        if (destination.remaining() < length) {
+            throw new java.nio.BufferOverflowException();
+        }
+        boolean breakLines = (options & DONT_BREAK_LINES) == 0;
+        int off = source.position();
+        int destOffset = destination.position();
+
+        if (len > PARALLEL_THRESHOLD
+                && java.util.concurrent.ForkJoinPool.getCommonPoolParallelism() > 1) {
+            java.util.concurrent.ForkJoinPool.commonPool().invoke(
+                    new EncodeTask(source, off, len, destination, destOffset,
+                    encodedLength(CHUNK_SIZE, options), breakLines,
+                    0, (len + CHUNK_SIZE - 1) / CHUNK_SIZE));
+        } else {
+            encode(source, off, len, destination, destOffset, breakLines);
+        }
 
-        }   // end else: don't compress
+        source.position(off + len);
+        destination.position(destOffset + length);
+        return length;
+    }   // end encode
 
-    }   // end encodeBytes
+    /**
+     * Encodes a range of a buffer into Base64 notation. Starts a new line
+     * at the beginning of the range.
+     *
+     * @return the number of characters written
+     */
+    private static int encode(
+            java.nio.ByteBuffer source, int off, int len,
+            java.nio.CharBuffer destination, int destOffset, boolean breakLines) {
+        if (source.hasArray() && destination.hasArray()) {
+            return encode(source.array(), source.arrayOffset() + off, len,
+                    destination.array(), destination.arrayOffset() + destOffset, breakLines);
+        }
+        int end = off + len;
+        int d = off;
+        int e = destOffset;
+        int lineLength = 0;
+        for (; d < end - 2; d += 3, e += 4) {
+            int inBuff = ((source.get(d) & 0xff) << 16)
+                    | ((source.get(d + 1) & 0xff) << 8)
+                    | (source.get(d + 2) & 0xff);
+            destination.put(e, (char) ALPHABET[(inBuff >>> 18)]);
+            destination.put(e + 1, (char) ALPHABET[(inBuff >>> 12) & 0x3f]);
+            destination.put(e + 2, (char) ALPHABET[(inBuff >>> 6) & 0x3f]);
+            destination.put(e + 3, (char) ALPHABET[(inBuff) & 0x3f]);
+
+            lineLength += 4;
+            if (breakLines && lineLength == MAX_LINE_LENGTH) {
+                destination.put(e + 4, (char) NEW_LINE);
+                e++;
+                lineLength = 0;
+            }   // end if: end of line
+        }   // end for: each piece of array
+
+        if (d < end) {
+            int inBuff = ((source.get(d) & 0xff) << 16)
+                    | (d + 1 < end ? ((source.get(d + 1) & 0xff) << 8) : 0);
+            destination.put(e, (char) ALPHABET[(inBuff >>> 18)]);
+            destination.put(e + 1, (char) ALPHABET[(inBuff >>> 12) & 0x3f]);
+            destination.put(e + 2, d + 1 < end ? (char) ALPHABET[(inBuff >>> 6) & 0x3f] : (char) EQUALS_SIGN);
+            destination.put(e + 3, (char) EQUALS_SIGN);
+            e += 4;
+        }   // end if: some padding needed
+
+        return e - destOffset;
+    }   // end encode
+
+    /**
+     * Encodes a range of an array into Base64 notation. Starts a new line
+     * at the beginning of the range.
+     *
+     * @return the number of characters written
+     */
+    private static int encode(
+            byte[] source, int off, int len,
+            char[] destination, int destOffset, boolean breakLines) {
+        int end = off + len;
+        int d = off;
+        int e = destOffset;
+        int lineLength = 0;
+        for (; d < end - 2; d += 3, e += 4) {
+            int inBuff = ((source[d] & 0xff) << 16)
+                    | ((source[d + 1] & 0xff) << 8)
+                    | (source[d + 2] & 0xff);
+            destination[e] = (char) ALPHABET[(inBuff >>> 18)];
+            destination[e + 1] = (char) ALPHABET[(inBuff >>> 12) & 0x3f];
+            destination[e + 2] = (char) ALPHABET[(inBuff >>> 6) & 0x3f];
+            destination[e + 3] = (char) ALPHABET[(inBuff) & 0x3f];
+
+            lineLength += 4;
+            if (breakLines && lineLength == MAX_LINE_LENGTH) {
+                destination[e + 4] = (char) NEW_LINE;
+                e++;
+                lineLength = 0;
+            }   // end if: end of line
+        }   // end for: each piece of array
+
+        if (d < end) {
+            int inBuff = ((source[d] & 0xff) << 16)
+                    | (d + 1 < end ? ((source[d + 1] & 0xff) << 8) : 0);
+            destination[e] = (char) ALPHABET[(inBuff >>> 18)];
+            destination[e + 1] = (char) ALPHABET[(inBuff >>> 12) & 0x3f];
+            destination[e + 2] = d + 1 < end ? (char) ALPHABET[(inBuff >>> 6) & 0x3f] : (char) EQUALS_SIGN;
+            destination[e + 3] = (char) EQUALS_SIGN;
+            e += 4;
+        }   // end if: some padding needed
+
+        return e - destOffset;
+    }   // end encode
+
+    /**
+     * Encodes a range of chunks. Splits the range in halves, if it contains
+     * more than one chunk. Each chunk consists of full lines, so the
+     * chunks can be encoded independently.
+     */
+    private static class EncodeTask extends java.util.concurrent.RecursiveAction {
+
+        private final java.nio.ByteBuffer source;
+        private final java.nio.CharBuffer destination;
+        private final int off, len, destOffset, encodedChunkSize;
+        private final boolean breakLines;
+        private final int from, to;
+
+        public EncodeTask(java.nio.ByteBuffer source, int off, int len,
+                java.nio.CharBuffer destination, int destOffset,
+                int encodedChunkSize, boolean breakLines, int from, int to) {
+            this.source = source;
+            this.off = off;
+            this.len = len;
+            this.destination = destination;
+            this.destOffset = destOffset;
+            this.encodedChunkSize = encodedChunkSize;
+            this.breakLines = breakLines;
+            this.from = from;
+            this.to = to;
+        }
+
+        protected void compute() {
+            if (to - from > 1) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new EncodeTask(source, off, len, destination, destOffset, encodedChunkSize, breakLines, from, mid),
+                        new EncodeTask(source, off, len, destination, destOffset, encodedChunkSize, breakLines, mid, to));
+            } else {
+                int start = from * CHUNK_SIZE;
+                encode(source, off + start, Math.min(CHUNK_SIZE, len - start),
+                        destination, destOffset + from * encodedChunkSize, breakLines);
+            }
+        }
+    }   // end EncodeTask
 
     /* ********  D E C O D I N G   M E T H O D S  ******** */
     /**
@@ -614,6 +795,388 @@ public class Base64 {
         return out;
     }   // end decode
 
+    /**
+     * Decodes the remaining characters of a buffer from Base64 notation and
+     * writes the bytes to another buffer. Does not allocate intermediate
+     * arrays. Large buffers are decoded in parallel on the common
+     * fork-join pool. Does not support automatically gunzipping.
+     * <p>
+     * The output is the same as the one of {@link #decode(byte[], int, int)}
+     * with the bytes of an ASCII string. Whitespace is skipped. Decoding
+     * stops after the first group of four characters which ends with an
+     * equals sign. An incomplete group at the end is ignored.
+     * <p>
+     * The position of <var>source</var> is advanced to its limit, and
+     * the position of <var>destination</var> is advanced by the number
+     * of bytes written. Destination needs at most
+     * <code>source.remaining() * 3 / 4</code> bytes.
+     *
+     * @param source The Base64 encoded data
+     * @param destination The buffer to hold the conversion
+     * @return the number of bytes written, or -1 if the source contains
+     * a character which is not valid in Base64 notation. The positions of the
+     * buffers are not changed in this case, but bytes may have been written.
+     * @throws java.nio.BufferOverflowException if <var>destination</var>
+     * has not enough space.
+     */
+    public static int decode(java.nio.CharBuffer source, java.nio.ByteBuffer destination) {
+        int off = source.position();
+        int len = source.remaining();
+        int destOffset = destination.position();
+        int written = -2;
+
+        if (len > PARALLEL_THRESHOLD
+                && java.util.concurrent.ForkJoinPool.getCommonPoolParallelism() > 1) {
+            written = decodeInParallel(source, off, len, destination, destOffset);
+        }
+        if (written == -2) {
+            written = decode(source, off, off + len, 0, destination, destOffset);
+        }
+        if (written != -1) {
+            source.position(off + len);
+            destination.position(destOffset + written);
+        }
+        return written;
+    }   // end decode
+
+    /**
+     * Decodes the groups of four characters which start in a range of a
+     * buffer. The last group may extend beyond the end of the range.
+     *
+     * @param source The Base64 encoded data
+     * @param from The index where decoding begins
+     * @param to The index after the last character of the range
+     * @param skip The number of characters at the start of the range,
+     * not counting whitespace, which belong to a group that started before
+     * the range
+     * @param destination the buffer to hold the conversion
+     * @param destOffset the index where output will be put
+     * @return the number of bytes written, or -1 if the range contains
+     * an invalid character
+     */
+    private static int decode(java.nio.CharBuffer source, int from, int to, int skip,
+            java.nio.ByteBuffer destination, int destOffset) {
+        if (source.hasArray() && destination.hasArray()) {
+            int offset = source.arrayOffset();
+            int destArrayOffset = destination.arrayOffset();
+            return decode(source.array(), offset + from, offset + to,
+                    offset + source.limit(), skip, destination.array(),
+                    destArrayOffset + destOffset, destArrayOffset + destination.limit());
+        }
+        int end = source.limit();
+        int d = destOffset;
+        int i = from;
+        for (; skip > 0 && i < end; i++) {
+            char ch = source.get(i);
+            if (ch < DECODABET.length && DECODABET[ch] >= EQUALS_SIGN_ENC) {
+                skip--;
+            }
+        }
+
+        int b4Posn = 0;
+        char c0 = 0, c1 = 0, c2 = 0;
+        for (; i < end; i++) {
+            char ch = source.get(i);
+            if (b4Posn == 0 && i >= to) {
+                break;
+            }
+            byte sbiDecode = ch < DECODABET.length ? DECODABET[ch] : (byte) -9;
+            if (sbiDecode < WHITE_SPACE_ENC) {
+                return -1;
+            }
+            if (sbiDecode >= EQUALS_SIGN_ENC) {
+                switch (b4Posn++) {
+                    case 0:
+                        c0 = ch;
+                        break;
+                    case 1:
+                        c1 = ch;
+                        break;
+                    case 2:
+                        c2 = ch;
+                        break;
+                    default:
+                        int outBuff = ((DECODABET[c0] & 0xFF) << 18)
+                                | ((DECODABET[c1] & 0xFF) << 12);
+                        if (c2 == EQUALS_SIGN) {
+                            if (d + 1 > destination.limit()) {
+                                throw new java.nio.BufferOverflowException();
+                            }
+                            destination.put(d++, (byte) (outBuff >>> 16));
+                        } else if (ch == EQUALS_SIGN) {
+                            outBuff |= ((DECODABET[c2] & 0xFF) << 6);
+                            if (d + 2 > destination.limit()) {
+                                throw new java.nio.BufferOverflowException();
+                            }
+                            destination.put(d++, (byte) (outBuff >>> 16));
+                            destination.put(d++, (byte) (outBuff >>> 8));
+                        } else {
+                            outBuff |= ((DECODABET[c2] & 0xFF) << 6)
+                                    | ((DECODABET[ch] & 0xFF));
+                            if (d + 3 > destination.limit()) {
+                                throw new java.nio.BufferOverflowException();
+                            }
+                            destination.put(d++, (byte) (outBuff >> 16));
+                            destination.put(d++, (byte) (outBuff >> 8));
+                            destination.put(d++, (byte) (outBuff));
+                        }
+                        b4Posn = 0;
+
+                        // If that was the equals sign, break out of 'for' loop
+                        if (ch == EQUALS_SIGN) {
+                            return d - destOffset;
+                        }
+                        break;
+                }
+            }   // end if: equals sign or better
+        }   // each input character
+
+        return d - destOffset;
+    }   // end decode
+
+    /**
+     * Decodes the groups of four characters which start in a range of an
+     * array. The last group may extend beyond the end of the range up to
+     * <var>end</var>. Groups without whitespace and equals signs are
+     * decoded in one step.
+     *
+     * @return the number of bytes written, or -1 if the range contains
+     * an invalid character
+     * @see #decode(java.nio.CharBuffer, int, int, int, java.nio.ByteBuffer, int)
+     */
+    private static int decode(char[] source, int from, int to, int end, int skip,
+            byte[] destination, int destOffset, int destLimit) {
+        int d = destOffset;
+        int i = from;
+        for (; skip > 0 && i < end; i++) {
+            char ch = source[i];
+            if (ch < DECODABET.length && DECODABET[ch] >= EQUALS_SIGN_ENC) {
+                skip--;
+            }
+        }
+
+        int b4Posn = 0;
+        char c0 = 0, c1 = 0, c2 = 0;
+        for (; i < end; i++) {
+            if (b4Posn == 0) {
+                // Decode groups without whitespace and equals signs
+                int fastEnd = Math.min(Math.min(to, end - 3), i + (destLimit - d) / 3 * 4);
+                while (i < fastEnd) {
+                    char ch0 = source[i], ch1 = source[i + 1],
+                            ch2 = source[i + 2], ch3 = source[i + 3];
+                    if ((ch0 | ch1 | ch2 | ch3) >= 128) {
+                        break;
+                    }
+                    int outBuff = (DECODABET[ch0] << 18) | (DECODABET[ch1] << 12)
+                            | (DECODABET[ch2] << 6) | DECODABET[ch3];
+                    if (outBuff < 0) {
+                        break;
+                    }
+                    destination[d] = (byte) (outBuff >> 16);
+                    destination[d + 1] = (byte) (outBuff >> 8);
+                    destination[d + 2] = (byte) (outBuff);
+                    d += 3;
+                    i += 4;
+                }
+                if (i >= to || i >= end) {
+                    break;
+                }
+            }
+            char ch = source[i];
+            byte sbiDecode = ch < DECODABET.length ? DECODABET[ch] : (byte) -9;
+            if (sbiDecode < WHITE_SPACE_ENC) {
+                return -1;
+            }
+            if (sbiDecode >= EQUALS_SIGN_ENC) {
+                switch (b4Posn++) {
+                    case 0:
+                        c0 = ch;
+                        break;
+                    case 1:
+                        c1 = ch;
+                        break;
+                    case 2:
+                        c2 = ch;
+                        break;
+                    default:
+                        int outBuff = ((DECODABET[c0] & 0xFF) << 18)
+                                | ((DECODABET[c1] & 0xFF) << 12);
+                        if (c2 == EQUALS_SIGN) {
+                            if (d + 1 > destLimit) {
+                                throw new java.nio.BufferOverflowException();
+                            }
+                            destination[d++] = (byte) (outBuff >>> 16);
+                        } else if (ch == EQUALS_SIGN) {
+                            outBuff |= ((DECODABET[c2] & 0xFF) << 6);
+                            if (d + 2 > destLimit) {
+                                throw new java.nio.BufferOverflowException();
+                            }
+                            destination[d++] = (byte) (outBuff >>> 16);
+                            destination[d++] = (byte) (outBuff >>> 8);
+                        } else {
+                            outBuff |= ((DECODABET[c2] & 0xFF) << 6)
+                                    | ((DECODABET[ch] & 0xFF));
+                            if (d + 3 > destLimit) {
+                                throw new java.nio.BufferOverflowException();
+                            }
+                            destination[d++] = (byte) (outBuff >> 16);
+                            destination[d++] = (byte) (outBuff >> 8);
+                            destination[d++] = (byte) (outBuff);
+                        }
+                        b4Posn = 0;
+
+                        // If that was the equals sign, break out of 'for' loop
+                        if (ch == EQUALS_SIGN) {
+                            return d - destOffset;
+                        }
+                        break;
+                }
+            }   // end if: equals sign or better
+        }   // each input character
+
+        return d - destOffset;
+    }   // end decode
+
+    /**
+     * Decodes a buffer in chunks on the common fork-join pool.
+     * <p>
+     * A first pass counts the characters of each chunk. A second pass
+     * decodes the chunks at the output positions derived from the counts.
+     * This only works if all groups of four characters before the last
+     * chunk decode into three bytes. The method returns -2, if the data
+     * does not meet this requirement, or if it contains invalid
+     * characters, or if the destination may be too small.
+     *
+     * @return the number of bytes written or -2
+     */
+    private static int decodeInParallel(java.nio.CharBuffer source, int off, int len,
+            java.nio.ByteBuffer destination, int destOffset) {
+        int chunks = (len + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        int[] counts = new int[chunks];
+        int[] equalsAt = new int[chunks];
+        java.util.concurrent.ForkJoinPool.commonPool().invoke(
+                new CountTask(source, off, len, counts, equalsAt, 0, chunks));
+
+        int[] starts = new int[chunks];
+        int total = 0;
+        for (int k = 0; k < chunks; k++) {
+            if (counts[k] == -1
+                    || (equalsAt[k] != -1 && (k < chunks - 1 || equalsAt[k] < 3))) {
+                return -2;
+            }
+            starts[k] = total;
+            total += counts[k];
+        }
+        if (destination.limit() - destOffset < total / 4 * 3) {
+            return -2;
+        }
+
+        int[] written = new int[chunks];
+        java.util.concurrent.ForkJoinPool.commonPool().invoke(
+                new DecodeTask(source, off, len, starts, destination, destOffset, written, 0, chunks));
+        int length = 0;
+        for (int k = 0; k < chunks; k++) {
+            length += written[k];
+        }
+        return length;
+    }   // end decodeInParallel
+
+    /**
+     * Counts the characters of a range of chunks, not counting whitespace.
+     * Splits the range in halves, if it contains more than one chunk.
+     * Stores -1 as the count of a chunk with an invalid character, and
+     * the count of characters before the first equals sign of each chunk,
+     * or -1 if the chunk has no equals sign.
+     */
+    private static class CountTask extends java.util.concurrent.RecursiveAction {
+
+        private final java.nio.CharBuffer source;
+        private final int off, len;
+        private final int[] counts, equalsAt;
+        private final int from, to;
+
+        public CountTask(java.nio.CharBuffer source, int off, int len,
+                int[] counts, int[] equalsAt, int from, int to) {
+            this.source = source;
+            this.off = off;
+            this.len = len;
+            this.counts = counts;
+            this.equalsAt = equalsAt;
+            this.from = from;
+            this.to = to;
+        }
+
+        protected void compute() {
+            if (to - from > 1) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new CountTask(source, off, len, counts, equalsAt, from, mid),
+                        new CountTask(source, off, len, counts, equalsAt, mid, to));
+            } else {
+                int start = off + from * CHUNK_SIZE;
+                int end = Math.min(start + CHUNK_SIZE, off + len);
+                int count = 0;
+                int firstEquals = -1;
+                for (int i = start; i < end; i++) {
+                    char ch = source.get(i);
+                    byte sbiDecode = ch < DECODABET.length ? DECODABET[ch] : (byte) -9;
+                    if (sbiDecode < WHITE_SPACE_ENC) {
+                        count = -1;
+                        break;
+                    }
+                    if (sbiDecode >= EQUALS_SIGN_ENC) {
+                        if (ch == EQUALS_SIGN && firstEquals == -1) {
+                            firstEquals = count;
+                        }
+                        count++;
+                    }
+                }
+                counts[from] = count;
+                equalsAt[from] = firstEquals;
+            }
+        }
+    }   // end CountTask
+
+    /**
+     * Decodes a range of chunks. Splits the range in halves, if it contains
+     * more than one chunk.
+     */
+    private static class DecodeTask extends java.util.concurrent.RecursiveAction {
+
+        private final java.nio.CharBuffer source;
+        private final java.nio.ByteBuffer destination;
+        private final int off, len, destOffset;
+        private final int[] starts, written;
+        private final int from, to;
+
+        public DecodeTask(java.nio.CharBuffer source, int off, int len, int[] starts,
+                java.nio.ByteBuffer destination, int destOffset, int[] written,
+                int from, int to) {
+            this.source = source;
+            this.off = off;
+            this.len = len;
+            this.starts = starts;
+            this.destination = destination;
+            this.destOffset = destOffset;
+            this.written = written;
+            this.from = from;
+            this.to = to;
+        }
+
+        protected void compute() {
+            if (to - from > 1) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new DecodeTask(source, off, len, starts, destination, destOffset, written, from, mid),
+                        new DecodeTask(source, off, len, starts, destination, destOffset, written, mid, to));
+            } else {
+                int start = off + from * CHUNK_SIZE;
+                int end = Math.min(start + CHUNK_SIZE, off + len);
+                int first = starts[from];
+                written[from] = decode(source, start, end, (4 - first % 4) % 4,
+                        destination, destOffset + (first + 3) / 4 * 3);
+            }
+        }
+    }   // end DecodeTask
+
     /**
      * Decodes data from Base64 notation, automatically
      * detecting gzip-compressed data and decompressing it.
@@ -33,6 +33,10 @@ import java.awt.image.Raster;
 import java.awt.image.SinglePixelPackedSampleModel;
 import java.awt.image.WritableRaster;
 import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import ch.randelshofer.quaqua.ext.batik.ext.awt.image.GraphicsUtil;
 
@@ -83,11 +87,31 @@ abstract class MultipleGradientPaintContext implements PaintContext {
          32, 0xff0000, 0xFF00, 0xFF, 0xFF000000,
          false, DataBuffer.TYPE_INT);
 
-     /** The cached colorModel */
-    protected static ColorModel cachedModel;
+    /** Maximal number of lookup tables in the cache. */
+    private static final int LOOKUP_CACHE_SIZE = 64;
 
-    /** The cached raster, which is reusable among instances */
-    protected static WeakReference cached;
+    /** The most recently used lookup tables, which are shared among
+     * instances. Access must be synchronized on the map.
+     */
+    private static final LinkedHashMap<LookupKey, LookupTable> lookupCache
+        = new LinkedHashMap<LookupKey, LookupTable>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry
+            (Map.Entry<LookupKey, LookupTable> eldest) {
+            return size() > LOOKUP_CACHE_SIZE;
+        }
+    };
+
+    /** The cached rasters of the current thread by color model, which are
+     * reusable among instances.
+     */
+    private static final ThreadLocal<Map<ColorModel, WeakReference<WritableRaster>>> rasterPool
+        = new ThreadLocal<Map<ColorModel, WeakReference<WritableRaster>>>() {
+        @Override
+        protected Map<ColorModel, WeakReference<WritableRaster>> initialValue() {
+            return new IdentityHashMap<ColorModel, WeakReference<WritableRaster>>(4);
+        }
+    };
 
     /** Raster is reused whenever possible */
     protected WritableRaster saved;
@@ -201,6 +225,53 @@ abstract class MultipleGradientPaintContext implements PaintContext {
                                         colorSpace)
         throws NoninvertibleTransformException
     {
+        // The inverse transform is needed to from device to user space.
+        // Get all the components of the inverse transform matrix.
+        AffineTransform tInv = t.createInverse();
+
+        double m[] = new double[6];
+        tInv.getMatrix(m);
+        a00 = (float)m[0];
+        a10 = (float)m[1];
+        a01 = (float)m[2];
+        a11 = (float)m[3];
+        a02 = (float)m[4];
+        a12 = (float)m[5];
+
+        //copy some flags
+        this.cycleMethod = cycleMethod;
+        this.colorSpace = colorSpace;
+
+        // PATCH Werner Randelshofer: ColorModel can be null!
+        
+        // Setup an example Model, we may refine it later.
+        if (cm != null && cm.getColorSpace() == lrgbmodel_A.getColorSpace())
+            dataModel = lrgbmodel_A;
+        else if (cm == null || cm.getColorSpace() == srgbmodel_A.getColorSpace())
+            dataModel = srgbmodel_A;
+        else
+            throw new IllegalArgumentException
+                ("Unsupported ColorSpace for interpolation");
+
+        // PATCH Werner Randelshofer: Share the lookup tables of equal
+        // gradients among all instances.
+        LookupKey key = new LookupKey(fractions, colors, cycleMethod,
+                                      colorSpace, dataModel);
+        LookupTable lut = getCachedLookupTable(key);
+        if (lut == null) {
+            calculateLookupTable(fractions, colors);
+            lut = new LookupTable(this);
+            putCachedLookupTable(key, lut);
+        } else {
+            lut.applyTo(this);
+        }
+
+        model = GraphicsUtil.coerceColorModel(dataModel,
+                                             cm != null && cm.isAlphaPremultiplied());
+    }
+
+    /** Computes the lookup table for the specified gradient stops. */
+    private void calculateLookupTable(float[] fractions, Color[] colors) {
         //We have to deal with the cases where the 1st gradient stop is not
         //equal to 0 and/or the last gradient stop is not equal to 1.
         //In both cases, create a new point and replicate the previous
@@ -267,38 +338,7 @@ abstract class MultipleGradientPaintContext implements PaintContext {
             this.fractions[idx] = 1;
         }
 
-        // The inverse transform is needed to from device to user space.
-        // Get all the components of the inverse transform matrix.
-        AffineTransform tInv = t.createInverse();
-
-        double m[] = new double[6];
-        tInv.getMatrix(m);
-        a00 = (float)m[0];
-        a10 = (float)m[1];
-        a01 = (float)m[2];
-        a11 = (float)m[3];
-        a02 = (float)m[4];
-        a12 = (float)m[5];
-
-        //copy some flags
-        this.cycleMethod = cycleMethod;
-        this.colorSpace = colorSpace;
-
-        // PATCH Werner Randelshofer: ColorModel can be null!
-        
-        // Setup an example Model, we may refine it later.
-        if (cm != null && cm.getColorSpace() == lrgbmodel_A.getColorSpace())
-            dataModel = lrgbmodel_A;
-        else if (cm == null || cm.getColorSpace() == srgbmodel_A.getColorSpace())
-            dataModel = srgbmodel_A;
-        else
-            throw new IllegalArgumentException
-                ("Unsupported ColorSpace for interpolation");
-
         calculateGradientFractions(loColors, hiColors);
-
-        model = GraphicsUtil.coerceColorModel(dataModel,
-                                             cm != null && cm.isAlphaPremultiplied());
     }
 
 
@@ -1370,21 +1410,25 @@ abstract class MultipleGradientPaintContext implements PaintContext {
     /** Took this cacheRaster code from GradientPaint. It appears to recycle
      * rasters for use by any other instance, as long as they are sufficiently
      * large.
+     * <p>
+     * PATCH Werner Randelshofer: The rasters are pooled per thread and per
+     * color model, so that concurrent painting does not contend for a single
+     * raster.
      */
     protected final
-    static synchronized WritableRaster getCachedRaster
+    static WritableRaster getCachedRaster
         (ColorModel cm, int w, int h) {
-        if (cm == cachedModel) {
-            if (cached != null) {
-                WritableRaster ras = (WritableRaster) cached.get();
-                if (ras != null &&
-                    ras.getWidth() >= w &&
-                    ras.getHeight() >= h)
-                    {
-                        cached = null;
-                        return ras;
-                    }
-            }
+        Map<ColorModel, WeakReference<WritableRaster>> pool = rasterPool.get();
+        WeakReference<WritableRaster> cached = pool.get(cm);
+        if (cached != null) {
+            WritableRaster ras = cached.get();
+            if (ras != null &&
+                ras.getWidth() >= w &&
+                ras.getHeight() >= h)
+                {
+                    pool.remove(cm);
+                    return ras;
+                }
         }
         // Don't create rediculously small rasters...
         if (w<32) w=32;
@@ -1397,10 +1441,12 @@ abstract class MultipleGradientPaintContext implements PaintContext {
      * large.
      */
     protected final
-    static synchronized void putCachedRaster(ColorModel cm,
-                                             WritableRaster ras) {
+    static void putCachedRaster(ColorModel cm,
+                                WritableRaster ras) {
+        Map<ColorModel, WeakReference<WritableRaster>> pool = rasterPool.get();
+        WeakReference<WritableRaster> cached = pool.get(cm);
         if (cached != null) {
-            WritableRaster cras = (WritableRaster) cached.get();
+            WritableRaster cras = cached.get();
             if (cras != null) {
                 int cw = cras.getWidth();
                 int ch = cras.getHeight();
@@ -1414,8 +1460,21 @@ abstract class MultipleGradientPaintContext implements PaintContext {
                 }
             }
         }
-        cachedModel = cm;
-        cached = new WeakReference(ras);
+        pool.put(cm, new WeakReference<WritableRaster>(ras));
+    }
+
+    /** Returns the cached lookup table for the specified key or null. */
+    private static LookupTable getCachedLookupTable(LookupKey key) {
+        synchronized (lookupCache) {
+            return lookupCache.get(key);
+        }
+    }
+
+    /** Puts a lookup table into the cache. */
+    private static void putCachedLookupTable(LookupKey key, LookupTable lut) {
+        synchronized (lookupCache) {
+            lookupCache.put(key, lut);
+        }
     }
 
     /**
@@ -1423,7 +1482,9 @@ abstract class MultipleGradientPaintContext implements PaintContext {
      */
     public final void dispose() {
         if (saved != null) {
-            putCachedRaster(model, saved);
+            // PATCH Werner Randelshofer: The raster has been created
+            // for the dataModel, not for the output model.
+            putCachedRaster(dataModel, saved);
             saved = null;
         }
     }
@@ -1434,5 +1495,106 @@ abstract class MultipleGradientPaintContext implements PaintContext {
     public final ColorModel getColorModel() {
         return model;
     }
+    /** Identifies the lookup table of a gradient. The colors are compared
+     * by their ARGB values, the enumerations and the color model by
+     * identity.
+     */
+    private static final class LookupKey {
+        private final float[] fractions;
+        private final int[] rgbs;
+        private final MultipleGradientPaint.CycleMethodEnum cycleMethod;
+        private final MultipleGradientPaint.ColorSpaceEnum colorSpace;
+        private final ColorModel dataModel;
+        private final int hashCode;
+
+        LookupKey(float[] fractions, Color[] colors,
+                  MultipleGradientPaint.CycleMethodEnum cycleMethod,
+                  MultipleGradientPaint.ColorSpaceEnum colorSpace,
+                  ColorModel dataModel) {
+            this.fractions = fractions.clone();
+            this.rgbs = new int[colors.length];
+            for (int i = 0; i < colors.length; i++) {
+                rgbs[i] = colors[i].getRGB();
+            }
+            this.cycleMethod = cycleMethod;
+            this.colorSpace = colorSpace;
+            this.dataModel = dataModel;
+            this.hashCode = (Arrays.hashCode(this.fractions) * 31
+                             + Arrays.hashCode(rgbs)) * 31
+                            + System.identityHashCode(cycleMethod) * 7
+                            + System.identityHashCode(colorSpace) * 3
+                            + System.identityHashCode(dataModel);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof LookupKey)) {
+                return false;
+            }
+            LookupKey that = (LookupKey) o;
+            return hashCode == that.hashCode
+                && cycleMethod == that.cycleMethod
+                && colorSpace == that.colorSpace
+                && dataModel == that.dataModel
+                && Arrays.equals(rgbs, that.rgbs)
+                && Arrays.equals(fractions, that.fractions);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    /** Holds the computed lookup table of a gradient. The arrays are shared
+     * among all instances with the same key and must not be modified.
+     */
+    private static final class LookupTable {
+        private final float[] fractions;
+        private final float[] normalizedIntervals;
+        private final int[] gradient;
+        private final int[][] gradients;
+        private final int gradientsLength;
+        private final int fastGradientArraySize;
+        private final int gradientAverage;
+        private final int gradientUnderflow;
+        private final int gradientOverflow;
+        private final int transparencyTest;
+        private final boolean isSimpleLookup;
+        private final boolean hasDiscontinuity;
+        private final ColorModel dataModel;
+
+        LookupTable(MultipleGradientPaintContext ctx) {
+            fractions = ctx.fractions;
+            normalizedIntervals = ctx.normalizedIntervals;
+            gradient = ctx.gradient;
+            gradients = ctx.gradients;
+            gradientsLength = ctx.gradientsLength;
+            fastGradientArraySize = ctx.fastGradientArraySize;
+            gradientAverage = ctx.gradientAverage;
+            gradientUnderflow = ctx.gradientUnderflow;
+            gradientOverflow = ctx.gradientOverflow;
+            transparencyTest = ctx.transparencyTest;
+            isSimpleLookup = ctx.isSimpleLookup;
+            hasDiscontinuity = ctx.hasDiscontinuity;
+            dataModel = ctx.dataModel;
+        }
+
+        void applyTo(MultipleGradientPaintContext ctx) {
+            ctx.fractions = fractions;
+            ctx.normalizedIntervals = normalizedIntervals;
+            ctx.gradient = gradient;
+            ctx.gradients = gradients;
+            ctx.gradientsLength = gradientsLength;
+            ctx.fastGradientArraySize = fastGradientArraySize;
+            ctx.gradientAverage = gradientAverage;
+            ctx.gradientUnderflow = gradientUnderflow;
+            ctx.gradientOverflow = gradientOverflow;
+            ctx.transparencyTest = transparencyTest;
+            ctx.isSimpleLookup = isSimpleLookup;
+            ctx.hasDiscontinuity = hasDiscontinuity;
+            ctx.dataModel = dataModel;
+        }
+    }
 }
 
@@ -29,6 +29,8 @@ import java.awt.image.PackedColorModel;
 import java.awt.image.Raster;
 import java.awt.image.SinglePixelPackedSampleModel;
 import java.awt.image.WritableRaster;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * This provides an implementation of all the composite rules in SVG.
@@ -265,9 +267,25 @@ public class SVGComposite
         }
     }
 
+    /**
+     * Base class for the composites of Int packed data.
+     * <p>
+     * PATCH Werner Randelshofer: Rasters with at least
+     * <code>PARALLEL_THRESHOLD</code> pixels are split into bands of rows,
+     * which are composed in parallel on the common fork-join pool. The
+     * implementations of <code>precompose_INT_PACK</code> only depend on the
+     * pixels of a row, so the result is identical to the sequential path.
+     */
     public abstract static class AlphaPreCompositeContext_INT_PACK
             extends AlphaPreCompositeContext {
 
+        /** Rasters with at least this number of pixels are composed in
+         * parallel. */
+        private static final int PARALLEL_THRESHOLD = 256 * 256;
+        /** Bands with at most this number of pixels are not split
+         * further. */
+        private static final int BAND_SIZE = 128 * 128;
+
         AlphaPreCompositeContext_INT_PACK(ColorModel srcCM, ColorModel dstCM) {
             super(srcCM, dstCM);
         }
@@ -319,14 +337,75 @@ public class SVGComposite
                     + dstOutSPPSM.getOffset(x0 - dstOut.getSampleModelTranslateX(),
                     y0 - dstOut.getSampleModelTranslateY()));
 
-            final int srcAdjust = srcScanStride - w;
-            final int dstInAdjust = dstInScanStride - w;
-            final int dstOutAdjust = dstOutScanStride - w;
+            if ((long) w * h < PARALLEL_THRESHOLD
+                    || ForkJoinPool.getCommonPoolParallelism() < 2) {
+                final int srcAdjust = srcScanStride - w;
+                final int dstInAdjust = dstInScanStride - w;
+                final int dstOutAdjust = dstOutScanStride - w;
+
+                precompose_INT_PACK(w, h,
+                        srcPixels, srcAdjust, srcBase,
+                        dstInPixels, dstInAdjust, dstInBase,
+                        dstOutPixels, dstOutAdjust, dstOutBase);
+            } else {
+                ForkJoinPool.commonPool().invoke(new PrecomposeTask(w, 0, h,
+                        srcPixels, srcScanStride, srcBase,
+                        dstInPixels, dstInScanStride, dstInBase,
+                        dstOutPixels, dstOutScanStride, dstOutBase));
+            }
+        }
+
+        /**
+         * Composes a band of rows. Splits the band in halves, if it
+         * contains more than <code>BAND_SIZE</code> pixels. The bands do
+         * not overlap, so they can be written concurrently.
+         */
+        private class PrecomposeTask extends RecursiveAction {
+
+            private final int width, y0, y1;
+            private final int[] srcPixels, dstInPixels, dstOutPixels;
+            private final int srcScanStride, dstInScanStride, dstOutScanStride;
+            private final int srcBase, dstInBase, dstOutBase;
+
+            PrecomposeTask(int width, int y0, int y1,
+                    int[] srcPixels, int srcScanStride, int srcBase,
+                    int[] dstInPixels, int dstInScanStride, int dstInBase,
+                    int[] dstOutPixels, int dstOutScanStride, int dstOutBase) {
+                this.width = width;
+                this.y0 = y0;
+                this.y1 = y1;
+                this.srcPixels = srcPixels;
+                this.srcScanStride = srcScanStride;
+                this.srcBase = srcBase;
+                this.dstInPixels = dstInPixels;
+                this.dstInScanStride = dstInScanStride;
+                this.dstInBase = dstInBase;
+                this.dstOutPixels = dstOutPixels;
+                this.dstOutScanStride = dstOutScanStride;
+                this.dstOutBase = dstOutBase;
+            }
 
-            precompose_INT_PACK(w, h,
-                    srcPixels, srcAdjust, srcBase,
-                    dstInPixels, dstInAdjust, dstInBase,
-                    dstOutPixels, dstOutAdjust, dstOutBase);
+            protected void compute() {
+                if (y1 - y0 > 1 && (long) width * (y1 - y0) > BAND_SIZE) {
+                    int mid = (y0 + y1) >>> 1;
+                    invokeAll(new PrecomposeTask(width, y0, mid,
+                            srcPixels, srcScanStride, srcBase,
+                            dstInPixels, dstInScanStride, dstInBase,
+                            dstOutPixels, dstOutScanStride, dstOutBase),
+                            new PrecomposeTask(width, mid, y1,
+                            srcPixels, srcScanStride, srcBase,
+                            dstInPixels, dstInScanStride, dstInBase,
+                            dstOutPixels, dstOutScanStride, dstOutBase));
+                } else {
+                    precompose_INT_PACK(width, y1 - y0,
+                            srcPixels, srcScanStride - width,
+                            srcBase + y0 * srcScanStride,
+                            dstInPixels, dstInScanStride - width,
+                            dstInBase + y0 * dstInScanStride,
+                            dstOutPixels, dstOutScanStride - width,
+                            dstOutBase + y0 * dstOutScanStride);
+                }
+            }
         }
     }
 
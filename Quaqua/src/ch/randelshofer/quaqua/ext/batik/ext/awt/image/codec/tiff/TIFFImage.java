@@ -38,6 +38,8 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.zip.DataFormatException;
 import java.util.zip.Inflater;
 
@@ -54,6 +56,12 @@ import com.sun.image.codec.jpeg.JPEGDecodeParam;
 import com.sun.image.codec.jpeg.JPEGImageDecoder;
 */
 /**
+ * A TIFF image, which decodes its tiles (or strips) on demand.
+ * <p>
+ * Tiles can be decoded concurrently. The compressed data of a tile is read
+ * with a positional read from the stream, and each tile is decompressed
+ * with its own decoder. {@link #copyData} decodes the tiles of large
+ * images in parallel.
  *
  * @version $Id: TIFFImage.java 498740 2007-01-22 18:35:57Z dvholten $
  */
@@ -86,6 +94,9 @@ public class TIFFImage extends AbstractRed {
     private static final int TIFF_JPEG_TABLES       = 347;
     private static final int TIFF_YCBCR_SUBSAMPLING = 530;
 
+    // Images with at least this number of pixels are decoded in parallel
+    private static final int PARALLEL_THRESHOLD = 128 * 128;
+
     SeekableStream stream;
     int tileSize;
     int tilesX, tilesY;
@@ -96,6 +107,7 @@ public class TIFFImage extends AbstractRed {
     int compression;
     ///byte[] palette;
     int numBands;
+    int samplesPerPixel;
 
     int chromaSubH;
     int chromaSubV;
@@ -112,9 +124,6 @@ public class TIFFImage extends AbstractRed {
     //JPEGDecodeParam decodeParam = null;
     boolean colorConvertJPEG = false;
 
-    // DEFLATE variables
-    Inflater inflater = null;
-
     // Endian-ness indicator
     boolean isBigEndian;
 
@@ -125,10 +134,6 @@ public class TIFFImage extends AbstractRed {
     boolean decodePaletteAsShorts;
     boolean tiled;
 
-    // Decoders
-    private TIFFFaxDecoder decoder = null;
-    private TIFFLZWDecoder lzwDecoder = null;
-
     /**
      * Decode a buffer of data into a Raster with the specified location.
      *
@@ -170,18 +175,20 @@ public class TIFFImage extends AbstractRed {
     }
 */
     /**
-     * Inflates <code>deflated</code> into <code>inflated</code> using the
-     * <code>Inflater</code> constructed during class instantiation.
+     * Inflates <code>deflated</code> into <code>inflated</code> using a
+     * new <code>Inflater</code>, so that tiles can be inflated concurrently.
      */
-    private final void inflate(byte[] deflated, byte[] inflated) {
+    private static void inflate(byte[] deflated, byte[] inflated) {
+        Inflater inflater = new Inflater();
         inflater.setInput(deflated);
         try {
             inflater.inflate(inflated);
         } catch(DataFormatException dfe) {
             throw new RuntimeException("TIFFImage17"+": "+
                                        dfe.getMessage());
+        } finally {
+            inflater.end();
         }
-        inflater.reset();
     }
 
     private static SampleModel createPixelInterleavedSampleModel
@@ -244,7 +251,7 @@ public class TIFFImage extends AbstractRed {
 
         // Get the number of samples per pixel
         TIFFField sfield = dir.getField(TIFFImageDecoder.TIFF_SAMPLES_PER_PIXEL);
-        int samplesPerPixel = sfield == null ? 1 : (int)sfield.getAsLong(0);
+        samplesPerPixel = sfield == null ? 1 : (int)sfield.getAsLong(0);
 
         // Read the TIFF_PLANAR_CONFIGURATION field
         TIFFField planarConfigurationField =
@@ -513,7 +520,7 @@ public class TIFFImage extends AbstractRed {
                 // Do nothing.
                 break;
             case COMP_DEFLATE:
-                inflater = new Inflater();
+                // Do nothing. An Inflater is created for each tile.
                 break;
             case COMP_FAX_G3_1D:
             case COMP_FAX_G3_2D:
@@ -545,10 +552,6 @@ public class TIFFImage extends AbstractRed {
                         tiffT6Options = 0;
                     }
                 }
-
-                // Fax encoding, need to create the Fax decoder.
-                decoder = new TIFFFaxDecoder(fillOrder,
-                                             tileWidth, tileHeight);
                 break;
 
             case COMP_LZW:
@@ -570,9 +573,6 @@ public class TIFFImage extends AbstractRed {
                                                    "TIFFImage9");
                     }
                 }
-
-                lzwDecoder = new TIFFLZWDecoder(tileWidth, predictor,
-                                                samplesPerPixel);
                 break;
 
             case COMP_JPEG_OLD:
@@ -815,16 +815,66 @@ public class TIFFImage extends AbstractRed {
     }
 
 
+    /**
+     * Copies the data of this image into wr. If wr covers more than one
+     * tile of a large image, the tiles are decoded in parallel on the
+     * common fork-join pool.
+     */
     public WritableRaster copyData(WritableRaster wr) {
-        copyToRaster(wr);
+        int tx0 = Math.max(getXTile(wr.getMinX()), getMinTileX());
+        int ty0 = Math.max(getYTile(wr.getMinY()), getMinTileY());
+        int tx1 = Math.min(getXTile(wr.getMinX()+wr.getWidth() -1), getMinTileX()+getNumXTiles()-1);
+        int ty1 = Math.min(getYTile(wr.getMinY()+wr.getHeight()-1), getMinTileY()+getNumYTiles()-1);
+        int columns = tx1 - tx0 + 1;
+        int tileCount = columns * (ty1 - ty0 + 1);
+        if (tileCount < 2 ||
+            (long) wr.getWidth() * wr.getHeight() < PARALLEL_THRESHOLD) {
+            copyToRaster(wr);
+        } else {
+            ForkJoinPool.commonPool().invoke
+                (new CopyTask(wr, tx0, ty0, columns, 0, tileCount));
+        }
         return wr;
     }
 
+    /**
+     * Decodes a range of tiles and copies them into a raster. Splits the
+     * range in halves, if it contains more than one tile. The tiles do not
+     * overlap, so they can be copied into the raster concurrently.
+     */
+    private class CopyTask extends RecursiveAction {
+        private final WritableRaster wr;
+        private final int tx0, ty0, columns;
+        private final int from, to;
+
+        public CopyTask(WritableRaster wr, int tx0, int ty0, int columns,
+                        int from, int to) {
+            this.wr = wr;
+            this.tx0 = tx0;
+            this.ty0 = ty0;
+            this.columns = columns;
+            this.from = from;
+            this.to = to;
+        }
+
+        protected void compute() {
+            if (to - from > 1) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new CopyTask(wr, tx0, ty0, columns, from, mid),
+                          new CopyTask(wr, tx0, ty0, columns, mid, to));
+            } else {
+                Raster tile = getTile(tx0 + from % columns,
+                                      ty0 + from / columns);
+                copyTileToRaster(tile, wr);
+            }
+        }
+    }
+
 
     /**
      * Returns tile (tileX, tileY) as a Raster.
      */
-    public synchronized Raster getTile(int tileX, int tileY) {
+    public Raster getTile(int tileX, int tileY) {
         if ((tileX < 0) || (tileX >= tilesX) ||
             (tileY < 0) || (tileY >= tilesY)) {
             throw new IllegalArgumentException("TIFFImage12");
@@ -857,17 +907,34 @@ public class TIFFImage extends AbstractRed {
         short sswap;
         int iswap;
 
-        // Save original file pointer position and seek to tile data location.
-        long save_offset = 0;
+        // Number of bytes in this tile (strip) after compression.
+        int byteCount = (int)tileByteCounts[tileY*tilesX + tileX];
+
+        // Read the tile data with a positional read, so that the file
+        // pointer of the stream is not shared with other threads.
+        byte[] data = new byte[byteCount];
         try {
-            save_offset = stream.getFilePointer();
-            stream.seek(tileOffsets[tileY*tilesX + tileX]);
+            stream.readFully(tileOffsets[tileY*tilesX + tileX],
+                             data, 0, byteCount);
         } catch (IOException ioe) {
             throw new RuntimeException("TIFFImage13");
         }
 
-        // Number of bytes in this tile (strip) after compression.
-        int byteCount = (int)tileByteCounts[tileY*tilesX + tileX];
+        // Create the decoders for this tile, so that tiles can be
+        // decoded concurrently.
+        TIFFFaxDecoder decoder = null;
+        TIFFLZWDecoder lzwDecoder = null;
+        switch(compression) {
+        case COMP_FAX_G3_1D:
+        case COMP_FAX_G3_2D:
+        case COMP_FAX_G4_2D:
+            decoder = new TIFFFaxDecoder(fillOrder, tileWidth, tileHeight);
+            break;
+        case COMP_LZW:
+            lzwDecoder = new TIFFLZWDecoder(tileWidth, predictor,
+                                            samplesPerPixel);
+            break;
+        }
 
         // Find out the number of bytes in the current tile
         Rectangle newRect;
@@ -879,51 +946,35 @@ public class TIFFImage extends AbstractRed {
 
         int unitsInThisTile = newRect.width * newRect.height * numBands;
 
-        // Allocate read buffer if needed.
-        byte[] data = compression != COMP_NONE || imageType == TYPE_PALETTE ?
-            new byte[byteCount] : null;
-
         // Read the data, uncompressing as needed. There are four cases:
         // bilevel, palette-RGB, 4-bit grayscale, and everything else.
         if(imageType == TYPE_BILEVEL) { // bilevel
-            try {
-                if (compression == COMP_PACKBITS) {
-                    stream.readFully(data, 0, byteCount);
-
-                    // Since the decompressed data will still be packed
-                    // 8 pixels into 1 byte, calculate bytesInThisTile
-                    int bytesInThisTile;
-                    if ((newRect.width % 8) == 0) {
-                        bytesInThisTile = (newRect.width/8) * newRect.height;
-                    } else {
-                        bytesInThisTile =
-                            (newRect.width/8 + 1) * newRect.height;
-                    }
-                    decodePackbits(data, bytesInThisTile, bdata);
-                } else if (compression == COMP_LZW) {
-                    stream.readFully(data, 0, byteCount);
-                    lzwDecoder.decode(data, bdata, newRect.height);
-                } else if (compression == COMP_FAX_G3_1D) {
-                    stream.readFully(data, 0, byteCount);
-                    decoder.decode1D(bdata, data, 0, newRect.height);
-                } else if (compression == COMP_FAX_G3_2D) {
-                    stream.readFully(data, 0, byteCount);
-                    decoder.decode2D(bdata, data, 0, newRect.height,
-                                     tiffT4Options);
-                } else if (compression == COMP_FAX_G4_2D) {
-                    stream.readFully(data, 0, byteCount);
-                    decoder.decodeT6(bdata, data, 0, newRect.height,
-                                     tiffT6Options);
-                } else if (compression == COMP_DEFLATE) {
-                    stream.readFully(data, 0, byteCount);
-                    inflate(data, bdata);
-                } else if (compression == COMP_NONE) {
-                    stream.readFully(bdata, 0, byteCount);
-                }
+            if (compression == COMP_PACKBITS) {
 
-                stream.seek(save_offset);
-            } catch (IOException ioe) {
-                throw new RuntimeException("TIFFImage13");
+                // Since the decompressed data will still be packed
+                // 8 pixels into 1 byte, calculate bytesInThisTile
+                int bytesInThisTile;
+                if ((newRect.width % 8) == 0) {
+                    bytesInThisTile = (newRect.width/8) * newRect.height;
+                } else {
+                    bytesInThisTile =
+                        (newRect.width/8 + 1) * newRect.height;
+                }
+                decodePackbits(data, bytesInThisTile, bdata);
+            } else if (compression == COMP_LZW) {
+                lzwDecoder.decode(data, bdata, newRect.height);
+            } else if (compression == COMP_FAX_G3_1D) {
+                decoder.decode1D(bdata, data, 0, newRect.height);
+            } else if (compression == COMP_FAX_G3_2D) {
+                decoder.decode2D(bdata, data, 0, newRect.height,
+                                 tiffT4Options);
+            } else if (compression == COMP_FAX_G4_2D) {
+                decoder.decodeT6(bdata, data, 0, newRect.height,
+                                 tiffT6Options);
+            } else if (compression == COMP_DEFLATE) {
+                inflate(data, bdata);
+            } else if (compression == COMP_NONE) {
+                System.arraycopy(data, 0, bdata, 0, byteCount);
             }
         } else if(imageType == TYPE_PALETTE) { // palette-RGB
             if (sampleSize == 16) {
@@ -945,52 +996,38 @@ public class TIFFImage extends AbstractRed {
                     int entries = unitsBeforeLookup * 2;
 
                     // Read the data, if compressed, decode it, reset the pointer
-                    try {
-
-                        if (compression == COMP_PACKBITS) {
-
-                            stream.readFully(data, 0, byteCount);
-
-                            byte[] byteArray = new byte[entries];
-                            decodePackbits(data, entries, byteArray);
-                            tempData = new short[unitsBeforeLookup];
-                            interpretBytesAsShorts(byteArray, tempData,
-                                                   unitsBeforeLookup);
-
-                        }  else if (compression == COMP_LZW) {
-
-                            // Read in all the compressed data for this tile
-                            stream.readFully(data, 0, byteCount);
+                    if (compression == COMP_PACKBITS) {
 
-                            byte[] byteArray = new byte[entries];
-                            lzwDecoder.decode(data, byteArray, newRect.height);
-                            tempData = new short[unitsBeforeLookup];
-                            interpretBytesAsShorts(byteArray, tempData,
-                                                   unitsBeforeLookup);
+                        byte[] byteArray = new byte[entries];
+                        decodePackbits(data, entries, byteArray);
+                        tempData = new short[unitsBeforeLookup];
+                        interpretBytesAsShorts(byteArray, tempData,
+                                               unitsBeforeLookup);
 
-                        }  else if (compression == COMP_DEFLATE) {
+                    }  else if (compression == COMP_LZW) {
 
-                            stream.readFully(data, 0, byteCount);
-                            byte[] byteArray = new byte[entries];
-                            inflate(data, byteArray);
-                            tempData = new short[unitsBeforeLookup];
-                            interpretBytesAsShorts(byteArray, tempData,
-                                                   unitsBeforeLookup);
+                        byte[] byteArray = new byte[entries];
+                        lzwDecoder.decode(data, byteArray, newRect.height);
+                        tempData = new short[unitsBeforeLookup];
+                        interpretBytesAsShorts(byteArray, tempData,
+                                               unitsBeforeLookup);
 
-                        } else if (compression == COMP_NONE) {
+                    }  else if (compression == COMP_DEFLATE) {
 
-                            // byteCount tells us how many bytes are there
-                            // in this tile, but we need to read in shorts,
-                            // which will take half the space, so while
-                            // allocating we divide byteCount by 2.
-                            tempData = new short[byteCount/2];
-                            readShorts(byteCount/2, tempData);
-                        }
+                        byte[] byteArray = new byte[entries];
+                        inflate(data, byteArray);
+                        tempData = new short[unitsBeforeLookup];
+                        interpretBytesAsShorts(byteArray, tempData,
+                                               unitsBeforeLookup);
 
-                        stream.seek(save_offset);
+                    } else if (compression == COMP_NONE) {
 
-                    } catch (IOException ioe) {
-                        throw new RuntimeException("TIFFImage13");
+                        // byteCount tells us how many bytes are there
+                        // in this tile, but we need to read in shorts,
+                        // which will take half the space, so while
+                        // allocating we divide byteCount by 2.
+                        tempData = new short[byteCount/2];
+                        interpretBytesAsShorts(data, tempData, byteCount/2);
                     }
 
                     if (dataType == DataBuffer.TYPE_USHORT) {
@@ -1041,55 +1078,42 @@ public class TIFFImage extends AbstractRed {
                     // No lookup being done here, when RGB values are needed,
                     // the associated IndexColorModel can be used to get them.
 
-                    try {
-
-                        if (compression == COMP_PACKBITS) {
-
-                            stream.readFully(data, 0, byteCount);
-
-                            // Since unitsInThisTile is the number of shorts,
-                            // but we do our decompression in terms of bytes, we
-                            // need to multiply unitsInThisTile by 2 in order to
-                            // figure out how many bytes we'll get after
-                            // decompression.
-                            int bytesInThisTile = unitsInThisTile * 2;
-
-                            byte[] byteArray = new byte[bytesInThisTile];
-                            decodePackbits(data, bytesInThisTile, byteArray);
-                            interpretBytesAsShorts(byteArray, sdata,
-                                                   unitsInThisTile);
-
-                        } else if (compression == COMP_LZW) {
+                    if (compression == COMP_PACKBITS) {
 
-                            stream.readFully(data, 0, byteCount);
+                        // Since unitsInThisTile is the number of shorts,
+                        // but we do our decompression in terms of bytes, we
+                        // need to multiply unitsInThisTile by 2 in order to
+                        // figure out how many bytes we'll get after
+                        // decompression.
+                        int bytesInThisTile = unitsInThisTile * 2;
 
-                            // Since unitsInThisTile is the number of shorts,
-                            // but we do our decompression in terms of bytes, we
-                            // need to multiply unitsInThisTile by 2 in order to
-                            // figure out how many bytes we'll get after
-                            // decompression.
-                            byte[] byteArray = new byte[unitsInThisTile * 2];
-                            lzwDecoder.decode(data, byteArray, newRect.height);
-                            interpretBytesAsShorts(byteArray, sdata,
-                                                   unitsInThisTile);
+                        byte[] byteArray = new byte[bytesInThisTile];
+                        decodePackbits(data, bytesInThisTile, byteArray);
+                        interpretBytesAsShorts(byteArray, sdata,
+                                               unitsInThisTile);
 
-                        }  else if (compression == COMP_DEFLATE) {
+                    } else if (compression == COMP_LZW) {
 
-                            stream.readFully(data, 0, byteCount);
-                            byte[] byteArray = new byte[unitsInThisTile * 2];
-                            inflate(data, byteArray);
-                            interpretBytesAsShorts(byteArray, sdata,
-                                                   unitsInThisTile);
+                        // Since unitsInThisTile is the number of shorts,
+                        // but we do our decompression in terms of bytes, we
+                        // need to multiply unitsInThisTile by 2 in order to
+                        // figure out how many bytes we'll get after
+                        // decompression.
+                        byte[] byteArray = new byte[unitsInThisTile * 2];
+                        lzwDecoder.decode(data, byteArray, newRect.height);
+                        interpretBytesAsShorts(byteArray, sdata,
+                                               unitsInThisTile);
 
-                        } else if (compression == COMP_NONE) {
+                    }  else if (compression == COMP_DEFLATE) {
 
-                            readShorts(byteCount/2, sdata);
-                        }
+                        byte[] byteArray = new byte[unitsInThisTile * 2];
+                        inflate(data, byteArray);
+                        interpretBytesAsShorts(byteArray, sdata,
+                                               unitsInThisTile);
 
-                        stream.seek(save_offset);
+                    } else if (compression == COMP_NONE) {
 
-                    } catch (IOException ioe) {
-                        throw new RuntimeException("TIFFImage13");
+                        interpretBytesAsShorts(data, sdata, byteCount/2);
                     }
                 }
 
@@ -1106,56 +1130,42 @@ public class TIFFImage extends AbstractRed {
                     int unitsBeforeLookup = unitsInThisTile / 3;
 
                     // Read the data, if compressed, decode it, reset the pointer
-                    try {
-
-                        if (compression == COMP_PACKBITS) {
-
-                            stream.readFully(data, 0, byteCount);
-                            tempData = new byte[unitsBeforeLookup];
-                            decodePackbits(data, unitsBeforeLookup, tempData);
-
-                        }  else if (compression == COMP_LZW) {
-
-                            stream.readFully(data, 0, byteCount);
-                            tempData = new byte[unitsBeforeLookup];
-                            lzwDecoder.decode(data, tempData, newRect.height);
-
-                        } else if (compression == COMP_JPEG_TTN2) {
-                            stream.skipFully(byteCount);
-                            /*
-                            stream.readFully(data, 0, byteCount);
-                            Raster tempTile = decodeJPEG(data,
-                                                         decodeParam,
-                                                         colorConvertJPEG,
-                                                         tile.getMinX(),
-                                                         tile.getMinY());
-                            int[] tempPixels = new int[unitsBeforeLookup];
-                            tempTile.getPixels(tile.getMinX(),
-                                               tile.getMinY(),
-                                               tile.getWidth(),
-                                               tile.getHeight(),
-                                               tempPixels);
-                            tempData = new byte[unitsBeforeLookup];
-                            for(int i = 0; i < unitsBeforeLookup; i++) {
-                                tempData[i] = (byte)tempPixels[i];
-                            }
-                            */
-                        }  else if (compression == COMP_DEFLATE) {
-
-                            stream.readFully(data, 0, byteCount);
-                            tempData = new byte[unitsBeforeLookup];
-                            inflate(data, tempData);
-
-                        } else if (compression == COMP_NONE) {
-
-                            tempData = new byte[byteCount];
-                            stream.readFully(tempData, 0, byteCount);
+                    if (compression == COMP_PACKBITS) {
+
+                        tempData = new byte[unitsBeforeLookup];
+                        decodePackbits(data, unitsBeforeLookup, tempData);
+
+                    }  else if (compression == COMP_LZW) {
+
+                        tempData = new byte[unitsBeforeLookup];
+                        lzwDecoder.decode(data, tempData, newRect.height);
+
+                    } else if (compression == COMP_JPEG_TTN2) {
+                        /*
+                        Raster tempTile = decodeJPEG(data,
+                                                     decodeParam,
+                                                     colorConvertJPEG,
+                                                     tile.getMinX(),
+                                                     tile.getMinY());
+                        int[] tempPixels = new int[unitsBeforeLookup];
+                        tempTile.getPixels(tile.getMinX(),
+                                           tile.getMinY(),
+                                           tile.getWidth(),
+                                           tile.getHeight(),
+                                           tempPixels);
+                        tempData = new byte[unitsBeforeLookup];
+                        for(int i = 0; i < unitsBeforeLookup; i++) {
+                            tempData[i] = (byte)tempPixels[i];
                         }
+                        */
+                    }  else if (compression == COMP_DEFLATE) {
+
+                        tempData = new byte[unitsBeforeLookup];
+                        inflate(data, tempData);
 
-                        stream.seek(save_offset);
+                    } else if (compression == COMP_NONE) {
 
-                    } catch (IOException ioe) {
-                        throw new RuntimeException("TIFFImage13");
+                        tempData = data;
                     }
 
                     // Expand the palette image into an rgb image with ushort
@@ -1181,42 +1191,29 @@ public class TIFFImage extends AbstractRed {
                     // No lookup being done here, when RGB values are needed,
                     // the associated IndexColorModel can be used to get them.
 
-                    try {
-
-                        if (compression == COMP_PACKBITS) {
-
-                            stream.readFully(data, 0, byteCount);
-                            decodePackbits(data, unitsInThisTile, bdata);
-
-                        } else if (compression == COMP_LZW) {
+                    if (compression == COMP_PACKBITS) {
 
-                            stream.readFully(data, 0, byteCount);
-                            lzwDecoder.decode(data, bdata, newRect.height);
+                        decodePackbits(data, unitsInThisTile, bdata);
 
-                        } else if (compression == COMP_JPEG_TTN2) {
-                            stream.skipFully(byteCount);
-                            /*
-                            stream.readFully(data, 0, byteCount);
-                            tile.setRect(decodeJPEG(data,
-                                                    decodeParam,
-                                                    colorConvertJPEG,
-                                                    tile.getMinX(),
-                                                    tile.getMinY()));
-                                                    */
-                        }  else if (compression == COMP_DEFLATE) {
+                    } else if (compression == COMP_LZW) {
 
-                            stream.readFully(data, 0, byteCount);
-                            inflate(data, bdata);
+                        lzwDecoder.decode(data, bdata, newRect.height);
 
-                        } else if (compression == COMP_NONE) {
+                    } else if (compression == COMP_JPEG_TTN2) {
+                        /*
+                        tile.setRect(decodeJPEG(data,
+                                                decodeParam,
+                                                colorConvertJPEG,
+                                                tile.getMinX(),
+                                                tile.getMinY()));
+                                                */
+                    }  else if (compression == COMP_DEFLATE) {
 
-                            stream.readFully(bdata, 0, byteCount);
-                        }
+                        inflate(data, bdata);
 
-                        stream.seek(save_offset);
+                    } else if (compression == COMP_NONE) {
 
-                    } catch (IOException ioe) {
-                        throw new RuntimeException("TIFFImage13");
+                        System.arraycopy(data, 0, bdata, 0, byteCount);
                     }
                 }
 
@@ -1231,13 +1228,6 @@ public class TIFFImage extends AbstractRed {
 
                     byte[] tempData = null;
 
-                    try {
-                        stream.readFully(data, 0, byteCount);
-                        stream.seek(save_offset);
-                    } catch (IOException ioe) {
-                        throw new RuntimeException("TIFFImage13");
-                    }
-
                     // If compressed, decode the data.
                     if (compression == COMP_PACKBITS) {
 
@@ -1295,201 +1285,157 @@ public class TIFFImage extends AbstractRed {
                 } else {
 
                     // Output byte values, use IndexColorModel for unpacking
-                    try {
-
-                        // If compressed, decode the data.
-                        if (compression == COMP_PACKBITS) {
-
-                            stream.readFully(data, 0, byteCount);
-                            decodePackbits(data, bytesPostDecoding, bdata);
-
-                        }  else if (compression == COMP_LZW) {
+                    // If compressed, decode the data.
+                    if (compression == COMP_PACKBITS) {
 
-                            stream.readFully(data, 0, byteCount);
-                            lzwDecoder.decode(data, bdata, newRect.height);
+                        decodePackbits(data, bytesPostDecoding, bdata);
 
-                        }  else if (compression == COMP_DEFLATE) {
+                    }  else if (compression == COMP_LZW) {
 
-                            stream.readFully(data, 0, byteCount);
-                            inflate(data, bdata);
+                        lzwDecoder.decode(data, bdata, newRect.height);
 
-                        } else if (compression == COMP_NONE) {
+                    }  else if (compression == COMP_DEFLATE) {
 
-                            stream.readFully(bdata, 0, byteCount);
-                        }
+                        inflate(data, bdata);
 
-                        stream.seek(save_offset);
+                    } else if (compression == COMP_NONE) {
 
-                    } catch (IOException ioe) {
-                        throw new RuntimeException("TIFFImage13");
+                        System.arraycopy(data, 0, bdata, 0, byteCount);
                     }
                 }
             }
         } else if(imageType == TYPE_GRAY_4BIT) { // 4-bit gray
-            try {
-                if (compression == COMP_PACKBITS) {
-
-                    stream.readFully(data, 0, byteCount);
-
-                    // Since the decompressed data will still be packed
-                    // 2 pixels into 1 byte, calculate bytesInThisTile
-                    int bytesInThisTile;
-                    if ((newRect.width % 8) == 0) {
-                        bytesInThisTile = (newRect.width/2) * newRect.height;
-                    } else {
-                        bytesInThisTile = (newRect.width/2 + 1) *
-                            newRect.height;
-                    }
-
-                    decodePackbits(data, bytesInThisTile, bdata);
-
-                } else if (compression == COMP_LZW) {
-
-                    stream.readFully(data, 0, byteCount);
-                    lzwDecoder.decode(data, bdata, newRect.height);
-
-                }  else if (compression == COMP_DEFLATE) {
-
-                    stream.readFully(data, 0, byteCount);
-                    inflate(data, bdata);
+            if (compression == COMP_PACKBITS) {
 
+                // Since the decompressed data will still be packed
+                // 2 pixels into 1 byte, calculate bytesInThisTile
+                int bytesInThisTile;
+                if ((newRect.width % 8) == 0) {
+                    bytesInThisTile = (newRect.width/2) * newRect.height;
                 } else {
-
-                    stream.readFully(bdata, 0, byteCount);
+                    bytesInThisTile = (newRect.width/2 + 1) *
+                        newRect.height;
                 }
 
-                stream.seek(save_offset);
-            } catch (IOException ioe) {
-                throw new RuntimeException("TIFFImage13");
-            }
-        } else { // everything else
-            try {
+                decodePackbits(data, bytesInThisTile, bdata);
 
-                if (sampleSize == 8) {
+            } else if (compression == COMP_LZW) {
 
-                    if (compression == COMP_NONE) {
-                        stream.readFully(bdata, 0, byteCount);
+                lzwDecoder.decode(data, bdata, newRect.height);
 
-                    } else if (compression == COMP_LZW) {
+            }  else if (compression == COMP_DEFLATE) {
 
-                        stream.readFully(data, 0, byteCount);
-                        lzwDecoder.decode(data, bdata, newRect.height);
-
-                    } else if (compression == COMP_PACKBITS) {
+                inflate(data, bdata);
 
-                        stream.readFully(data, 0, byteCount);
-                        decodePackbits(data, unitsInThisTile, bdata);
+            } else {
 
-                    } else if (compression == COMP_JPEG_TTN2) {
-                        stream.skipFully(byteCount);
-                        /*
-                        stream.readFully(data, 0, byteCount);
-                        tile.setRect(decodeJPEG(data,
-                                                decodeParam,
-                                                colorConvertJPEG,
-                                                tile.getMinX(),
-                                                tile.getMinY()));
-                                                */
-                    } else if (compression == COMP_DEFLATE) {
+                System.arraycopy(data, 0, bdata, 0, byteCount);
+            }
+        } else { // everything else
+            if (sampleSize == 8) {
 
-                        stream.readFully(data, 0, byteCount);
-                        inflate(data, bdata);
-                    }
+                if (compression == COMP_NONE) {
+                    System.arraycopy(data, 0, bdata, 0, byteCount);
 
-                } else if (sampleSize == 16) {
+                } else if (compression == COMP_LZW) {
 
-                    if (compression == COMP_NONE) {
+                    lzwDecoder.decode(data, bdata, newRect.height);
 
-                        readShorts(byteCount/2, sdata);
+                } else if (compression == COMP_PACKBITS) {
 
-                    } else if (compression == COMP_LZW) {
+                    decodePackbits(data, unitsInThisTile, bdata);
 
-                        stream.readFully(data, 0, byteCount);
+                } else if (compression == COMP_JPEG_TTN2) {
+                    /*
+                    tile.setRect(decodeJPEG(data,
+                                            decodeParam,
+                                            colorConvertJPEG,
+                                            tile.getMinX(),
+                                            tile.getMinY()));
+                                            */
+                } else if (compression == COMP_DEFLATE) {
 
-                        // Since unitsInThisTile is the number of shorts,
-                        // but we do our decompression in terms of bytes, we
-                        // need to multiply unitsInThisTile by 2 in order to
-                        // figure out how many bytes we'll get after
-                        // decompression.
-                        byte[] byteArray = new byte[unitsInThisTile * 2];
-                        lzwDecoder.decode(data, byteArray, newRect.height);
-                        interpretBytesAsShorts(byteArray, sdata,
-                                               unitsInThisTile);
+                    inflate(data, bdata);
+                }
 
-                    } else if (compression == COMP_PACKBITS) {
+            } else if (sampleSize == 16) {
 
-                        stream.readFully(data, 0, byteCount);
+                if (compression == COMP_NONE) {
 
-                        // Since unitsInThisTile is the number of shorts,
-                        // but we do our decompression in terms of bytes, we
-                        // need to multiply unitsInThisTile by 2 in order to
-                        // figure out how many bytes we'll get after
-                        // decompression.
-                        int bytesInThisTile = unitsInThisTile * 2;
+                    interpretBytesAsShorts(data, sdata, byteCount/2);
 
-                        byte[] byteArray = new byte[bytesInThisTile];
-                        decodePackbits(data, bytesInThisTile, byteArray);
-                        interpretBytesAsShorts(byteArray, sdata,
-                                               unitsInThisTile);
-                    } else if (compression == COMP_DEFLATE) {
+                } else if (compression == COMP_LZW) {
 
-                        stream.readFully(data, 0, byteCount);
-                        byte[] byteArray = new byte[unitsInThisTile * 2];
-                        inflate(data, byteArray);
-                        interpretBytesAsShorts(byteArray, sdata,
-                                               unitsInThisTile);
+                    // Since unitsInThisTile is the number of shorts,
+                    // but we do our decompression in terms of bytes, we
+                    // need to multiply unitsInThisTile by 2 in order to
+                    // figure out how many bytes we'll get after
+                    // decompression.
+                    byte[] byteArray = new byte[unitsInThisTile * 2];
+                    lzwDecoder.decode(data, byteArray, newRect.height);
+                    interpretBytesAsShorts(byteArray, sdata,
+                                           unitsInThisTile);
 
-                    }
-                } else if (sampleSize == 32 &&
-                           dataType == DataBuffer.TYPE_INT) { // redundant
-                    if (compression == COMP_NONE) {
+                } else if (compression == COMP_PACKBITS) {
 
-                        readInts(byteCount/4, idata);
+                    // Since unitsInThisTile is the number of shorts,
+                    // but we do our decompression in terms of bytes, we
+                    // need to multiply unitsInThisTile by 2 in order to
+                    // figure out how many bytes we'll get after
+                    // decompression.
+                    int bytesInThisTile = unitsInThisTile * 2;
+
+                    byte[] byteArray = new byte[bytesInThisTile];
+                    decodePackbits(data, bytesInThisTile, byteArray);
+                    interpretBytesAsShorts(byteArray, sdata,
+                                           unitsInThisTile);
+                } else if (compression == COMP_DEFLATE) {
 
-                    } else if (compression == COMP_LZW) {
+                    byte[] byteArray = new byte[unitsInThisTile * 2];
+                    inflate(data, byteArray);
+                    interpretBytesAsShorts(byteArray, sdata,
+                                           unitsInThisTile);
 
-                        stream.readFully(data, 0, byteCount);
+                }
+            } else if (sampleSize == 32 &&
+                       dataType == DataBuffer.TYPE_INT) { // redundant
+                if (compression == COMP_NONE) {
 
-                        // Since unitsInThisTile is the number of ints,
-                        // but we do our decompression in terms of bytes, we
-                        // need to multiply unitsInThisTile by 4 in order to
-                        // figure out how many bytes we'll get after
-                        // decompression.
-                        byte[] byteArray = new byte[unitsInThisTile * 4];
-                        lzwDecoder.decode(data, byteArray, newRect.height);
-                        interpretBytesAsInts(byteArray, idata,
-                                             unitsInThisTile);
+                    interpretBytesAsInts(data, idata, byteCount/4);
 
-                    } else if (compression == COMP_PACKBITS) {
+                } else if (compression == COMP_LZW) {
 
-                        stream.readFully(data, 0, byteCount);
+                    // Since unitsInThisTile is the number of ints,
+                    // but we do our decompression in terms of bytes, we
+                    // need to multiply unitsInThisTile by 4 in order to
+                    // figure out how many bytes we'll get after
+                    // decompression.
+                    byte[] byteArray = new byte[unitsInThisTile * 4];
+                    lzwDecoder.decode(data, byteArray, newRect.height);
+                    interpretBytesAsInts(byteArray, idata,
+                                         unitsInThisTile);
 
-                        // Since unitsInThisTile is the number of ints,
-                        // but we do our decompression in terms of bytes, we
-                        // need to multiply unitsInThisTile by 4 in order to
-                        // figure out how many bytes we'll get after
-                        // decompression.
-                        int bytesInThisTile = unitsInThisTile * 4;
+                } else if (compression == COMP_PACKBITS) {
 
-                        byte[] byteArray = new byte[bytesInThisTile];
-                        decodePackbits(data, bytesInThisTile, byteArray);
-                        interpretBytesAsInts(byteArray, idata,
-                                             unitsInThisTile);
-                    } else if (compression == COMP_DEFLATE) {
+                    // Since unitsInThisTile is the number of ints,
+                    // but we do our decompression in terms of bytes, we
+                    // need to multiply unitsInThisTile by 4 in order to
+                    // figure out how many bytes we'll get after
+                    // decompression.
+                    int bytesInThisTile = unitsInThisTile * 4;
+
+                    byte[] byteArray = new byte[bytesInThisTile];
+                    decodePackbits(data, bytesInThisTile, byteArray);
+                    interpretBytesAsInts(byteArray, idata,
+                                         unitsInThisTile);
+                } else if (compression == COMP_DEFLATE) {
 
-                        stream.readFully(data, 0, byteCount);
-                        byte[] byteArray = new byte[unitsInThisTile * 4];
-                        inflate(data, byteArray);
-                        interpretBytesAsInts(byteArray, idata,
-                                             unitsInThisTile);
+                    byte[] byteArray = new byte[unitsInThisTile * 4];
+                    inflate(data, byteArray);
+                    interpretBytesAsInts(byteArray, idata,
+                                         unitsInThisTile);
 
-                    }
                 }
-
-                stream.seek(save_offset);
-
-            } catch (IOException ioe) {
-                throw new RuntimeException("TIFFImage13");
             }
 
             // Modify the data for certain special cases.
@@ -1639,38 +1585,6 @@ public class TIFFImage extends AbstractRed {
         return tile;
     }
 
-    private void readShorts(int shortCount, short[] shortArray) {
-
-        // Since each short consists of 2 bytes, we need a
-        // byte array of double size
-        int byteCount = 2 * shortCount;
-        byte[] byteArray = new byte[byteCount];
-
-        try {
-            stream.readFully(byteArray, 0, byteCount);
-        } catch (IOException ioe) {
-            throw new RuntimeException("TIFFImage13");
-        }
-
-        interpretBytesAsShorts(byteArray, shortArray, shortCount);
-    }
-
-    private void readInts(int intCount, int[] intArray) {
-
-        // Since each int consists of 4 bytes, we need a
-        // byte array of quadruple size
-        int byteCount = 4 * intCount;
-        byte[] byteArray = new byte[byteCount];
-
-        try {
-            stream.readFully(byteArray, 0, byteCount);
-        } catch (IOException ioe) {
-            throw new RuntimeException("TIFFImage13");
-        }
-
-        interpretBytesAsInts(byteArray, intArray, intCount);
-    }
-
     // Method to interpret a byte array to a short array, depending on
     // whether the bytes are stored in a big endian or little endian format.
     private void interpretBytesAsShorts(byte[] byteArray,
@@ -0,0 +1,247 @@
+/*
+ * @(#)ByteBufferSeekableStream.java
+ *
+ * Copyright (c) 2015 Werner Randelshofer, Switzerland.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package ch.randelshofer.quaqua.ext.batik.ext.awt.image.codec.util;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A subclass of <code>SeekableStream</code> which reads from a byte array
+ * or from a <code>ByteBuffer</code>.
+ * <p>
+ * Unlike <code>MemoryCacheSeekableStream</code>, this class does not copy
+ * the data. Bulk reads and the primitive reads of the <code>DataInput</code>
+ * interface are served directly from the buffer.
+ * <p>
+ * Positional reads with {@link #readFully(long, byte[], int, int)} do not
+ * move the stream pointer and do not acquire a lock. They may be invoked
+ * concurrently.
+ * <p>
+ * The buffer must not be modified while it is being read.
+ *
+ * @author Werner Randelshofer
+ * @version $Id$
+ */
+public final class ByteBufferSeekableStream extends SeekableStream {
+
+    /** The data. The position and limit of the buffer are never changed. */
+    private final ByteBuffer buf;
+    /** The backing array of the buffer or null. */
+    private final byte[] array;
+    /** The offset of the first byte of the buffer in the backing array. */
+    private final int arrayOffset;
+    /** The number of bytes in the buffer. */
+    private final int length;
+    /** Position of first unread byte. */
+    private long pointer;
+
+    /**
+     * Creates a new instance which reads from the specified array.
+     */
+    public ByteBufferSeekableStream(byte[] data) {
+        this(data, 0, data.length);
+    }
+
+    /**
+     * Creates a new instance which reads from the specified range
+     * of the specified array.
+     */
+    public ByteBufferSeekableStream(byte[] data, int off, int len) {
+        this(ByteBuffer.wrap(data, off, len));
+    }
+
+    /**
+     * Creates a new instance which reads the bytes from the current position
+     * up to the limit of the specified buffer. The position and the limit of
+     * the specified buffer are not changed.
+     */
+    public ByteBufferSeekableStream(ByteBuffer data) {
+        buf = data.slice();
+        length = buf.remaining();
+        if (buf.hasArray()) {
+            array = buf.array();
+            arrayOffset = buf.arrayOffset();
+        } else {
+            array = null;
+            arrayOffset = 0;
+        }
+    }
+
+    /**
+     * Creates a new instance which reads from a read-only memory mapping
+     * of the specified file.
+     * <p>
+     * The file is closed when this method returns. The mapping stays
+     * valid until the stream is garbage collected.
+     */
+    public static ByteBufferSeekableStream map(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            return new ByteBufferSeekableStream(
+                    channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Returns <code>true</code> since this stream supports seeking
+     * backwards.
+     */
+    public boolean canSeekBackwards() {
+        return true;
+    }
+
+    /**
+     * Returns the current offset in this stream.
+     */
+    public long getFilePointer() {
+        return pointer;
+    }
+
+    /**
+     * Sets the stream pointer. Seeking past the end of the data is
+     * allowed. Subsequent reads return the end of the stream.
+     *
+     * @exception IOException if <code>pos</code> is less than <code>0</code>.
+     */
+    public void seek(long pos) throws IOException {
+        if (pos < 0) {
+            throw new IOException("Negative seek offset " + pos);
+        }
+        pointer = pos;
+    }
+
+    /**
+     * Returns the number of bytes which can be read without reaching
+     * the end of the stream.
+     */
+    public int available() {
+        return (int) Math.max(0L, length - pointer);
+    }
+
+    public long skip(long n) {
+        if (n <= 0) {
+            return 0;
+        }
+        long skipped = Math.min(n, available());
+        pointer += skipped;
+        return skipped;
+    }
+
+    public int read() {
+        if (pointer >= length) {
+            return -1;
+        }
+        return buf.get((int) pointer++) & 0xff;
+    }
+
+    public int read(byte[] b, int off, int len) {
+        if (b == null) {
+            throw new NullPointerException();
+        }
+        if ((off < 0) || (len < 0) || (off + len > b.length)) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (len == 0) {
+            return 0;
+        }
+        int n = Math.min(len, available());
+        if (n <= 0) {
+            return -1;
+        }
+        get((int) pointer, b, off, n);
+        pointer += n;
+        return n;
+    }
+
+    public void readFully(long pos, byte[] b, int off, int len)
+            throws IOException {
+        if ((off < 0) || (len < 0) || (off + len > b.length)) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (pos < 0 || pos + len > length) {
+            throw new EOFException();
+        }
+        get((int) pos, b, off, len);
+    }
+
+    /**
+     * Copies bytes from an absolute position of the buffer into the array.
+     */
+    private void get(int pos, byte[] b, int off, int len) {
+        if (array != null) {
+            System.arraycopy(array, arrayOffset + pos, b, off, len);
+        } else {
+            ByteBuffer dup = buf.duplicate();
+            dup.position(pos);
+            dup.get(b, off, len);
+        }
+    }
+
+    /**
+     * Returns the position of the next <code>n</code> bytes and advances
+     * the stream pointer past them.
+     *
+     * @exception EOFException if less than <code>n</code> bytes are
+     * available.
+     */
+    private int advance(int n) throws EOFException {
+        long pos = pointer;
+        if (pos + n > length) {
+            throw new EOFException();
+        }
+        pointer = pos + n;
+        return (int) pos;
+    }
+
+    public short readShort() throws IOException {
+        return buf.getShort(advance(2));
+    }
+
+    public short readShortLE() throws IOException {
+        return Short.reverseBytes(buf.getShort(advance(2)));
+    }
+
+    public int readUnsignedShort() throws IOException {
+        return readShort() & 0xffff;
+    }
+
+    public int readUnsignedShortLE() throws IOException {
+        return readShortLE() & 0xffff;
+    }
+
+    public int readInt() throws IOException {
+        return buf.getInt(advance(4));
+    }
+
+    public int readIntLE() throws IOException {
+        return Integer.reverseBytes(buf.getInt(advance(4)));
+    }
+
+    public long readUnsignedInt() throws IOException {
+        return readInt() & 0xffffffffL;
+    }
+
+    public long readUnsignedIntLE() throws IOException {
+        return readIntLE() & 0xffffffffL;
+    }
+
+    public long readLong() throws IOException {
+        return buf.getLong(advance(8));
+    }
+
+    public long readLongLE() throws IOException {
+        return Long.reverseBytes(buf.getLong(advance(8)));
+    }
+}
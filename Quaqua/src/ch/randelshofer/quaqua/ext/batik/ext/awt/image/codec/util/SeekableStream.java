@@ -307,6 +307,38 @@ public abstract class SeekableStream extends InputStream implements DataInput {
         } while (n < len);
     }
 
+    /**
+     * Reads exactly <code>len</code> bytes from this stream into the byte
+     * array, starting at the specified position. The stream pointer is
+     * not changed.
+     *
+     * <p> Concurrent invocations of this method are safe, as long as no
+     * other thread moves the stream pointer. The default implementation
+     * seeks to <code>pos</code> and back while holding the lock of this
+     * stream. Subclasses which can read from an arbitrary position
+     * without moving the stream pointer should override this method.
+     *
+     * @param      pos   the position of the data in the stream.
+     * @param      b     the buffer into which the data is read.
+     * @param      off   the start offset of the data.
+     * @param      len   the number of bytes to read.
+     * @exception  EOFException  if this stream reaches the end before reading
+     *               all the bytes.
+     * @exception  IOException   if an I/O error occurs.
+     */
+    public void readFully(long pos, byte[] b, int off, int len)
+        throws IOException {
+        synchronized (this) {
+            long savedPos = getFilePointer();
+            seek(pos);
+            try {
+                readFully(b, off, len);
+            } finally {
+                seek(savedPos);
+            }
+        }
+    }
+
     // Methods from DataInput, plus little-endian versions
     public final void skipFully(long len) throws IOException {
 	if (len < 0)
@@ -428,7 +460,7 @@ public abstract class SeekableStream extends InputStream implements DataInput {
      *               two bytes.
      * @exception  IOException   if an I/O error occurs.
      */
-    public final short readShort() throws IOException {
+    public short readShort() throws IOException {
         int ch1 = this.read();
         int ch2 = this.read();
         if ((ch1 | ch2) < 0)
@@ -457,7 +489,7 @@ public abstract class SeekableStream extends InputStream implements DataInput {
      *               two bytes.
      * @exception  IOException   if an I/O error occurs.
      */
-    public final short readShortLE() throws IOException {
+    public short readShortLE() throws IOException {
         int ch1 = this.read();
         int ch2 = this.read();
         if ((ch1 | ch2) < 0)
@@ -485,7 +517,7 @@ public abstract class SeekableStream extends InputStream implements DataInput {
      *             two bytes.
      * @exception  IOException   if an I/O error occurs.
      */
-    public final int readUnsignedShort() throws IOException {
+    public int readUnsignedShort() throws IOException {
         int ch1 = this.read();
         int ch2 = this.read();
         if ((ch1 | ch2) < 0)
@@ -514,7 +546,7 @@ public abstract class SeekableStream extends InputStream implements DataInput {
      *               two bytes.
      * @exception  IOException   if an I/O error occurs.
      */
-    public final int readUnsignedShortLE() throws IOException {
+    public int readUnsignedShortLE() throws IOException {
         int ch1 = this.read();
         int ch2 = this.read();
         if ((ch1 | ch2) < 0)
@@ -597,7 +629,7 @@ public abstract class SeekableStream extends InputStream implements DataInput {
      *               four bytes.
      * @exception  IOException   if an I/O error occurs.
      */
-    public final int readInt() throws IOException {
+    public int readInt() throws IOException {
         int ch1 = this.read();
         int ch2 = this.read();
         int ch3 = this.read();
@@ -628,7 +660,7 @@ public abstract class SeekableStream extends InputStream implements DataInput {
      *               four bytes.
      * @exception  IOException   if an I/O error occurs.
      */
-    public final int readIntLE() throws IOException {
+    public int readIntLE() throws IOException {
         int ch1 = this.read();
         int ch2 = this.read();
         int ch3 = this.read();
@@ -658,7 +690,7 @@ public abstract class SeekableStream extends InputStream implements DataInput {
      *               four bytes.
      * @exception  IOException   if an I/O error occurs.
      */
-    public final long readUnsignedInt() throws IOException {
+    public long readUnsignedInt() throws IOException {
         long ch1 = this.read();
         long ch2 = this.read();
         long ch3 = this.read();
@@ -691,7 +723,7 @@ public abstract class SeekableStream extends InputStream implements DataInput {
      *               four bytes.
      * @exception  IOException   if an I/O error occurs.
      */
-    public final long readUnsignedIntLE() throws IOException {
+    public long readUnsignedIntLE() throws IOException {
         this.readFully(ruileBuf);
         long ch1 = (ruileBuf[0] & 0xff);
         long ch2 = (ruileBuf[1] & 0xff);
@@ -729,7 +761,7 @@ public abstract class SeekableStream extends InputStream implements DataInput {
      *               eight bytes.
      * @exception  IOException   if an I/O error occurs.
      */
-    public final long readLong() throws IOException {
+    public long readLong() throws IOException {
         return ((long)(readInt()) << 32) + (readInt() & 0xFFFFFFFFL);
     }
 
@@ -762,7 +794,7 @@ public abstract class SeekableStream extends InputStream implements DataInput {
      *               eight bytes.
      * @exception  IOException   if an I/O error occurs.
      */
-    public final long readLongLE() throws IOException {
+    public long readLongLE() throws IOException {
         int i1 = readIntLE();
         int i2 = readIntLE();
         return ((long)i2 << 32) + (i1 & 0xFFFFFFFFL);
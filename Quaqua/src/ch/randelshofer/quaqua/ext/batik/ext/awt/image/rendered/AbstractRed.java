@@ -599,6 +599,25 @@ public abstract class AbstractRed implements CachableRed {
             }
     }
 
+    /**
+     * Copies a tile of this image into wr. This does the same as
+     * copyToRaster for a single tile, so that subclasses can copy tiles
+     * which they have obtained concurrently.
+     * @param tile A tile obtained from getTile.
+     * @param wr The raster to copy the tile into.
+     */
+    protected void copyTileToRaster(Raster tile, WritableRaster wr) {
+        SampleModel sampleModel = getSampleModel();
+        if (GraphicsUtil.is_INT_PACK_Data(sampleModel, false)) {
+            GraphicsUtil.copyData_INT_PACK(tile, wr);
+        } else if (sampleModel instanceof PixelInterleavedSampleModel &&
+                   sampleModel.getNumBands() == 4 &&
+                   sampleModel.getDataType() == DataBuffer.TYPE_BYTE) {
+            GraphicsUtil.copyData_BYTE_RGBA_INTERLEAVED(tile, wr);
+        } else {
+            GraphicsUtil.copyData_FALLBACK(tile, wr);
+        }
+    }
 
     // static DataBufferReclaimer reclaim = new DataBufferReclaimer();
 
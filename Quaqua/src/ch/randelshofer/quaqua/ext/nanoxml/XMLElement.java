@@ -1,6 +1,9 @@
 /* Werner Randelshofer 2006-01-08 
  * Replaced Java 1.1 collections by Java 1.2 collections.
  */
+/* Werner Randelshofer 2015-05-02
+ * Moved the scanning methods into XMLPullParser.
+ */
 /* XMLElement.java
  *
  * $Revision: 1.4 $
@@ -231,23 +234,15 @@ public class XMLElement
 
 
     /**
-     * Character read too much.
-     * This character provides push-back functionality to the input reader
-     * without having to use a PushbackReader.
-     * If there is no such character, this field is '\0'.
-     */
-    private char charReadTooMuch;
-
-
-    /**
-     * The reader provided by the caller of the parse method.
+     * The pull parser of the parse method. The deprecated scanning methods
+     * read from this parser.
      *
      * <dl><dt><b>Invariants:</b></dt><dd>
      * <ul><li>The field is not {@code null} while the parse method
      *         is running.
      * </ul></dd></dl>
      */
-    private Reader reader;
+    private XMLPullParser parser;
 
 
     /**
@@ -1638,6 +1633,10 @@ public class XMLElement
 
     /**
      * Reads one XML element from a java.io.Reader and parses it.
+     * <p>
+     * The reader is read in blocks of characters, and may have been read
+     * past the end of the element when this method returns. The remainder
+     * of the reader can not be parsed with another call to this method.
      *
      * @param reader
      *     The reader from which to retrieve the XML data.
@@ -1650,8 +1649,8 @@ public class XMLElement
      * <dl><dt><b>Postconditions:</b></dt><dd>
      * <ul><li>the state of the receiver is updated to reflect the XML element
      *         parsed from the reader
-     *     <li>the reader points to the first character following the last
-     *         '&gt;' character of the XML element
+     *     <li>the reader has been read past the last '&gt;' character of
+     *         the XML element. The characters are read in blocks.
      * </ul></dd></dl>
      *
      * @throws java.io.IOException
@@ -1668,6 +1667,10 @@ public class XMLElement
 
     /**
      * Reads one XML element from a java.io.Reader and parses it.
+     * <p>
+     * The reader is read in blocks of characters, and may have been read
+     * past the end of the element when this method returns. The remainder
+     * of the reader can not be parsed with another call to this method.
      *
      * @param reader
      *     The reader from which to retrieve the XML data.
@@ -1682,8 +1685,8 @@ public class XMLElement
      * <dl><dt><b>Postconditions:</b></dt><dd>
      * <ul><li>the state of the receiver is updated to reflect the XML element
      *         parsed from the reader
-     *     <li>the reader points to the first character following the last
-     *         '&gt;' character of the XML element
+     *     <li>the reader has been read past the last '&gt;' character of
+     *         the XML element. The characters are read in blocks.
      * </ul></dd></dl>
      *
      * @throws java.io.IOException
@@ -1699,26 +1702,17 @@ public class XMLElement
         this.contents = "";
         this.attributes = new HashMap();
         this.children = new ArrayList();
-        this.charReadTooMuch = '\0';
-        this.reader = reader;
         this.parserLineNr = startingLineNr;
 
-        for (;;) {
-            char ch = this.scanWhitespace();
-
-            if (ch != '<') {
-                throw this.expectedInput("<");
-            }
-
-            ch = this.readChar();
-
-            if ((ch == '!') || (ch == '?')) {
-                this.skipSpecialTag(0);
-            } else {
-                this.unreadChar(ch);
-                this.scanElement(this);
-                return;
-            }
+        this.parser = new XMLPullParser(reader, this.entities,
+                                        this.ignoreWhitespace,
+                                        startingLineNr);
+        try {
+            this.parser.next();
+            this.buildElement(this, this.parser);
+        } finally {
+            this.parserLineNr = this.parser.getLineNr();
+            this.parser = null;
         }
     }
 
@@ -2264,6 +2258,47 @@ public class XMLElement
     }
 
 
+    /**
+     * Builds an XML element from the events of the pull parser.
+     *
+     * @param elt The element that will contain the result.
+     * @param parser The parser.
+     *
+     * <dl><dt><b>Preconditions:</b></dt><dd>
+     * <ul><li>The current event of the parser is {@code START_ELEMENT}.
+     *     <li>{@code elt != null}
+     * </ul></dd></dl>
+     *
+     * <dl><dt><b>Postconditions:</b></dt><dd>
+     * <ul><li>The current event of the parser is the {@code END_ELEMENT}
+     *         event of the element.
+     * </ul></dd></dl>
+     */
+    private void buildElement(XMLElement elt, XMLPullParser parser)
+        throws IOException
+    {
+        elt.setName(parser.getName());
+        elt.lineNr = parser.getLineNr();
+        for (;;) {
+            switch (parser.next()) {
+                case XMLPullParser.ATTRIBUTE:
+                    elt.setAttribute(parser.getName(), parser.getText());
+                    break;
+                case XMLPullParser.TEXT:
+                    elt.setContent(parser.getText());
+                    break;
+                case XMLPullParser.START_ELEMENT:
+                    XMLElement child = this.createAnotherElement();
+                    this.buildElement(child, parser);
+                    elt.addChild(child);
+                    break;
+                default:
+                    return;
+            }
+        }
+    }
+
+
     /**
      * Scans an identifier from the current reader.
      * The scanned identifier is appended to {@code result}.
@@ -2281,20 +2316,16 @@ public class XMLElement
      * <ul><li>The next character read from the reader won't be an identifier
      *         character.
      * </ul></dd></dl>
+     *
+     * @deprecated {@link #parseFromReader(Reader, int) parseFromReader}
+     *     no longer calls this method. It reads from the
+     *     {@link XMLPullParser} of the running parse method.
      */
+    @Deprecated
     protected void scanIdentifier(StringBuffer result)
         throws IOException
     {
-        for (;;) {
-            char ch = this.readChar();
-            if (((ch < 'A') || (ch > 'Z')) && ((ch < 'a') || (ch > 'z'))
-                && ((ch < '0') || (ch > '9')) && (ch != '_') && (ch != '.')
-                && (ch != ':') && (ch != '-') && (ch <= '\u007E')) {
-                this.unreadChar(ch);
-                return;
-            }
-            result.append(ch);
-        }
+        result.append(this.parser.scanIdentifier());
     }
 
 
@@ -2302,22 +2333,16 @@ public class XMLElement
      * This method scans an identifier from the current reader.
      *
      * @return the next character following the whitespace.
+     *
+     * @deprecated {@link #parseFromReader(Reader, int) parseFromReader}
+     *     no longer calls this method. It reads from the
+     *     {@link XMLPullParser} of the running parse method.
      */
+    @Deprecated
     protected char scanWhitespace()
         throws IOException
     {
-        for (;;) {
-            char ch = this.readChar();
-            switch (ch) {
-                case ' ':
-                case '\t':
-                case '\n':
-                case '\r':
-                    break;
-                default:
-                    return ch;
-            }
-        }
+        return this.parser.scanWhitespace();
     }
 
 
@@ -2330,23 +2355,19 @@ public class XMLElement
      * <dl><dt><b>Preconditions:</b></dt><dd>
      * <ul><li>{@code result != null}
      * </ul></dd></dl>
+     *
+     * @deprecated {@link #parseFromReader(Reader, int) parseFromReader}
+     *     no longer calls this method. It reads from the
+     *     {@link XMLPullParser} of the running parse method.
      */
+    @Deprecated
     protected char scanWhitespace(StringBuffer result)
         throws IOException
     {
-        for (;;) {
-            char ch = this.readChar();
-            switch (ch) {
-                case ' ':
-                case '\t':
-                case '\n':
-                    result.append(ch);
-                case '\r':
-                    break;
-                default:
-                    return ch;
-            }
-        }
+        StringBuilder buf = new StringBuilder();
+        char ch = this.parser.scanWhitespace(buf);
+        result.append(buf);
+        return ch;
     }
 
 
@@ -2359,24 +2380,18 @@ public class XMLElement
      * <ul><li>{@code string != null}
      *     <li>the next char read is the string delimiter
      * </ul></dd></dl>
+     *
+     * @deprecated {@link #parseFromReader(Reader, int) parseFromReader}
+     *     no longer calls this method. It reads from the
+     *     {@link XMLPullParser} of the running parse method.
      */
+    @Deprecated
     protected void scanString(StringBuffer string)
         throws IOException
     {
-        char delimiter = this.readChar();
-        if ((delimiter != '\'') && (delimiter != '"')) {
-            throw this.expectedInput("' or \"");
-        }
-        for (;;) {
-            char ch = this.readChar();
-            if (ch == delimiter) {
-                return;
-            } else if (ch == '&') {
-                this.resolveEntity(string);
-            } else {
-                string.append(ch);
-            }
-        }
+        StringBuilder buf = new StringBuilder();
+        this.parser.scanString(buf);
+        string.append(buf);
     }
 
 
@@ -2388,26 +2403,18 @@ public class XMLElement
      * <dl><dt><b>Preconditions:</b></dt><dd>
      * <ul><li>{@code data != null}
      * </ul></dd></dl>
+     *
+     * @deprecated {@link #parseFromReader(Reader, int) parseFromReader}
+     *     no longer calls this method. It reads from the
+     *     {@link XMLPullParser} of the running parse method.
      */
+    @Deprecated
     protected void scanPCData(StringBuffer data)
         throws IOException
     {
-        for (;;) {
-            char ch = this.readChar();
-            if (ch == '<') {
-                ch = this.readChar();
-                if (ch == '!') {
-                    this.checkCDATA(data);
-                } else {
-                    this.unreadChar(ch);
-                    return;
-                }
-            } else if (ch == '&') {
-                this.resolveEntity(data);
-            } else {
-                data.append(ch);
-            }
-        }
+        StringBuilder buf = new StringBuilder();
+        this.parser.scanPCData(buf);
+        data.append(buf);
     }
 
 
@@ -2419,53 +2426,19 @@ public class XMLElement
      * <ul><li>{@code buf != null}
      *     <li>The first &lt; has already been read.
      * </ul></dd></dl>
+     *
+     * @deprecated {@link #parseFromReader(Reader, int) parseFromReader}
+     *     no longer calls this method. It reads from the
+     *     {@link XMLPullParser} of the running parse method.
      */
+    @Deprecated
     protected boolean checkCDATA(StringBuffer buf)
         throws IOException
     {
-        char ch = this.readChar();
-        if (ch != '[') {
-            this.unreadChar(ch);
-            this.skipSpecialTag(0);
-            return false;
-        } else if (! this.checkLiteral("CDATA[")) {
-            this.skipSpecialTag(1); // one [ has already been read
-            return false;
-        } else {
-            int delimiterCharsSkipped = 0;
-            while (delimiterCharsSkipped < 3) {
-                ch = this.readChar();
-                switch (ch) {
-                    case ']':
-                        if (delimiterCharsSkipped < 2) {
-                            delimiterCharsSkipped += 1;
-                        } else {
-                            buf.append(']');
-                            buf.append(']');
-                            delimiterCharsSkipped = 0;
-                        }
-                        break;
-                    case '>':
-                        if (delimiterCharsSkipped < 2) {
-                            for (int i = 0; i < delimiterCharsSkipped; i++) {
-                                buf.append(']');
-                            }
-                            delimiterCharsSkipped = 0;
-                            buf.append('>');
-                        } else {
-                            delimiterCharsSkipped = 3;
-                        }
-                        break;
-                    default:
-                        for (int i = 0; i < delimiterCharsSkipped; i += 1) {
-                            buf.append(']');
-                        }
-                        buf.append(ch);
-                        delimiterCharsSkipped = 0;
-                }
-            }
-            return true;
-        }
+        StringBuilder data = new StringBuilder();
+        boolean isCDATA = this.parser.checkCDATA(data);
+        buf.append(data);
+        return isCDATA;
     }
 
 
@@ -2475,22 +2448,16 @@ public class XMLElement
      * <dl><dt><b>Preconditions:</b></dt><dd>
      * <ul><li>The first &lt;!-- has already been read.
      * </ul></dd></dl>
+     *
+     * @deprecated {@link #parseFromReader(Reader, int) parseFromReader}
+     *     no longer calls this method. It reads from the
+     *     {@link XMLPullParser} of the running parse method.
      */
+    @Deprecated
     protected void skipComment()
         throws IOException
     {
-        int dashesToRead = 2;
-        while (dashesToRead > 0) {
-            char ch = this.readChar();
-            if (ch == '-') {
-                dashesToRead -= 1;
-            } else {
-                dashesToRead = 2;
-            }
-        }
-        if (this.readChar() != '>') {
-            throw this.expectedInput(">");
-        }
+        this.parser.skipComment();
     }
 
 
@@ -2504,51 +2471,16 @@ public class XMLElement
      * <ul><li>The first &lt;! has already been read.
      *     <li>{@code bracketLevel >= 0}
      * </ul></dd></dl>
+     *
+     * @deprecated {@link #parseFromReader(Reader, int) parseFromReader}
+     *     no longer calls this method. It reads from the
+     *     {@link XMLPullParser} of the running parse method.
      */
+    @Deprecated
     protected void skipSpecialTag(int bracketLevel)
         throws IOException
     {
-        int tagLevel = 1; // <
-        char stringDelimiter = '\0';
-        if (bracketLevel == 0) {
-            char ch = this.readChar();
-            if (ch == '[') {
-                bracketLevel += 1;
-            } else if (ch == '-') {
-                ch = this.readChar();
-                if (ch == '[') {
-                    bracketLevel += 1;
-                } else if (ch == ']') {
-                    bracketLevel -= 1;
-                } else if (ch == '-') {
-                    this.skipComment();
-                    return;
-                }
-            }
-        }
-        while (tagLevel > 0) {
-            char ch = this.readChar();
-            if (stringDelimiter == '\0') {
-                if ((ch == '"') || (ch == '\'')) {
-                    stringDelimiter = ch;
-                } else if (bracketLevel <= 0) {
-                    if (ch == '<') {
-                        tagLevel += 1;
-                    } else if (ch == '>') {
-                        tagLevel -= 1;
-                    }
-                }
-                if (ch == '[') {
-                    bracketLevel += 1;
-                } else if (ch == ']') {
-                    bracketLevel -= 1;
-                }
-            } else {
-                if (ch == stringDelimiter) {
-                    stringDelimiter = '\0';
-                }
-            }
-        }
+        this.parser.skipSpecialTag(bracketLevel);
     }
 
 
@@ -2562,41 +2494,31 @@ public class XMLElement
      * <dl><dt><b>Preconditions:</b></dt><dd>
      * <ul><li>{@code literal != null}
      * </ul></dd></dl>
+     *
+     * @deprecated {@link #parseFromReader(Reader, int) parseFromReader}
+     *     no longer calls this method. It reads from the
+     *     {@link XMLPullParser} of the running parse method.
      */
+    @Deprecated
     protected boolean checkLiteral(String literal)
         throws IOException
     {
-        int length = literal.length();
-        for (int i = 0; i < length; i += 1) {
-            if (this.readChar() != literal.charAt(i)) {
-                return false;
-            }
-        }
-        return true;
+        return this.parser.checkLiteral(literal);
     }
 
 
     /**
      * Reads a character from a reader.
+     *
+     * @deprecated {@link #parseFromReader(Reader, int) parseFromReader}
+     *     no longer calls this method. It reads from the
+     *     {@link XMLPullParser} of the running parse method.
      */
+    @Deprecated
     protected char readChar()
         throws IOException
     {
-        if (this.charReadTooMuch != '\0') {
-            char ch = this.charReadTooMuch;
-            this.charReadTooMuch = '\0';
-            return ch;
-        } else {
-            int i = this.reader.read();
-            if (i < 0) {
-                throw this.unexpectedEndOfData();
-            } else if (i == 10) {
-                this.parserLineNr += 1;
-                return '\n';
-            } else {
-                return (char) i;
-            }
-        }
+        return this.parser.readChar();
     }
 
 
@@ -2609,111 +2531,17 @@ public class XMLElement
      * <ul><li>The first &lt; has already been read.
      *     <li>{@code elt != null}
      * </ul></dd></dl>
+     *
+     * @deprecated {@link #parseFromReader(Reader, int) parseFromReader}
+     *     no longer calls this method. It reads from the
+     *     {@link XMLPullParser} of the running parse method.
      */
+    @Deprecated
     protected void scanElement(XMLElement elt)
         throws IOException
     {
-        StringBuffer buf = new StringBuffer();
-        this.scanIdentifier(buf);
-        String name = buf.toString();
-        elt.setName(name);
-        char ch = this.scanWhitespace();
-        while ((ch != '>') && (ch != '/')) {
-            buf.setLength(0);
-            this.unreadChar(ch);
-            this.scanIdentifier(buf);
-            String key = buf.toString();
-            ch = this.scanWhitespace();
-            if (ch != '=') {
-                throw this.expectedInput("=");
-            }
-            this.unreadChar(this.scanWhitespace());
-            buf.setLength(0);
-            this.scanString(buf);
-            elt.setAttribute(key, buf);
-            ch = this.scanWhitespace();
-        }
-        if (ch == '/') {
-            ch = this.readChar();
-            if (ch != '>') {
-                throw this.expectedInput(">");
-            }
-            return;
-        }
-        buf.setLength(0);
-        ch = this.scanWhitespace(buf);
-        if (ch != '<') {
-            this.unreadChar(ch);
-            this.scanPCData(buf);
-        } else {
-            for (;;) {
-                ch = this.readChar();
-                if (ch == '!') {
-                    if (this.checkCDATA(buf)) {
-                        this.scanPCData(buf);
-                        break;
-                    } else {
-                        ch = this.scanWhitespace(buf);
-                        if (ch != '<') {
-                            this.unreadChar(ch);
-                            this.scanPCData(buf);
-                            break;
-                        }
-                    }
-                } else {
-                    if ((ch != '/') || this.ignoreWhitespace) {
-                        buf.setLength(0);
-                    }
-                    if (ch == '/') {
-                        this.unreadChar(ch);
-                    }
-                    break;
-                }
-            }
-        }
-        if (buf.length() == 0) {
-            while (ch != '/') {
-                if (ch == '!') {
-                    ch = this.readChar();
-                    if (ch != '-') {
-                        throw this.expectedInput("Comment or Element");
-                    }
-                    ch = this.readChar();
-                    if (ch != '-') {
-                        throw this.expectedInput("Comment or Element");
-                    }
-                    this.skipComment();
-                } else {
-                    this.unreadChar(ch);
-                    XMLElement child = this.createAnotherElement();
-                    this.scanElement(child);
-                    elt.addChild(child);
-                }
-                ch = this.scanWhitespace();
-                if (ch != '<') {
-                    throw this.expectedInput("<");
-                }
-                ch = this.readChar();
-            }
-            this.unreadChar(ch);
-        } else {
-            if (this.ignoreWhitespace) {
-                elt.setContent(buf.toString().trim());
-            } else {
-                elt.setContent(buf.toString());
-            }
-        }
-        ch = this.readChar();
-        if (ch != '/') {
-            throw this.expectedInput("/");
-        }
-        this.unreadChar(this.scanWhitespace());
-        if (! this.checkLiteral(name)) {
-            throw this.expectedInput(name);
-        }
-        if (this.scanWhitespace() != '>') {
-            throw this.expectedInput(">");
-        }
+        this.parser.startElement();
+        this.buildElement(elt, this.parser);
     }
 
 
@@ -2727,54 +2555,40 @@ public class XMLElement
      * <ul><li>The first &amp; has already been read.
      *     <li>{@code buf != null}
      * </ul></dd></dl>
+     *
+     * @deprecated {@link #parseFromReader(Reader, int) parseFromReader}
+     *     no longer calls this method. It reads from the
+     *     {@link XMLPullParser} of the running parse method.
      */
+    @Deprecated
     protected void resolveEntity(StringBuffer buf)
         throws IOException
     {
-        char ch = '\0';
-        StringBuffer keyBuf = new StringBuffer();
-        for (;;) {
-            ch = this.readChar();
-            if (ch == ';') {
-                break;
-            }
-            keyBuf.append(ch);
-        }
-        String key = keyBuf.toString();
-        if (key.charAt(0) == '#') {
-            try {
-                if (key.charAt(1) == 'x') {
-                    ch = (char) Integer.parseInt(key.substring(2), 16);
-                } else {
-                    ch = (char) Integer.parseInt(key.substring(1), 10);
-                }
-            } catch (NumberFormatException e) {
-                throw this.unknownEntity(key);
-            }
-            buf.append(ch);
-        } else {
-            char[] value = (char[]) this.entities.get(key);
-            if (value == null) {
-                throw this.unknownEntity(key);
-            }
-            buf.append(value);
-        }
+        StringBuilder value = new StringBuilder();
+        this.parser.resolveEntity(value);
+        buf.append(value);
     }
 
 
     /**
      * Pushes a character back to the read-back buffer.
      *
-     * @param ch The character to push back.
+     * @param ch The character to push back. The pull parser steps back
+     *     in its buffer, so this must be the last character read.
      *
      * <dl><dt><b>Preconditions:</b></dt><dd>
      * <ul><li>The read-back buffer is empty.
-     *     <li>{@code ch != '\0'}
+     *     <li>{@code ch} is the last character read.
      * </ul></dd></dl>
+     *
+     * @deprecated {@link #parseFromReader(Reader, int) parseFromReader}
+     *     no longer calls this method. It reads from the
+     *     {@link XMLPullParser} of the running parse method.
      */
+    @Deprecated
     protected void unreadChar(char ch)
     {
-        this.charReadTooMuch = ch;
+        this.parser.unreadChar();
     }
 
 
@@ -2819,7 +2633,10 @@ public class XMLElement
     /**
      * Creates a parse exception for when the end of the data input has been
      * reached.
+     *
+     * @deprecated The parse errors are created by {@link XMLPullParser}.
      */
+    @Deprecated
     protected XMLParseException unexpectedEndOfData()
     {
         String msg = "Unexpected end of data reached";
@@ -2855,7 +2672,10 @@ public class XMLElement
      * <ul><li>{@code charSet != null}
      *     <li>{@code charSet.length() &gt; 0}
      * </ul></dd></dl>
+     *
+     * @deprecated The parse errors are created by {@link XMLPullParser}.
      */
+    @Deprecated
     protected XMLParseException expectedInput(String charSet)
     {
         String msg = "Expected: " + charSet;
@@ -2872,7 +2692,10 @@ public class XMLElement
      * <ul><li>{@code name != null}
      *     <li>{@code name.length() &gt; 0}
      * </ul></dd></dl>
+     *
+     * @deprecated The parse errors are created by {@link XMLPullParser}.
      */
+    @Deprecated
     protected XMLParseException unknownEntity(String name)
     {
         String msg = "Unknown or invalid entity: &" + name + ";";
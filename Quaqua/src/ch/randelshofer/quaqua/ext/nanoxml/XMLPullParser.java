@@ -0,0 +1,1029 @@
+/* Werner Randelshofer 2015-05-02
+ * Event based pull parser. Derived from the scanning methods of XMLElement.
+ */
+/* XMLPullParser.java
+ *
+ * This file is part of NanoXML 2 Lite.
+ * Copyright (C) 2000-2002 Marc De Scheemaecker, All Rights Reserved.
+ *
+ * This software is provided 'as-is', without any express or implied warranty.
+ * In no event will the authors be held liable for any damages arising from the
+ * use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *  1. The origin of this software must not be misrepresented; you must not
+ *     claim that you wrote the original software. If you use this software in
+ *     a product, an acknowledgment in the product documentation would be
+ *     appreciated but is not required.
+ *
+ *  2. Altered source versions must be plainly marked as such, and must not be
+ *     misrepresented as being the original software.
+ *
+ *  3. This notice may not be removed or altered from any source distribution.
+ *****************************************************************************/
+
+
+package ch.randelshofer.quaqua.ext.nanoxml;
+
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+
+/**
+ * XMLPullParser reads XML data from a reader and reports it as a sequence
+ * of events.
+ * <P><DL>
+ * <DT><B>Pulling Events</B></DT>
+ * <DD>
+ * The following code prints the names of all elements:
+ * <pre>
+ * XMLPullParser parser = new XMLPullParser(reader);
+ * for (int event = parser.next(); event != XMLPullParser.END_DOCUMENT;
+ * &nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;event = parser.next()) {
+ * &nbsp;&nbsp;&nbsp;&nbsp;if (event == XMLPullParser.START_ELEMENT) {
+ * &nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;System.out.println(parser.getName());
+ * &nbsp;&nbsp;&nbsp;&nbsp;}
+ * }
+ * </pre>
+ * A {@code START_ELEMENT} event is followed by an {@code ATTRIBUTE} event for
+ * each attribute of the element. Then follow either the events of the child
+ * elements or a single {@code TEXT} event, and finally an
+ * {@code END_ELEMENT} event.
+ * </DD></DL>
+ * <DL><DT><B>Content Model</B></DT>
+ * <DD>
+ * Like {@link XMLElement}, the parser does not support mixed content.
+ * An element contains either #PCDATA or child elements. CDATA sections
+ * and entities in #PCDATA are resolved. Whitespace between child
+ * elements, comments and processing instructions are not reported.
+ * </DD></DL>
+ * <P>
+ * The parser reads the characters from the reader in blocks. Parsing can
+ * be stopped at any event. After the end of the root element, the parser
+ * does not read any more characters, but the position of the reader is
+ * undefined.
+ * <P>
+ * {@link XMLElement#parseFromReader(java.io.Reader) XMLElement} builds its
+ * tree from the events of this parser. {@code OSXPreferences} reads XML
+ * PLists with this parser without building a tree. The sidebar models still
+ * walk a tree, because their binary PList fallback produces an
+ * {@code XMLElement} as well.
+ * <P>
+ * The scanning methods are package private, so that the deprecated scanning
+ * methods of {@code XMLElement} can delegate to them.
+ *
+ * @see XMLElement
+ *
+ * @author Werner Randelshofer
+ * @version $Id$
+ */
+public class XMLPullParser
+{
+
+    /**
+     * The parser has read the name of an element.
+     */
+    public static final int START_ELEMENT = 1;
+
+
+    /**
+     * The parser has read an attribute of the current element.
+     */
+    public static final int ATTRIBUTE = 2;
+
+
+    /**
+     * The parser has read the #PCDATA content of the current element.
+     */
+    public static final int TEXT = 3;
+
+
+    /**
+     * The parser has read the end of the current element.
+     */
+    public static final int END_ELEMENT = 4;
+
+
+    /**
+     * The parser has read the end of the root element.
+     */
+    public static final int END_DOCUMENT = 5;
+
+
+    /**
+     * Parser states.
+     */
+    private static final int IN_PROLOG = 0;
+    private static final int IN_START_TAG = 1;
+    private static final int BEFORE_CHILD = 2;
+    private static final int AFTER_LT = 3;
+    private static final int AFTER_TEXT = 4;
+    private static final int AFTER_ROOT = 5;
+
+
+    /**
+     * Size of the character buffer.
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+
+    /**
+     * The reader provided by the caller.
+     */
+    private Reader reader;
+
+
+    /**
+     * The characters read from the reader.
+     */
+    private char[] buf = new char[BUFFER_SIZE];
+
+
+    /**
+     * The position of the next character in {@code buf}.
+     * The character before this position can always be pushed back.
+     */
+    private int pos;
+
+
+    /**
+     * The number of valid characters in {@code buf}.
+     */
+    private int limit;
+
+
+    /**
+     * Conversion table for &amp;...; entities. The keys are the entity names
+     * without the &amp; and ; delimiters. The values are char arrays.
+     */
+    private HashMap entities;
+
+
+    /**
+     * {@code true} if the leading and trailing whitespace of #PCDATA
+     * sections have to be ignored.
+     */
+    private boolean ignoreWhitespace;
+
+
+    /**
+     * The current line number in the source content.
+     */
+    private int lineNr;
+
+
+    /**
+     * The names of the open elements.
+     */
+    private ArrayList<String> openElements = new ArrayList<String>();
+
+
+    /**
+     * The state of the parser.
+     */
+    private int state = IN_PROLOG;
+
+
+    /**
+     * The current event.
+     */
+    private int eventType;
+
+
+    /**
+     * The element name or the attribute name of the current event.
+     */
+    private String name;
+
+
+    /**
+     * The attribute value or the #PCDATA of the current event.
+     */
+    private String text;
+
+
+    /**
+     * Accumulates #PCDATA and attribute values.
+     */
+    private StringBuilder textBuf = new StringBuilder();
+
+
+    /**
+     * Creates a new parser which reads from the specified reader.
+     * The basic entities {@code amp}, {@code quot}, {@code apos},
+     * {@code lt} and {@code gt} are resolved.
+     *
+     * <dl><dt><b>Preconditions:</b></dt><dd>
+     * <ul><li>{@code reader != null}
+     * </ul></dd></dl>
+     */
+    public XMLPullParser(Reader reader)
+    {
+        this(reader, createBasicConversionTable(), false, 1);
+    }
+
+
+    /**
+     * Creates a new parser which reads from the specified reader.
+     *
+     * @param reader
+     *     The reader from which to retrieve the XML data.
+     * @param entities
+     *     The entity conversion table. The values are char arrays.
+     * @param skipLeadingWhitespace
+     *     {@code true} if leading and trailing whitespace in PCDATA
+     *     content has to be removed.
+     * @param startingLineNr
+     *     The line number of the first line in the data.
+     *
+     * <dl><dt><b>Preconditions:</b></dt><dd>
+     * <ul><li>{@code reader != null}
+     *     <li>{@code entities} contains at least the following
+     *         entries: {@code amp}, {@code lt}, {@code gt},
+     *         {@code apos} and {@code quot}
+     * </ul></dd></dl>
+     */
+    public XMLPullParser(Reader reader,
+                         HashMap entities,
+                         boolean skipLeadingWhitespace,
+                         int startingLineNr)
+    {
+        this.reader = reader;
+        this.entities = entities;
+        this.ignoreWhitespace = skipLeadingWhitespace;
+        this.lineNr = startingLineNr;
+    }
+
+
+    /**
+     * Creates an entity conversion table with the basic entities.
+     */
+    private static HashMap createBasicConversionTable()
+    {
+        HashMap entities = new HashMap();
+        entities.put("amp", new char[] { '&' });
+        entities.put("quot", new char[] { '"' });
+        entities.put("apos", new char[] { '\'' });
+        entities.put("lt", new char[] { '<' });
+        entities.put("gt", new char[] { '>' });
+        return entities;
+    }
+
+
+    /**
+     * Reads the next event.
+     *
+     * @return the type of the event: {@code START_ELEMENT},
+     *     {@code ATTRIBUTE}, {@code TEXT}, {@code END_ELEMENT} or
+     *     {@code END_DOCUMENT}.
+     *
+     * @throws java.io.IOException
+     *     If an error occured while reading the input.
+     * @throws XMLParseException
+     *     If an error occured while parsing the read data.
+     */
+    public int next()
+        throws IOException
+    {
+        this.name = null;
+        this.text = null;
+        for (;;) {
+            char ch;
+            switch (this.state) {
+                case IN_PROLOG:
+                    ch = this.scanWhitespace();
+                    if (ch != '<') {
+                        throw this.expectedInput("<");
+                    }
+                    ch = this.readChar();
+                    if ((ch == '!') || (ch == '?')) {
+                        this.skipSpecialTag(0);
+                    } else {
+                        this.unreadChar();
+                        return this.startElement();
+                    }
+                    break;
+
+                case IN_START_TAG:
+                    ch = this.scanWhitespace();
+                    if (ch == '/') {
+                        if (this.readChar() != '>') {
+                            throw this.expectedInput(">");
+                        }
+                        return this.endElement();
+                    } else if (ch == '>') {
+                        return this.scanContent();
+                    } else {
+                        this.unreadChar();
+                        this.name = this.scanIdentifier();
+                        if (this.scanWhitespace() != '=') {
+                            throw this.expectedInput("=");
+                        }
+                        this.scanWhitespace();
+                        this.unreadChar();
+                        this.textBuf.setLength(0);
+                        this.scanString(this.textBuf);
+                        this.text = this.textBuf.toString();
+                        return this.eventType = ATTRIBUTE;
+                    }
+
+                case BEFORE_CHILD:
+                    if (this.scanWhitespace() != '<') {
+                        throw this.expectedInput("<");
+                    }
+                    this.state = AFTER_LT;
+                    break;
+
+                case AFTER_LT:
+                    ch = this.readChar();
+                    if (ch == '/') {
+                        this.scanEndTag();
+                        return this.endElement();
+                    } else if (ch == '!') {
+                        if ((this.readChar() != '-')
+                            || (this.readChar() != '-')) {
+                            throw this.expectedInput("Comment or Element");
+                        }
+                        this.skipComment();
+                        this.state = BEFORE_CHILD;
+                    } else {
+                        this.unreadChar();
+                        return this.startElement();
+                    }
+                    break;
+
+                case AFTER_TEXT:
+                    if (this.readChar() != '/') {
+                        throw this.expectedInput("/");
+                    }
+                    this.scanEndTag();
+                    return this.endElement();
+
+                default:
+                    return this.eventType = END_DOCUMENT;
+            }
+        }
+    }
+
+
+    /**
+     * Skips the remainder of the current element, including all its
+     * child elements.
+     *
+     * <dl><dt><b>Preconditions:</b></dt><dd>
+     * <ul><li>The current event is {@code START_ELEMENT},
+     *         {@code ATTRIBUTE} or {@code TEXT}.
+     * </ul></dd></dl>
+     *
+     * <dl><dt><b>Postconditions:</b></dt><dd>
+     * <ul><li>The current event is the {@code END_ELEMENT} event of the
+     *         element.
+     * </ul></dd></dl>
+     */
+    public void skipElement()
+        throws IOException
+    {
+        int depth = this.openElements.size();
+        while (this.next() != END_ELEMENT
+               || this.openElements.size() >= depth) {
+        }
+    }
+
+
+    /**
+     * Returns the type of the current event.
+     */
+    public int getEventType()
+    {
+        return this.eventType;
+    }
+
+
+    /**
+     * Returns the name of the element or of the attribute of the current
+     * event. Returns {@code null} for {@code TEXT} and
+     * {@code END_DOCUMENT} events.
+     */
+    public String getName()
+    {
+        return this.name;
+    }
+
+
+    /**
+     * Returns the value of the attribute or the #PCDATA of the current
+     * event. Returns {@code null} for other events.
+     */
+    public String getText()
+    {
+        return this.text;
+    }
+
+
+    /**
+     * Returns the number of open elements. The root element has depth 1.
+     * The depth of a {@code START_ELEMENT} event includes the element,
+     * the depth of an {@code END_ELEMENT} event does not.
+     */
+    public int getDepth()
+    {
+        return this.openElements.size();
+    }
+
+
+    /**
+     * Returns the current line number in the source content.
+     */
+    public int getLineNr()
+    {
+        return this.lineNr;
+    }
+
+
+    /**
+     * Scans the name of an element.
+     */
+    int startElement()
+        throws IOException
+    {
+        this.name = this.scanIdentifier();
+        this.openElements.add(this.name);
+        this.state = IN_START_TAG;
+        return this.eventType = START_ELEMENT;
+    }
+
+
+    /**
+     * Closes the current element.
+     */
+    private int endElement()
+    {
+        this.name = this.openElements.remove(this.openElements.size() - 1);
+        this.state = this.openElements.isEmpty() ? AFTER_ROOT : BEFORE_CHILD;
+        return this.eventType = END_ELEMENT;
+    }
+
+
+    /**
+     * Scans the content of an element up to the character following
+     * the next &lt; character. Returns a {@code TEXT} event if the
+     * element contains #PCDATA.
+     *
+     * <dl><dt><b>Preconditions:</b></dt><dd>
+     * <ul><li>The &gt; of the start tag has already been read.
+     * </ul></dd></dl>
+     */
+    private int scanContent()
+        throws IOException
+    {
+        StringBuilder data = this.textBuf;
+        data.setLength(0);
+        char ch = this.scanWhitespace(data);
+        if (ch != '<') {
+            this.unreadChar();
+            this.scanPCData(data);
+            return this.text();
+        }
+        for (;;) {
+            ch = this.readChar();
+            if (ch == '!') {
+                if (this.checkCDATA(data)) {
+                    this.scanPCData(data);
+                    return this.text();
+                }
+                ch = this.scanWhitespace(data);
+                if (ch != '<') {
+                    this.unreadChar();
+                    this.scanPCData(data);
+                    return this.text();
+                }
+            } else {
+                this.unreadChar();
+                if ((ch != '/') || this.ignoreWhitespace) {
+                    data.setLength(0);
+                }
+                if (data.length() == 0) {
+                    this.state = AFTER_LT;
+                    return this.next();
+                }
+                return this.text();
+            }
+        }
+    }
+
+
+    /**
+     * Returns a {@code TEXT} event with the scanned #PCDATA.
+     */
+    private int text()
+    {
+        this.text = this.ignoreWhitespace
+                    ? this.textBuf.toString().trim()
+                    : this.textBuf.toString();
+        this.state = AFTER_TEXT;
+        return this.eventType = TEXT;
+    }
+
+
+    /**
+     * Scans an end tag.
+     *
+     * <dl><dt><b>Preconditions:</b></dt><dd>
+     * <ul><li>The &lt;/ has already been read.
+     * </ul></dd></dl>
+     */
+    private void scanEndTag()
+        throws IOException
+    {
+        this.scanWhitespace();
+        this.unreadChar();
+        String elementName = this.openElements.get(this.openElements.size() - 1);
+        if (! this.checkLiteral(elementName)) {
+            throw this.expectedInput(elementName);
+        }
+        if (this.scanWhitespace() != '>') {
+            throw this.expectedInput(">");
+        }
+    }
+
+
+    /**
+     * Fills the buffer with the next block of characters from the reader.
+     *
+     * <dl><dt><b>Preconditions:</b></dt><dd>
+     * <ul><li>All characters in the buffer have been read.
+     * </ul></dd></dl>
+     */
+    private void fill()
+        throws IOException
+    {
+        int count;
+        do {
+            count = this.reader.read(this.buf, 0, this.buf.length);
+        } while (count == 0);
+        if (count < 0) {
+            throw this.unexpectedEndOfData();
+        }
+        this.pos = 0;
+        this.limit = count;
+    }
+
+
+    /**
+     * Reads a character.
+     */
+    char readChar()
+        throws IOException
+    {
+        if (this.pos >= this.limit) {
+            this.fill();
+        }
+        char ch = this.buf[this.pos++];
+        if (ch == '\n') {
+            this.lineNr += 1;
+        }
+        return ch;
+    }
+
+
+    /**
+     * Pushes the last read character back.
+     *
+     * <dl><dt><b>Preconditions:</b></dt><dd>
+     * <ul><li>No character has been pushed back since the last read.
+     * </ul></dd></dl>
+     */
+    void unreadChar()
+    {
+        this.pos -= 1;
+        if (this.buf[this.pos] == '\n') {
+            this.lineNr -= 1;
+        }
+    }
+
+
+    /**
+     * Scans an identifier.
+     *
+     * <dl><dt><b>Preconditions:</b></dt><dd>
+     * <ul><li>The next character read from the reader is a valid first
+     *         character of an XML identifier.
+     * </ul></dd></dl>
+     *
+     * <dl><dt><b>Postconditions:</b></dt><dd>
+     * <ul><li>The next character read from the reader won't be an identifier
+     *         character.
+     * </ul></dd></dl>
+     */
+    String scanIdentifier()
+        throws IOException
+    {
+        StringBuilder result = null;
+        for (;;) {
+            if (this.pos >= this.limit) {
+                this.fill();
+            }
+            int start = this.pos;
+            while (this.pos < this.limit) {
+                char ch = this.buf[this.pos];
+                if (((ch < 'A') || (ch > 'Z')) && ((ch < 'a') || (ch > 'z'))
+                    && ((ch < '0') || (ch > '9')) && (ch != '_') && (ch != '.')
+                    && (ch != ':') && (ch != '-') && (ch <= '~')) {
+                    break;
+                }
+                this.pos += 1;
+            }
+            if (this.pos < this.limit) {
+                if (result == null) {
+                    return new String(this.buf, start, this.pos - start);
+                }
+                result.append(this.buf, start, this.pos - start);
+                return result.toString();
+            }
+            if (result == null) {
+                result = new StringBuilder();
+            }
+            result.append(this.buf, start, this.pos - start);
+        }
+    }
+
+
+    /**
+     * Skips whitespace.
+     *
+     * @return the next character following the whitespace.
+     */
+    char scanWhitespace()
+        throws IOException
+    {
+        for (;;) {
+            char ch = this.readChar();
+            switch (ch) {
+                case ' ':
+                case '\t':
+                case '\n':
+                case '\r':
+                    break;
+                default:
+                    return ch;
+            }
+        }
+    }
+
+
+    /**
+     * Skips whitespace. The scanned whitespace is appended to
+     * {@code result}.
+     *
+     * @return the next character following the whitespace.
+     */
+    char scanWhitespace(StringBuilder result)
+        throws IOException
+    {
+        for (;;) {
+            char ch = this.readChar();
+            switch (ch) {
+                case ' ':
+                case '\t':
+                case '\n':
+                    result.append(ch);
+                case '\r':
+                    break;
+                default:
+                    return ch;
+            }
+        }
+    }
+
+
+    /**
+     * Scans a delimited string. The scanned string without delimiters is
+     * appended to {@code string}.
+     *
+     * <dl><dt><b>Preconditions:</b></dt><dd>
+     * <ul><li>the next char read is the string delimiter
+     * </ul></dd></dl>
+     */
+    void scanString(StringBuilder string)
+        throws IOException
+    {
+        char delimiter = this.readChar();
+        if ((delimiter != '\'') && (delimiter != '"')) {
+            throw this.expectedInput("' or \"");
+        }
+        for (;;) {
+            char ch = this.readChar();
+            if (ch == delimiter) {
+                return;
+            } else if (ch == '&') {
+                this.resolveEntity(string);
+            } else {
+                string.append(ch);
+            }
+        }
+    }
+
+
+    /**
+     * Scans a #PCDATA element. CDATA sections and entities are resolved.
+     * The next &lt; char is skipped.
+     * The scanned data is appended to {@code data}.
+     */
+    void scanPCData(StringBuilder data)
+        throws IOException
+    {
+        for (;;) {
+            if (this.pos >= this.limit) {
+                this.fill();
+            }
+            int start = this.pos;
+            char ch = '\0';
+            while (this.pos < this.limit) {
+                ch = this.buf[this.pos];
+                if ((ch == '<') || (ch == '&')) {
+                    break;
+                } else if (ch == '\n') {
+                    this.lineNr += 1;
+                }
+                this.pos += 1;
+            }
+            data.append(this.buf, start, this.pos - start);
+            if (this.pos < this.limit) {
+                this.pos += 1;
+                if (ch == '<') {
+                    ch = this.readChar();
+                    if (ch == '!') {
+                        this.checkCDATA(data);
+                    } else {
+                        this.unreadChar();
+                        return;
+                    }
+                } else {
+                    this.resolveEntity(data);
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Scans a special tag and if the tag is a CDATA section, append its
+     * content to {@code buf}.
+     *
+     * <dl><dt><b>Preconditions:</b></dt><dd>
+     * <ul><li>The first &lt;! has already been read.
+     * </ul></dd></dl>
+     */
+    boolean checkCDATA(StringBuilder buf)
+        throws IOException
+    {
+        char ch = this.readChar();
+        if (ch != '[') {
+            this.unreadChar();
+            this.skipSpecialTag(0);
+            return false;
+        } else if (! this.checkLiteral("CDATA[")) {
+            this.skipSpecialTag(1); // one [ has already been read
+            return false;
+        } else {
+            int delimiterCharsSkipped = 0;
+            while (delimiterCharsSkipped < 3) {
+                ch = this.readChar();
+                switch (ch) {
+                    case ']':
+                        if (delimiterCharsSkipped < 2) {
+                            delimiterCharsSkipped += 1;
+                        } else {
+                            buf.append(']');
+                            buf.append(']');
+                            delimiterCharsSkipped = 0;
+                        }
+                        break;
+                    case '>':
+                        if (delimiterCharsSkipped < 2) {
+                            for (int i = 0; i < delimiterCharsSkipped; i++) {
+                                buf.append(']');
+                            }
+                            delimiterCharsSkipped = 0;
+                            buf.append('>');
+                        } else {
+                            delimiterCharsSkipped = 3;
+                        }
+                        break;
+                    default:
+                        for (int i = 0; i < delimiterCharsSkipped; i += 1) {
+                            buf.append(']');
+                        }
+                        buf.append(ch);
+                        delimiterCharsSkipped = 0;
+                }
+            }
+            return true;
+        }
+    }
+
+
+    /**
+     * Skips a comment.
+     *
+     * <dl><dt><b>Preconditions:</b></dt><dd>
+     * <ul><li>The first &lt;!-- has already been read.
+     * </ul></dd></dl>
+     */
+    void skipComment()
+        throws IOException
+    {
+        int dashesToRead = 2;
+        while (dashesToRead > 0) {
+            char ch = this.readChar();
+            if (ch == '-') {
+                dashesToRead -= 1;
+            } else {
+                dashesToRead = 2;
+            }
+        }
+        if (this.readChar() != '>') {
+            throw this.expectedInput(">");
+        }
+    }
+
+
+    /**
+     * Skips a special tag or comment.
+     *
+     * @param bracketLevel The number of open square brackets ([) that have
+     *                     already been read.
+     *
+     * <dl><dt><b>Preconditions:</b></dt><dd>
+     * <ul><li>The first &lt;! has already been read.
+     *     <li>{@code bracketLevel >= 0}
+     * </ul></dd></dl>
+     */
+    void skipSpecialTag(int bracketLevel)
+        throws IOException
+    {
+        int tagLevel = 1; // <
+        char stringDelimiter = '\0';
+        if (bracketLevel == 0) {
+            char ch = this.readChar();
+            if (ch == '[') {
+                bracketLevel += 1;
+            } else if (ch == '-') {
+                ch = this.readChar();
+                if (ch == '[') {
+                    bracketLevel += 1;
+                } else if (ch == ']') {
+                    bracketLevel -= 1;
+                } else if (ch == '-') {
+                    this.skipComment();
+                    return;
+                }
+            }
+        }
+        while (tagLevel > 0) {
+            char ch = this.readChar();
+            if (stringDelimiter == '\0') {
+                if ((ch == '"') || (ch == '\'')) {
+                    stringDelimiter = ch;
+                } else if (bracketLevel <= 0) {
+                    if (ch == '<') {
+                        tagLevel += 1;
+                    } else if (ch == '>') {
+                        tagLevel -= 1;
+                    }
+                }
+                if (ch == '[') {
+                    bracketLevel += 1;
+                } else if (ch == ']') {
+                    bracketLevel -= 1;
+                }
+            } else {
+                if (ch == stringDelimiter) {
+                    stringDelimiter = '\0';
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Scans the data for literal text.
+     * Scanning stops when a character does not match or after the complete
+     * text has been checked, whichever comes first.
+     *
+     * @param literal the literal to check.
+     */
+    boolean checkLiteral(String literal)
+        throws IOException
+    {
+        int length = literal.length();
+        for (int i = 0; i < length; i += 1) {
+            if (this.readChar() != literal.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * Resolves an entity. The name of the entity is read from the reader.
+     * The value of the entity is appended to {@code buf}.
+     *
+     * <dl><dt><b>Preconditions:</b></dt><dd>
+     * <ul><li>The first &amp; has already been read.
+     * </ul></dd></dl>
+     */
+    void resolveEntity(StringBuilder buf)
+        throws IOException
+    {
+        char ch = '\0';
+        StringBuilder keyBuf = new StringBuilder();
+        for (;;) {
+            ch = this.readChar();
+            if (ch == ';') {
+                break;
+            }
+            keyBuf.append(ch);
+        }
+        String key = keyBuf.toString();
+        if (key.length() == 0) {
+            throw this.unknownEntity(key);
+        }
+        if (key.charAt(0) == '#') {
+            try {
+                if (key.charAt(1) == 'x') {
+                    ch = (char) Integer.parseInt(key.substring(2), 16);
+                } else {
+                    ch = (char) Integer.parseInt(key.substring(1), 10);
+                }
+            } catch (NumberFormatException e) {
+                throw this.unknownEntity(key);
+            } catch (StringIndexOutOfBoundsException e) {
+                throw this.unknownEntity(key);
+            }
+            buf.append(ch);
+        } else {
+            char[] value = (char[]) this.entities.get(key);
+            if (value == null) {
+                throw this.unknownEntity(key);
+            }
+            buf.append(value);
+        }
+    }
+
+
+    /**
+     * Returns the name of the innermost open element, or {@code null}.
+     */
+    private String getElementName()
+    {
+        return this.openElements.isEmpty()
+               ? null
+               : this.openElements.get(this.openElements.size() - 1);
+    }
+
+
+    /**
+     * Creates a parse exception for when the end of the data input has been
+     * reached.
+     */
+    private XMLParseException unexpectedEndOfData()
+    {
+        String msg = "Unexpected end of data reached";
+        return new XMLParseException(this.getElementName(), this.lineNr, msg);
+    }
+
+
+    /**
+     * Creates a parse exception for when the next character read is not
+     * the character that was expected.
+     *
+     * @param charSet The set of characters (in human readable form) that was
+     *                expected.
+     */
+    private XMLParseException expectedInput(String charSet)
+    {
+        String msg = "Expected: " + charSet;
+        return new XMLParseException(this.getElementName(), this.lineNr, msg);
+    }
+
+
+    /**
+     * Creates a parse exception for when an entity could not be resolved.
+     *
+     * @param name The name of the entity.
+     */
+    private XMLParseException unknownEntity(String name)
+    {
+        String msg = "Unknown or invalid entity: &" + name + ";";
+        return new XMLParseException(this.getElementName(), this.lineNr, msg);
+    }
+
+}
@@ -0,0 +1,165 @@
+/*
+ * @(#)CollationKeySorter.java
+ *
+ * Copyright (c) 2015 Werner Randelshofer, Switzerland.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package ch.randelshofer.quaqua.filechooser;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Sorts collation keys through a permutation of indices.
+ * <p>
+ * The keys are given as byte arrays obtained from
+ * {@code CollationKey.toByteArray()}. Comparing these byte arrays yields the
+ * same result as comparing the collation keys, but does not need to go
+ * through the collator. Optionally, each key can be preceded by a group
+ * number, which takes precedence over the key.
+ * <p>
+ * The sort is stable. Large arrays are sorted in parallel on the common
+ * fork-join pool.
+ *
+ * @version $Id$
+ */
+public class CollationKeySorter {
+
+    /**
+     * Arrays with more elements than this are sorted in parallel.
+     */
+    private final static int PARALLEL_THRESHOLD = 8192;
+    /**
+     * Ranges with less elements than this are sorted with insertion sort.
+     */
+    private final static int INSERTION_THRESHOLD = 16;
+    private final byte[][] keys;
+    private final int[] groups;
+
+    /**
+     * Prevent instance creation from outside of this class.
+     */
+    private CollationKeySorter(byte[][] keys, int[] groups) {
+        this.keys = keys;
+        this.groups = groups;
+    }
+
+    /**
+     * Returns the permutation which sorts the specified keys.
+     *
+     * @param keys The keys obtained from {@code CollationKey.toByteArray()}.
+     * @param groups The group numbers of the keys, or null. Keys with a
+     * lower group number precede keys with a higher group number.
+     * @return An array of indices into keys, in ascending order of the keys.
+     */
+    public static int[] sort(byte[][] keys, int[] groups) {
+        int n = keys.length;
+        int[] perm = new int[n];
+        for (int i = 0; i < n; i++) {
+            perm[i] = i;
+        }
+        CollationKeySorter sorter = new CollationKeySorter(keys, groups);
+        int[] tmp = new int[n];
+        if (n > PARALLEL_THRESHOLD) {
+            ForkJoinPool.commonPool().invoke(sorter.new SortTask(perm, tmp, 0, n));
+        } else {
+            sorter.sort(perm, tmp, 0, n);
+        }
+        return perm;
+    }
+
+    /**
+     * Compares the keys with the indices a and b.
+     */
+    private int compare(int a, int b) {
+        if (groups != null && groups[a] != groups[b]) {
+            return groups[a] < groups[b] ? -1 : 1;
+        }
+        return compare(keys[a], keys[b]);
+    }
+
+    /**
+     * Compares two byte arrays lexicographically as unsigned bytes.
+     */
+    public static int compare(byte[] a, byte[] b) {
+        int n = Math.min(a.length, b.length);
+        for (int i = 0; i < n; i++) {
+            int d = (a[i] & 0xff) - (b[i] & 0xff);
+            if (d != 0) {
+                return d;
+            }
+        }
+        return a.length - b.length;
+    }
+
+    /**
+     * Sorts the range [lo, hi) of perm, using tmp as scratch space.
+     */
+    private void sort(int[] perm, int[] tmp, int lo, int hi) {
+        if (hi - lo < INSERTION_THRESHOLD) {
+            for (int i = lo + 1; i < hi; i++) {
+                int p = perm[i];
+                int j = i - 1;
+                while (j >= lo && compare(perm[j], p) > 0) {
+                    perm[j + 1] = perm[j];
+                    j--;
+                }
+                perm[j + 1] = p;
+            }
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        sort(perm, tmp, lo, mid);
+        sort(perm, tmp, mid, hi);
+        merge(perm, tmp, lo, mid, hi);
+    }
+
+    /**
+     * Merges the sorted ranges [lo, mid) and [mid, hi) of perm.
+     */
+    private void merge(int[] perm, int[] tmp, int lo, int mid, int hi) {
+        if (compare(perm[mid - 1], perm[mid]) <= 0) {
+            return;
+        }
+        System.arraycopy(perm, lo, tmp, lo, hi - lo);
+        int i = lo, j = mid, k = lo;
+        while (i < mid && j < hi) {
+            perm[k++] = (compare(tmp[i], tmp[j]) <= 0) ? tmp[i++] : tmp[j++];
+        }
+        while (i < mid) {
+            perm[k++] = tmp[i++];
+        }
+        while (j < hi) {
+            perm[k++] = tmp[j++];
+        }
+    }
+
+    /**
+     * Sorts a range of the permutation, splitting it in halves that are
+     * sorted in parallel.
+     */
+    private class SortTask extends RecursiveAction {
+
+        private final int[] perm, tmp;
+        private final int lo, hi;
+
+        public SortTask(int[] perm, int[] tmp, int lo, int hi) {
+            this.perm = perm;
+            this.tmp = tmp;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo <= PARALLEL_THRESHOLD) {
+                sort(perm, tmp, lo, hi);
+            } else {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new SortTask(perm, tmp, lo, mid), new SortTask(perm, tmp, mid, hi));
+                merge(perm, tmp, lo, mid, hi);
+            }
+        }
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * @(#)DirectoryWatcher.java
+ *
+ * Copyright (c) 2015 Werner Randelshofer, Switzerland.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package ch.randelshofer.quaqua.filechooser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Watches a bounded number of directories for changes using a
+ * {@code java.nio.file.WatchService}.
+ * <p>
+ * Each watched directory is associated with a node object. When the
+ * number of watched directories exceeds the maximum, the watch of the
+ * least recently used node is cancelled. Nodes are used when they are
+ * registered or touched.
+ * <p>
+ * Changes are reported to the listener on the watcher thread.
+ *
+ * @param <N> The type of the node objects.
+ * @version $Id$
+ */
+public class DirectoryWatcher<N> {
+
+    /**
+     * Receives the changes of the watched directories.
+     */
+    public interface Listener<N> {
+
+        /**
+         * Invoked on the watcher thread when entries of a watched directory
+         * have been created, deleted or modified.
+         *
+         * @param node The node associated with the directory.
+         * @param dir The directory.
+         * @param events The events. The context of an event is the relative
+         * path of the entry.
+         */
+        public void directoryChanged(N node, File dir, List<WatchEvent<?>> events);
+
+        /**
+         * Invoked on the watcher thread when a watched directory can no
+         * longer be watched, for example because it has been deleted.
+         *
+         * @param node The node associated with the directory.
+         */
+        public void directoryInvalidated(N node);
+    }
+    private final Listener<N> listener;
+    private final int maxWatchCount;
+    private final WatchService watchService;
+    /**
+     * Maps nodes to watch keys in least recently used order.
+     */
+    private final LinkedHashMap<N, WatchKey> nodeToKey = new LinkedHashMap<N, WatchKey>(16, 0.75f, true);
+    private final HashMap<WatchKey, N> keyToNode = new HashMap<WatchKey, N>();
+    private final HashMap<WatchKey, File> keyToDir = new HashMap<WatchKey, File>();
+    private Thread watcherThread;
+    private volatile boolean isClosed;
+
+    /**
+     * Creates a new DirectoryWatcher.
+     *
+     * @param maxWatchCount The maximal number of watched directories.
+     * @param listener The listener.
+     * @throws IOException if the file system does not support watching.
+     */
+    public DirectoryWatcher(int maxWatchCount, Listener<N> listener) throws IOException {
+        this.maxWatchCount = Math.max(1, maxWatchCount);
+        this.listener = listener;
+        this.watchService = FileSystems.getDefault().newWatchService();
+    }
+
+    /**
+     * Starts watching the directory for the specified node. If the node is
+     * already being watched, this method has the same effect as
+     * {@link #touch}.
+     *
+     * @return Returns true if the directory is being watched.
+     */
+    public boolean register(N node, File dir) {
+        synchronized (nodeToKey) {
+            if (isClosed) {
+                return false;
+            }
+            WatchKey key = nodeToKey.get(node);
+            if (key != null && key.isValid()) {
+                return true;
+            }
+            try {
+                key = dir.toPath().register(watchService,
+                        StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE,
+                        StandardWatchEventKinds.ENTRY_MODIFY);
+            } catch (IOException e) {
+                return false;
+            } catch (RuntimeException e) {
+                // InvalidPathException, UnsupportedOperationException, SecurityException
+                return false;
+            }
+            // Two nodes may denote the same directory, e.g. an alias and
+            // its original. The watch service returns the same key for both.
+            N oldNode = keyToNode.get(key);
+            if (oldNode != null && oldNode != node) {
+                nodeToKey.remove(oldNode);
+            }
+            nodeToKey.put(node, key);
+            keyToNode.put(key, node);
+            keyToDir.put(key, dir);
+
+            // Evict least recently used watches
+            for (Iterator<Map.Entry<N, WatchKey>> i = nodeToKey.entrySet().iterator();
+                    nodeToKey.size() > maxWatchCount && i.hasNext();) {
+                WatchKey evictedKey = i.next().getValue();
+                i.remove();
+                cancel(evictedKey);
+            }
+            startWatcherThread();
+            return true;
+        }
+    }
+
+    /**
+     * Marks the node as recently used.
+     *
+     * @return Returns true if the directory of the node is being watched.
+     */
+    public boolean touch(N node) {
+        synchronized (nodeToKey) {
+            WatchKey key = nodeToKey.get(node);
+            return key != null && key.isValid();
+        }
+    }
+
+    /**
+     * Stops watching the directory of the specified node.
+     */
+    public void unregister(N node) {
+        synchronized (nodeToKey) {
+            WatchKey key = nodeToKey.remove(node);
+            if (key != null) {
+                cancel(key);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of watched directories.
+     */
+    public int getWatchCount() {
+        synchronized (nodeToKey) {
+            return nodeToKey.size();
+        }
+    }
+
+    private void cancel(WatchKey key) {
+        key.cancel();
+        keyToNode.remove(key);
+        keyToDir.remove(key);
+    }
+
+    /**
+     * Stops watching all directories and stops the watcher thread.
+     */
+    public void close() {
+        synchronized (nodeToKey) {
+            isClosed = true;
+            nodeToKey.clear();
+            keyToNode.clear();
+            keyToDir.clear();
+        }
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            // suppress
+        }
+    }
+
+    private void startWatcherThread() {
+        if (watcherThread == null) {
+            watcherThread = new Thread("Quaqua Directory Watcher") {
+
+                @Override
+                public void run() {
+                    processEvents();
+                }
+            };
+            try {
+                watcherThread.setDaemon(true);
+            } catch (SecurityException e) {
+                e.printStackTrace();
+            }
+            watcherThread.start();
+        }
+    }
+
+    /**
+     * Takes watch keys from the watch service and informs the listener,
+     * until the watcher is closed.
+     */
+    private void processEvents() {
+        while (!isClosed) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException e) {
+                return;
+            } catch (ClosedWatchServiceException e) {
+                return;
+            }
+            List<WatchEvent<?>> events = key.pollEvents();
+            boolean isValid = key.reset();
+            N node;
+            File dir;
+            synchronized (nodeToKey) {
+                node = keyToNode.get(key);
+                dir = keyToDir.get(key);
+                if (node != null && !isValid) {
+                    nodeToKey.remove(node);
+                    keyToNode.remove(key);
+                    keyToDir.remove(key);
+                }
+            }
+            if (node != null) {
+                try {
+                    if (!events.isEmpty()) {
+                        listener.directoryChanged(node, dir, events);
+                    }
+                    if (!isValid) {
+                        listener.directoryInvalidated(node);
+                    }
+                } catch (Throwable e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+}
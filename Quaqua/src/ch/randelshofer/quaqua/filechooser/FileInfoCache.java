@@ -0,0 +1,386 @@
+/*
+ * @(#)FileInfoCache.java
+ *
+ * Copyright (c) 2015 Werner Randelshofer, Switzerland.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package ch.randelshofer.quaqua.filechooser;
+
+import ch.randelshofer.quaqua.QuaquaManager;
+import java.io.*;
+import java.lang.ref.SoftReference;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import javax.swing.*;
+
+/**
+ * A process-wide cache for the information about files that is expensive
+ * to determine: the icon, the user name, the label and the tag names.
+ * <p>
+ * The entries are keyed by the path of the file. An entry is only valid
+ * as long as the last modification time and the length of the file are
+ * unchanged. The cache holds a bounded number of entries, and evicts the
+ * least recently used entry when the bound is exceeded. Icons are softly
+ * referenced.
+ * <p>
+ * Optionally, the cache can be stored in a compact snapshot file, which is
+ * loaded when the cache is created. Icons are not stored in the snapshot.
+ * <p>
+ * The shared instance of the cache can be configured with the following
+ * properties, which are read with {@link QuaquaManager#getProperty}:
+ * <ul>
+ * <li>{@code Quaqua.FileChooser.infoCacheSize} Maximal number of entries.
+ * The default value is 10000. A value of 0 disables the cache.</li>
+ * <li>{@code Quaqua.FileChooser.infoCacheFile} Path of the snapshot file.
+ * If this property is set, the snapshot is loaded when the cache is created,
+ * and stored when the Java VM shuts down.</li>
+ * </ul>
+ *
+ * @version $Id$
+ */
+public class FileInfoCache {
+
+    private final static int SNAPSHOT_MAGIC = 0x51464943; // "QFIC"
+    private final static int SNAPSHOT_VERSION = 1;
+    /**
+     * The maximal number of tag names of an entry in a snapshot file.
+     */
+    private final static int MAX_TAG_COUNT = 1024;
+    private static FileInfoCache sharedInstance;
+    private final int maxSize;
+    private final LinkedHashMap<String, Entry> entries;
+    private long hitCount;
+    private long missCount;
+
+    /**
+     * Holds the cached information about a file.
+     * Entries are immutable.
+     */
+    public static class Entry {
+
+        private final String path;
+        private final long lastModified;
+        private final long length;
+        /**
+         * The FileView which was used to determine the icon and the
+         * user name, or null for the default FileView of the file chooser.
+         */
+        private final Object view;
+        private final SoftReference<Icon> icon;
+        private final String userName;
+        private final boolean hasLabel;
+        private final int fileLabel;
+        private final String[] tagNames;
+
+        public Entry(File file, long lastModified, long length, Object view,
+                Icon icon, String userName, boolean hasLabel, int fileLabel, String[] tagNames) {
+            this(file.getPath(), lastModified, length, view, icon, userName, hasLabel, fileLabel, tagNames);
+        }
+
+        private Entry(String path, long lastModified, long length, Object view,
+                Icon icon, String userName, boolean hasLabel, int fileLabel, String[] tagNames) {
+            this.path = path;
+            this.lastModified = lastModified;
+            this.length = length;
+            this.view = view;
+            this.icon = (icon == null) ? null : new SoftReference<Icon>(icon);
+            this.userName = userName;
+            this.hasLabel = hasLabel;
+            this.fileLabel = fileLabel;
+            this.tagNames = tagNames;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        /**
+         * Returns the icon, or null if the icon is not known or has been
+         * garbage collected.
+         */
+        public Icon getIcon() {
+            return (icon == null) ? null : icon.get();
+        }
+
+        /**
+         * Returns the user name, or null if the user name is not known.
+         */
+        public String getUserName() {
+            return userName;
+        }
+
+        /**
+         * Returns true, if the label and the tag names are known.
+         */
+        public boolean hasLabel() {
+            return hasLabel;
+        }
+
+        public int getFileLabel() {
+            return fileLabel;
+        }
+
+        public String[] getTagNames() {
+            return tagNames;
+        }
+
+        /**
+         * Returns true, if the entry is valid for a file with the specified
+         * last modification time and length.
+         */
+        public boolean isValid(long lastModified, long length) {
+            return this.lastModified == lastModified && this.length == length;
+        }
+    }
+
+    /**
+     * Creates a new cache.
+     *
+     * @param maxSize The maximal number of entries.
+     */
+    public FileInfoCache(int maxSize) {
+        this.maxSize = maxSize;
+        this.entries = new LinkedHashMap<String, Entry>(Math.min(maxSize, 1024), 0.75f, true) {
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > FileInfoCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * Returns the shared instance of the cache.
+     */
+    public static synchronized FileInfoCache getSharedInstance() {
+        if (sharedInstance == null) {
+            int size;
+            try {
+                size = Integer.parseInt(QuaquaManager.getProperty("Quaqua.FileChooser.infoCacheSize", "10000"));
+            } catch (NumberFormatException e) {
+                size = 10000;
+            }
+            sharedInstance = new FileInfoCache(size);
+            String snapshot = QuaquaManager.getProperty("Quaqua.FileChooser.infoCacheFile");
+            if (snapshot != null && size > 0) {
+                final File snapshotFile = new File(snapshot);
+                if (snapshotFile.isFile()) {
+                    try {
+                        sharedInstance.load(snapshotFile);
+                    } catch (IOException e) {
+                        // The snapshot is just an optimization, ignore it.
+                    } catch (RuntimeException e) {
+                        // The snapshot is just an optimization, ignore it.
+                    }
+                }
+                try {
+                    Runtime.getRuntime().addShutdownHook(new Thread("Quaqua FileInfoCache Snapshot") {
+
+                        @Override
+                        public void run() {
+                            try {
+                                sharedInstance.save(snapshotFile);
+                            } catch (IOException e) {
+                                // The snapshot is just an optimization, ignore it.
+                            }
+                        }
+                    });
+                } catch (SecurityException e) {
+                    // suppress
+                }
+            }
+        }
+        return sharedInstance;
+    }
+
+    /**
+     * Returns the entry for the specified file without checking whether the
+     * file has been changed. Returns null if there is no entry for the file,
+     * or if the entry has been created with a different FileView.
+     * <p>
+     * This method does no I/O, and can be used on the AWT event dispatcher
+     * thread to display the last known information about a file.
+     */
+    public synchronized Entry get(File file, Object view) {
+        Entry entry = entries.get(file.getPath());
+        return (entry == null || entry.view != view) ? null : entry;
+    }
+
+    /**
+     * Returns the entry for the specified file if it is valid for the
+     * specified last modification time and length. Removes the entry, if it
+     * is not valid.
+     */
+    public synchronized Entry get(File file, Object view, long lastModified, long length) {
+        String path = file.getPath();
+        Entry entry = entries.get(path);
+        if (entry != null && (entry.view != view || !entry.isValid(lastModified, length))) {
+            entries.remove(path);
+            entry = null;
+        }
+        if (entry == null) {
+            missCount++;
+        } else {
+            hitCount++;
+        }
+        return entry;
+    }
+
+    /**
+     * Puts an entry into the cache.
+     */
+    public synchronized void put(Entry entry) {
+        if (maxSize > 0) {
+            entries.put(entry.path, entry);
+        }
+    }
+
+    /**
+     * Removes the entry for the specified file.
+     */
+    public synchronized void remove(File file) {
+        entries.remove(file.getPath());
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Loads entries from a snapshot file.
+     *
+     * @throws IOException if the file can not be read, or if it is not a
+     * valid snapshot file.
+     */
+    public void load(File snapshotFile) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshotFile)));
+        try {
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION) {
+                throw new IOException("Unsupported snapshot " + snapshotFile);
+            }
+            int count = in.readInt();
+            if (count < 0) {
+                throw new IOException("Illegal entry count " + count + " in snapshot " + snapshotFile);
+            }
+            ArrayList<Entry> loaded = new ArrayList<Entry>(Math.min(count, maxSize));
+            for (int i = 0; i < count; i++) {
+                String path = in.readUTF();
+                long lastModified = in.readLong();
+                long length = in.readLong();
+                String userName = in.readBoolean() ? in.readUTF() : null;
+                boolean hasLabel = in.readBoolean();
+                int fileLabel = in.readInt();
+                int tagCount = in.readInt();
+                String[] tagNames = null;
+                if (tagCount > MAX_TAG_COUNT) {
+                    throw new IOException("Illegal tag count " + tagCount + " in snapshot " + snapshotFile);
+                }
+                if (tagCount >= 0) {
+                    tagNames = new String[tagCount];
+                    for (int j = 0; j < tagCount; j++) {
+                        tagNames[j] = in.readUTF();
+                    }
+                }
+                loaded.add(new Entry(path, lastModified, length, null, null, userName, hasLabel, fileLabel, tagNames));
+            }
+            synchronized (this) {
+                for (Entry entry : loaded) {
+                    if (!entries.containsKey(entry.path)) {
+                        put(entry);
+                    }
+                }
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Stores the entries, which have been created with the default FileView
+     * of the file chooser, into a snapshot file.
+     * <p>
+     * The entries are written into a temporary file, which replaces the
+     * snapshot file when it is complete. Thus a concurrent load or an
+     * interrupted save never sees a partially written snapshot.
+     */
+    public void save(File snapshotFile) throws IOException {
+        ArrayList<Entry> saved = new ArrayList<Entry>();
+        synchronized (this) {
+            for (Entry entry : entries.values()) {
+                if (entry.view == null) {
+                    saved.add(entry);
+                }
+            }
+        }
+        File dir = snapshotFile.getAbsoluteFile().getParentFile();
+        File tmpFile = File.createTempFile(snapshotFile.getName(), ".tmp", dir);
+        boolean isComplete = false;
+        try {
+            writeSnapshot(tmpFile, saved);
+            try {
+                Files.move(tmpFile.toPath(), snapshotFile.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmpFile.toPath(), snapshotFile.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+            isComplete = true;
+        } finally {
+            if (!isComplete) {
+                tmpFile.delete();
+            }
+        }
+    }
+
+    private void writeSnapshot(File file, ArrayList<Entry> saved) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeInt(saved.size());
+            for (Entry entry : saved) {
+                out.writeUTF(entry.path);
+                out.writeLong(entry.lastModified);
+                out.writeLong(entry.length);
+                out.writeBoolean(entry.userName != null);
+                if (entry.userName != null) {
+                    out.writeUTF(entry.userName);
+                }
+                out.writeBoolean(entry.hasLabel);
+                out.writeInt(entry.fileLabel);
+                if (entry.tagNames == null) {
+                    out.writeInt(-1);
+                } else {
+                    out.writeInt(entry.tagNames.length);
+                    for (String tagName : entry.tagNames) {
+                        out.writeUTF(tagName);
+                    }
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -15,9 +15,18 @@ import ch.randelshofer.quaqua.osx.OSXFile;
 import ch.randelshofer.quaqua.*;
 import ch.randelshofer.quaqua.util.*;
 import java.util.*;
+import java.util.List;
 import java.awt.*;
 import java.io.*;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
 import java.text.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import javax.swing.*;
 import javax.swing.event.*;
 import javax.swing.tree.*;
@@ -82,10 +91,10 @@ public class FileSystemTreeModel implements TreeModel {
     private boolean isResolveFileLabels = true;
     /**
      * The collator used for sorting files.
-     * Note: We use a static variable here, because creating a collator is
-     * very expensive.
+     * Note: We use the shared instance of OSXCollator, because creating a
+     * collator is very expensive.
      */
-    private static Collator collator;
+    private Collator collator;
     /**
      * Dispatcher for the validation of file infos.
      */
@@ -102,6 +111,47 @@ public class FileSystemTreeModel implements TreeModel {
      * This is set to true, when we optimize for speed rather than for quality.
      */
     private boolean doItFast;
+    /**
+     * Runs the merges of validated directory listings on the AWT Event
+     * Dispatcher Thread.
+     * Note: We use a static variable here, because all tree models share the
+     * same AWT Event Dispatcher Thread.
+     */
+    private final static CoalescingInvoker mergeInvoker = new CoalescingInvoker();
+    /**
+     * This is set to true, when directory listings are streamed.
+     */
+    private boolean isStreaming;
+    /**
+     * Number of files in the first chunk of a streamed directory listing.
+     */
+    private final static int FIRST_STREAM_CHUNK_SIZE = 256;
+    /**
+     * Maximal number of files in a chunk of a streamed directory listing.
+     */
+    private final static int MAX_STREAM_CHUNK_SIZE = 16384;
+    /**
+     * Files are classified in parallel in ranges of this size.
+     */
+    private final static int CLASSIFY_THRESHOLD = 128;
+    /**
+     * This is set to true, when expanded directories are watched for
+     * changes instead of being re-validated periodically.
+     */
+    private boolean isWatching;
+    /**
+     * Maximal number of watched directories.
+     */
+    private int maxWatchCount;
+    /**
+     * The directory watcher. This is null, if the directories are not
+     * being watched yet.
+     */
+    private DirectoryWatcher<DirectoryNode> watcher;
+    /**
+     * The cache for file infos. The cache is shared by all tree models.
+     */
+    private final FileInfoCache infoCache = FileInfoCache.getSharedInstance();
     /**
      * Creates a new instance.
      *
@@ -124,6 +174,13 @@ public class FileSystemTreeModel implements TreeModel {
         aliasResolutionDispatcher = new SequentialDispatcher();
 
         doItFast = UIManager.getBoolean("FileChooser.speed");
+        isStreaming = !"false".equals(QuaquaManager.getProperty("Quaqua.FileChooser.streaming", "true"));
+        isWatching = "true".equals(QuaquaManager.getProperty("Quaqua.FileChooser.watch", "false"));
+        try {
+            maxWatchCount = Integer.parseInt(QuaquaManager.getProperty("Quaqua.FileChooser.maxWatchCount", "64"));
+        } catch (NumberFormatException e) {
+            maxWatchCount = 64;
+        }
     }
 
     public void dispatchDirectoryUpdater(Runnable r) {
@@ -139,6 +196,40 @@ public class FileSystemTreeModel implements TreeModel {
         aliasResolutionDispatcher.dispatch(r);
     }
 
+    /**
+     * Returns the directory watcher. Returns null, if directories are not
+     * watched, or if the file system does not support watching.
+     */
+    private DirectoryWatcher<DirectoryNode> getWatcher() {
+        if (watcher == null && isWatching) {
+            try {
+                watcher = new DirectoryWatcher<DirectoryNode>(maxWatchCount, new DirectoryWatcher.Listener<DirectoryNode>() {
+
+                    public void directoryChanged(DirectoryNode node, File dir, List<WatchEvent<?>> events) {
+                        node.watchedDirectoryChanged(dir, events);
+                    }
+
+                    public void directoryInvalidated(final DirectoryNode node) {
+                        mergeInvoker.invokeLater(new Runnable() {
+
+                            public void run() {
+                                if (node.getRoot() == getRoot()) {
+                                    node.invalidateChildren();
+                                    node.validateChildren();
+                                }
+                            }
+                        });
+                    }
+                });
+            } catch (IOException e) {
+                isWatching = false;
+            } catch (UnsupportedOperationException e) {
+                isWatching = false;
+            }
+        }
+        return watcher;
+    }
+
     /**
      * Removes all children from the root node.
      */
@@ -175,11 +266,8 @@ public class FileSystemTreeModel implements TreeModel {
     }
 
     private int getIndexOfChildForFile(FileSystemTreeModel.Node parent, File file) {
-        for (int i = 0; i < parent.getChildCount(); i++) {
-            FileSystemTreeModel.Node n = (FileSystemTreeModel.Node) parent.getChildAt(i);
-            if (n.getFile().equals(file) || n.getResolvedFile().equals(file)) {
-                return i;
-            }
+        if (parent instanceof DirectoryNode) {
+            return ((DirectoryNode) parent).getIndexOfChildForFile(file);
         }
         return -1;
     }
@@ -206,21 +294,57 @@ public class FileSystemTreeModel implements TreeModel {
             } catch (IllegalComponentStateException e) {
                 locale = Locale.getDefault();
             }
-            collator = new OSXCollator(locale);
-            //collator = Collator.getInstance(locale);
+            collator = OSXCollator.getInstance(locale);
         }
         return collator;
     }
 
+    /**
+     * Sorts the nodes in the order of the node comparator.
+     * <p>
+     * The collation key of each node is computed only once. The nodes are
+     * then sorted through a permutation of indices, which compares the
+     * bytes of the collation keys, and does not go through the collator.
+     */
+    private void sortNodes(Node[] nodes) {
+        int n = nodes.length;
+        if (n < 2) {
+            return;
+        }
+        byte[][] keys = new byte[n][];
+        int[] groups = (getNodeComparator() instanceof FoldersFirstComparator) ? new int[n] : null;
+        for (int i = 0; i < n; i++) {
+            keys[i] = nodes[i].getCollationKey().toByteArray();
+            if (groups != null) {
+                groups[i] = nodes[i].isLeaf() ? 1 : 0;
+            }
+        }
+        int[] perm = CollationKeySorter.sort(keys, groups);
+        Node[] sorted = new Node[n];
+        for (int i = 0; i < n; i++) {
+            sorted[i] = nodes[perm[i]];
+        }
+        System.arraycopy(sorted, 0, nodes, 0, n);
+    }
+
+    /**
+     * Returns the index of the first child of parent, which is not less
+     * than the specified child. The children are sorted, therefore we can
+     * use a binary search.
+     */
     private int getInsertionIndexForNode(FileSystemTreeModel.Node parent, FileSystemTreeModel.Node child) {
         Comparator comparator = getNodeComparator();
-        int i;
-        for (i = 0; i < parent.getChildCount(); i++) {
-            if (comparator.compare(parent.getChildAt(i), child) >= 0) {
-                return i;
+        int low = 0;
+        int high = parent.getChildCount();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (comparator.compare(parent.getChildAt(mid), child) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
             }
         }
-        return i;
+        return low;
     }
 
     /**
@@ -477,7 +601,7 @@ public class FileSystemTreeModel implements TreeModel {
     public void setResolveAliasesToFiles(boolean newValue) {
         if (isResolveAliasesToFiles != newValue) {
             isResolveAliasesToFiles = newValue;
-            invalidateAll();
+            root.refilterTree(true);
         }
     }
 
@@ -523,6 +647,18 @@ public class FileSystemTreeModel implements TreeModel {
         root.invalidateTree();
     }
 
+    /**
+     * Re-applies file hiding and the file filter of the JFileChooser to all
+     * nodes in the tree.
+     * This should be used instead of invalidateAll, when only the file
+     * filter or the file hiding property of the JFileChooser has changed.
+     * Directories which have been read already are updated in memory, without
+     * reading them again.
+     */
+    public void refilterAll() {
+        root.refilterTree(false);
+    }
+
     /**
      * Stalls validation.
      * This should be used to stop validation of the tree model when it is no
@@ -530,6 +666,10 @@ public class FileSystemTreeModel implements TreeModel {
      */
     public void stopValidation() {
         root.stopValidationSubtree();
+        if (watcher != null) {
+            watcher.close();
+            watcher = null;
+        }
         aliasResolutionDispatcher.stop();
         fileInfoDispatcher.stop();
         directoryDispatcher.stop();
@@ -564,6 +704,10 @@ public class FileSystemTreeModel implements TreeModel {
      * Validates (refreshes) the nodes specified by the provided path.
      * Validation is done for nodes only, which have been marked as invalid.
      * The validation is done asynchronously in worker threads.
+     * <p>
+     * The user interface calls this method with the path that is expanded.
+     * If directories are watched, the directories on the path are watched
+     * once they are valid.
      */
     public void validatePath(TreePath path) {
         if (DEBUG) {
@@ -571,6 +715,9 @@ public class FileSystemTreeModel implements TreeModel {
         }
         for (int i = 0; i < path.getPathCount(); i++) {
             Node node = (Node) path.getPathComponent(i);
+            if (node instanceof DirectoryNode) {
+                ((DirectoryNode) node).watchChildren();
+            }
             node.validateChildren();
         }
         // Always validate root
@@ -880,7 +1027,12 @@ public class FileSystemTreeModel implements TreeModel {
 
         public String getUserName() {
             if (userName == null) {
-                userName = fileChooser.getName(file);
+                FileInfoCache.Entry cached = infoCache.get(file, fileChooser.getFileView());
+                if (cached != null && cached.getUserName() != null) {
+                    userName = cached.getUserName();
+                } else {
+                    userName = fileChooser.getName(file);
+                }
             }
             return userName;
         }
@@ -1005,20 +1157,49 @@ public class FileSystemTreeModel implements TreeModel {
                     System.out.println("Starting info validation for " + file);
                 }
 
+                // Show the last known info until the worker has validated it.
+                if (!doItFast && icon == null) {
+                    FileInfoCache.Entry cached = infoCache.get(file, fileChooser.getFileView());
+                    if (cached != null) {
+                        icon = cached.getIcon();
+                        if (isResolveFileLabels && cached.hasLabel()) {
+                            fileLabel = cached.getFileLabel();
+                            tagNames = cached.getTagNames();
+                        }
+                    }
+                }
+
                 dispatchFileUpdater(new Worker<Boolean>() {
 
                     public Boolean construct() {
                         if (!doItFast) {
                             Icon oldIcon = icon;
                             int oldFileLabel = fileLabel;
+                            Object view = fileChooser.getFileView();
+                            long lastModified = file.lastModified();
+                            long length = file.length();
+                            FileInfoCache.Entry cached = infoCache.get(file, view, lastModified, length);
+                            Icon cachedIcon = (cached == null) ? null : cached.getIcon();
+                            boolean isCachedLabel = cached != null && cached.hasLabel();
+
                             // Note: We mustn't invoke this method asynchronously.
                             // Apple's FileView does not like to be used
                             // in a reentrant way.
-                            icon = fileChooser.getIcon(file);
+                            icon = (cachedIcon != null) ? cachedIcon : fileChooser.getIcon(file);
 
                             if (isResolveFileLabels) {
-                                fileLabel = OSXFile.getLabel(file);
-                                tagNames = OSXFile.getTagNames(file);
+                                if (isCachedLabel) {
+                                    fileLabel = cached.getFileLabel();
+                                    tagNames = cached.getTagNames();
+                                } else {
+                                    fileLabel = OSXFile.getLabel(file);
+                                    tagNames = OSXFile.getTagNames(file);
+                                }
+                            }
+
+                            if (cachedIcon == null || (isResolveFileLabels && !isCachedLabel)) {
+                                infoCache.put(new FileInfoCache.Entry(file, lastModified, length, view,
+                                        icon, getUserName(), isResolveFileLabels, fileLabel, tagNames));
                             }
 
                             return (oldIcon != icon || oldFileLabel != fileLabel) ? Boolean.TRUE : Boolean.FALSE;
@@ -1090,6 +1271,17 @@ public class FileSystemTreeModel implements TreeModel {
             // nothing to do, because Node is a leaf.
         }
 
+        /**
+         * Re-applies file hiding and the file filter to this subtree.
+         *
+         * @param isAliasResolutionChanged Set this to true, if the
+         * resolveAliasesToFiles property has changed.
+         */
+        public void refilterTree(boolean isAliasResolutionChanged) {
+            isAcceptable = null;
+            // nothing else to do, because Node is a leaf.
+        }
+
         /**
          * Validates this node if it is invalid.
          * If this node is invalid, a worker thread is launched, which reads
@@ -1247,18 +1439,75 @@ public class FileSystemTreeModel implements TreeModel {
         /*private */ int childrenState;
         /**
          * The children.
+         * Use setChildren to replace the list, and call childrenChanged after
+         * modifying the list.
          */
         private ArrayList children;
+        /**
+         * Maps the files of the children to their indices. If two children
+         * have the same file, the lower index is stored. The map is built
+         * lazily, and discarded whenever the children change.
+         */
+        private HashMap<File, Integer> childIndexMap;
+        /**
+         * Indices of the children which are aliases in ascending order.
+         * Aliases are also found by their resolved file. This array is built
+         * together with childIndexMap.
+         */
+        private int[] aliasIndices;
+        /**
+         * The sorted nodes of all files in the directory, including hidden
+         * files. The children are the nodes of this listing, which are not
+         * hidden by the JFileChooser. This is null, if the directory has not
+         * been read yet.
+         */
+        private ArrayList rawChildren;
+        /**
+         * Whether rawChildren contains nodes of aliases. These nodes depend
+         * on the resolveAliasesToFiles property.
+         */
+        private boolean hasRawAliases;
         /**
          * The current validator.
          */
         private Runnable validator;
+        /**
+         * This is set to true, if the directory is expanded, and has to be
+         * registered with the watcher by the next validator.
+         */
+        private boolean isWatchRequested;
+        /**
+         * This is set to true, if the directory could not be registered with
+         * the watcher.
+         */
+        private volatile boolean isUnwatchable;
 
         /** Whether the directory is traversable. */
         private Boolean isTraversable;
 
         private class DirectoryValidator implements Runnable {
 
+            /**
+             * This is set to true, if the directory contains an alias.
+             */
+            private volatile boolean hasAliases;
+            /**
+             * This is set to true, if the node had no children when the
+             * validator was created. The streamed nodes are only published
+             * in stages, if this is true.
+             */
+            private final boolean isPublishingStages;
+            /**
+             * The watcher with which the directory is registered before it
+             * is read. This is null, if the directory is not registered.
+             */
+            private final DirectoryWatcher<DirectoryNode> watcherToRegister;
+
+            public DirectoryValidator(boolean isPublishingStages, DirectoryWatcher<DirectoryNode> watcherToRegister) {
+                this.isPublishingStages = isPublishingStages;
+                this.watcherToRegister = watcherToRegister;
+            }
+
             /**
              * This method is called by a worker thread. It reads the directory
              * represented by this tree node and updates the children
@@ -1277,6 +1526,15 @@ public class FileSystemTreeModel implements TreeModel {
                 // Check if the directory denoted by this node exists.
                 final boolean exists = file != null && file.exists();
 
+                // Register the directory with the watcher before we read it,
+                // so that changes made while we read it are not missed.
+                if (exists && watcherToRegister != null) {
+                    File dir = lazyGetResolvedFile();
+                    if (dir == null || !watcherToRegister.register(DirectoryNode.this, dir)) {
+                        isUnwatchable = true;
+                    }
+                }
+
                 // The updating algorithm is split up into two steps.
                 // Phase 1 does the I/O intensive part. It is done on the worker
                 // thread.
@@ -1303,102 +1561,69 @@ public class FileSystemTreeModel implements TreeModel {
                 //                          (instance variable "children").
 
                 // Step 1.1 Fetch fresh files
-                final File[] freshFiles;
-                if (exists && isTraversable()) {
-                    freshFiles = getFiles();
-                } else {
-                    freshFiles = new File[0];
+                //          If the directory can be streamed, steps 1.1 to 1.3
+                //          are done in chunks, and the sorted nodes are
+                //          published in stages while we are streaming.
+                Node[] streamedNodes = null;
+                if (exists && isStreaming && isStreamable() && isTraversable()
+                        && getFileSystemView().isStreamable(lazyGetResolvedFile())) {
+                    streamedNodes = streamFreshNodes(startTime);
                 }
                 if (this != validator) {
                     return;
                 }
-
-
-                // Step 1.2 For each fresh file:
-                //          - Determine its type
-                //          - If it is an alias, resolve it
-                //          - Check whether the file is wanted by the file filter
-                //          - Create a fresh node for the file
-
-                ArrayList freshNodeList = new ArrayList(freshFiles.length);
-                boolean isFileHidingEnabled=fileChooser.isFileHidingEnabled();
-                QuaquaFileSystemView fsv = getFileSystemView();
-                for (int i = 0; i < freshFiles.length; i++) {
-                    File freshFile = freshFiles[i];
-
-                    // Resolve alias and determine if fresh file is traversable
-                    // and if it is a directory.
-                    boolean freshIsTraversable;
-                    int freshFileType = OSXFile.getFileType(freshFile);
-                    boolean freshIsDirectory = freshFileType == OSXFile.FILE_TYPE_DIRECTORY;
-                    File resolvedFreshFile = null;
-                    boolean freshIsAlias;
-                    if (isResolveAliasesToFiles()) {
-                        freshIsAlias = freshFileType == OSXFile.FILE_TYPE_ALIAS;
+                final Node[] freshNodes;
+                if (streamedNodes != null) {
+                    freshNodes = streamedNodes;
+                } else {
+                    final File[] freshFiles;
+                    if (exists && isTraversable()) {
+                        freshFiles = getFiles();
                     } else {
-                        freshIsAlias = false;
+                        freshFiles = new File[0];
                     }
-                    if (freshIsAlias) {
-                        resolvedFreshFile = OSXFile.resolveAlias(freshFile, true);
-                        if (resolvedFreshFile == null) {
-                            freshIsTraversable = false;
-                        } else {
-                            freshIsTraversable = fileChooser.isTraversable(resolvedFreshFile);
-                            freshFileType = OSXFile.getFileType(resolvedFreshFile);
-                            freshIsDirectory = freshFileType == OSXFile.FILE_TYPE_DIRECTORY;
-                        }
-                    } else {
-                        freshIsTraversable = fileChooser.isTraversable(freshFile);
-                        resolvedFreshFile = freshFile;
+                    if (this != validator) {
+                        return;
                     }
-                    boolean freshIsHidden=fsv.isHiddenFile(freshFile);
-
-                    /*
-                      Special case: Network is visible under Computer even if it is hidden under /.
-                    */
 
-                    if (freshIsHidden && freshIsDirectory && resolvedFreshFile.getPath().equals("/Network")) {
-                        freshIsHidden = false;
+                    // Step 1.2 For each fresh file:
+                    //          - Determine its type
+                    //          - If it is an alias, resolve it
+                    //          - Create a fresh node for the file
+                    //          Hidden files are filtered out when the nodes
+                    //          are published.
+                    freshNodes = new Node[freshFiles.length];
+                    QuaquaFileSystemView fsv = getFileSystemView();
+                    for (int i = 0; i < freshFiles.length; i++) {
+                        freshNodes[i] = createFreshNode(freshFiles[i], fsv);
                     }
-
-                    // Skip the fresh file if it is hidden
-                    if (!isFileHidingEnabled || !freshIsHidden) {
-
-                        // Note: The following code is redundant with method
-                        //       createNode().
-                        //       Changes applied to this code may also have to
-                        //       be done in the other method.
-                        if (freshIsAlias) {
-                            if (freshIsDirectory) {
-                                Node n=new AliasDirectoryNode(freshFile, resolvedFreshFile, freshIsHidden);
-                                n.setTraversable(freshIsTraversable);
-                                freshNodeList.add(n);
-                            } else {
-                                freshNodeList.add(new AliasNode(freshFile, resolvedFreshFile, freshIsHidden));
-                            }
-                        } else {
-                            if (freshIsDirectory) {
-                                Node n=new DirectoryNode(freshFile, freshIsHidden);
-                                n.setTraversable(freshIsTraversable);
-                                freshNodeList.add(n);
-                            } else {
-                                freshNodeList.add(new Node(freshFile, freshIsHidden));
-                            }
-                        }
+                    if (this != validator) {
+                        return;
                     }
-                }
-                final Node[] freshNodes = (Node[]) freshNodeList.toArray(new Node[freshNodeList.size()]);
-                if (this != validator) {
-                    return;
-                }
 
-                // Step 1.3 Sort the fresh nodes
-                Arrays.sort(freshNodes, getNodeComparator());
-                if (this != validator) {
-                    return;
+                    // Step 1.3 Sort the fresh nodes
+                    sortNodes(freshNodes);
+                    if (this != validator) {
+                        return;
+                    }
                 }
 
+                publish(freshNodes, exists, startTime, true);
+            }
 
+            /**
+             * Merges the fresh nodes with the children of this node on the
+             * AWT event dispatcher thread, and informs the listeners.
+             *
+             * @param freshNodes The sorted fresh nodes, including the nodes
+             * of hidden files.
+             * @param exists Whether the directory exists.
+             * @param startTime The time when validation was started.
+             * @param isComplete Set this to false, if the fresh nodes are
+             * a partial listing of the directory. A partial listing does not
+             * complete the validation.
+             */
+            private void publish(final Node[] freshNodes, final boolean exists, final long startTime, final boolean isComplete) {
                 // Phase 2: Thread sensitive part of the merging.
                 //         We update the contents of the tree model and inform our
                 //         listeners. This has to be done on the AWT thread.
@@ -1406,7 +1631,10 @@ public class FileSystemTreeModel implements TreeModel {
                 //         the data our update is based on may have
                 //         been invalidated by the AWT thread. That's why we check
                 //         if isUpdatingCache is still true.
-                SwingUtilities.invokeLater(new Runnable() {
+                //         The merges of all directories are coalesced into
+                //         time-sliced batches, so that validating many
+                //         directories does not flood the AWT thread.
+                mergeInvoker.invokeLater(DirectoryNode.this, new Runnable() {
 
                     public void run() {
                         // Check if we have become obsolete
@@ -1418,68 +1646,9 @@ public class FileSystemTreeModel implements TreeModel {
                             return;
                         }
 
-                        // Step 2.1 Merge the fresh nodes with the old nodes
-                        ArrayList mergedChildren = new ArrayList(freshFiles.length);
-                        LinkedList newChildren = new LinkedList();
-                        int[] newChildIndices = new int[freshFiles.length];
-                        LinkedList deletedChildren = new LinkedList();
-                        int[] deletedChildIndices = new int[getChildCount()];
-
-                        int freshIndex, oldIndex, mergeIndex, comparison;
-                        Node[] oldNodes = (children == null) ? new Node[0] : (Node[]) children.toArray(new Node[children.size()]);
-
-                        int count = freshNodes.length + oldNodes.length;
-                        freshIndex = 0;
-                        oldIndex = 0;
-                        mergeIndex = 0;
-                        int lastFreshIndex = -1;
-                        File resolvedFreshFile = null;
-                        Comparator comparator = getNodeComparator();
-                        for (int i = 0; i < count; i++) {
-                            if (freshIndex >= freshNodes.length) {
-                                comparison = (oldIndex >= oldNodes.length) ? 0 : 1;
-                            } else if (oldIndex >= oldNodes.length) {
-                                comparison = -1;
-                            } else {
-                                //comparison = freshNodes[freshIndex].getCollationKey()
-                                //.compareTo(oldNodes[oldIndex].getCollationKey());
-                                comparison = comparator.compare(freshNodes[freshIndex], oldNodes[oldIndex]);
-
-                                // This little trick is necessary to handle the special case,
-                                // when a file gets replaced by a directory of the same name
-                                // or vice versa.
-                                if (comparison == 0) {
-                                    if (freshNodes[freshIndex].getAllowsChildren() != oldNodes[oldIndex].getAllowsChildren()) {
-                                        comparison = -1;
-                                    }
-                                }
-                            }
-
-                            if (comparison < 0) {
-                                newChildIndices[newChildren.size()] = mergeIndex;
-                                Node newNode = freshNodes[freshIndex];
-                                newNode.parent = DirectoryNode.this; // Link new child, this saves a loop in STEP 2
-                                newChildren.add(newNode);
-                                mergedChildren.add(newNode);
-                                freshIndex++;
-                                mergeIndex++;
-                            } else if (comparison == 0) {
-                                if (oldIndex < oldNodes.length) {
-                                    Node oldNode = oldNodes[oldIndex];
-                                    if (!doItFast) {
-                                        oldNode.invalidateInfo();
-                                    }
-                                    mergedChildren.add(oldNode);
-                                }
-                                oldIndex++;
-                                freshIndex++;
-                                mergeIndex++;
-                            } else {
-                                deletedChildIndices[deletedChildren.size()] = mergeIndex + deletedChildren.size() - newChildren.size();
-                                deletedChildren.add(oldNodes[oldIndex]);
-                                oldIndex++;
-                            }
-                        }
+                        // Step 2.1 Merge the fresh nodes which are not hidden
+                        //          with the old nodes.
+                        mergeChildren(getVisibleNodes(freshNodes));
 
                         // Step 2.2:
                         // If the directory denoted by this Node does not exist,
@@ -1492,45 +1661,14 @@ public class FileSystemTreeModel implements TreeModel {
                             }
                         }
 
-                        if (newChildren.size() > 0 || deletedChildren.size() > 0) {
-                            // Unlink deleted children
-                            for (Iterator i = deletedChildren.iterator(); i.hasNext();) {
-                                Node n = (Node) i.next();
-                                n.parent = null;
-                                n.invalidateChildren();
-                            }
-
-                            // We do not need to link the new children, because we
-                            // have done this in step 1 already. This saves the following
-                            // iteration.
-                            /*
-                            for (Iterator i = newChildren.iterator(); i.hasNext(); ) {
-                            Node n = (Node) i.next();
-                            n.parent = Node.this;
-                            }*/
-
-                            // Inform listeners about the changes
-                            // and replace the children with the merged children
-                            if (newChildren.size() > 0 && deletedChildren.size() == 0) {
-                                children = mergedChildren;
-                                fireTreeNodesInserted(FileSystemTreeModel.this, getPath(), ArrayUtil.truncate(newChildIndices, 0, newChildren.size()), newChildren.toArray());
-                            } else if (newChildren.size() == 0 && deletedChildren.size() > 0) {
-                                children = mergedChildren;
-                                fireTreeNodesRemoved(FileSystemTreeModel.this, getPath(), ArrayUtil.truncate(deletedChildIndices, 0, deletedChildren.size()), deletedChildren.toArray());
-                            } else if (newChildren.size() > 0 && deletedChildren.size() > 0) {
-                                // Instead of firing tree structure changed, we
-                                // split the insertion and removal into two steps.
-                                // This is needed, to update the selection in the
-                                // JBrower properly.
-                                removeAll(deletedChildren);
-                                fireTreeNodesRemoved(FileSystemTreeModel.this, getPath(), ArrayUtil.truncate(deletedChildIndices, 0, deletedChildren.size()), deletedChildren.toArray());
-                                children = mergedChildren;
-                                fireTreeNodesInserted(FileSystemTreeModel.this, getPath(), ArrayUtil.truncate(newChildIndices, 0, newChildren.size()), newChildren.toArray());
-                            }
+                        // A partial listing does not complete the validation.
+                        if (!isComplete) {
+                            return;
                         }
 
-
                         validator = null;
+                        rawChildren = getMergedNodes(freshNodes);
+                        hasRawAliases = hasAliases;
 
                         // This is used to let the GUI know, that we have
                         // finished with validating. We need to check for root,
@@ -1561,9 +1699,226 @@ public class FileSystemTreeModel implements TreeModel {
                         }
 
                         childrenState = VALID;
+
+                        // If the directory has been expanded while we were
+                        // reading it, read it again and watch it.
+                        if (isWatchRequested) {
+                            invalidateChildren();
+                            validateChildren();
+                        }
                     }
                 });
             }
+
+            /**
+             * Creates a fresh node for the specified file.
+             * <p>
+             * This method may be called concurrently from multiple threads.
+             */
+            private Node createFreshNode(File freshFile, QuaquaFileSystemView fsv) {
+                // Resolve alias and determine if fresh file is traversable
+                // and if it is a directory.
+                boolean freshIsTraversable;
+                int freshFileType = OSXFile.getFileType(freshFile);
+                boolean freshIsDirectory = freshFileType == OSXFile.FILE_TYPE_DIRECTORY;
+                File resolvedFreshFile = null;
+                boolean freshIsAlias;
+                if (freshFileType == OSXFile.FILE_TYPE_ALIAS) {
+                    hasAliases = true;
+                }
+                if (isResolveAliasesToFiles()) {
+                    freshIsAlias = freshFileType == OSXFile.FILE_TYPE_ALIAS;
+                } else {
+                    freshIsAlias = false;
+                }
+                if (freshIsAlias) {
+                    resolvedFreshFile = OSXFile.resolveAlias(freshFile, true);
+                    if (resolvedFreshFile == null) {
+                        freshIsTraversable = false;
+                    } else {
+                        freshIsTraversable = fileChooser.isTraversable(resolvedFreshFile);
+                        freshFileType = OSXFile.getFileType(resolvedFreshFile);
+                        freshIsDirectory = freshFileType == OSXFile.FILE_TYPE_DIRECTORY;
+                    }
+                } else {
+                    freshIsTraversable = fileChooser.isTraversable(freshFile);
+                    resolvedFreshFile = freshFile;
+                }
+                boolean freshIsHidden = fsv.isHiddenFile(freshFile);
+
+                /*
+                  Special case: Network is visible under Computer even if it is hidden under /.
+                */
+
+                if (freshIsHidden && freshIsDirectory && resolvedFreshFile.getPath().equals("/Network")) {
+                    freshIsHidden = false;
+                }
+
+                // Note: The following code is redundant with method
+                //       createNode().
+                //       Changes applied to this code may also have to
+                //       be done in the other method.
+                if (freshIsAlias) {
+                    if (freshIsDirectory) {
+                        Node n = new AliasDirectoryNode(freshFile, resolvedFreshFile, freshIsHidden);
+                        n.setTraversable(freshIsTraversable);
+                        return n;
+                    } else {
+                        return new AliasNode(freshFile, resolvedFreshFile, freshIsHidden);
+                    }
+                } else {
+                    if (freshIsDirectory) {
+                        Node n = new DirectoryNode(freshFile, freshIsHidden);
+                        n.setTraversable(freshIsTraversable);
+                        return n;
+                    } else {
+                        return new Node(freshFile, freshIsHidden);
+                    }
+                }
+            }
+
+            /**
+             * Streams the directory listing in chunks. The files of each
+             * chunk are classified in parallel, sorted, and merged with
+             * the nodes of the previous chunks. If this node has no children
+             * yet, the merged nodes are published after each chunk, so that
+             * the first rows of a large directory appear quickly.
+             *
+             * @return The sorted fresh nodes, or null if the directory
+             * could not be streamed.
+             */
+            private Node[] streamFreshNodes(long startTime) {
+                File dir = lazyGetResolvedFile();
+                if (dir == null) {
+                    return null;
+                }
+                QuaquaFileSystemView fsv = getFileSystemView();
+                Comparator comparator = getNodeComparator();
+                Node[] sortedNodes = new Node[0];
+                ArrayList<File> chunk = new ArrayList<File>();
+                int chunkSize = FIRST_STREAM_CHUNK_SIZE;
+                DirectoryStream<Path> stream = null;
+                try {
+                    stream = Files.newDirectoryStream(dir.toPath());
+                    for (Path path : stream) {
+                        chunk.add(path.toFile());
+                        if (chunk.size() >= chunkSize) {
+                            if (this != validator) {
+                                return sortedNodes;
+                            }
+                            sortedNodes = mergeSorted(sortedNodes, classifyAndSort(chunk, fsv), comparator);
+                            chunk.clear();
+                            if (isPublishingStages) {
+                                publish(sortedNodes, true, startTime, false);
+                            }
+                            chunkSize = Math.min(chunkSize * 2, MAX_STREAM_CHUNK_SIZE);
+                        }
+                    }
+                } catch (IOException e) {
+                    return null;
+                } catch (DirectoryIteratorException e) {
+                    return null;
+                } catch (RuntimeException e) {
+                    // InvalidPathException, SecurityException, ...
+                    return null;
+                } finally {
+                    if (stream != null) {
+                        try {
+                            stream.close();
+                        } catch (IOException e) {
+                            // suppress
+                        }
+                    }
+                }
+                return mergeSorted(sortedNodes, classifyAndSort(chunk, fsv), comparator);
+            }
+
+            /**
+             * Creates fresh nodes for the files in parallel, and returns
+             * them sorted.
+             */
+            private Node[] classifyAndSort(ArrayList<File> files, QuaquaFileSystemView fsv) {
+                Node[] nodes = new Node[files.size()];
+                ClassifyTask task = new ClassifyTask(files, nodes, 0, nodes.length, fsv);
+                if (nodes.length > CLASSIFY_THRESHOLD) {
+                    ForkJoinPool.commonPool().invoke(task);
+                } else {
+                    task.compute();
+                }
+                int count = 0;
+                for (int i = 0; i < nodes.length; i++) {
+                    if (nodes[i] != null) {
+                        nodes[count++] = nodes[i];
+                    }
+                }
+                Node[] result = new Node[count];
+                System.arraycopy(nodes, 0, result, 0, count);
+                sortNodes(result);
+                return result;
+            }
+
+            /**
+             * Merges two sorted arrays of nodes into a new sorted array.
+             */
+            private Node[] mergeSorted(Node[] a, Node[] b, Comparator comparator) {
+                if (a.length == 0) {
+                    return b;
+                } else if (b.length == 0) {
+                    return a;
+                }
+                Node[] result = new Node[a.length + b.length];
+                int i = 0, j = 0, k = 0;
+                while (i < a.length && j < b.length) {
+                    result[k++] = (comparator.compare(a[i], b[j]) <= 0) ? a[i++] : b[j++];
+                }
+                while (i < a.length) {
+                    result[k++] = a[i++];
+                }
+                while (j < b.length) {
+                    result[k++] = b[j++];
+                }
+                return result;
+            }
+
+            /**
+             * Creates fresh nodes for a range of files. Splits the range
+             * in halves, if it is larger than the threshold.
+             */
+            private class ClassifyTask extends RecursiveAction {
+
+                private final ArrayList<File> files;
+                private final Node[] nodes;
+                private final int from, to;
+                private final QuaquaFileSystemView fsv;
+
+                public ClassifyTask(ArrayList<File> files, Node[] nodes, int from, int to, QuaquaFileSystemView fsv) {
+                    this.files = files;
+                    this.nodes = nodes;
+                    this.from = from;
+                    this.to = to;
+                    this.fsv = fsv;
+                }
+
+                @Override
+                protected void compute() {
+                    if (to - from > CLASSIFY_THRESHOLD) {
+                        int mid = (from + to) >>> 1;
+                        invokeAll(new ClassifyTask(files, nodes, from, mid, fsv),
+                                new ClassifyTask(files, nodes, mid, to, fsv));
+                    } else {
+                        for (int i = from; i < to; i++) {
+                            if (DirectoryValidator.this != validator) {
+                                return;
+                            }
+                            Node n = createFreshNode(files.get(i), fsv);
+                            // Compute the collation key here, so that
+                            // sorting does not have to do it.
+                            n.getCollationKey();
+                            nodes[i] = n;
+                        }
+                    }
+                }
+            }
         }
         /**
          * The time until the directory is considered to stay valid.
@@ -1625,12 +1980,40 @@ public class FileSystemTreeModel implements TreeModel {
             validator = null;
         }
 
+        /**
+         * Watches the directory of this node for changes. This is called for
+         * expanded nodes only, so that the watcher does not hold watch keys
+         * for directories which have been listed, but are not shown.
+         * <p>
+         * The directory is registered on the worker thread of the next
+         * validator, before the directory is read. If the children of an
+         * unwatched node are valid, they are invalidated, because they may
+         * have changed before the directory is registered.
+         * Must be called on the AWT event dispatcher thread.
+         */
+        private void watchChildren() {
+            if (!isStreamable() || isUnwatchable || getWatcher() == null) {
+                return;
+            }
+            if (childrenState == VALID && watcher.touch(this)) {
+                return;
+            }
+            isWatchRequested = true;
+            if (childrenState == VALID) {
+                invalidateChildren();
+            }
+        }
+
         /**
          * Marks the children of this node as invalid.
          * This has only an effect, if this node denotes a directory.
          */
         @Override
         public void lazyInvalidateChildren() {
+            // Watched directories are kept up to date by the watcher
+            if (childrenState == VALID && watcher != null && watcher.touch(this)) {
+                return;
+            }
             if (validator == null && bestBeforeTimeMillis < System.currentTimeMillis()) {
                 if (DEBUG) {
                     System.out.println("FileSystemTreeModel.lazyInvalidateChildren YES  validator=" + validator + " good for " + (bestBeforeTimeMillis - System.currentTimeMillis()) + " millis " + lazyGetResolvedFile());
@@ -1715,7 +2098,9 @@ public class FileSystemTreeModel implements TreeModel {
             if (childrenState == INVALID) {
                 childrenState = VALIDATING;
 
-                validator = new DirectoryValidator();
+                validator = new DirectoryValidator(children == null || children.isEmpty(),
+                        isWatchRequested ? watcher : null);
+                isWatchRequested = false;
                 //
                 directoryDispatcher.dispatch(validator, bestBeforeTimeMillis == 0);
 
@@ -1749,14 +2134,6 @@ public class FileSystemTreeModel implements TreeModel {
             }
         }
 
-        private void removeAll(LinkedList deletedChildren) {
-            children.removeAll(deletedChildren);
-            for (Iterator i = deletedChildren.iterator(); i.hasNext();) {
-                Node n = (Node) i.next();
-                n.parent = null;
-            }
-        }
-
         @Override
         public boolean getAllowsChildren() {
             return true;
@@ -1780,7 +2157,265 @@ public class FileSystemTreeModel implements TreeModel {
         @Override
         public int getIndex(TreeNode node) {
             autoValidateChildren();
-            return (children == null) ? -1 : children.indexOf(node);
+            if (children == null) {
+                return -1;
+            }
+            if (node instanceof Node) {
+                ensureChildIndexMap();
+                Integer index = childIndexMap.get(((Node) node).getFile());
+                if (index != null && children.get(index) == node) {
+                    return index;
+                }
+            }
+            // Two children may have the same file
+            return children.indexOf(node);
+        }
+
+        /**
+         * Returns the index of the first child whose file or resolved file
+         * is equal to the specified file, or -1 if there is no such child.
+         */
+        private int getIndexOfChildForFile(File file) {
+            autoValidateChildren();
+            if (children == null) {
+                return -1;
+            }
+            ensureChildIndexMap();
+            Integer index = childIndexMap.get(file);
+            int result = (index == null) ? -1 : index;
+            for (int i : aliasIndices) {
+                if (result != -1 && i >= result) {
+                    break;
+                }
+                if (((Node) children.get(i)).getResolvedFile().equals(file)) {
+                    return i;
+                }
+            }
+            return result;
+        }
+
+        private void ensureChildIndexMap() {
+            if (childIndexMap == null) {
+                int n = children.size();
+                HashMap<File, Integer> map = new HashMap<File, Integer>(Math.max(16, n * 4 / 3 + 1));
+                int[] aliases = new int[0];
+                int aliasCount = 0;
+                for (int i = n - 1; i >= 0; i--) {
+                    Node child = (Node) children.get(i);
+                    map.put(child.getFile(), i);
+                    if (child.isAlias()) {
+                        if (aliasCount == aliases.length) {
+                            aliases = Arrays.copyOf(aliases, Math.max(4, aliasCount * 2));
+                        }
+                        aliases[aliasCount++] = i;
+                    }
+                }
+                // We have collected the alias indices in descending order
+                aliasIndices = new int[aliasCount];
+                for (int i = 0; i < aliasCount; i++) {
+                    aliasIndices[i] = aliases[aliasCount - 1 - i];
+                }
+                childIndexMap = map;
+            }
+        }
+
+        /**
+         * Merges the sorted fresh nodes with the children of this node, and
+         * informs the listeners about the inserted and removed children.
+         * Must be called on the AWT event dispatcher thread.
+         */
+        private void mergeChildren(Node[] freshNodes) {
+            // This is a linear two-pointer walk over the sorted
+            // fresh nodes and the sorted old nodes, which yields
+            // the inserted and the removed indices directly.
+            int freshCount = freshNodes.length;
+            int oldCount = (children == null) ? 0 : children.size();
+            ArrayList mergedChildren = new ArrayList(freshCount);
+            ArrayList keptChildren = new ArrayList(Math.min(freshCount, oldCount));
+            Node[] newChildren = new Node[freshCount];
+            int[] newChildIndices = new int[freshCount];
+            int newCount = 0;
+            Node[] deletedChildren = new Node[oldCount];
+            int[] deletedChildIndices = new int[oldCount];
+            int deletedCount = 0;
+
+            int freshIndex = 0;
+            int oldIndex = 0;
+            int mergeIndex = 0;
+            Comparator comparator = getNodeComparator();
+            while (freshIndex < freshCount || oldIndex < oldCount) {
+                int comparison;
+                if (freshIndex >= freshCount) {
+                    comparison = 1;
+                } else if (oldIndex >= oldCount) {
+                    comparison = -1;
+                } else {
+                    Node freshNode = freshNodes[freshIndex];
+                    Node oldNode = (Node) children.get(oldIndex);
+                    if (freshNode == oldNode) {
+                        comparison = 0;
+                    } else {
+                        comparison = comparator.compare(freshNode, oldNode);
+
+                        // This little trick is necessary to handle the special case,
+                        // when a file gets replaced by a directory of the same name
+                        // or vice versa.
+                        if (comparison == 0) {
+                            if (freshNode.getAllowsChildren() != oldNode.getAllowsChildren()) {
+                                comparison = -1;
+                            }
+                        }
+                    }
+                }
+
+                if (comparison < 0) {
+                    Node newNode = freshNodes[freshIndex];
+                    newNode.parent = DirectoryNode.this; // Link new child, this saves a loop in STEP 2
+                    newChildIndices[newCount] = mergeIndex;
+                    newChildren[newCount++] = newNode;
+                    mergedChildren.add(newNode);
+                    freshIndex++;
+                    mergeIndex++;
+                } else if (comparison == 0) {
+                    Node oldNode = (Node) children.get(oldIndex);
+                    // We do not invalidate nodes that we
+                    // have published in a previous stage.
+                    if (!doItFast && oldNode != freshNodes[freshIndex]) {
+                        oldNode.invalidateInfo();
+                    }
+                    mergedChildren.add(oldNode);
+                    keptChildren.add(oldNode);
+                    oldIndex++;
+                    freshIndex++;
+                    mergeIndex++;
+                } else {
+                    // The index refers to the old children.
+                    deletedChildIndices[deletedCount] = oldIndex;
+                    deletedChildren[deletedCount++] = (Node) children.get(oldIndex);
+                    oldIndex++;
+                }
+            }
+
+            if (newCount > 0 || deletedCount > 0) {
+                // Unlink deleted children
+                for (int i = 0; i < deletedCount; i++) {
+                    Node n = deletedChildren[i];
+                    n.parent = null;
+                    n.invalidateChildren();
+                }
+
+                // We do not need to link the new children, because we
+                // have done this in step 2.1 already.
+
+                // Inform listeners about the changes
+                // and replace the children with the merged children
+                if (newCount > 0 && deletedCount == 0) {
+                    setChildren(mergedChildren);
+                    fireTreeNodesInserted(FileSystemTreeModel.this, getPath(), ArrayUtil.truncate(newChildIndices, 0, newCount), Arrays.copyOf(newChildren, newCount));
+                } else if (newCount == 0 && deletedCount > 0) {
+                    setChildren(mergedChildren);
+                    fireTreeNodesRemoved(FileSystemTreeModel.this, getPath(), ArrayUtil.truncate(deletedChildIndices, 0, deletedCount), Arrays.copyOf(deletedChildren, deletedCount));
+                } else if (newCount > 0 && deletedCount > 0) {
+                    // Instead of firing tree structure changed, we
+                    // split the insertion and removal into two steps.
+                    // This is needed, to update the selection in the
+                    // JBrower properly.
+                    setChildren(keptChildren);
+                    fireTreeNodesRemoved(FileSystemTreeModel.this, getPath(), ArrayUtil.truncate(deletedChildIndices, 0, deletedCount), Arrays.copyOf(deletedChildren, deletedCount));
+                    setChildren(mergedChildren);
+                    fireTreeNodesInserted(FileSystemTreeModel.this, getPath(), ArrayUtil.truncate(newChildIndices, 0, newCount), Arrays.copyOf(newChildren, newCount));
+                }
+            }
+        }
+
+        /**
+         * Returns the specified fresh nodes, with the nodes which have been
+         * kept by {@link #mergeChildren} replaced by the children of this
+         * node. This ensures that the raw listing refers to the displayed
+         * nodes, so that a refilter does not invalidate them.
+         * Must be called after mergeChildren on the AWT event dispatcher
+         * thread.
+         */
+        private ArrayList getMergedNodes(Node[] freshNodes) {
+            ArrayList mergedNodes = new ArrayList(freshNodes.length);
+            int childCount = (children == null) ? 0 : children.size();
+            int childIndex = 0;
+            Comparator comparator = getNodeComparator();
+            for (Node freshNode : freshNodes) {
+                if (childIndex < childCount) {
+                    Node child = (Node) children.get(childIndex);
+                    if (child == freshNode
+                            || comparator.compare(freshNode, child) == 0
+                            && freshNode.getAllowsChildren() == child.getAllowsChildren()) {
+                        mergedNodes.add(child);
+                        childIndex++;
+                        continue;
+                    }
+                }
+                mergedNodes.add(freshNode);
+            }
+            return mergedNodes;
+        }
+
+        /**
+         * Returns the nodes which are not hidden by the JFileChooser.
+         */
+        private Node[] getVisibleNodes(Node[] nodes) {
+            if (!fileChooser.isFileHidingEnabled()) {
+                return nodes;
+            }
+            Node[] visibleNodes = new Node[nodes.length];
+            int count = 0;
+            for (int i = 0; i < nodes.length; i++) {
+                if (!nodes[i].isHidden()) {
+                    visibleNodes[count++] = nodes[i];
+                }
+            }
+            return (count == nodes.length) ? nodes : Arrays.copyOf(visibleNodes, count);
+        }
+
+        /**
+         * Re-applies file hiding and the file filter to this subtree.
+         * If the directory has been read, the children are updated from the
+         * raw listing without reading the directory again. Aliases must be
+         * read again, if the resolveAliasesToFiles property has changed.
+         */
+        @Override
+        public void refilterTree(boolean isAliasResolutionChanged) {
+            super.refilterTree(isAliasResolutionChanged);
+
+            if (childrenState == VALID) {
+                if (rawChildren != null && !(isAliasResolutionChanged && hasRawAliases)) {
+                    mergeChildren(getVisibleNodes((Node[]) rawChildren.toArray(new Node[rawChildren.size()])));
+                } else {
+                    rawChildren = null;
+                    invalidateChildren();
+                }
+            }
+
+            ArrayList nodes = (rawChildren != null) ? rawChildren : children;
+            if (nodes != null) {
+                for (Object o : nodes) {
+                    ((Node) o).refilterTree(isAliasResolutionChanged);
+                }
+            }
+        }
+
+        /**
+         * Replaces the list of children.
+         */
+        private void setChildren(ArrayList newValue) {
+            children = newValue;
+            childrenChanged();
+        }
+
+        /**
+         * Discards the child index map. Must be called after the list of
+         * children has been modified.
+         */
+        private void childrenChanged() {
+            childIndexMap = null;
+            aliasIndices = null;
         }
 
         @Override
@@ -1803,6 +2438,7 @@ public class FileSystemTreeModel implements TreeModel {
                 children = new ArrayList();
             }
             children.add(childIndex, newChild);
+            childrenChanged();
         }
 
         @Override
@@ -1833,6 +2469,7 @@ public class FileSystemTreeModel implements TreeModel {
 
             MutableTreeNode child = (MutableTreeNode) getChildAt(childIndex);
             children.remove(childIndex);
+            childrenChanged();
             child.setParent(null);
         }
 
@@ -1840,9 +2477,10 @@ public class FileSystemTreeModel implements TreeModel {
             if (DEBUG) {
                 System.out.println("FileSystemTreeModel getFiles " + lazyGetResolvedFile());
             }
+            // Hidden files are filtered out when the nodes are published
             File[] files = getFileSystemView().getFiles(
                     lazyGetResolvedFile(),
-                    fileChooser.isFileHidingEnabled());
+                    false);
             if (DEBUG) {
                 System.out.println("FileSystemTreeModel getFiles " + lazyGetResolvedFile() + " returns " + files.length);
             }
@@ -1852,6 +2490,179 @@ public class FileSystemTreeModel implements TreeModel {
         protected long getDirectoryTTL() {
             return 2000;
         }
+
+        /**
+         * Invoked on the watcher thread when entries of the directory
+         * have been created, deleted or modified. Creates nodes for the
+         * created entries, and merges the changes on the AWT event
+         * dispatcher thread.
+         */
+        private void watchedDirectoryChanged(File dir, List<WatchEvent<?>> events) {
+            final ArrayList<Node> created = new ArrayList<Node>();
+            final ArrayList<File> deleted = new ArrayList<File>();
+            final ArrayList<File> modified = new ArrayList<File>();
+            boolean overflow = false;
+            boolean createdAlias = false;
+            for (WatchEvent<?> event : events) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    overflow = true;
+                    continue;
+                }
+                File f = new File(dir, event.context().toString());
+                if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                    if (f.exists()) {
+                        deleted.remove(f);
+                        created.add(createNode(f));
+                        if (!createdAlias && OSXFile.getFileType(f) == OSXFile.FILE_TYPE_ALIAS) {
+                            createdAlias = true;
+                        }
+                    }
+                } else if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                    for (Iterator<Node> i = created.iterator(); i.hasNext();) {
+                        if (i.next().getFile().equals(f)) {
+                            i.remove();
+                        }
+                    }
+                    deleted.add(f);
+                } else {
+                    modified.add(f);
+                }
+            }
+            final boolean isOverflow = overflow;
+            final boolean isAliasCreated = createdAlias;
+            mergeInvoker.invokeLater(new Runnable() {
+
+                public void run() {
+                    applyWatchedChanges(created, deleted, modified, isOverflow, isAliasCreated);
+                }
+            });
+        }
+
+        /**
+         * Applies the changes reported by the watcher to the raw listing
+         * and to the children of this node, and informs the listeners.
+         * Must be called on the AWT event dispatcher thread.
+         */
+        private void applyWatchedChanges(ArrayList<Node> created, ArrayList<File> deleted, ArrayList<File> modified, boolean isOverflow, boolean isAliasCreated) {
+            if (getRoot() != FileSystemTreeModel.this.getRoot()) {
+                if (watcher != null) {
+                    watcher.unregister(this);
+                }
+                return;
+            }
+            // If we are not valid, or if we have missed events, we need
+            // to read the whole directory.
+            if (isOverflow || childrenState != VALID || validator != null || children == null) {
+                invalidateChildren();
+                validateChildren();
+                return;
+            }
+            boolean isFileHidingEnabled = fileChooser.isFileHidingEnabled();
+            // Update the raw listing. Created files which are already in the
+            // raw listing are treated as modified.
+            if (rawChildren != null) {
+                HashSet<File> rawFiles = new HashSet<File>(Math.max(16, rawChildren.size() * 4 / 3 + 1));
+                if (!deleted.isEmpty()) {
+                    HashSet<File> deletedFiles = new HashSet<File>(deleted);
+                    ArrayList keptRawChildren = new ArrayList(rawChildren.size());
+                    for (Object o : rawChildren) {
+                        if (!deletedFiles.contains(((Node) o).getFile())) {
+                            keptRawChildren.add(o);
+                        }
+                    }
+                    rawChildren = keptRawChildren;
+                }
+                for (Object o : rawChildren) {
+                    rawFiles.add(((Node) o).getFile());
+                }
+                Comparator comparator = getNodeComparator();
+                for (Iterator<Node> i = created.iterator(); i.hasNext();) {
+                    Node n = i.next();
+                    if (!rawFiles.add(n.getFile())) {
+                        i.remove();
+                        if (!isFileHidingEnabled || !n.isHidden()) {
+                            modified.add(n.getFile());
+                        }
+                    } else {
+                        int low = 0;
+                        int high = rawChildren.size();
+                        while (low < high) {
+                            int mid = (low + high) >>> 1;
+                            if (comparator.compare(rawChildren.get(mid), n) < 0) {
+                                low = mid + 1;
+                            } else {
+                                high = mid;
+                            }
+                        }
+                        rawChildren.add(low, n);
+                    }
+                }
+                hasRawAliases |= isAliasCreated;
+            }
+            // Look up all deleted files before we change the children, and
+            // remove them in descending order, so that the indices stay valid.
+            int[] deletedIndices = new int[deleted.size()];
+            int deletedCount = 0;
+            for (File f : deleted) {
+                int index = getIndexOfChildForFile(f);
+                if (index != -1) {
+                    deletedIndices[deletedCount++] = index;
+                }
+            }
+            Arrays.sort(deletedIndices, 0, deletedCount);
+            for (int i = deletedCount - 1; i >= 0; i--) {
+                int index = deletedIndices[i];
+                if (i < deletedCount - 1 && index == deletedIndices[i + 1]) {
+                    continue;
+                }
+                Node n = (Node) children.remove(index);
+                childrenChanged();
+                n.parent = null;
+                n.invalidateChildren();
+                if (n instanceof DirectoryNode && watcher != null) {
+                    watcher.unregister((DirectoryNode) n);
+                }
+                fireTreeNodesRemoved(FileSystemTreeModel.this, getPath(), new int[]{index}, new Object[]{n});
+            }
+            // Look up all created files before we insert them.
+            ArrayList<Node> inserted = new ArrayList<Node>(created.size());
+            HashSet<File> insertedFiles = new HashSet<File>();
+            for (Node n : created) {
+                if (isFileHidingEnabled && n.isHidden()) {
+                    continue;
+                }
+                if (getIndexOfChildForFile(n.getFile()) != -1) {
+                    modified.add(n.getFile());
+                } else if (insertedFiles.add(n.getFile())) {
+                    inserted.add(n);
+                }
+            }
+            for (Node n : inserted) {
+                int index = getInsertionIndexForNode(this, n);
+                n.parent = this;
+                children.add(index, n);
+                childrenChanged();
+                fireTreeNodesInserted(FileSystemTreeModel.this, getPath(), new int[]{index}, new Object[]{n});
+            }
+            for (File f : modified) {
+                int index = getIndexOfChildForFile(f);
+                if (index != -1) {
+                    Node n = (Node) children.get(index);
+                    n.invalidateInfo();
+                    fireTreeNodeChanged(n);
+                }
+            }
+        }
+
+        /**
+         * Returns true, if the directory listing of this node can be read
+         * with a {@code java.nio.file.DirectoryStream}, and if the directory
+         * can be watched for changes. Subclasses which override
+         * {@link #getFiles} must return false.
+         */
+        protected boolean isStreamable() {
+            return true;
+        }
     }
 
     private class RootNode extends DirectoryNode {
@@ -1880,6 +2691,11 @@ public class FileSystemTreeModel implements TreeModel {
             return 1000;
         }
 
+        @Override
+        protected boolean isStreamable() {
+            return false;
+        }
+
         @Override
         protected File[] getFiles() {
             LinkedList list = new LinkedList();
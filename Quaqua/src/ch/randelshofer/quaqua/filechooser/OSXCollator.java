@@ -1,7 +1,7 @@
 /*
- * @(#)OSXCollator.java  
+ * @(#)OSXCollator.java
  *
- * Copyright (c) 2004-2013 Werner Randelshofer, Switzerland.
+ * Copyright (c) 2004-2015 Werner Randelshofer, Switzerland.
  * You may not use, copy or modify this file, except in compliance with the
  * accompanying license terms.
  */
@@ -30,27 +30,74 @@ import java.text.*;
  * If java.text.Collator.getInstance() does not return an instance of
  * java.text.RuleBasedCollator, then the returned collator is used, and only
  * sequences of digits are changed to match the collation rules of Mac OS X.
- * 
+ * <p>
+ * Creating an OSXCollator is expensive. Use {@link #getInstance(Locale)} to
+ * get an instance which is shared by all clients of the same locale.
+ * <p>
+ * An OSXCollator caches the most recently used collation keys. Strings which
+ * consist only of printable ASCII characters are compared without going
+ * through the rule based collator. The weights of these characters are taken
+ * from the rule based collator, so that the result is the same. Characters
+ * which are ignorable, which expand into more than one collation element, or
+ * which start a contraction with another ASCII character are excluded from
+ * the fast path.
  *
  * @author  Werner Randelshofer
  * @version $Id$
  */
 public class OSXCollator extends Collator {
+    /**
+     * Maximal number of cached collation keys.
+     */
+    private final static int KEY_CACHE_SIZE = 2048;
+    private final static HashMap<Locale, OSXCollator> sharedInstances = new HashMap<Locale, OSXCollator>();
     private Collator collator;
-    
+    /**
+     * Holds a clone of the collator for each thread. The collators of the
+     * JDK synchronize on themselves, which would serialize concurrent
+     * sorting of directories.
+     */
+    private final ThreadLocal<Collator> threadCollator = new ThreadLocal<Collator>() {
+
+        @Override
+        protected Collator initialValue() {
+            return (Collator) collator.clone();
+        }
+    };
+    /**
+     * Collation keys of the most recently used strings.
+     */
+    private final LinkedHashMap<String, CollationKey> keyCache = new LinkedHashMap<String, CollationKey>(256, 0.75f, true) {
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CollationKey> eldest) {
+            return size() > KEY_CACHE_SIZE;
+        }
+    };
+    /**
+     * Primary weights of ASCII characters for the fast path.
+     * A weight of 0 excludes the character from the fast path.
+     * This is null, if the fast path is not available.
+     */
+    private int[] primaryWeights;
+    /**
+     * Tertiary weights of ASCII characters for the fast path.
+     */
+    private int[] tertiaryWeights;
+
     /** Creates a new instance. */
     public OSXCollator() {
         this(Locale.getDefault());
     }
-    
+
     public OSXCollator(Locale locale) {
             collator = Collator.getInstance(locale);
-            
+
             if (collator instanceof RuleBasedCollator) {
                 String rules = ((RuleBasedCollator) collator).getRules();
-                
+
                 // If hyphen is ignored except for tertiary difference, make it
-                // a primary difference, and move in front of the first primary 
+                // a primary difference, and move in front of the first primary
                 // difference found in the rules
                 int pos = rules.indexOf(",'-'");
                 int primaryRelationPos = rules.indexOf('<');
@@ -63,9 +110,9 @@ public class OSXCollator extends Collator {
                     + "<'-'"
                     + rules.substring(primaryRelationPos);
                 }
-                
-                // If space is ignored except for secondary and tertiary 
-                // difference, make it a primary difference, and move in front 
+
+                // If space is ignored except for secondary and tertiary
+                // difference, make it a primary difference, and move in front
                 // of the first primary difference found in the rules
                 pos = rules.indexOf(";' '");
                 primaryRelationPos = rules.indexOf('<');
@@ -85,16 +132,149 @@ public class OSXCollator extends Collator {
                     e.printStackTrace();
                     }
             }
+            initFastPath();
+    }
+
+    /**
+     * Returns the shared instance for the specified locale.
+     * <p>
+     * The shared instance must not be modified.
+     */
+    public static OSXCollator getInstance(Locale locale) {
+        synchronized (sharedInstances) {
+            OSXCollator instance = sharedInstances.get(locale);
+            if (instance == null) {
+                instance = new OSXCollator(locale);
+                sharedInstances.put(locale, instance);
+            }
+            return instance;
+        }
+    }
+
+    /**
+     * Determines the weights of the ASCII characters for the fast path.
+     */
+    private void initFastPath() {
+        if (!(collator instanceof RuleBasedCollator)
+                || collator.getStrength() != Collator.TERTIARY) {
+            return;
+        }
+        RuleBasedCollator rbc = (RuleBasedCollator) collator;
+        int[] primary = new int[128];
+        int[] tertiary = new int[128];
+        int[] element = new int[128];
+        int secondary = -1;
+        for (char ch = ' '; ch < 127; ch++) {
+            CollationElementIterator iter = rbc.getCollationElementIterator(String.valueOf(ch));
+            int e = iter.next();
+            if (e == CollationElementIterator.NULLORDER
+                    || iter.next() != CollationElementIterator.NULLORDER
+                    || CollationElementIterator.primaryOrder(e) == 0) {
+                continue;
+            }
+            // We only compare primary and tertiary differences.
+            if (secondary == -1) {
+                secondary = CollationElementIterator.secondaryOrder(e);
+            } else if (secondary != CollationElementIterator.secondaryOrder(e)) {
+                continue;
+            }
+            primary[ch] = CollationElementIterator.primaryOrder(e);
+            tertiary[ch] = CollationElementIterator.tertiaryOrder(e);
+            element[ch] = e;
+        }
+
+        // Exclude characters which form a contraction with another character
+        for (char ch1 = ' '; ch1 < 127; ch1++) {
+            for (char ch2 = ' '; primary[ch1] != 0 && ch2 < 127; ch2++) {
+                if (primary[ch2] != 0) {
+                    CollationElementIterator iter = rbc.getCollationElementIterator(new String(new char[]{ch1, ch2}));
+                    if (iter.next() != element[ch1]
+                            || iter.next() != element[ch2]
+                            || iter.next() != CollationElementIterator.NULLORDER) {
+                        primary[ch1] = 0;
+                    }
+                }
+            }
+        }
+
+        // Expanded numbers consist of digits
+        for (char ch = '0'; ch <= '9'; ch++) {
+            if (primary[ch] == 0) {
+                return;
+            }
+        }
+        primaryWeights = primary;
+        tertiaryWeights = tertiary;
+    }
+
+    /**
+     * Returns true if the string can be compared with the fast path.
+     */
+    private boolean isFast(String s) {
+        for (int i = 0, n = s.length(); i < n; i++) {
+            char ch = s.charAt(i);
+            if (ch >= 128 || primaryWeights[ch] == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compares two expanded strings using the weights of the fast path.
+     */
+    private int fastCompare(String source, String target) {
+        int n = Math.min(source.length(), target.length());
+        int tertiaryResult = 0;
+        for (int i = 0; i < n; i++) {
+            char ch1 = source.charAt(i);
+            char ch2 = target.charAt(i);
+            if (ch1 != ch2) {
+                int p1 = primaryWeights[ch1];
+                int p2 = primaryWeights[ch2];
+                if (p1 != p2) {
+                    return (p1 < p2) ? -1 : 1;
+                }
+                if (tertiaryResult == 0) {
+                    int t1 = tertiaryWeights[ch1];
+                    int t2 = tertiaryWeights[ch2];
+                    if (t1 != t2) {
+                        tertiaryResult = (t1 < t2) ? -1 : 1;
+                    }
+                }
+            }
+        }
+        if (source.length() != target.length()) {
+            return (source.length() < target.length()) ? -1 : 1;
+        }
+        return tertiaryResult;
     }
-    
+
     public int compare(String source, String target) {
-        return collator.compare(expandNumbers(source), expandNumbers(target));
+        if (primaryWeights != null && source != null && target != null
+                && isFast(source) && isFast(target)) {
+            return fastCompare(expandNumbers(source), expandNumbers(target));
+        }
+        return threadCollator.get().compare(expandNumbers(source), expandNumbers(target));
     }
-    
+
     public CollationKey getCollationKey(String source) {
-        return collator.getCollationKey(expandNumbers(source));
+        if (source == null) {
+            return null;
+        }
+        CollationKey key;
+        synchronized (keyCache) {
+            key = keyCache.get(source);
+        }
+        if (key == null) {
+            key = threadCollator.get().getCollationKey(expandNumbers(source));
+            synchronized (keyCache) {
+                keyCache.put(source, key);
+            }
+        }
+        return key;
     }
-    
+
     public boolean equals(Object o) {
         if (o instanceof OSXCollator) {
             OSXCollator that = (OSXCollator) o;
@@ -106,53 +286,56 @@ public class OSXCollator extends Collator {
     public int hashCode() {
         return collator.hashCode();
     }
-    
+
     private String expandNumbers(String s) {
         if (s == null) return null;
 
-        // FIXME - Use StringBuilder here when we abandon support for J2SE 1.4.
-        StringBuffer out = new StringBuffer();
-        StringBuffer digits = new StringBuffer();
-        
+        StringBuilder out = null;
+        int digitsStart = -1;
+
         for (int i=0, n = s.length(); i < n; i++) {
             char ch = s.charAt(i);
             //if (Character.isDigit(ch)) {
             if (ch >= '0' && ch <= '9') {
-                digits.append(ch);
+                if (digitsStart == -1) {
+                    digitsStart = i;
+                }
             } else {
-                if (digits.length() != 0) {
-                    if (digits.length() < 10) {
-                        out.append("00");
-                        out.append(digits.length());
-                    } else if (digits.length() < 100) {
-                        out.append("0");
-                        out.append(digits.length());
-                    } else if (digits.length() < 1000) {
-                        out.append(digits.length());
-                    } else if (digits.length() > 999) {
-                        out.append("999");
+                if (digitsStart != -1) {
+                    if (out == null) {
+                        out = new StringBuilder(n + 12);
+                        out.append(s, 0, digitsStart);
                     }
-                    out.append(digits.toString());
-                    digits.delete(0, digits.length());
+                    appendDigits(out, s, digitsStart, i);
+                    digitsStart = -1;
+                }
+                if (out != null) {
+                    out.append(ch);
                 }
-                out.append(ch);
             }
         }
-        if (digits.length() != 0) {
-            if (digits.length() < 10) {
-                out.append("00");
-                out.append(digits.length());
-            } else if (digits.length() < 100) {
-                out.append("0");
-                out.append(digits.length());
-            } else if (digits.length() < 1000) {
-                out.append(digits.length());
-            } else if (digits.length() > 999) {
-                out.append("999");
+        if (digitsStart != -1) {
+            if (out == null) {
+                out = new StringBuilder(s.length() + 3);
+                out.append(s, 0, digitsStart);
             }
-            out.append(digits);
+            appendDigits(out, s, digitsStart, s.length());
+        }
+
+        return (out == null) ? s : out.toString();
+    }
+
+    /**
+     * Appends a sequence of digits preceded by its length with three digits.
+     */
+    private static void appendDigits(StringBuilder out, String s, int start, int end) {
+        int length = Math.min(end - start, 999);
+        if (length < 10) {
+            out.append("00");
+        } else if (length < 100) {
+            out.append("0");
         }
-        
-        return out.toString();
+        out.append(length);
+        out.append(s, start, end);
     }
 }
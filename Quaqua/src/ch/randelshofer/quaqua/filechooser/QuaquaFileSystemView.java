@@ -222,4 +222,22 @@ public abstract class QuaquaFileSystemView extends FileSystemViewFilter {
             }
         }
     }
+
+    /**
+     * Returns true, if {@link #getFiles} returns the same files for the
+     * specified directory as a {@code java.nio.file.DirectoryStream}.
+     * If this returns true, the file chooser may stream the listing of the
+     * directory instead of calling {@code getFiles}.
+     * <p>
+     * The default implementation returns false, if a subclass overrides
+     * {@code getFiles}.
+     */
+    public boolean isStreamable(File dir) {
+        try {
+            return getClass().getMethod("getFiles", File.class, Boolean.TYPE).getDeclaringClass()
+                    == FileSystemViewFilter.class;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
 }
@@ -80,6 +80,11 @@ public class SavedSearchFileSystemTreeModel extends FileSystemTreeModel {
             return false;
         }
 
+        @Override
+        protected boolean isStreamable() {
+            return false;
+        }
+
         @Override
         protected File[] getFiles() {
             File savedSearchFile = getFile();
@@ -43,6 +43,15 @@ public class WindowsFileSystemView extends QuaquaFileSystemView {
         return desktop;
     }
 
+    /**
+     * Returns false, because the shell folders of Windows contain files
+     * which are not in the directory listing.
+     */
+    @Override
+    public boolean isStreamable(File dir) {
+        return false;
+    }
+
     /**
      * Returns all root partitions on this system. For example, on
      * Windows, this would be the "Desktop" folder, while on DOS this
@@ -1,7 +1,7 @@
 /*
  * @(#)QuaquaLeopardFileChooserUI.java
  *
- * Copyright (c) 2007-2013 Werner Randelshofer, Switzerland.
+ * Copyright (c) 2007-2015 Werner Randelshofer, Switzerland.
  * http://www.randelshofer.ch
  * All rights reserved.
  *
@@ -1148,7 +1148,7 @@ public class QuaquaLeopardFileChooserUI extends BasicFileChooserUI implements Su
     private void doFilterChanged(PropertyChangeEvent e) {
         clearIconCache();
 
-        model.invalidateAll();
+        model.refilterAll();
 //->the update did not occur from the browser        updateFileChooserFromBrowser();
         /*
         updateSelection();
@@ -1188,7 +1188,7 @@ public class QuaquaLeopardFileChooserUI extends BasicFileChooserUI implements Su
         JFileChooser fc = getFileChooser();
         boolean isChooserVisible = ((FileFilter[]) e.getNewValue()).length > 1;
         formatPanel.setVisible(isChooserVisible);
-        model.invalidateAll();
+        model.refilterAll();
         /*
         updateSelection();
         updateApproveButtonState();*/
@@ -1,7 +1,7 @@
 /*
  * @(#)QuaquaLionFileChooserUI.java
  *
- * Copyright (c) 2011-2013 Werner Randelshofer, Switzerland.
+ * Copyright (c) 2011-2015 Werner Randelshofer, Switzerland.
  * Copyright (c) 2014 Alan Snyder.
  * All rights reserved.
  *
@@ -1753,7 +1753,21 @@ public class QuaquaLionFileChooserUI extends BasicFileChooserUI {
      */
 
     private void updateModel() {
-        model.invalidateAll();
+        updateModel(false);
+    }
+
+    /**
+     * Update a model after a change in the file chooser configuration that might impact the model.
+     *
+     * @param isFilterChange Set this to true, if only the file filter or the file hiding property has changed.
+     * The model is then updated without reading the directories again.
+     */
+    private void updateModel(boolean isFilterChange) {
+        if (isFilterChange) {
+            model.refilterAll();
+        } else {
+            model.invalidateAll();
+        }
 
         if (fc.isShowing()) {
             reconfigureView();
@@ -1783,11 +1797,11 @@ public class QuaquaLionFileChooserUI extends BasicFileChooserUI {
 
     private void doFilterChanged(PropertyChangeEvent e) {
         clearIconCache();
-        updateModel();
+        updateModel(true);
     }
 
     private void doFileHidingChanged(PropertyChangeEvent e) {
-        updateModel();
+        updateModel(true);
     }
 
     private void doPackageTraversableChanged(PropertyChangeEvent e) {
@@ -1840,7 +1854,7 @@ public class QuaquaLionFileChooserUI extends BasicFileChooserUI {
 
     private void doChoosableFilterChanged(PropertyChangeEvent e) {
         installChoosableFileFilters((FileFilter[]) e.getNewValue());
-        updateModel();
+        updateModel(true);
     }
 
     private void doAccessoryChanged(PropertyChangeEvent e) {
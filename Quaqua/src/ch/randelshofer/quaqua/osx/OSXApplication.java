@@ -1,7 +1,7 @@
 /*
  * @(#)OSXApplication.java
  *
- * Copyright (c) 2007-2013 Werner Randelshofer, Switzerland.
+ * Copyright (c) 2007-2015 Werner Randelshofer, Switzerland.
  * You may not use, copy or modify this file, except in compliance with the
  * accompanying license terms.
  */
@@ -167,7 +167,7 @@ public class OSXApplication {
                 }
 
                 TIFFImageDecoder decoder = new TIFFImageDecoder(
-                        new MemoryCacheSeekableStream(new ByteArrayInputStream(tiffData)),
+                        new ByteBufferSeekableStream(tiffData),
                         new TIFFDecodeParam());
 
                 RenderedImage rImg = decoder.decodeAsRenderedImage(0);
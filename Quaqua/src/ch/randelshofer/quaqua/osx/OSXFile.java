@@ -1,7 +1,7 @@
 /*
  * @(#)OSXFile.java
  *
- * Copyright (c) 2009-2013 Werner Randelshofer, Switzerland.
+ * Copyright (c) 2009-2015 Werner Randelshofer, Switzerland.
  * You may not use, copy or modify this file, except in compliance with the
  * accompanying license terms.
  */
@@ -480,7 +480,7 @@ public class OSXFile {
                 }
 
                 TIFFImageDecoder decoder = new TIFFImageDecoder(
-                        new MemoryCacheSeekableStream(new ByteArrayInputStream(tiffData)),
+                        new ByteBufferSeekableStream(tiffData),
                         new TIFFDecodeParam());
 
                 RenderedImage rImg = decoder.decodeAsRenderedImage(0);
@@ -544,7 +544,7 @@ public class OSXFile {
 
                 }
 
-                TIFFImageDecoder decoder = new TIFFImageDecoder(new MemoryCacheSeekableStream(new ByteArrayInputStream(tiffData)),
+                TIFFImageDecoder decoder = new TIFFImageDecoder(new ByteBufferSeekableStream(tiffData),
                         new TIFFDecodeParam());
 
                 RenderedImage rImg = decoder.decodeAsRenderedImage(0);
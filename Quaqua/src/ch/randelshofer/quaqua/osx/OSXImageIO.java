@@ -1,7 +1,7 @@
 /*
  * @(#)OSXImageIO.java
  *
- * Copyright (c) 2009-2013 Werner Randelshofer, Switzerland.
+ * Copyright (c) 2009-2015 Werner Randelshofer, Switzerland.
  * All rights reserved.
  *
  * You may not use, copy or modify this file, except in compliance with the
@@ -12,14 +12,18 @@ package ch.randelshofer.quaqua.osx;
 
 import ch.randelshofer.quaqua.QuaquaManager;
 import ch.randelshofer.quaqua.ext.batik.ext.awt.image.codec.tiff.TIFFDecodeParam;
+import ch.randelshofer.quaqua.ext.batik.ext.awt.image.codec.tiff.TIFFDirectory;
+import ch.randelshofer.quaqua.ext.batik.ext.awt.image.codec.tiff.TIFFField;
+import ch.randelshofer.quaqua.ext.batik.ext.awt.image.codec.tiff.TIFFImage;
 import ch.randelshofer.quaqua.ext.batik.ext.awt.image.codec.tiff.TIFFImageDecoder;
-import ch.randelshofer.quaqua.ext.batik.ext.awt.image.codec.util.MemoryCacheSeekableStream;
+import ch.randelshofer.quaqua.ext.batik.ext.awt.image.codec.util.ByteBufferSeekableStream;
+import ch.randelshofer.quaqua.ext.batik.ext.awt.image.codec.util.SeekableStream;
 import ch.randelshofer.quaqua.util.Images;
 import java.awt.image.BufferedImage;
 import java.awt.image.RenderedImage;
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.security.AccessControlException;
 
 /**
@@ -43,9 +47,32 @@ public class OSXImageIO {
     /**
      * Reads a <code>BufferedImage</code> from the supplied <code>File</code>
      * using the Cocoa NSImage API.
+     * <p>
+     * TIFF files are decoded directly from a read-only memory mapping of the
+     * file, provided that their compression is supported by the TIFF
+     * decoder. The Cocoa NSImage API is only used for other files, and if
+     * decoding the TIFF file fails.
      */
     public static BufferedImage read(File file) throws IOException {
-        if (!isNativeCodeAvailable()) {
+        if (isTIFF(file)) {
+            try {
+                SeekableStream in = ByteBufferSeekableStream.map(file);
+                if (isDecodableTIFF(in)) {
+                    return decodeTIFF(in);
+                }
+                if (!isNativeCodeAvailable()) {
+                    throw new IOException("Native code is not available and the compression of the TIFF file is not supported " + file);
+                }
+            } catch (IOException e) {
+                if (!isNativeCodeAvailable()) {
+                    throw e;
+                }
+            } catch (RuntimeException e) {
+                if (!isNativeCodeAvailable()) {
+                    throw new IOException("Couldn't read image from file " + file, e);
+                }
+            }
+        } else if (!isNativeCodeAvailable()) {
             throw new IOException("Native code is not available");
         }
 
@@ -114,15 +141,72 @@ public class OSXImageIO {
 
     /** Decodes a byte array with a TIFF encoded image. */
     private static BufferedImage decodeTIFF(byte[] tiffData) throws IOException {
+        return decodeTIFF(new ByteBufferSeekableStream(tiffData));
+    }
+
+    /** Decodes a stream with a TIFF encoded image. */
+    private static BufferedImage decodeTIFF(SeekableStream in) throws IOException {
 
         TIFFImageDecoder decoder = new TIFFImageDecoder(
-                new MemoryCacheSeekableStream(new ByteArrayInputStream(tiffData)),
+                in,
                 new TIFFDecodeParam());
 
         RenderedImage rImg = decoder.decodeAsRenderedImage(0);
         return Images.toBufferedImage(rImg);
     }
 
+    /**
+     * Returns true if the first image in the TIFF stream uses a compression
+     * which the TIFF decoder decodes correctly. The decoder does not
+     * support JPEG compression, it applies the horizontal predictor
+     * only to LZW compressed images, and it supports CCITT compression
+     * only for bilevel images.
+     */
+    private static boolean isDecodableTIFF(SeekableStream in) throws IOException {
+        TIFFDirectory dir = new TIFFDirectory(in, 0);
+        TIFFField compressionField = dir.getField(TIFFImageDecoder.TIFF_COMPRESSION);
+        TIFFField predictorField = dir.getField(TIFFImageDecoder.TIFF_PREDICTOR);
+        int compression = compressionField == null ? TIFFImage.COMP_NONE : compressionField.getAsInt(0);
+        int predictor = predictorField == null ? 1 : predictorField.getAsInt(0);
+        TIFFField bitsPerSampleField = dir.getField(TIFFImageDecoder.TIFF_BITS_PER_SAMPLE);
+        TIFFField samplesPerPixelField = dir.getField(TIFFImageDecoder.TIFF_SAMPLES_PER_PIXEL);
+        int bitsPerSample = bitsPerSampleField == null ? 1 : bitsPerSampleField.getAsInt(0);
+        int samplesPerPixel = samplesPerPixelField == null ? 1 : samplesPerPixelField.getAsInt(0);
+        switch (compression) {
+            case TIFFImage.COMP_NONE:
+            case TIFFImage.COMP_PACKBITS:
+            case TIFFImage.COMP_DEFLATE:
+                return predictor == 1;
+            case TIFFImage.COMP_LZW:
+                return predictor == 1 || predictor == 2;
+            case TIFFImage.COMP_FAX_G3_1D:
+            case TIFFImage.COMP_FAX_G3_2D:
+            case TIFFImage.COMP_FAX_G4_2D:
+                return bitsPerSample == 1 && samplesPerPixel == 1;
+            default:
+                return false;
+        }
+    }
+
+    /** Returns true if the file starts with the magic number of a TIFF file. */
+    private static boolean isTIFF(File file) {
+        byte[] magic = new byte[4];
+        try {
+            RandomAccessFile in = new RandomAccessFile(file, "r");
+            try {
+                in.readFully(magic);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            return false;
+        } catch (AccessControlException e) {
+            return false;
+        }
+        return (magic[0] == 'I' && magic[1] == 'I' && magic[2] == 42 && magic[3] == 0)
+                || (magic[0] == 'M' && magic[1] == 'M' && magic[2] == 0 && magic[3] == 42);
+    }
+
     /**
      * Reads an image from the specified path and returns it in a TIFF
      * encoded byte array.
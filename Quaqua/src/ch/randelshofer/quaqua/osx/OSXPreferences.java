@@ -1,20 +1,37 @@
 /*
  * @(#)OSXPreferences.java
  *
- * Copyright (c) 2005-2013 Werner Randelshofer, Switzerland.
+ * Copyright (c) 2005-2015 Werner Randelshofer, Switzerland.
  * You may not use, copy or modify this file, except in compliance with the
  * accompanying license terms.
  */
 package ch.randelshofer.quaqua.osx;
 
 import ch.randelshofer.quaqua.*;
-import ch.randelshofer.quaqua.ext.nanoxml.*;
+import ch.randelshofer.quaqua.ext.base64.Base64;
+import ch.randelshofer.quaqua.ext.nanoxml.XMLParseException;
+import ch.randelshofer.quaqua.ext.nanoxml.XMLPullParser;
+import ch.randelshofer.quaqua.util.BinaryPList;
 import ch.randelshofer.quaqua.util.BinaryPListParser;
 import java.io.*;
+import java.text.SimpleDateFormat;
 import java.util.*;
 
 /**
  * Utility class for accessing Mac OS X Preferences.
+ * <p>
+ * The values of a preferences file are cached in a map, which flattens the
+ * hierarchy of the file into keys separated by \t characters. The cache of
+ * a file is updated when the last modification time or the length of the
+ * file has changed. The file is checked at most once every
+ * {@code CHECK_INTERVAL_MILLIS} milliseconds. Binary files are decoded on demand from a memory-mapped
+ * buffer, XML files are read with an {@link XMLPullParser}. Neither builds
+ * an XMLElement tree.
+ * <p>
+ * Dates are returned in the format {@code yyyy-MM-dd'T'HH:mm:ss'Z'} in the
+ * UTC time zone, the same way as they are stored in XML files. Earlier
+ * versions returned the dates of binary files in the local time zone, with
+ * a 'Z' suffix nevertheless.
  *
  * @author  Werner Randelshofer
  * @version $Id$
@@ -26,7 +43,31 @@ public class OSXPreferences {
     /** Path to finder preferences. */
     public final static File FINDER_PREFERENCES = new File(QuaquaManager.getProperty("user.home"), "Library/Preferences/com.apple.finder.plist");
     /** Each entry in this hash map represents a cached preferences file. */
-    private static HashMap<File, HashMap<String, Object>> cachedFiles;
+    private final static HashMap<File, CachedFile> cachedFiles = new HashMap<File, CachedFile>();
+    /**
+     * A cached file is checked for changes at most once in this number of
+     * milliseconds, because each check asks the file system twice.
+     */
+    private final static long CHECK_INTERVAL_MILLIS = 500;
+
+    /**
+     * Holds the values of a preferences file, the last modification
+     * time and the length of the file when it was read, and the time when
+     * the file was last checked for changes.
+     */
+    private static class CachedFile {
+
+        final long lastModified;
+        final long length;
+        final HashMap<String, Object> values;
+        long lastCheckedMillis = System.currentTimeMillis();
+
+        CachedFile(long lastModified, long length, HashMap<String, Object> values) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.values = values;
+        }
+    }
 
     /**
      * Creates a new instance.
@@ -47,25 +88,26 @@ public class OSXPreferences {
     }
     
     public static Object get(File file, String key) {
-        ensureCached(file);
-        return cachedFiles.get(file).get(key);
+        return getValues(file).get(key);
     }
 
     /** Returns all known keys for the specified preferences file. */
     public static Set<String> getKeySet(File file) {
-        ensureCached(file);
-        return cachedFiles.get(file).keySet();
+        return Collections.unmodifiableSet(getValues(file).keySet());
     }
 
     /** Clears all caches. */
     public static void clearAllCaches() {
-        cachedFiles.clear();
-
+        synchronized (cachedFiles) {
+            cachedFiles.clear();
+        }
     }
 
     /** Clears the cache for the specified preference file. */
     public static void clearCache(File f) {
-        cachedFiles.remove(f);
+        synchronized (cachedFiles) {
+            cachedFiles.remove(f);
+        }
     }
 
     /**
@@ -77,111 +119,238 @@ public class OSXPreferences {
      * @return Returns the preferences value.
      */
     public static Object get(File file, String key, Object defaultValue) {
-        ensureCached(file);
-        return (cachedFiles.get(file).containsKey(key)) ? cachedFiles.get(file).get(key) : defaultValue;
+        HashMap<String, Object> values = getValues(file);
+        return (values.containsKey(key)) ? values.get(key) : defaultValue;
     }
 
-    private static void ensureCached(File file) {
-        if (cachedFiles == null) {
-            cachedFiles = new HashMap<File, HashMap<String, Object>>();
-        }
-        if (!cachedFiles.containsKey(file)) {
-            HashMap<String, Object> cache = new HashMap<String, Object>();
-            cachedFiles.put(file, cache);
-            updateCache(file, cache);
+    /**
+     * Returns the values of the specified file. Reads the file, if it has
+     * not been read yet, or if it has been changed since it was read. A
+     * change is only noticed, when the file has not been checked during the
+     * last {@code CHECK_INTERVAL_MILLIS} milliseconds.
+     * <p>
+     * The returned map must not be modified. It is replaced by a new map
+     * when the file is read again.
+     */
+    private static HashMap<String, Object> getValues(File file) {
+        synchronized (cachedFiles) {
+            CachedFile cached = cachedFiles.get(file);
+            if (cached == null) {
+                cached = readCachedFile(file);
+                cachedFiles.put(file, cached);
+            } else if (QuaquaManager.isOSX()) {
+                long now = System.currentTimeMillis();
+                if (now - cached.lastCheckedMillis >= CHECK_INTERVAL_MILLIS
+                        || now < cached.lastCheckedMillis) {
+                    if (cached.lastModified != file.lastModified()
+                            || cached.length != file.length()) {
+                        cached = readCachedFile(file);
+                        cachedFiles.put(file, cached);
+                    } else {
+                        cached.lastCheckedMillis = now;
+                    }
+                }
+            }
+            return cached.values;
         }
     }
 
-    private static void updateCache(File file, HashMap<String, Object> cache) {
-        cache.clear();
-
-        if (QuaquaManager.isOSX()) {
-            try {
-                XMLElement plist = readPList(file);
-
-                Stack<String> keyPath = new Stack<String>();
-                readNode(plist, keyPath, cache);
-            } catch (Throwable e) {
-                System.err.println("Warning: ch.randelshofer.quaqua.util.OSXPreferences failed to load " + file);
-                e.printStackTrace();
-            }
+    private static CachedFile readCachedFile(File file) {
+        HashMap<String, Object> values = new HashMap<String, Object>();
+        if (!QuaquaManager.isOSX()) {
+            return new CachedFile(0, 0, values);
+        }
+        long lastModified = file.lastModified();
+        long length = file.length();
+        try {
+            readPList(file, values);
+        } catch (Throwable e) {
+            values.clear();
+            System.err.println("Warning: ch.randelshofer.quaqua.util.OSXPreferences failed to load " + file);
+            e.printStackTrace();
         }
+        return new CachedFile(lastModified, length, values);
     }
 
-    private static void readNode(XMLElement node, Stack<String> keyPath, HashMap<String, Object> cache) throws IOException {
-        String name = node.getName();
-        if (name.equals("plist")) {
-            readPList(node, keyPath, cache);
-        } else if (name.equals("dict")) {
-            readDict(node, keyPath, cache);
-        } else if (name.equals("array")) {
-            readArray(node, keyPath, cache);
+    /**
+     * Reads the specified PList file into the specified map.
+     * This method can deal with XML encoded and binary encoded PList files.
+     */
+    private static void readPList(File plistFile, HashMap<String, Object> values) throws IOException {
+        byte[] magic = new byte[8];
+        int count = 0;
+        InputStream in = new FileInputStream(plistFile);
+        try {
+            for (int n; count < magic.length && (n = in.read(magic, count, magic.length - count)) != -1;) {
+                count += n;
+            }
+        } finally {
+            in.close();
+        }
+        if (count == magic.length && new String(magic, "ASCII").equals("bplist00")) {
+            BinaryPList plist = BinaryPListParser.parseLazily(plistFile);
+            readBinaryNode(plist, plist.getRoot(), new StringBuilder(), values, 0);
         } else {
-            readValue(node, keyPath, cache);
+            readXMLPList(plistFile, values);
         }
     }
 
-    private static void readPList(XMLElement plist, Stack<String> keyPath, HashMap<String, Object> cache) throws IOException {
-        ArrayList<XMLElement> children = plist.getChildren();
-        for (int i = 0, n = children.size(); i < n; i++) {
-            readNode(children.get(i), keyPath, cache);
+    /**
+     * Reads the specified object of a binary PList into the map.
+     *
+     * @param keyPath The key path of the object. The key path is restored
+     * when this method returns.
+     */
+    private static void readBinaryNode(BinaryPList plist, int ref, StringBuilder keyPath, HashMap<String, Object> values, int depth) throws IOException {
+        if (depth > 512) {
+            throw new IOException("PList nesting is too deep at " + keyPath);
         }
-    }
-
-    private static void readDict(XMLElement dict, Stack<String> keyPath, HashMap<String, Object> cache) throws IOException {
-        ArrayList<XMLElement> children = dict.getChildren();
-        for (int i = 0, n = children.size(); i < n; i += 2) {
-            XMLElement keyElem = children.get(i);
-            if (!keyElem.getName().equals("key")) {
-                throw new IOException("missing dictionary key at" + keyPath);
+        int keyPathLength = keyPath.length();
+        switch (plist.getType(ref)) {
+            case BinaryPList.TYPE_DICT:
+                for (int i = 0, n = plist.getCount(ref); i < n; i++) {
+                    appendKey(keyPath, keyPathLength, plist.getDictKey(ref, i));
+                    readBinaryNode(plist, plist.getDictValueAt(ref, i), keyPath, values, depth + 1);
+                }
+                break;
+            case BinaryPList.TYPE_ARRAY:
+                for (int i = 0, n = plist.getCount(ref); i < n; i++) {
+                    appendKey(keyPath, keyPathLength, Integer.toString(i));
+                    readBinaryNode(plist, plist.getArrayElement(ref, i), keyPath, values, depth + 1);
+                }
+                break;
+            case BinaryPList.TYPE_STRING:
+                values.put(keyPath.toString(), plist.getString(ref));
+                break;
+            case BinaryPList.TYPE_INTEGER:
+            case BinaryPList.TYPE_REAL:
+                values.put(keyPath.toString(), plist.getNumber(ref).toString());
+                break;
+            case BinaryPList.TYPE_BOOLEAN:
+                values.put(keyPath.toString(), Boolean.toString(plist.getBoolean(ref)));
+                break;
+            case BinaryPList.TYPE_DATA:
+                values.put(keyPath.toString(), Base64.encodeBytes(plist.getData(ref)));
+                break;
+            case BinaryPList.TYPE_DATE: {
+                // In UTC, like the dates in XML files. BinaryPListParser
+                // formats dates in the local time zone.
+                SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+                format.setTimeZone(TimeZone.getTimeZone("UTC"));
+                values.put(keyPath.toString(), format.format(plist.getDate(ref)));
+                break;
             }
-            keyPath.push(keyElem.getContent());
-            readNode(children.get(i + 1), keyPath, cache);
-            keyPath.pop();
+            case BinaryPList.TYPE_UID:
+                values.put(keyPath.toString(), Integer.toString(plist.getUID(ref)));
+                break;
+            case BinaryPList.TYPE_NULL:
+            default:
+                break;
         }
+        keyPath.setLength(keyPathLength);
     }
 
-    private static void readArray(XMLElement array, Stack<String> keyPath, HashMap<String, Object> cache) throws IOException {
-        ArrayList<XMLElement> children = array.getChildren();
-        for (int i = 0, n = children.size(); i < n; i++) {
-            keyPath.push(Integer.toString(i));
-            readNode(children.get(i), keyPath, cache);
-            keyPath.pop();
+    /**
+     * Sets the key path to its first length characters, followed by a
+     * separator and the specified key.
+     */
+    private static void appendKey(StringBuilder keyPath, int length, String key) {
+        keyPath.setLength(length);
+        if (length > 0) {
+            keyPath.append('\t');
         }
+        keyPath.append(key);
     }
 
-    private static void readValue(XMLElement value, Stack<String> keyPath, HashMap<String, Object> cache) throws IOException {
-        StringBuffer key = new StringBuffer();
-        for (Iterator<String> i = keyPath.iterator(); i.hasNext();) {
-            key.append(i.next());
-            if (i.hasNext()) {
-                key.append('\t');
+    /**
+     * Reads an XML PList file into the map with a pull parser.
+     */
+    private static void readXMLPList(File plistFile, HashMap<String, Object> values) throws IOException {
+        Reader in = new InputStreamReader(new FileInputStream(plistFile), "UTF-8");
+        try {
+            XMLPullParser parser = new XMLPullParser(in);
+            StringBuilder keyPath = new StringBuilder();
+            // For each open dict or array: the length of the key path of
+            // the container, and the index of the next element or -1 if
+            // the container is a dict.
+            int[] lengths = new int[16];
+            int[] indices = new int[16];
+            int depth = 0;
+            String pendingKey = null;
+            for (int event = parser.next(); event != XMLPullParser.END_DOCUMENT; event = parser.next()) {
+                if (event != XMLPullParser.START_ELEMENT) {
+                    if (event == XMLPullParser.END_ELEMENT) {
+                        String name = parser.getName();
+                        if (name.equals("dict") || name.equals("array")) {
+                            depth--;
+                        }
+                    }
+                    continue;
+                }
+                String name = parser.getName();
+                if (name.equals("plist")) {
+                    continue;
+                }
+                if (name.equals("key")) {
+                    pendingKey = readElementText(parser);
+                    continue;
+                }
+
+                // Determine the key path of the value
+                if (depth > 0) {
+                    if (indices[depth - 1] == -1) {
+                        if (pendingKey == null) {
+                            throw new IOException("missing dictionary key at " + keyPath);
+                        }
+                        appendKey(keyPath, lengths[depth - 1], pendingKey);
+                        pendingKey = null;
+                    } else {
+                        appendKey(keyPath, lengths[depth - 1], Integer.toString(indices[depth - 1]++));
+                    }
+                }
+
+                if (name.equals("dict") || name.equals("array")) {
+                    if (depth == lengths.length) {
+                        lengths = Arrays.copyOf(lengths, depth * 2);
+                        indices = Arrays.copyOf(indices, depth * 2);
+                    }
+                    lengths[depth] = keyPath.length();
+                    indices[depth] = name.equals("dict") ? -1 : 0;
+                    depth++;
+                } else if (name.equals("true") || name.equals("false")) {
+                    values.put(keyPath.toString(), name);
+                    parser.skipElement();
+                } else {
+                    values.put(keyPath.toString(), readElementText(parser));
+                }
             }
+        } catch (XMLParseException e) {
+            IOException ioe = new IOException("Illegal PList " + plistFile);
+            ioe.initCause(e);
+            throw ioe;
+        } finally {
+            in.close();
         }
-        cache.put(key.toString(), value.getContent());
     }
 
     /**
-     * Reads the specified PList file and returns it as an XMLElement.
-     * This method can deal with XML encoded and binary encoded PList files.
+     * Reads the text of the current element up to its end.
+     * Returns an empty string if the element is empty.
      */
-    private static XMLElement readPList(File plistFile) throws IOException {
-        FileReader reader = null;
-        XMLElement xml = null;
-        try {
-            reader = new FileReader(plistFile);
-            xml = new XMLElement(new HashMap(), false, false);
-            try {
-                xml.parseFromReader(reader);
-            } catch (XMLParseException e) {
-                xml = new BinaryPListParser().parse(plistFile);
-            }
-        } finally {
-            if (reader != null) {
-                reader.close();
+    private static String readElementText(XMLPullParser parser) throws IOException {
+        String text = "";
+        for (;;) {
+            switch (parser.next()) {
+                case XMLPullParser.TEXT:
+                    text = parser.getText();
+                    break;
+                case XMLPullParser.END_ELEMENT:
+                    return text;
+                case XMLPullParser.START_ELEMENT:
+                    throw new IOException("unexpected element " + parser.getName() + " in text");
+                default:
+                    break;
             }
         }
-        return xml;
     }
 }
-
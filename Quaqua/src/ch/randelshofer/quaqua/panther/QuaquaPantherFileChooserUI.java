@@ -1,7 +1,7 @@
 /*
  * @(#)QuaquaPantherFileChooserUI.java
  *
- * Copyright (c) 2004-2013 Werner Randelshofer, Switzerland.
+ * Copyright (c) 2004-2015 Werner Randelshofer, Switzerland.
  * http://www.randelshofer.ch
  * All rights reserved.
  *
@@ -1165,7 +1165,7 @@ public class QuaquaPantherFileChooserUI extends BasicFileChooserUI implements Su
     private void doFilterChanged(PropertyChangeEvent e) {
         clearIconCache();
 
-        model.invalidateAll();
+        model.refilterAll();
 //The update did not occur from the browser        updateFileChooserFromBrowser();
         /*
         updateSelection();
@@ -1233,7 +1233,7 @@ public class QuaquaPantherFileChooserUI extends BasicFileChooserUI implements Su
         JFileChooser fc = getFileChooser();
         boolean isChooserVisible = ((FileFilter[]) e.getNewValue()).length > 1;
         formatPanel.setVisible(isChooserVisible);
-        model.invalidateAll();
+        model.refilterAll();
         /*
         updateSelection();
         updateApproveButtonState();*/
@@ -0,0 +1,311 @@
+/*
+ * @(#)AnimationScheduler.java
+ *
+ * Copyright (c) 2015 Werner Randelshofer, Switzerland.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package ch.randelshofer.quaqua.util;
+
+import ch.randelshofer.quaqua.QuaquaUtilities;
+import java.awt.Component;
+import java.awt.Rectangle;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.swing.Timer;
+
+/**
+ * Repaints the animated parts of components with a single frame clock.
+ * <p>
+ * Animated painters do not run timers of their own. Instead, each time they
+ * paint a frame, they request a repaint of the area which changes with the
+ * next frame. Requests for the same component are merged: the dirty
+ * rectangles are united, and the earliest due time is kept.
+ * <p>
+ * When a request is due, the area is only repainted if the component is
+ * showing, and - if requested - if it is on an active window. Otherwise the
+ * request is dropped. Since the painter is not invoked again, the animation
+ * pauses until the component is repainted for another reason, for example
+ * when its window is activated. Without pending requests, the frame clock
+ * does not run at all.
+ * <p>
+ * All repaints are requested on the AWT Event Dispatcher Thread. The
+ * methods of this class can be called from any thread.
+ *
+ * @author Werner Randelshofer
+ * @version $Id$
+ */
+public class AnimationScheduler {
+
+    /**
+     * The shared instance.
+     */
+    private static AnimationScheduler sharedInstance;
+    /**
+     * Guards the requests and the metrics.
+     */
+    private final Object lock = new Object();
+    /**
+     * Pending repaint requests by component.
+     */
+    private final LinkedHashMap<Component, Request> requests = new LinkedHashMap<Component, Request>();
+    /**
+     * The due time of the next frame in nanoseconds. This is
+     * Long.MAX_VALUE, if the timer is not scheduled.
+     */
+    private long nextFrameNanos = Long.MAX_VALUE;
+    /**
+     * The period of the frame clock in nanoseconds. This is used for
+     * counting dropped frames.
+     */
+    private final long frameNanos;
+    private final Timer timer;
+    private long frameCount;
+    private long repaintCount;
+    private long droppedFrameCount;
+    private long totalFrameNanos;
+    private long maxLatencyNanos;
+
+    /**
+     * A pending repaint request.
+     */
+    private static class Request {
+
+        final Rectangle dirty;
+        long dueNanos;
+        boolean isActiveWindowOnly;
+
+        Request(Rectangle dirty, long dueNanos, boolean isActiveWindowOnly) {
+            this.dirty = dirty;
+            this.dueNanos = dueNanos;
+            this.isActiveWindowOnly = isActiveWindowOnly;
+        }
+    }
+
+    /**
+     * Creates a new instance with a frame time of 16 milliseconds.
+     */
+    public AnimationScheduler() {
+        this(16);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param frameMillis The period of the frame clock in milliseconds.
+     * A repaint which is requested more than one period after its due time
+     * counts as a dropped frame.
+     */
+    public AnimationScheduler(int frameMillis) {
+        this.frameNanos = frameMillis * 1000000L;
+        timer = new Timer(0, new ActionListener() {
+
+            public void actionPerformed(ActionEvent evt) {
+                runFrame();
+            }
+        });
+        timer.setRepeats(false);
+    }
+
+    /**
+     * Returns the shared instance.
+     */
+    public static synchronized AnimationScheduler getSharedInstance() {
+        if (sharedInstance == null) {
+            sharedInstance = new AnimationScheduler();
+        }
+        return sharedInstance;
+    }
+
+    /**
+     * Requests a repaint of the whole component.
+     *
+     * @param c The component.
+     * @param delayMillis The delay until the next frame in milliseconds.
+     * @param isActiveWindowOnly Set this to true, if the animation shall
+     * pause while the window of the component is not active.
+     */
+    public void scheduleRepaint(Component c, long delayMillis, boolean isActiveWindowOnly) {
+        scheduleRepaint(c, 0, 0, c.getWidth(), c.getHeight(), delayMillis, isActiveWindowOnly);
+    }
+
+    /**
+     * Requests a repaint of a rectangle of the component.
+     *
+     * @param c The component.
+     * @param x The x coordinate of the dirty rectangle in the component.
+     * @param y The y coordinate of the dirty rectangle in the component.
+     * @param width The width of the dirty rectangle.
+     * @param height The height of the dirty rectangle.
+     * @param delayMillis The delay until the next frame in milliseconds.
+     * @param isActiveWindowOnly Set this to true, if the animation shall
+     * pause while the window of the component is not active.
+     */
+    public void scheduleRepaint(Component c, int x, int y, int width, int height,
+            long delayMillis, boolean isActiveWindowOnly) {
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        long delayNanos = Math.max(1, delayMillis) * 1000000L;
+        long dueNanos = System.nanoTime() + delayNanos;
+        synchronized (lock) {
+            Request r = requests.get(c);
+            if (r == null) {
+                requests.put(c, new Request(new Rectangle(x, y, width, height), dueNanos, isActiveWindowOnly));
+            } else {
+                r.dirty.add(new Rectangle(x, y, width, height));
+                r.dueNanos = Math.min(r.dueNanos, dueNanos);
+                r.isActiveWindowOnly &= isActiveWindowOnly;
+            }
+            if (dueNanos < nextFrameNanos) {
+                nextFrameNanos = dueNanos;
+                timer.setInitialDelay((int) (delayNanos / 1000000L));
+                timer.restart();
+            }
+        }
+    }
+
+    /**
+     * Removes the pending request for the specified component.
+     */
+    public void cancel(Component c) {
+        synchronized (lock) {
+            requests.remove(c);
+        }
+    }
+
+    /**
+     * Returns the number of components with a pending request.
+     */
+    public int getPendingCount() {
+        synchronized (lock) {
+            return requests.size();
+        }
+    }
+
+    /**
+     * Repaints all components with a due request, and restarts the timer
+     * for the next request. Must be called on the AWT Event Dispatcher
+     * Thread.
+     */
+    private void runFrame() {
+        long startNanos = System.nanoTime();
+        ArrayList<Component> dueComponents = new ArrayList<Component>();
+        ArrayList<Request> dueRequests = new ArrayList<Request>();
+        long next = Long.MAX_VALUE;
+        synchronized (lock) {
+            for (Iterator<Map.Entry<Component, Request>> i = requests.entrySet().iterator(); i.hasNext();) {
+                Map.Entry<Component, Request> entry = i.next();
+                Request r = entry.getValue();
+                if (r.dueNanos <= startNanos) {
+                    dueComponents.add(entry.getKey());
+                    dueRequests.add(r);
+                    i.remove();
+                } else {
+                    next = Math.min(next, r.dueNanos);
+                }
+            }
+            nextFrameNanos = next;
+        }
+
+        int repaints = 0;
+        long dropped = 0;
+        long maxLatency = 0;
+        for (int i = 0, n = dueComponents.size(); i < n; i++) {
+            Component c = dueComponents.get(i);
+            Request r = dueRequests.get(i);
+            if (!c.isShowing()
+                    || r.isActiveWindowOnly && !QuaquaUtilities.isOnActiveWindow(c)) {
+                continue;
+            }
+            long latency = startNanos - r.dueNanos;
+            maxLatency = Math.max(maxLatency, latency);
+            dropped += latency / frameNanos;
+            c.repaint(r.dirty.x, r.dirty.y, r.dirty.width, r.dirty.height);
+            repaints++;
+        }
+
+        synchronized (lock) {
+            if (repaints > 0) {
+                frameCount++;
+                repaintCount += repaints;
+                droppedFrameCount += dropped;
+                totalFrameNanos += System.nanoTime() - startNanos;
+                maxLatencyNanos = Math.max(maxLatencyNanos, maxLatency);
+            }
+            // A request may have been added while we were repainting.
+            if (nextFrameNanos != Long.MAX_VALUE) {
+                timer.setInitialDelay((int) Math.max(0, (nextFrameNanos - System.nanoTime() + 999999L) / 1000000L));
+                timer.restart();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of frames in which at least one component has been
+     * repainted.
+     */
+    public long getFrameCount() {
+        synchronized (lock) {
+            return frameCount;
+        }
+    }
+
+    /**
+     * Returns the number of repaints which have been requested from
+     * components.
+     */
+    public long getRepaintCount() {
+        synchronized (lock) {
+            return repaintCount;
+        }
+    }
+
+    /**
+     * Returns the number of frames which have been skipped, because a repaint
+     * was requested later than one period of the frame clock after its due
+     * time.
+     */
+    public long getDroppedFrameCount() {
+        synchronized (lock) {
+            return droppedFrameCount;
+        }
+    }
+
+    /**
+     * Returns the total time in nanoseconds that has been spent requesting
+     * repaints.
+     */
+    public long getTotalFrameNanos() {
+        synchronized (lock) {
+            return totalFrameNanos;
+        }
+    }
+
+    /**
+     * Returns the longest time in nanoseconds that a repaint has been
+     * requested after its due time.
+     */
+    public long getMaxLatencyNanos() {
+        synchronized (lock) {
+            return maxLatencyNanos;
+        }
+    }
+
+    @Override
+    public String toString() {
+        synchronized (lock) {
+            return super.toString() + "[pending=" + requests.size()
+                    + ",frames=" + frameCount
+                    + ",repaints=" + repaintCount
+                    + ",droppedFrames=" + droppedFrameCount
+                    + ",totalFrameNanos=" + totalFrameNanos
+                    + ",maxLatencyNanos=" + maxLatencyNanos
+                    + "]";
+        }
+    }
+}
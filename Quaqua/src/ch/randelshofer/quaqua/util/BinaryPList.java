@@ -0,0 +1,524 @@
+/*
+ * @(#)BinaryPList.java
+ *
+ * Copyright (c) 2015 Werner Randelshofer, Switzerland.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package ch.randelshofer.quaqua.util;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+/**
+ * Provides read access to a binary PList without decoding it as a whole.
+ * <p>
+ * The PList is memory-mapped. Objects are decoded on demand from their offset
+ * in the object table. Objects are denoted by their reference number, which
+ * is the index of the object in the offset table. Navigating through a PList
+ * does not create objects, except for the values which are returned by the
+ * primitive getters.
+ * <p>
+ * Example: reading the value of the key "NSNavLastRootDirectory" from the
+ * top level dictionary:
+ * <pre>
+ * BinaryPList plist = BinaryPList.map(file);
+ * int ref = plist.getDictValue(plist.getRoot(), "NSNavLastRootDirectory");
+ * String value = (ref == -1) ? null : plist.getString(ref);
+ * </pre>
+ * Instances of this class are immutable and can be used by multiple threads.
+ *
+ * @see BinaryPListParser
+ *
+ * @version $Id$
+ */
+public class BinaryPList {
+
+    public final static int TYPE_NULL = 0;
+    public final static int TYPE_BOOLEAN = 1;
+    public final static int TYPE_INTEGER = 2;
+    public final static int TYPE_REAL = 3;
+    public final static int TYPE_DATE = 4;
+    public final static int TYPE_DATA = 5;
+    public final static int TYPE_STRING = 6;
+    public final static int TYPE_UID = 7;
+    public final static int TYPE_ARRAY = 8;
+    public final static int TYPE_DICT = 9;
+    /** Dates are measured in seconds from 2001-01-01 00:00:00 UTC. */
+    private final static long DATE_TIMEBASE = 978307200000L;
+    /** Maximal nesting depth of containers supported by getObject. */
+    private final static int MAX_DEPTH = 512;
+    private final ByteBuffer buf;
+    private final int offsetIntSize;
+    private final int objectRefSize;
+    private final int objectCount;
+    private final int topObject;
+    private final int offsetTableOffset;
+
+    /**
+     * Creates a new instance for a binary PList held by the specified buffer.
+     * The buffer must not be modified while the instance is in use.
+     *
+     * @throws IOException if the buffer does not contain a binary PList.
+     */
+    public BinaryPList(ByteBuffer buf) throws IOException {
+        this.buf = buf;
+        int length = buf.limit();
+        if (length < 40 || buf.getInt(0) != 0x62706c69 || buf.getInt(4) != 0x73743030) {
+            throw new IOException("File does not start with 'bplist00' magic.");
+        }
+
+        // Parse the TRAILER
+        // ----------------
+        //  6 unused bytes
+        //  byte size of offset ints in offset table
+        //  byte size of object refs in arrays and dicts
+        //  number of offsets in offset table (also is number of objects)
+        //  element # in offset table which is top level object
+        //  offset of the offset table
+        int trailer = length - 32;
+        offsetIntSize = buf.get(trailer + 6) & 0xff;
+        objectRefSize = buf.get(trailer + 7) & 0xff;
+        long numObjects = buf.getLong(trailer + 8);
+        long top = buf.getLong(trailer + 16);
+        long tableOffset = buf.getLong(trailer + 24);
+        if (offsetIntSize < 1 || offsetIntSize > 8
+                || objectRefSize < 1 || objectRefSize > 8
+                || numObjects < 1 || top < 0 || top >= numObjects
+                || tableOffset < 8 || tableOffset + numObjects * offsetIntSize > trailer) {
+            throw new IOException("Illegal binary PList trailer.");
+        }
+        objectCount = (int) numObjects;
+        topObject = (int) top;
+        offsetTableOffset = (int) tableOffset;
+    }
+
+    /**
+     * Memory-maps the specified file.
+     *
+     * @throws IOException if the file can not be read or if it does not
+     * contain a binary PList.
+     */
+    public static BinaryPList map(File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            return new BinaryPList(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            // The mapping stays valid after the channel has been closed.
+            in.close();
+        }
+    }
+
+    /**
+     * Returns the reference number of the top level object.
+     */
+    public int getRoot() {
+        return topObject;
+    }
+
+    /**
+     * Returns the number of objects.
+     */
+    public int getObjectCount() {
+        return objectCount;
+    }
+
+    /**
+     * Returns the type of the object, one of the TYPE constants.
+     */
+    public int getType(int ref) {
+        int marker = getMarker(ref);
+        switch (marker >>> 4) {
+            case 0:
+                return (marker == 0x08 || marker == 0x09) ? TYPE_BOOLEAN : TYPE_NULL;
+            case 1:
+                return TYPE_INTEGER;
+            case 2:
+                return TYPE_REAL;
+            case 3:
+                return TYPE_DATE;
+            case 4:
+                return TYPE_DATA;
+            case 5:
+            case 6:
+                return TYPE_STRING;
+            case 8:
+                return TYPE_UID;
+            case 10:
+                return TYPE_ARRAY;
+            case 13:
+                return TYPE_DICT;
+            default:
+                throw new IllegalArgumentException("Illegal marker 0x" + Integer.toHexString(marker) + " of object " + ref);
+        }
+    }
+
+    /**
+     * Returns the number of elements of an array, the number of entries of a
+     * dict, the number of characters of a string, or the number of bytes
+     * of data.
+     */
+    public int getCount(int ref) {
+        int offset = getOffset(ref);
+        int marker = buf.get(offset) & 0xff;
+        switch (marker >>> 4) {
+            case 4:
+            case 5:
+            case 6:
+            case 10:
+            case 13:
+                return readCount(offset, marker);
+            default:
+                throw new IllegalArgumentException("Object " + ref + " has no count");
+        }
+    }
+
+    /**
+     * Returns the reference number of the element with the specified index
+     * of an array.
+     */
+    public int getArrayElement(int ref, int index) {
+        int offset = getOffset(ref);
+        int count = readContainer(offset, 10, ref);
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Index " + index + " of array " + ref + " with " + count + " elements");
+        }
+        return readRef(getContentOffset(offset) + index * objectRefSize);
+    }
+
+    /**
+     * Returns the key of the entry with the specified index of a dict.
+     */
+    public String getDictKey(int ref, int index) {
+        return getString(getDictKeyRef(ref, index));
+    }
+
+    /**
+     * Returns the reference number of the key of the entry with the
+     * specified index of a dict.
+     */
+    public int getDictKeyRef(int ref, int index) {
+        int offset = getOffset(ref);
+        int count = readContainer(offset, 13, ref);
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Index " + index + " of dict " + ref + " with " + count + " entries");
+        }
+        return readRef(getContentOffset(offset) + index * objectRefSize);
+    }
+
+    /**
+     * Returns the reference number of the value of the entry with the
+     * specified index of a dict.
+     */
+    public int getDictValueAt(int ref, int index) {
+        int offset = getOffset(ref);
+        int count = readContainer(offset, 13, ref);
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Index " + index + " of dict " + ref + " with " + count + " entries");
+        }
+        return readRef(getContentOffset(offset) + (count + index) * objectRefSize);
+    }
+
+    /**
+     * Returns the reference number of the value of the specified key of a
+     * dict, or -1 if the dict does not contain the key.
+     * <p>
+     * The keys are compared with the specified key without decoding them.
+     */
+    public int getDictValue(int ref, String key) {
+        int offset = getOffset(ref);
+        int count = readContainer(offset, 13, ref);
+        int refs = getContentOffset(offset);
+        for (int i = 0; i < count; i++) {
+            if (stringEquals(readRef(refs + i * objectRefSize), key)) {
+                return readRef(refs + (count + i) * objectRefSize);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Follows a path of dict keys starting at the specified object.
+     * Returns the reference number of the object at the end of the path, or
+     * -1 if one of the keys can not be found or if one of the objects on the
+     * path is not a dict.
+     */
+    public int getPath(int ref, String... keys) {
+        for (String key : keys) {
+            if (ref == -1 || getType(ref) != TYPE_DICT) {
+                return -1;
+            }
+            ref = getDictValue(ref, key);
+        }
+        return ref;
+    }
+
+    public boolean getBoolean(int ref) {
+        int marker = getMarker(ref);
+        if (marker == 0x08) {
+            return false;
+        } else if (marker == 0x09) {
+            return true;
+        }
+        throw new IllegalArgumentException("Object " + ref + " is not a boolean");
+    }
+
+    /**
+     * Returns the value of an integer. Integers with 1, 2 or 4 bytes are
+     * unsigned, integers with 8 bytes are signed. Of integers with 16 bytes,
+     * only the 8 least significant bytes are returned.
+     */
+    public long getLong(int ref) {
+        int offset = getOffset(ref);
+        int marker = buf.get(offset) & 0xff;
+        if ((marker >>> 4) != 1) {
+            throw new IllegalArgumentException("Object " + ref + " is not an integer");
+        }
+        int size = 1 << (marker & 0xf);
+        if (size > 16) {
+            throw new IllegalArgumentException("Unsupported integer size " + size + " of object " + ref);
+        }
+        return readUnsigned(offset + 1 + Math.max(0, size - 8), Math.min(size, 8));
+    }
+
+    /**
+     * Returns the value of a real or of an integer.
+     */
+    public double getDouble(int ref) {
+        int offset = getOffset(ref);
+        int marker = buf.get(offset) & 0xff;
+        switch (marker) {
+            case 0x22:
+                return buf.getFloat(offset + 1);
+            case 0x23:
+                return buf.getDouble(offset + 1);
+            default:
+                if ((marker >>> 4) == 1) {
+                    return getLong(ref);
+                }
+                throw new IllegalArgumentException("Object " + ref + " is not a real");
+        }
+    }
+
+    /**
+     * Returns the value of an integer as a Long, or of a real as a Float or
+     * a Double, depending on the precision of the real.
+     */
+    public Number getNumber(int ref) {
+        int offset = getOffset(ref);
+        int marker = buf.get(offset) & 0xff;
+        switch (marker) {
+            case 0x22:
+                return buf.getFloat(offset + 1);
+            case 0x23:
+                return buf.getDouble(offset + 1);
+            default:
+                return getLong(ref);
+        }
+    }
+
+    public Date getDate(int ref) {
+        int offset = getOffset(ref);
+        if ((buf.get(offset) & 0xff) != 0x33) {
+            throw new IllegalArgumentException("Object " + ref + " is not a date");
+        }
+        return new Date(DATE_TIMEBASE + (long) (buf.getDouble(offset + 1) * 1000d));
+    }
+
+    public byte[] getData(int ref) {
+        int offset = getOffset(ref);
+        int count = readContainer(offset, 4, ref);
+        byte[] data = new byte[count];
+        int start = getContentOffset(offset);
+        for (int i = 0; i < count; i++) {
+            data[i] = buf.get(start + i);
+        }
+        return data;
+    }
+
+    public String getString(int ref) {
+        int offset = getOffset(ref);
+        int marker = buf.get(offset) & 0xff;
+        int count = readCount(offset, marker);
+        int start = getContentOffset(offset);
+        char[] chars = new char[count];
+        switch (marker >>> 4) {
+            case 5:
+                for (int i = 0; i < count; i++) {
+                    chars[i] = (char) (buf.get(start + i) & 0xff);
+                }
+                break;
+            case 6:
+                for (int i = 0; i < count; i++) {
+                    chars[i] = buf.getChar(start + 2 * i);
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Object " + ref + " is not a string");
+        }
+        return new String(chars);
+    }
+
+    public int getUID(int ref) {
+        int offset = getOffset(ref);
+        int marker = buf.get(offset) & 0xff;
+        if ((marker >>> 4) != 8 || (marker & 0xf) > 3) {
+            throw new IllegalArgumentException("Object " + ref + " is not a supported UID");
+        }
+        return (int) readUnsigned(offset + 1, (marker & 0xf) + 1);
+    }
+
+    /**
+     * Decodes the object and all objects contained in it.
+     * <p>
+     * Dicts are returned as a {@code Map<String,Object>} which preserves the
+     * order of the entries, arrays are returned as a {@code List<Object>},
+     * strings as String, integers as Long, reals as Float or Double, booleans as
+     * Boolean, dates as Date, data as byte[], and UIDs as Integer.
+     */
+    public Object getObject(int ref) {
+        return getObject(ref, 0);
+    }
+
+    private Object getObject(int ref, int depth) {
+        if (depth > MAX_DEPTH) {
+            throw new IllegalArgumentException("PList nesting is too deep at object " + ref);
+        }
+        switch (getType(ref)) {
+            case TYPE_NULL:
+                return null;
+            case TYPE_BOOLEAN:
+                return getBoolean(ref);
+            case TYPE_INTEGER:
+                return getLong(ref);
+            case TYPE_REAL:
+                return getNumber(ref);
+            case TYPE_DATE:
+                return getDate(ref);
+            case TYPE_DATA:
+                return getData(ref);
+            case TYPE_STRING:
+                return getString(ref);
+            case TYPE_UID:
+                return getUID(ref);
+            case TYPE_ARRAY: {
+                int count = getCount(ref);
+                ArrayList<Object> list = new ArrayList<Object>(count);
+                for (int i = 0; i < count; i++) {
+                    list.add(getObject(getArrayElement(ref, i), depth + 1));
+                }
+                return list;
+            }
+            case TYPE_DICT:
+            default: {
+                int count = getCount(ref);
+                LinkedHashMap<String, Object> map = new LinkedHashMap<String, Object>(Math.max(16, count * 4 / 3 + 1));
+                for (int i = 0; i < count; i++) {
+                    map.put(getDictKey(ref, i), getObject(getDictValueAt(ref, i), depth + 1));
+                }
+                return map;
+            }
+        }
+    }
+
+    /**
+     * Returns true if the object is a string which is equal to the
+     * specified string.
+     */
+    private boolean stringEquals(int ref, String str) {
+        int offset = getOffset(ref);
+        int marker = buf.get(offset) & 0xff;
+        int type = marker >>> 4;
+        if (type != 5 && type != 6) {
+            return false;
+        }
+        int count = readCount(offset, marker);
+        if (count != str.length()) {
+            return false;
+        }
+        int start = getContentOffset(offset);
+        for (int i = 0; i < count; i++) {
+            char ch = (type == 5) ? (char) (buf.get(start + i) & 0xff) : buf.getChar(start + 2 * i);
+            if (ch != str.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the offset of the object from the offset table.
+     */
+    private int getOffset(int ref) {
+        if (ref < 0 || ref >= objectCount) {
+            throw new IndexOutOfBoundsException("Illegal object reference " + ref);
+        }
+        long offset = readUnsigned(offsetTableOffset + ref * offsetIntSize, offsetIntSize);
+        if (offset < 8 || offset >= offsetTableOffset) {
+            throw new IllegalArgumentException("Illegal offset " + offset + " of object " + ref);
+        }
+        return (int) offset;
+    }
+
+    private int getMarker(int ref) {
+        return buf.get(getOffset(ref)) & 0xff;
+    }
+
+    /**
+     * Checks the type of a container and returns its count.
+     */
+    private int readContainer(int offset, int type, int ref) {
+        int marker = buf.get(offset) & 0xff;
+        if ((marker >>> 4) != type) {
+            throw new IllegalArgumentException("Object " + ref + " has unexpected marker 0x" + Integer.toHexString(marker));
+        }
+        return readCount(offset, marker);
+    }
+
+    /**
+     * Reads the count of an object with the specified marker. If the count
+     * does not fit into the marker, it is encoded as an int object which
+     * follows the marker.
+     */
+    private int readCount(int offset, int marker) {
+        int count = marker & 0xf;
+        if (count == 15) {
+            int intMarker = buf.get(offset + 1) & 0xff;
+            if ((intMarker >>> 4) != 1 || (intMarker & 0xf) > 3) {
+                throw new IllegalArgumentException("Illegal count marker 0x" + Integer.toHexString(intMarker) + " at offset " + offset);
+            }
+            long value = readUnsigned(offset + 2, 1 << (intMarker & 0xf));
+            if (value > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Illegal count " + value + " at offset " + offset);
+            }
+            count = (int) value;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the offset of the content of an object, which follows the
+     * marker and the count.
+     */
+    private int getContentOffset(int offset) {
+        if ((buf.get(offset) & 0xf) == 15) {
+            return offset + 2 + (1 << (buf.get(offset + 1) & 0xf));
+        }
+        return offset + 1;
+    }
+
+    private int readRef(int offset) {
+        return (int) readUnsigned(offset, objectRefSize);
+    }
+
+    private long readUnsigned(int offset, int size) {
+        long value = 0;
+        for (int i = 0; i < size; i++) {
+            value = (value << 8) | (buf.get(offset + i) & 0xff);
+        }
+        return value;
+    }
+}
@@ -1,7 +1,7 @@
 /*
  * @(#)BinaryPListParser.java
  *
- * Copyright (c) 2005-2013 Werner Randelshofer, Switzerland.
+ * Copyright (c) 2005-2015 Werner Randelshofer, Switzerland.
  * You may not use, copy or modify this file, except in compliance with the
  * accompanying license terms.
  */
@@ -26,6 +26,9 @@ import javax.xml.datatype.XMLGregorianCalendar;
  * XMLElement returned, if a PList file in XML format is parsed with
  * NanoXML.
  * <p>
+ * Alternatively, the reader can memory-map a binary PList file, and decode
+ * its objects on demand, see {@link #parseLazily}.
+ * <p>
  * Description about property list taken from <a href="http://developer.apple.com/documentation/Cocoa/Conceptual/PropertyLists/index.html#//apple_ref/doc/uid/10000048i">
  * Apple's online documentation</a>:
  * <p>
@@ -333,6 +336,20 @@ public class BinaryPListParser {
         return root;
     }
 
+    /**
+     * Memory-maps a binary PList file without decoding it.
+     * <p>
+     * Use this method instead of {@link #parse} if only a few values of the
+     * PList are needed. The objects are decoded on demand, when they are
+     * accessed through the returned BinaryPList.
+     *
+     * @param file A file containing a binary PList.
+     * @return Returns the memory-mapped PList.
+     */
+    public static BinaryPList parseLazily(File file) throws IOException {
+        return BinaryPList.map(file);
+    }
+
     private long getPosition() {
         return pos.getPos()+8;
     }
@@ -693,7 +710,7 @@ public class BinaryPListParser {
         }
         byte[] uid = new byte[count];
         in.readFully(uid);
-        objectTable.add(new BPLUid(new BigInteger(uid).intValue()));
+        objectTable.add(new BPLUid(new BigInteger(1, uid).intValue()));
     }
 
     /**
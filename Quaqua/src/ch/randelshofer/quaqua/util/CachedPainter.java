@@ -1,16 +1,17 @@
 /*
  * @(#)CachedPainter.java  
  *
- * Copyright (c) 2005-2013 Werner Randelshofer, Switzerland.
+ * Copyright (c) 2005-2015 Werner Randelshofer, Switzerland.
  * You may not use, copy or modify this file, except in compliance with the
  * accompanying license terms.
  */
 package ch.randelshofer.quaqua.util;
 
+import ch.randelshofer.quaqua.QuaquaManager;
 import java.awt.*;
 import java.awt.image.*;
-import java.lang.ref.SoftReference;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A base class used for icons or images that are expensive to paint.
@@ -24,36 +25,62 @@ import java.util.*;
  *     lives here is equivalent to what previously would go in
  *     <code>paintIcon</code>, for an <code>Icon</code>.
  * </ol>
+ * The images are cached in a hash table, which is split into lock stripes.
+ * All painters share a common budget of bytes for their images. When the
+ * budget is exceeded, the least recently used images are evicted.
+ * In addition, each painter class may only cache up to a maximal number of
+ * images. When this number is exceeded, the oldest image of the painter
+ * class is evicted.
+ * <p>
  * This class has been derived from javax.swing.plaf.metal.CachedPainter 1.2 04/02/15 
  * 
  * @author Werner Randelshofer
  * @version $Id$
  */
 public abstract class CachedPainter {
-    // CacheMap maps from class to Cache.
 
-    private static final Map cacheMap = new HashMap();
-    private int maxCachedImageSize = 20000;
+    /**
+     * Number of lock stripes of the cache. Must be a power of two.
+     */
+    private final static int STRIPE_COUNT = 16;
+    /**
+     * The stripes of the cache. Each stripe holds the entries whose key hash
+     * maps to the stripe in least recently used order.
+     */
+    private final static Stripe[] stripes = new Stripe[STRIPE_COUNT];
+    /**
+     * Maximal number of bytes held by the cache.
+     */
+    private static volatile long maxCacheBytes = getLongProperty("Quaqua.CachedPainter.maxCacheBytes", 16L << 20);
+    private final static AtomicLong hitCount = new AtomicLong();
+    private final static AtomicLong missCount = new AtomicLong();
+    private final static AtomicLong evictionCount = new AtomicLong();
+    /**
+     * Maps painter classes to their quotas. Guarded by itself.
+     */
+    private final static HashMap<Class<?>, Quota> quotas = new HashMap<Class<?>, Quota>();
 
-    private static Cache getCache(Object key) {
-        synchronized (cacheMap) {
-            Cache cache = (Cache) cacheMap.get(key);
-            if (cache == null) {
-                cache = new Cache(1);
-                cacheMap.put(key, cache);
-            }
-            return cache;
+    static {
+        for (int i = 0; i < STRIPE_COUNT; i++) {
+            stripes[i] = new Stripe();
         }
     }
+    private final Quota quota;
+    private int maxCachedImageSize = 20000;
 
     /**
      * Creates an instance of <code>CachedPainter</code> that will cache up
      * to <code>cacheCount</code> images of this class.
+     * <p>
+     * The cached images of all painters share a common budget of bytes. When
+     * the budget is exceeded, the least recently used images are evicted.
      * 
-     * @param cacheCount Max number of images to cache
+     * @param cacheCount Max number of images to cache. Specify 0 to disable
+     * caching of images for this class.
      */
     public CachedPainter(int cacheCount) {
-        getCache(getClass()).setMaxCount(cacheCount);
+        quota = getQuota(getClass());
+        quota.setMaxCount(cacheCount);
     }
 
     /**
@@ -67,12 +94,10 @@ public abstract class CachedPainter {
             return;
         }
 
-        Object key = getClass();
-        
         // If the area is larger than 20'000 pixels, render to the passed 
         // in Graphics. 20'000 pixels is a bit larger than a rectangle of 
         // 160*120 points. 
-        if (getCache(key).getMaxCount()==0||w * h > maxCachedImageSize) {
+        if (quota.getMaxCount() == 0 || w * h > maxCachedImageSize) {
             g.translate(x, y);
             paintToImage(c, g, w, h, args);
             g.translate(-x, -y);
@@ -81,8 +106,9 @@ public abstract class CachedPainter {
 
         
         GraphicsConfiguration config = c.getGraphicsConfiguration();
-        Cache cache = getCache(key);
-        Image image = cache.getImage(key, config, w, h, args);
+        Key key = new Key(getClass(), config, w, h, args);
+        Stripe stripe = getStripe(key);
+        Image image = stripe.getImage(key);
         int attempts = 0;
         do {
             boolean draw = false;
@@ -101,7 +127,11 @@ public abstract class CachedPainter {
             if (image == null) {
                 // Recreate the image
                 image = createImage(c, w, h, config);
-                cache.setImage(key, config, w, h, args, image);
+                stripe.putImage(key, image);
+                Key evictedKey = quota.add(key);
+                if (evictedKey != null) {
+                    getStripe(evictedKey).removeImage(evictedKey);
+                }
                 draw = true;
             }
             if (draw) {
@@ -184,133 +214,282 @@ public abstract class CachedPainter {
         return config.createCompatibleVolatileImage(w, h);
     }
 
+    private static Quota getQuota(Class<?> painterClass) {
+        synchronized (quotas) {
+            Quota q = quotas.get(painterClass);
+            if (q == null) {
+                q = new Quota();
+                quotas.put(painterClass, q);
+            }
+            return q;
+        }
+    }
+
+    private static Stripe getStripe(Key key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return stripes[h & (STRIPE_COUNT - 1)];
+    }
+
     /**
-     * Cache is used to cache an image based on a set of arguments.
+     * Returns the number of times a cached image was found.
      */
-    private static class Cache {
-        // Maximum number of entries to cache
+    public static long getHitCount() {
+        return hitCount.get();
+    }
 
-        private int maxCount;
-        // The entries.
-        private java.util.List entries;
+    /**
+     * Returns the number of times no cached image was found.
+     */
+    public static long getMissCount() {
+        return missCount.get();
+    }
 
-        Cache(int maxCount) {
-            this.maxCount = maxCount;
-            entries = new ArrayList(maxCount);
+    /**
+     * Returns the number of images which have been evicted from the cache.
+     */
+    public static long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * Returns the number of bytes currently held by the cache.
+     */
+    public static long getCacheBytes() {
+        long bytes = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                bytes += stripe.bytes;
+            }
         }
+        return bytes;
+    }
 
-        synchronized void setMaxCount(int maxCount) {
-            this.maxCount = maxCount;
-        }        
-        
-        public int getMaxCount() {
-            return maxCount; 
+    /**
+     * Returns the maximal number of bytes held by the cache.
+     */
+    public static long getMaxCacheBytes() {
+        return maxCacheBytes;
+    }
+
+    /**
+     * Sets the maximal number of bytes held by the cache. The default value
+     * is 16 MB. It can be changed with the property
+     * {@code Quaqua.CachedPainter.maxCacheBytes}.
+     */
+    public static void setMaxCacheBytes(long newValue) {
+        maxCacheBytes = newValue;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.evict();
+            }
         }
+    }
 
+    /**
+     * Removes all images from the cache.
+     */
+    public static void clearCache() {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.entries.clear();
+                stripe.bytes = 0;
+            }
+        }
+        synchronized (quotas) {
+            for (Quota q : quotas.values()) {
+                q.clear();
+            }
+        }
+    }
 
-        private Entry getEntry(Object key, GraphicsConfiguration config,
-                int w, int h, Object args) {
-            synchronized (this) {
-                Entry entry;
-                for (int counter = entries.size() - 1; counter >= 0; counter--) {
-                    entry = (Entry) ((SoftReference) entries.get(counter)).get();
-                    if (entry == null) {
-                        // SoftReference was invalidated, remove the entry
-                        entries.remove(counter);
-                    } else if (entry.equals(config, w, h, args)) {
-                        // Found the entry, return it.
-                        return entry;
-                    }
-                }
-                // Entry doesn't exist
-                entry = new Entry(config, w, h, args);
-                if (entries.size() == maxCount) {
-                    entries.remove(0);
-                }
-                entries.add(new SoftReference(entry));
-                return entry;
+    private static long getLongProperty(String key, long def) {
+        String value = QuaquaManager.getProperty(key);
+        if (value != null) {
+            try {
+                return Long.decode(value.trim()).longValue();
+            } catch (NumberFormatException e) {
+                // continue (we return def below)
             }
         }
+        return def;
+    }
+
+    /**
+     * Identifies a cached image by the class of the painter, the graphics
+     * configuration, the size and the arguments.
+     */
+    private static class Key {
+
+        private final Class<?> painterClass;
+        private final GraphicsConfiguration config;
+        private final int w;
+        private final int h;
+        private final Object args;
+        private final int hash;
+
+        Key(Class<?> painterClass, GraphicsConfiguration config, int w, int h, Object args) {
+            this.painterClass = painterClass;
+            this.config = config;
+            this.w = w;
+            this.h = h;
+            this.args = args;
+            int hc = painterClass.hashCode();
+            hc = 31 * hc + (config == null ? 0 : config.hashCode());
+            hc = 31 * hc + w;
+            hc = 31 * hc + h;
+            hc = 31 * hc + (args == null ? 0 : args.hashCode());
+            this.hash = hc;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key that = (Key) o;
+            return this.hash == that.hash
+                    && this.w == that.w && this.h == that.h
+                    && this.painterClass == that.painterClass
+                    && (this.config == null ? that.config == null : this.config.equals(that.config))
+                    && (this.args == null ? that.args == null : this.args.equals(that.args));
+        }
+
+        @Override
+        public String toString() {
+            return "Key[painter=" + painterClass.getName()
+                    + ", graphicsConfig=" + config
+                    + ", w=" + w + ", h=" + h
+                    + (args == null ? "" : ", " + args) + "]";
+        }
+    }
+
+    /**
+     * Limits the number of images cached for a painter class. Holds the keys
+     * of the images of the painter class in the order in which they were
+     * added to the cache.
+     * <p>
+     * A quota may be locked while a stripe is locked, but not vice versa.
+     */
+    private static class Quota {
+
+        private final LinkedHashSet<Key> keys = new LinkedHashSet<Key>();
+        private int maxCount = 1;
+
+        synchronized int getMaxCount() {
+            return maxCount;
+        }
+
+        synchronized void setMaxCount(int maxCount) {
+            this.maxCount = maxCount;
+        }
 
         /**
-         * Returns the cached Image, or null, for the specified arguments.
+         * Adds the specified key. Returns the oldest key, if the maximal
+         * number of keys is exceeded. The image of the returned key must be
+         * removed from the cache.
          */
-        public Image getImage(Object key, GraphicsConfiguration config,
-                int w, int h, Object args) {
-            Entry entry = getEntry(key, config, w, h, args);
-            return entry.getImage();
+        synchronized Key add(Key key) {
+            if (keys.add(key) && keys.size() > maxCount) {
+                Iterator<Key> i = keys.iterator();
+                Key eldest = i.next();
+                i.remove();
+                return eldest;
+            }
+            return null;
         }
 
         /**
-         * Sets the cached image for the specified constraints.
+         * Removes the specified key. This is invoked, when the image of the
+         * key has been evicted from its stripe.
          */
-        public void setImage(Object key, GraphicsConfiguration config,
-                int w, int h, Object args, Image image) {
-            Entry entry = getEntry(key, config, w, h, args);
-            entry.setImage(image);
+        synchronized void remove(Key key) {
+            keys.remove(key);
+        }
+
+        synchronized void clear() {
+            keys.clear();
         }
+    }
+
+    /**
+     * Holds the images of a subset of the keys in least recently used order.
+     * Each stripe may use an equal share of the byte budget of the cache.
+     */
+    private static class Stripe {
+
+        private final LinkedHashMap<Key, Image> entries = new LinkedHashMap<Key, Image>(16, 0.75f, true);
+        private long bytes;
 
         /**
-         * Caches set of arguments and Image.
+         * Returns the cached Image, or null, for the specified key.
          */
-        private static class Entry {
-
-            private GraphicsConfiguration config;
-            private Object args;
-            private Image image;
-            private int w;
-            private int h;
-
-            Entry(GraphicsConfiguration config, int w, int h, Object args) {
-                this.config = config;
-                this.args = args;
-                this.w = w;
-                this.h = h;
-            }
-
-            public void setImage(Image image) {
-                this.image = image;
+        synchronized Image getImage(Key key) {
+            Image image = entries.get(key);
+            if (image == null) {
+                missCount.incrementAndGet();
+            } else {
+                hitCount.incrementAndGet();
             }
+            return image;
+        }
 
-            public Image getImage() {
-                return image;
+        /**
+         * Sets the cached image for the specified key.
+         */
+        synchronized void putImage(Key key, Image image) {
+            Image oldImage = entries.put(key, image);
+            if (oldImage != null) {
+                bytes -= getBytes(key);
             }
+            bytes += getBytes(key);
+            evict();
+        }
 
-            @Override
-            public String toString() {
-                StringBuilder value = new StringBuilder(super.toString()
-                        + "[ graphicsConfig=" + config
-                        + ", image=" + image
-                        + ", w=" + w + ", h=" + h);
-                if (args != null) {
-                    value.append(", ");
-                    value.append(args);
+        /**
+         * Removes the cached image for the specified key.
+         */
+        synchronized void removeImage(Key key) {
+            Image image = entries.remove(key);
+            if (image != null) {
+                bytes -= getBytes(key);
+                evictionCount.incrementAndGet();
+                if (image instanceof VolatileImage) {
+                    image.flush();
                 }
-                value.append("]");
-                return value.toString();
             }
+        }
 
-            public boolean equals(GraphicsConfiguration config, int w, int h,
-                    Object args) {
-                if (this.w == w && this.h == h
-                        && ((this.config != null && this.config.equals(config))
-                        || (this.config == null && config == null))) {
-                    if (this.args == null && args == null) {
-                        return true;
-                    }
-                    if (this.args != null && args != null) {
-
-                        if (!this.args.equals(args)) {
-                            return false;
-                        }
-
-
-                        return true;
-                    }
+        /**
+         * Evicts least recently used images until this stripe is within
+         * its share of the budget.
+         */
+        void evict() {
+            long maxBytes = maxCacheBytes / STRIPE_COUNT;
+            for (Iterator<Map.Entry<Key, Image>> i = entries.entrySet().iterator(); bytes > maxBytes && i.hasNext();) {
+                Map.Entry<Key, Image> entry = i.next();
+                i.remove();
+                bytes -= getBytes(entry.getKey());
+                evictionCount.incrementAndGet();
+                getQuota(entry.getKey().painterClass).remove(entry.getKey());
+                Image image = entry.getValue();
+                if (image instanceof VolatileImage) {
+                    image.flush();
                 }
-                return false;
             }
         }
+
+        /**
+         * Returns the estimated number of bytes of the image of a key.
+         */
+        private static long getBytes(Key key) {
+            return 4L * key.w * key.h;
+        }
     }
 
     public int getMaxCachedImageSize() {
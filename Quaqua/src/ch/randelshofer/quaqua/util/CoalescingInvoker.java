@@ -0,0 +1,182 @@
+/*
+ * @(#)CoalescingInvoker.java
+ *
+ * Copyright (c) 2015 Werner Randelshofer, Switzerland.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package ch.randelshofer.quaqua.util;
+
+import java.awt.event.*;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import javax.swing.*;
+
+/**
+ * Collects Runnable objects from worker threads and runs them on the AWT
+ * Event Dispatcher Thread in time-sliced batches.
+ * <p>
+ * Instead of posting one event per runnable to the AWT event queue, all
+ * runnables which have been collected until the next batch starts are run
+ * in a single pass. A pass stops when its time budget is used up. The
+ * remaining runnables are run in the next pass, which starts no sooner than
+ * one frame after the start of the previous pass. This leaves time for
+ * painting and for processing input events between the passes.
+ * <p>
+ * Runnables which are collected with a key replace a pending runnable with
+ * the same key. The replaced runnable is not run.
+ *
+ * @version $Id$
+ */
+public class CoalescingInvoker {
+
+    /**
+     * Guards the queue and the scheduling state.
+     */
+    private final Object lock = new Object();
+    /**
+     * Pending runnables. The keys are either the keys provided by the
+     * client or the runnables themselves.
+     */
+    private final LinkedHashMap<Object, Runnable> queue = new LinkedHashMap<Object, Runnable>();
+    /**
+     * The time budget of a pass in nanoseconds.
+     */
+    private final long sliceNanos;
+    /**
+     * The minimal time between the start of two passes in milliseconds.
+     */
+    private final int frameMillis;
+    /**
+     * Start time of the last pass in milliseconds.
+     */
+    private long lastPassMillis;
+    /**
+     * This is true, while a pass is scheduled.
+     */
+    private boolean isScheduled;
+    private final Timer timer;
+
+    /**
+     * Creates a new instance with a time budget of 8 milliseconds per pass
+     * and a frame time of 16 milliseconds.
+     */
+    public CoalescingInvoker() {
+        this(8, 16);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param sliceMillis The time budget of a pass in milliseconds.
+     * @param frameMillis The minimal time between the start of two passes
+     * in milliseconds.
+     */
+    public CoalescingInvoker(int sliceMillis, int frameMillis) {
+        this.sliceNanos = sliceMillis * 1000000L;
+        this.frameMillis = frameMillis;
+        timer = new Timer(frameMillis, new ActionListener() {
+
+            public void actionPerformed(ActionEvent evt) {
+                runPass();
+            }
+        });
+        timer.setRepeats(false);
+    }
+
+    /**
+     * Collects the runnable for a later pass on the AWT Event Dispatcher
+     * Thread. This method can be called from any thread.
+     */
+    public void invokeLater(Runnable r) {
+        invokeLater(r, r);
+    }
+
+    /**
+     * Collects the runnable for a later pass on the AWT Event Dispatcher
+     * Thread. If a runnable with the same key is pending, it is replaced by
+     * the specified runnable. This method can be called from any thread.
+     *
+     * @param key The key.
+     * @param r The runnable.
+     */
+    public void invokeLater(Object key, Runnable r) {
+        synchronized (lock) {
+            // Remove the old entry first, so that the runnable is run in
+            // the order in which it was collected.
+            queue.remove(key);
+            queue.put(key, r);
+            if (isScheduled) {
+                return;
+            }
+            isScheduled = true;
+        }
+        SwingUtilities.invokeLater(new Runnable() {
+
+            public void run() {
+                schedulePass();
+            }
+        });
+    }
+
+    /**
+     * Returns the number of pending runnables.
+     */
+    public int getPendingCount() {
+        synchronized (lock) {
+            return queue.size();
+        }
+    }
+
+    /**
+     * Starts a pass now, or starts the timer if the previous pass was
+     * less than one frame ago. Must be called on the AWT Event Dispatcher
+     * Thread.
+     */
+    private void schedulePass() {
+        long delay = lastPassMillis + frameMillis - System.currentTimeMillis();
+        if (delay <= 0) {
+            runPass();
+        } else {
+            timer.setInitialDelay((int) delay);
+            timer.restart();
+        }
+    }
+
+    /**
+     * Runs pending runnables until the queue is empty or until the time
+     * budget is used up. Must be called on the AWT Event Dispatcher Thread.
+     */
+    private void runPass() {
+        lastPassMillis = System.currentTimeMillis();
+        long deadline = System.nanoTime() + sliceNanos;
+        while (true) {
+            Runnable r;
+            synchronized (lock) {
+                if (queue.isEmpty()) {
+                    isScheduled = false;
+                    return;
+                }
+                Iterator<Runnable> i = queue.values().iterator();
+                r = i.next();
+                i.remove();
+            }
+            try {
+                r.run();
+            } catch (Throwable e) {
+                e.printStackTrace();
+            }
+            if (System.nanoTime() >= deadline) {
+                break;
+            }
+        }
+        synchronized (lock) {
+            if (queue.isEmpty()) {
+                isScheduled = false;
+                return;
+            }
+        }
+        timer.setInitialDelay(frameMillis);
+        timer.restart();
+    }
+}
@@ -1,5 +1,5 @@
 /*
- * @(#)ConcurrentDispatcher.java  2.1  2009-06-01
+ * @(#)ConcurrentDispatcher.java  3.0  2015-03-01
  *
  * Copyright (c) 2002-2010 Werner Randelshofer, Switzerland
  * All rights reserved.
@@ -10,14 +10,17 @@
  */
 package ch.randelshofer.quaqua.util;
 
-import java.util.*;
-import javax.swing.*;
+import java.util.List;
 
 /**
  * Processes Runnable objects concurrently on a pool of processor threads.
  * The order in which the runnable objects are processed is not
  * necesseraly the same in which they were added to the dispatcher.
- * There is one thread pool per instance.
+ * <p>
+ * By default, all instances share the thread pool returned by
+ * {@link DispatcherPool#getSharedInstance}. Runnables which are dispatched
+ * with {@code isLIFO=true} are put into the visible lane of the pool, all
+ * other runnables are put into the prefetch lane.
  * <p>
  * Design pattern used: Acceptor
  * Role in design pattern: EventCollector and EventProcessor
@@ -41,29 +44,17 @@ import javax.swing.*;
  * </pre>
  *
  * @author  Werner Randelshofer, Switzerland
- * @version 2.1 2009-06-01 Added dispose method.
+ * @version 3.0 2015-03-01 Runnables are executed on a DispatcherPool.
+ * <br>2.1 2009-06-01 Added dispose method.
  * <br>2.0 2002-04-07 dispatchLIFO added.
  * <br>1.0 2002-05-18 Created.
  */
 public class ConcurrentDispatcher {
 
     /**
-     * The priority of the processor thread.
-     */
-    private int priority;
-    /**
-     * The queue stores the events until they
-     * can be processed by a processor thread.
-     */
-    private final LinkedList queue = new LinkedList();
-    /**
-     * Number of concurrent threads.
-     */
-    private int threadCount;
-    /**
-     * Maximum number of concurrent threads.
+     * The pool which executes the runnables.
      */
-    private int maxThreadCount;
+    private final DispatcherPool pool;
     /**
      * Set the policy to enqueue the runnable
      * for later execution if there are no available
@@ -72,29 +63,26 @@ public class ConcurrentDispatcher {
     public static final int ENQUEUE_WHEN_BLOCKED = 0;
     /**
      * Set the policy for blocked execution to be that
-     * the current thread executes the command if there
-     * are no available threads in the pool.
+     * the current thread executes the command if the
+     * queue of the pool is full.
      */
     public static final int RUN_WHEN_BLOCKED = 1;
     /**
-     * The policy used when the maximal number of
-     * threads is reached.
+     * The policy used when the queue of the pool is full.
      */
     private int blockingPolicy = ENQUEUE_WHEN_BLOCKED;
 
     /**
-     * Creates a new ConcurrentDispatcher and
-     * sets the priority of the processor thread to
-     * java.lang.Thread.NORM_PRIORITY and with
-     * up to five concurrent threads in the thread
-     * pool.
+     * Creates a new ConcurrentDispatcher which executes
+     * its runnables on the shared DispatcherPool.
      */
     public ConcurrentDispatcher() {
-        this(Thread.NORM_PRIORITY, 5);
+        this(DispatcherPool.getSharedInstance());
     }
 
     /**
-     * Creates a new ConcurrentDispatcher.
+     * Creates a new ConcurrentDispatcher with its own
+     * thread pool.
      *
      * @param priority The priority of the processor
      * thread.
@@ -102,25 +90,55 @@ public class ConcurrentDispatcher {
      * threads in the thread pool.
      */
     public ConcurrentDispatcher(int priority, int maxThreadCount) {
-        this.priority = priority;
-        this.maxThreadCount = maxThreadCount;
+        this(new DispatcherPool("ConcurrentDispatcher", priority, 0, maxThreadCount));
     }
 
     /**
-     * Sets the maximum number of concurrent threads.
+     * Creates a new ConcurrentDispatcher which executes
+     * its runnables on the specified pool.
+     *
+     * @param pool The pool.
+     */
+    public ConcurrentDispatcher(DispatcherPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Returns the pool which executes the runnables.
+     */
+    public DispatcherPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Sets the maximum number of concurrent threads of the pool.
      * @param maxThreadCount Maximal number of concurrent threads.
-     *   A value of zero or below zero stops the dispatcher
-     *   when the queue is empty.
      */
     public void setMaxThreadCount(int maxThreadCount) {
-        this.maxThreadCount = maxThreadCount;
+        pool.setMaximumPoolSize(maxThreadCount);
     }
 
     /**
-     * Returns the maximal number of concurrent threads.
+     * Returns the maximal number of concurrent threads of the pool.
      */
     public int getMaxThreadCount() {
-        return maxThreadCount;
+        return pool.getMaximumPoolSize();
+    }
+
+    /**
+     * Sets the policy used when the queue of the pool is full.
+     *
+     * @param newValue ENQUEUE_WHEN_BLOCKED or RUN_WHEN_BLOCKED.
+     */
+    public void setBlockingPolicy(int newValue) {
+        blockingPolicy = newValue;
+    }
+
+    /**
+     * Returns the policy used when the queue of the pool is full.
+     */
+    public int getBlockingPolicy() {
+        return blockingPolicy;
     }
 
     /**
@@ -134,82 +152,47 @@ public class ConcurrentDispatcher {
     /**
      * Enqueues the Runnable object, and executes
      * it on a processor thread.
+     *
+     * @param runner The runnable.
+     * @param isLIFO Set this to true, to enqueue the runnable into the
+     * visible lane of the pool. The visible lane is processed before the
+     * prefetch lane. Both lanes are processed first in first out.
      */
     public void dispatch(Runnable runner, boolean isLIFO) {
-        isLIFO = false;
-        synchronized (queue) {
-            if (threadCount < maxThreadCount) {
-                if (isLIFO) {
-                    queue.addFirst(runner);
-                } else {
-                    queue.addLast(runner);
-                }
-
-                Thread processor = new Thread(this + " Processor") {
-
-                    public void run() {
-                        processEvents();
-                    }
-                };
-                threadCount++;
-
-
-                // The processor thread must not be a daemon,
-                // or else the Java VM might stop before
-                // all runnables have been processed.
-                try {
-                    processor.setDaemon(false);
-                } catch (SecurityException e) {
-                    e.printStackTrace();
-                }
-                try {
-                    processor.setPriority(priority);
-                } catch (SecurityException e) {
-                    e.printStackTrace();
-                }
-
-                processor.start();
-                return;
-
-            } else if (blockingPolicy == ENQUEUE_WHEN_BLOCKED) {
-                if (isLIFO) {
-                    queue.addFirst(runner);
-                } else {
-                    queue.addLast(runner);
-                }
-
-                return;
-            }
+        int lane = isLIFO ? DispatcherPool.VISIBLE_LANE : DispatcherPool.PREFETCH_LANE;
+        if (blockingPolicy == ENQUEUE_WHEN_BLOCKED) {
+            pool.put(runner, lane, this);
+        } else if (!pool.offer(runner, lane, this)) {
+            //implicit: if (queue is full && blockingPolicy == RUN_WHEN_BLOCKED)
+            runner.run();
         }
-
-        //implicit: if (threadCount >= maxThreadCount && blockingPolicy == RUN_WHEN_BLOCKED)
-        runner.run();
     }
 
+    /**
+     * Removes all runnables of this dispatcher which are
+     * waiting for execution.
+     */
     public void stop() {
-       
+        pool.removeAll(this);
     }
 
     /**
-     * This method dequeues all Runnable objects from the
-     * queue and executes them. The method returns
-     * when the queue is empty.
+     * This method dequeues all Runnable objects of this dispatcher from the
+     * pool and executes them on the current thread. The method returns
+     * when there are no more pending runnables.
+     *
+     * @deprecated The runnables are processed by the processor threads of
+     * the pool. This method is only kept for compatibility.
      */
+    @Deprecated
     protected void processEvents() {
-        Object runner;
-        loop:
-        while (true) {
-            synchronized (queue) {
-                if (queue.isEmpty()) {
-                    threadCount--;
-                    break loop;
+        for (List<Runnable> runners = pool.removeAll(this); !runners.isEmpty(); runners = pool.removeAll(this)) {
+            for (Runnable runner : runners) {
+                try {
+                    runner.run();
+                } catch (Throwable e) {
+                    e.printStackTrace();
                 }
-                runner = queue.removeFirst();
-            }
-            try {
-                ((Runnable) runner).run();
-            } catch (Throwable e) {
-                e.printStackTrace();
             }
         }
     }
@@ -218,8 +201,6 @@ public class ConcurrentDispatcher {
      * Disposes the dispatcher and all associated processes.
      */
     public void dispose() {
-        synchronized (queue) {
-            queue.clear();
-        }
+        pool.removeAll(this);
     }
-}
\ No newline at end of file
+}
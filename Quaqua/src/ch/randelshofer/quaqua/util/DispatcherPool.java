@@ -0,0 +1,566 @@
+/*
+ * @(#)DispatcherPool.java
+ *
+ * Copyright (c) 2015 Werner Randelshofer, Switzerland.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package ch.randelshofer.quaqua.util;
+
+import ch.randelshofer.quaqua.QuaquaManager;
+import java.lang.reflect.Method;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * A bounded pool of processor threads which executes Runnable objects
+ * from two priority lanes.
+ * <p>
+ * Runnables in the {@link #VISIBLE_LANE} are processed before runnables in
+ * the {@link #PREFETCH_LANE}. Both lanes are processed first in first out.
+ * <p>
+ * The number of concurrently running runnables never exceeds the maximum
+ * pool size. Processor threads are taken from a thread pool. If the Java VM
+ * supports virtual threads, the pool can be configured to use them instead
+ * of platform threads.
+ * <p>
+ * By default, processor threads are not daemon threads, so that the Java VM
+ * does not stop before all runnables have been processed. Idle processor
+ * threads terminate after one second, so that they do not keep the Java VM
+ * alive. A pool with daemon processor threads keeps up to core pool size
+ * idle threads alive.
+ * <p>
+ * The pool keeps counters for the queue depth and for the latency of the
+ * runnables, which can be used to monitor the pool.
+ * <p>
+ * The shared instance of the pool can be configured with the following
+ * properties, which are read with {@link QuaquaManager#getProperty}:
+ * <ul>
+ * <li>{@code Quaqua.Dispatcher.corePoolSize} Number of idle threads that are
+ * kept alive, if the processor threads are daemon threads. The default value
+ * is 2.</li>
+ * <li>{@code Quaqua.Dispatcher.maximumPoolSize} Maximal number of concurrent
+ * threads. The default value is 5.</li>
+ * <li>{@code Quaqua.Dispatcher.queueCapacity} Maximal number of queued
+ * runnables. The default value is unbounded.</li>
+ * <li>{@code Quaqua.Dispatcher.virtualThreads=true} Uses virtual threads
+ * if the Java VM supports them. The default value is false.</li>
+ * <li>{@code Quaqua.Dispatcher.daemon=true} Uses daemon processor threads.
+ * The default value is false. Virtual threads are always daemon threads.</li>
+ * </ul>
+ *
+ * @version $Id$
+ */
+public class DispatcherPool implements Executor {
+
+    /**
+     * The lane for work that is needed to display something to the user.
+     */
+    public final static int VISIBLE_LANE = 0;
+    /**
+     * The lane for work that is done in anticipation of a future need.
+     */
+    public final static int PREFETCH_LANE = 1;
+    /**
+     * The shared instance.
+     */
+    private static DispatcherPool sharedInstance;
+    /**
+     * Guards the lanes and the worker count.
+     */
+    private final Object lock = new Object();
+    private final LinkedList<Task> visibleLane = new LinkedList<Task>();
+    private final LinkedList<Task> prefetchLane = new LinkedList<Task>();
+    /**
+     * The executor which provides the processor threads.
+     */
+    private final ExecutorService threads;
+    /**
+     * Number of processors which are currently draining the lanes.
+     */
+    private int workerCount;
+    private int maximumPoolSize;
+    private int queueCapacity;
+    private int peakQueueDepth;
+    private final AtomicInteger activeCount = new AtomicInteger();
+    private final AtomicLong submittedCount = new AtomicLong();
+    private final AtomicLong completedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong totalRunNanos = new AtomicLong();
+
+    /**
+     * Holds a runnable together with its owner and the time it was queued.
+     */
+    private static class Task {
+
+        final Runnable runnable;
+        final Object owner;
+        final long enqueueNanos;
+
+        Task(Runnable runnable, Object owner) {
+            this.runnable = runnable;
+            this.owner = owner;
+            this.enqueueNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * Drains the lanes until they are empty.
+     */
+    private final Runnable processor = new Runnable() {
+
+        public void run() {
+            processTasks();
+        }
+    };
+
+    /**
+     * Creates a new DispatcherPool with platform threads.
+     *
+     * @param name The name prefix for the processor threads.
+     * @param priority The priority of the processor threads.
+     * @param corePoolSize The number of idle threads that are kept alive.
+     * @param maximumPoolSize The maximal number of concurrent threads.
+     */
+    public DispatcherPool(String name, int priority, int corePoolSize, int maximumPoolSize) {
+        this(name, priority, corePoolSize, maximumPoolSize, false, false);
+    }
+
+    /**
+     * Creates a new DispatcherPool with non-daemon processor threads.
+     *
+     * @param name The name prefix for the processor threads.
+     * @param priority The priority of the processor threads.
+     * @param corePoolSize The number of idle threads that are kept alive.
+     * @param maximumPoolSize The maximal number of concurrent threads.
+     * @param useVirtualThreads Set this to true to use virtual threads, if
+     * the Java VM supports them.
+     */
+    public DispatcherPool(String name, int priority, int corePoolSize, int maximumPoolSize, boolean useVirtualThreads) {
+        this(name, priority, corePoolSize, maximumPoolSize, useVirtualThreads, false);
+    }
+
+    /**
+     * Creates a new DispatcherPool.
+     *
+     * @param name The name prefix for the processor threads.
+     * @param priority The priority of the processor threads.
+     * @param corePoolSize The number of idle threads that are kept alive.
+     * @param maximumPoolSize The maximal number of concurrent threads.
+     * @param useVirtualThreads Set this to true to use virtual threads, if
+     * the Java VM supports them.
+     * @param isDaemon Set this to true to use daemon processor threads.
+     * Idle non-daemon processor threads terminate after one second,
+     * regardless of the core pool size.
+     */
+    public DispatcherPool(String name, int priority, int corePoolSize, int maximumPoolSize, boolean useVirtualThreads, boolean isDaemon) {
+        this.maximumPoolSize = Math.max(1, maximumPoolSize);
+        this.queueCapacity = Integer.MAX_VALUE;
+        ExecutorService virtualThreads = useVirtualThreads ? createVirtualThreadExecutor() : null;
+        if (virtualThreads != null) {
+            threads = virtualThreads;
+        } else {
+            // We bound the number of processors ourselves. The executor
+            // must never reject a processor, even if an idle thread has not
+            // yet returned to the pool, therefore its maximum pool size is
+            // unbounded.
+            ThreadPoolExecutor tpe = new ThreadPoolExecutor(
+                    Math.max(0, Math.min(corePoolSize, this.maximumPoolSize)), Integer.MAX_VALUE,
+                    isDaemon ? 30L : 1L, TimeUnit.SECONDS,
+                    new SynchronousQueue<Runnable>(),
+                    new ProcessorThreadFactory(name, priority, isDaemon));
+            // Idle non-daemon threads must not keep the Java VM alive.
+            tpe.allowCoreThreadTimeOut(!isDaemon);
+            threads = tpe;
+        }
+    }
+
+    /**
+     * Returns the shared instance of the pool.
+     */
+    public static synchronized DispatcherPool getSharedInstance() {
+        if (sharedInstance == null) {
+            sharedInstance = new DispatcherPool("Quaqua Dispatcher", Thread.NORM_PRIORITY,
+                    getIntProperty("Quaqua.Dispatcher.corePoolSize", 2),
+                    getIntProperty("Quaqua.Dispatcher.maximumPoolSize", 5),
+                    "true".equals(QuaquaManager.getProperty("Quaqua.Dispatcher.virtualThreads", "false")),
+                    "true".equals(QuaquaManager.getProperty("Quaqua.Dispatcher.daemon", "false")));
+            sharedInstance.setQueueCapacity(getIntProperty("Quaqua.Dispatcher.queueCapacity", Integer.MAX_VALUE));
+        }
+        return sharedInstance;
+    }
+
+    private static int getIntProperty(String key, int def) {
+        String value = QuaquaManager.getProperty(key);
+        if (value != null) {
+            try {
+                return Integer.decode(value.trim()).intValue();
+            } catch (NumberFormatException e) {
+                // continue (we return def below)
+            }
+        }
+        return def;
+    }
+
+    /**
+     * Creates an executor which starts a new virtual thread for each task.
+     * Returns null if the Java VM does not support virtual threads.
+     */
+    private static ExecutorService createVirtualThreadExecutor() {
+        try {
+            Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) m.invoke(null);
+        } catch (Exception e) {
+            return null;
+        } catch (LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * Creates processor threads with the specified priority.
+     */
+    private static class ProcessorThreadFactory implements ThreadFactory {
+
+        private final String name;
+        private final int priority;
+        private final boolean isDaemon;
+        private final AtomicInteger threadNumber = new AtomicInteger();
+
+        public ProcessorThreadFactory(String name, int priority, boolean isDaemon) {
+            this.name = name;
+            this.priority = priority;
+            this.isDaemon = isDaemon;
+        }
+
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, name + " Processor " + threadNumber.incrementAndGet());
+            // Unless configured otherwise, the processor thread must not be
+            // a daemon, or else the Java VM might stop before all runnables
+            // have been processed.
+            try {
+                t.setDaemon(isDaemon);
+            } catch (SecurityException e) {
+                e.printStackTrace();
+            }
+            try {
+                t.setPriority(priority);
+            } catch (SecurityException e) {
+                e.printStackTrace();
+            }
+            return t;
+        }
+    }
+
+    /**
+     * Enqueues the Runnable object into the prefetch lane, and executes it
+     * on a processor thread.
+     *
+     * @throws RejectedExecutionException if the queue is full.
+     */
+    public void execute(Runnable runnable) {
+        if (!offer(runnable, PREFETCH_LANE, null)) {
+            throw new RejectedExecutionException("queue is full");
+        }
+    }
+
+    /**
+     * Enqueues the Runnable object into the specified lane, and executes it
+     * on a processor thread.
+     *
+     * @param runnable The runnable.
+     * @param lane VISIBLE_LANE or PREFETCH_LANE.
+     * @param owner The owner of the runnable, or null. The owner can be used
+     * to remove pending runnables with method {@link #removeAll}.
+     * @return Returns false, if the runnable could not be enqueued because the
+     * queue is full.
+     */
+    public boolean offer(Runnable runnable, int lane, Object owner) {
+        return enqueue(runnable, lane, owner, false);
+    }
+
+    /**
+     * Enqueues the Runnable object into the specified lane even if the queue
+     * is full, and executes it on a processor thread.
+     *
+     * @param runnable The runnable.
+     * @param lane VISIBLE_LANE or PREFETCH_LANE.
+     * @param owner The owner of the runnable, or null.
+     */
+    public void put(Runnable runnable, int lane, Object owner) {
+        enqueue(runnable, lane, owner, true);
+    }
+
+    private boolean enqueue(Runnable runnable, int lane, Object owner, boolean force) {
+        if (runnable == null) {
+            throw new NullPointerException("runnable is null");
+        }
+        Task task = new Task(runnable, owner);
+        boolean startProcessor = false;
+        synchronized (lock) {
+            int depth = visibleLane.size() + prefetchLane.size();
+            if (!force && depth >= queueCapacity) {
+                rejectedCount.incrementAndGet();
+                return false;
+            }
+            if (lane == VISIBLE_LANE) {
+                visibleLane.addLast(task);
+            } else {
+                prefetchLane.addLast(task);
+            }
+            submittedCount.incrementAndGet();
+            peakQueueDepth = Math.max(peakQueueDepth, depth + 1);
+            if (workerCount < maximumPoolSize) {
+                workerCount++;
+                startProcessor = true;
+            }
+        }
+        // We start the processor outside of the lock, because this may
+        // create a new thread.
+        if (startProcessor) {
+            try {
+                threads.execute(processor);
+            } catch (RejectedExecutionException e) {
+                synchronized (lock) {
+                    workerCount--;
+                }
+                throw e;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Dequeues Runnable objects from the lanes and executes them. Returns
+     * when the lanes are empty.
+     */
+    private void processTasks() {
+        while (true) {
+            Task task;
+            synchronized (lock) {
+                if (workerCount > maximumPoolSize) {
+                    // The pool has been shrunk.
+                    workerCount--;
+                    return;
+                }
+                task = visibleLane.isEmpty() ? null : visibleLane.removeFirst();
+                if (task == null) {
+                    task = prefetchLane.isEmpty() ? null : prefetchLane.removeFirst();
+                }
+                if (task == null) {
+                    workerCount--;
+                    return;
+                }
+            }
+            long startNanos = System.nanoTime();
+            long waitNanos = startNanos - task.enqueueNanos;
+            totalWaitNanos.addAndGet(waitNanos);
+            for (long max = maxWaitNanos.get(); waitNanos > max; max = maxWaitNanos.get()) {
+                if (maxWaitNanos.compareAndSet(max, waitNanos)) {
+                    break;
+                }
+            }
+            activeCount.incrementAndGet();
+            try {
+                task.runnable.run();
+            } catch (Throwable e) {
+                e.printStackTrace();
+            } finally {
+                activeCount.decrementAndGet();
+                totalRunNanos.addAndGet(System.nanoTime() - startNanos);
+                completedCount.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Removes all pending runnables of the specified owner from the lanes.
+     * Runnables which are already being executed are not affected.
+     *
+     * @return The removed runnables in the order in which they would have
+     * been executed.
+     */
+    public List<Runnable> removeAll(Object owner) {
+        ArrayList<Runnable> removed = new ArrayList<Runnable>();
+        synchronized (lock) {
+            removeAll(visibleLane, owner, removed);
+            removeAll(prefetchLane, owner, removed);
+        }
+        return removed;
+    }
+
+    private static void removeAll(LinkedList<Task> lane, Object owner, List<Runnable> removed) {
+        for (Iterator<Task> i = lane.iterator(); i.hasNext();) {
+            Task task = i.next();
+            if (task.owner == owner) {
+                i.remove();
+                removed.add(task.runnable);
+            }
+        }
+    }
+
+    /**
+     * Sets the maximal number of concurrent threads.
+     */
+    public void setMaximumPoolSize(int newValue) {
+        synchronized (lock) {
+            maximumPoolSize = Math.max(1, newValue);
+            if (threads instanceof ThreadPoolExecutor) {
+                ThreadPoolExecutor tpe = (ThreadPoolExecutor) threads;
+                if (tpe.getCorePoolSize() > maximumPoolSize) {
+                    tpe.setCorePoolSize(maximumPoolSize);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the maximal number of concurrent threads.
+     */
+    public int getMaximumPoolSize() {
+        synchronized (lock) {
+            return maximumPoolSize;
+        }
+    }
+
+    /**
+     * Sets the number of idle threads that are kept alive.
+     * This has no effect if the pool uses virtual threads.
+     */
+    public void setCorePoolSize(int newValue) {
+        if (threads instanceof ThreadPoolExecutor) {
+            ((ThreadPoolExecutor) threads).setCorePoolSize(Math.max(0, Math.min(newValue, getMaximumPoolSize())));
+        }
+    }
+
+    /**
+     * Returns the number of idle threads that are kept alive.
+     */
+    public int getCorePoolSize() {
+        return (threads instanceof ThreadPoolExecutor) ? ((ThreadPoolExecutor) threads).getCorePoolSize() : 0;
+    }
+
+    /**
+     * Sets the maximal number of queued runnables.
+     */
+    public void setQueueCapacity(int newValue) {
+        synchronized (lock) {
+            queueCapacity = Math.max(0, newValue);
+        }
+    }
+
+    /**
+     * Returns the maximal number of queued runnables.
+     */
+    public int getQueueCapacity() {
+        synchronized (lock) {
+            return queueCapacity;
+        }
+    }
+
+    /**
+     * Returns true if the pool uses virtual threads.
+     */
+    public boolean isUsingVirtualThreads() {
+        return !(threads instanceof ThreadPoolExecutor);
+    }
+
+    /**
+     * Returns the number of runnables which are waiting for execution.
+     */
+    public int getQueueDepth() {
+        synchronized (lock) {
+            return visibleLane.size() + prefetchLane.size();
+        }
+    }
+
+    /**
+     * Returns the number of runnables in the specified lane which are waiting
+     * for execution.
+     */
+    public int getQueueDepth(int lane) {
+        synchronized (lock) {
+            return (lane == VISIBLE_LANE) ? visibleLane.size() : prefetchLane.size();
+        }
+    }
+
+    /**
+     * Returns the highest number of runnables which have been waiting for
+     * execution at the same time.
+     */
+    public int getPeakQueueDepth() {
+        synchronized (lock) {
+            return peakQueueDepth;
+        }
+    }
+
+    /**
+     * Returns the number of runnables which are currently being executed.
+     */
+    public int getActiveCount() {
+        return activeCount.get();
+    }
+
+    /**
+     * Returns the number of runnables which have been enqueued.
+     */
+    public long getSubmittedCount() {
+        return submittedCount.get();
+    }
+
+    /**
+     * Returns the number of runnables which have been executed.
+     */
+    public long getCompletedCount() {
+        return completedCount.get();
+    }
+
+    /**
+     * Returns the number of runnables which have been rejected because the
+     * queue was full.
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * Returns the total time in nanoseconds that the executed runnables
+     * have been waiting in the queue.
+     */
+    public long getTotalWaitNanos() {
+        return totalWaitNanos.get();
+    }
+
+    /**
+     * Returns the longest time in nanoseconds that an executed runnable has
+     * been waiting in the queue.
+     */
+    public long getMaxWaitNanos() {
+        return maxWaitNanos.get();
+    }
+
+    /**
+     * Returns the total time in nanoseconds that has been spent executing
+     * runnables.
+     */
+    public long getTotalRunNanos() {
+        return totalRunNanos.get();
+    }
+
+    @Override
+    public String toString() {
+        long completed = getCompletedCount();
+        return super.toString() + "[queued=" + getQueueDepth()
+                + ",peakQueued=" + getPeakQueueDepth()
+                + ",active=" + getActiveCount()
+                + ",completed=" + completed
+                + ",rejected=" + getRejectedCount()
+                + ",avgWaitMillis=" + (completed == 0 ? 0 : getTotalWaitNanos() / completed / 1000000)
+                + ",maxWaitMillis=" + getMaxWaitNanos() / 1000000
+                + ",avgRunMillis=" + (completed == 0 ? 0 : getTotalRunNanos() / completed / 1000000)
+                + "]";
+    }
+}
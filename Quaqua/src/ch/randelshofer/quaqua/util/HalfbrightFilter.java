@@ -1,7 +1,7 @@
 /*
  * @(#)HalfbrightFilter.java  1.0  28 March 2005
  *
- * Copyright (c) 2004-2013 Werner Randelshofer, Switzerland.
+ * Copyright (c) 2004-2015 Werner Randelshofer, Switzerland.
  * You may not use, copy or modify this file, except in compliance with the
  * accompanying license terms.
  */
@@ -16,9 +16,10 @@ import java.awt.image.*;
  * This is used by the Quaqua Look and Feel, to create a pressed image.
  *
  * @author  Werner Randelshofer
- * @version 1.0  28 March 2005  Created.
+ * @version 1.1 2015-05-16 Filters buffered images directly.
+ * <br>1.0  28 March 2005  Created.
  */
-public class HalfbrightFilter extends RGBImageFilter {
+public class HalfbrightFilter extends RasterRGBFilter {
     /** Creates a new instance. */
     public HalfbrightFilter() {
         canFilterIndexColorModel = true;
@@ -28,15 +29,19 @@ public class HalfbrightFilter extends RGBImageFilter {
      * Creates a halfbright image
      */
     public static Image createHalfbrightImage (Image i) {
-	ImageFilter filter = new HalfbrightFilter();
-	ImageProducer prod = new FilteredImageSource(i.getSource(), filter);
-	Image filteredImage = Toolkit.getDefaultToolkit().createImage(prod);
-	return filteredImage;
+        return new HalfbrightFilter().filter(i);
     }
     
     public int filterRGB(int x, int y, int rgb) {
         return rgb & 0xff000000 // preserve alpha channel
         | (rgb & 0xfefefe) >>> 1; 
     }
+
+    protected void filterRGB(int[] rgb, int off, int len) {
+        for (int i = off, n = off + len; i < n; i++) {
+            int p = rgb[i];
+            rgb[i] = p & 0xff000000 | (p & 0xfefefe) >>> 1;
+        }
+    }
     
 }
@@ -0,0 +1,359 @@
+/*
+ * @(#)ImagePreloader.java
+ *
+ * Copyright (c) 2015 Werner Randelshofer, Switzerland.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package ch.randelshofer.quaqua.util;
+
+import ch.randelshofer.quaqua.QuaquaIconFactory;
+import ch.randelshofer.quaqua.QuaquaManager;
+import java.net.URL;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.swing.UIDefaults;
+
+/**
+ * Decodes the image resources which are named in a look and feel defaults
+ * table ahead of time.
+ * <p>
+ * Most icons and borders of the look and feel are specified as lazy values,
+ * which decode their images when a component is painted for the first time.
+ * The look and feel registers the PNG resources named by its lazy values
+ * with {@link #register}. The preloader collects the resources of the lazy
+ * values in a defaults table and decodes them on the processor threads of the shared {@link DispatcherPool}
+ * into the image cache of {@link Images}. When a lazy value is resolved
+ * later on, its image is already available.
+ * <p>
+ * Preloading is turned off by default. It is turned on by setting the
+ * property {@code Quaqua.Images.preload} to {@code true}. The timings of the
+ * last preload are available from {@link #getLastInstance}, and are logged
+ * with level {@code FINE} when the preload is done.
+ *
+ * @author Werner Randelshofer
+ * @version $Id$
+ */
+public class ImagePreloader {
+
+    /**
+     * The preloader which has been started last, or null.
+     */
+    private static volatile ImagePreloader lastInstance;
+    /**
+     * Maps lazy values to the image resources which they name. The lazy
+     * values are held weakly. Guarded by itself.
+     */
+    private final static WeakHashMap<Object, LazyValueResources> lazyValueResources = new WeakHashMap<Object, LazyValueResources>();
+    private final List<URL> resources;
+    private final CountDownLatch remaining;
+    /**
+     * Guards the metrics.
+     */
+    private final Object lock = new Object();
+    private final long collectNanos;
+    private long startNanos;
+    private long elapsedNanos = -1;
+    private int decodedCount;
+    private int failedCount;
+    private long totalDecodeNanos;
+    private long maxDecodeNanos;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param resources The image resources.
+     * @param collectNanos The time in nanoseconds which has been spent
+     * collecting the resources.
+     */
+    public ImagePreloader(List<URL> resources, long collectNanos) {
+        this.resources = new ArrayList<URL>(resources);
+        this.collectNanos = collectNanos;
+        this.remaining = new CountDownLatch(this.resources.size());
+    }
+
+    /**
+     * Starts preloading the images named in the specified defaults table,
+     * if the property {@code Quaqua.Images.preload} is {@code true}.
+     *
+     * @return The preloader, or null if preloading is turned off.
+     */
+    public static ImagePreloader preload(UIDefaults table) {
+        if (!"true".equals(QuaquaManager.getProperty("Quaqua.Images.preload", "false"))) {
+            return null;
+        }
+        long start = System.nanoTime();
+        List<URL> resources = collectResources(table);
+        ImagePreloader preloader = new ImagePreloader(resources, System.nanoTime() - start);
+        lastInstance = preloader;
+        preloader.start(DispatcherPool.getSharedInstance());
+        return preloader;
+    }
+
+    /**
+     * Registers the image resources which are named by the specified lazy
+     * value.
+     *
+     * @param lazyValue A lazy value.
+     * @param baseClass The class relative to which the locations are
+     * looked up.
+     * @param locations The locations of the image resources.
+     * @return The lazy value.
+     */
+    public static Object register(Object lazyValue, Class<?> baseClass, String... locations) {
+        synchronized (lazyValueResources) {
+            lazyValueResources.put(lazyValue, new LazyValueResources(baseClass, locations));
+        }
+        return lazyValue;
+    }
+
+    /**
+     * Returns the preloader which has been started last by
+     * {@link #preload}, or null.
+     */
+    public static ImagePreloader getLastInstance() {
+        return lastInstance;
+    }
+
+    /**
+     * Returns the PNG resources which are named by the values of the
+     * specified defaults table. The values are not resolved.
+     * <p>
+     * Lazy values name the resources which have been registered for them
+     * with {@link #register}. Other locations are looked up relative to
+     * {@code QuaquaIconFactory}. Locations which do not denote an existing
+     * resource are skipped.
+     */
+    public static List<URL> collectResources(UIDefaults table) {
+        LinkedHashMap<String, URL> resources = new LinkedHashMap<String, URL>();
+        // Iterate over a copy, because the table may be modified concurrently
+        // by the EDT.
+        Object[] values;
+        synchronized (table) {
+            values = table.values().toArray();
+        }
+        for (Object value : values) {
+            collectResources(value, QuaquaIconFactory.class, resources, 0);
+        }
+        return new ArrayList<URL>(resources.values());
+    }
+
+    private static void collectResources(Object value, Class<?> baseClass, Map<String, URL> resources, int depth) {
+        if (value instanceof String) {
+            collectResource(baseClass, (String) value, resources);
+        } else if (value instanceof Object[] && depth < 2) {
+            Object[] array = (Object[]) value;
+            for (Object elem : array) {
+                if (elem instanceof Class) {
+                    baseClass = (Class<?>) elem;
+                }
+            }
+            for (Object elem : array) {
+                collectResources(elem, baseClass, resources, depth + 1);
+            }
+        } else if (value instanceof UIDefaults.LazyValue && depth == 0) {
+            LazyValueResources lvr;
+            synchronized (lazyValueResources) {
+                lvr = lazyValueResources.get(value);
+            }
+            if (lvr != null) {
+                for (String location : lvr.locations) {
+                    collectResource(lvr.baseClass, location, resources);
+                }
+            }
+        }
+    }
+
+    private static void collectResource(Class<?> baseClass, String location, Map<String, URL> resources) {
+        if (location != null && location.endsWith(".png")) {
+            URL resource = baseClass.getResource(location);
+            if (resource != null) {
+                resources.put(resource.toExternalForm(), resource);
+            }
+        }
+    }
+
+    /**
+     * Enqueues the images into the prefetch lane of the specified pool.
+     * Images which can not be enqueued, because the queue is full, are
+     * skipped.
+     */
+    public void start(DispatcherPool pool) {
+        synchronized (lock) {
+            startNanos = System.nanoTime();
+        }
+        if (resources.isEmpty()) {
+            done();
+            return;
+        }
+        for (final URL resource : resources) {
+            Runnable r = new Runnable() {
+
+                public void run() {
+                    decode(resource);
+                }
+            };
+            if (!pool.offer(r, DispatcherPool.PREFETCH_LANE, this)) {
+                synchronized (lock) {
+                    failedCount++;
+                }
+                countDown();
+            }
+        }
+    }
+
+    private void decode(URL resource) {
+        long start = System.nanoTime();
+        boolean isDecoded = false;
+        try {
+            Images.createImage(resource);
+            isDecoded = true;
+        } catch (RuntimeException e) {
+            // The image will fail again when the lazy value is resolved.
+        } finally {
+            long decodeNanos = System.nanoTime() - start;
+            synchronized (lock) {
+                if (isDecoded) {
+                    decodedCount++;
+                } else {
+                    failedCount++;
+                }
+                totalDecodeNanos += decodeNanos;
+                maxDecodeNanos = Math.max(maxDecodeNanos, decodeNanos);
+            }
+            countDown();
+        }
+    }
+
+    private void countDown() {
+        remaining.countDown();
+        if (remaining.getCount() == 0) {
+            done();
+        }
+    }
+
+    private void done() {
+        synchronized (lock) {
+            if (elapsedNanos != -1) {
+                return;
+            }
+            elapsedNanos = System.nanoTime() - startNanos;
+        }
+        Logger logger = Logger.getLogger(ImagePreloader.class.getName());
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine(toString());
+        }
+    }
+
+    /**
+     * Waits until all images have been processed, or until the timeout
+     * elapses.
+     *
+     * @return Returns true, if all images have been processed.
+     */
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        return remaining.await(timeout, unit);
+    }
+
+    /**
+     * Returns true, if all images have been processed.
+     */
+    public boolean isDone() {
+        return remaining.getCount() == 0;
+    }
+
+    /**
+     * Returns the number of image resources which are preloaded.
+     */
+    public int getResourceCount() {
+        return resources.size();
+    }
+
+    /**
+     * Returns the number of images which have been decoded, or which have
+     * been found in the cache.
+     */
+    public int getDecodedCount() {
+        synchronized (lock) {
+            return decodedCount;
+        }
+    }
+
+    /**
+     * Returns the number of images which could not be decoded or enqueued.
+     */
+    public int getFailedCount() {
+        synchronized (lock) {
+            return failedCount;
+        }
+    }
+
+    /**
+     * Returns the time in nanoseconds which has been spent collecting the
+     * resources from the defaults table.
+     */
+    public long getCollectNanos() {
+        return collectNanos;
+    }
+
+    /**
+     * Returns the total time in nanoseconds which the processor threads have
+     * spent decoding images.
+     */
+    public long getTotalDecodeNanos() {
+        synchronized (lock) {
+            return totalDecodeNanos;
+        }
+    }
+
+    /**
+     * Returns the longest time in nanoseconds which has been spent decoding
+     * a single image.
+     */
+    public long getMaxDecodeNanos() {
+        synchronized (lock) {
+            return maxDecodeNanos;
+        }
+    }
+
+    /**
+     * Returns the time in nanoseconds from the start of the preload until
+     * all images have been processed, or -1 if the preload is not done yet.
+     */
+    public long getElapsedNanos() {
+        synchronized (lock) {
+            return elapsedNanos;
+        }
+    }
+
+    @Override
+    public String toString() {
+        synchronized (lock) {
+            return super.toString() + "[resources=" + resources.size()
+                    + ",decoded=" + decodedCount
+                    + ",failed=" + failedCount
+                    + ",collectNanos=" + collectNanos
+                    + ",totalDecodeNanos=" + totalDecodeNanos
+                    + ",maxDecodeNanos=" + maxDecodeNanos
+                    + ",elapsedNanos=" + elapsedNanos
+                    + "]";
+        }
+    }
+
+    /**
+     * Holds the image resources of a lazy value.
+     */
+    private static class LazyValueResources {
+
+        private final Class<?> baseClass;
+        private final String[] locations;
+
+        LazyValueResources(Class<?> baseClass, String[] locations) {
+            this.baseClass = baseClass;
+            this.locations = locations;
+        }
+    }
+}
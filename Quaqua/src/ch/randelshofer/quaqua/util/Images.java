@@ -1,12 +1,13 @@
 /*
  * @(#)Images.java  
  *
- * Copyright (c) 2005-2013 Werner Randelshofer, Switzerland.
+ * Copyright (c) 2005-2015 Werner Randelshofer, Switzerland.
  * You may not use, copy or modify this file, except in compliance with the
  * accompanying license terms.
  */
 package ch.randelshofer.quaqua.util;
 
+import ch.randelshofer.quaqua.QuaquaManager;
 import ch.randelshofer.quaqua.osx.OSXPreferences;
 import java.awt.*;
 import java.awt.image.*;
@@ -16,10 +17,22 @@ import java.util.*;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import javax.swing.*;
+import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
 
 /**
  * Image processing methods.
+ * <p>
+ * Images which are created from a resource URL are decoded once and kept
+ * in a process-wide cache, so that all icons and borders which are made
+ * from the same sprite sheet share the decoded pixels. The size of the cache
+ * is limited by the property {@code Quaqua.Images.cacheSize} in bytes. The
+ * default value is 16 MB.
+ * <p>
+ * Resources are decoded with ImageIO. Neither decoding nor the conversion
+ * of images into buffered images needs a component or a screen, so that
+ * the methods of this class can be used in a headless environment.
  *
  * @author  Werner Randelshofer, Karl von Randow
  * @version $Id$
@@ -38,20 +51,183 @@ public class Images {
         return graphiteFilter;
     }
 
+    /**
+     * Returns the decoded image of the resource at the location relative to
+     * the base class. The image is shared with all other callers and must
+     * not be modified.
+     */
     public static Image createImage(Class baseClass, String location) {
         URL resource=baseClass.getResource(location);
         if (resource==null) throw new IllegalArgumentException("no resource found for location:"+location);
         return createImage(resource);
     }
 
+    /**
+     * Returns the decoded image of the resource. The image is shared with
+     * all other callers and must not be modified. Callers which need to
+     * draw into the image must copy it first.
+     */
     public static Image createImage(URL resource) {
-        Image image = Toolkit.getDefaultToolkit().createImage(resource);
-        if (OSXPreferences.getString(OSXPreferences.GLOBAL_PREFERENCES, "AppleAquaColorVariant", "1").equals("6")) {
-            if (canGraphite(resource)) {
-                image = toGraphite(image);
+        boolean isGraphite = isGraphite() && canGraphite(resource);
+        String key = (isGraphite ? "graphite:" : "") + resource.toExternalForm();
+        synchronized (imageCache) {
+            BufferedImage image = imageCache.get(key);
+            if (image != null) {
+                imageCacheHits++;
+                return image;
             }
+            imageCacheMisses++;
+        }
+
+        BufferedImage bufImg = readImage(resource, isGraphite);
+
+        synchronized (imageCache) {
+            // Another thread may have decoded the same image in the meantime.
+            BufferedImage cached = imageCache.get(key);
+            if (cached != null) {
+                return cached;
+            }
+            imageCache.put(key, bufImg);
+            imageCacheBytes += getBytes(bufImg);
+            if (imageCacheMaxBytes < 0) {
+                imageCacheMaxBytes = getImageCacheMaxBytes();
+            }
+            for (Iterator<BufferedImage> i = imageCache.values().iterator(); imageCacheBytes > imageCacheMaxBytes && i.hasNext();) {
+                BufferedImage eldest = i.next();
+                if (eldest != bufImg) {
+                    imageCacheBytes -= getBytes(eldest);
+                    i.remove();
+                }
+            }
+        }
+        return bufImg;
+    }
+
+    /**
+     * Decodes the image of the resource with ImageIO into an image with a
+     * format that is compatible with the screen, or into a graphite image.
+     * Falls back to the Toolkit, if ImageIO can not decode the resource.
+     * <p>
+     * The resource is read through a memory cache. ImageIO.read(URL) would
+     * use a temporary file as the cache, if ImageIO.getUseCache() is true.
+     */
+    private static BufferedImage readImage(URL resource, boolean isGraphite) {
+        BufferedImage decoded = null;
+        try {
+            InputStream in = resource.openStream();
+            try {
+                ImageInputStream iis = new MemoryCacheImageInputStream(in);
+                decoded = ImageIO.read(iis);
+                // ImageIO.read closes the stream, unless it returns null
+                if (decoded == null) {
+                    iis.close();
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            // continue with the Toolkit below
+        }
+        if (decoded == null) {
+            Image image = Toolkit.getDefaultToolkit().createImage(resource);
+            BufferedImage bufImg = isGraphite ? toGraphite(image) : toBufferedImage(image);
+            image.flush();
+            return bufImg;
+        }
+        if (isGraphite) {
+            return toGraphite(decoded);
+        }
+        BufferedImage bimage = createCompatibleImage(decoded.getWidth(), decoded.getHeight(),
+                decoded.getColorModel().hasAlpha());
+        Graphics g = bimage.createGraphics();
+        g.drawImage(decoded, 0, 0, null);
+        g.dispose();
+        return bimage;
+    }
+
+    /**
+     * Decoded images by resource URL. The keys of graphite variants are
+     * prefixed with "graphite:". Access must be synchronized on the map.
+     */
+    private final static LinkedHashMap<String, BufferedImage> imageCache = new LinkedHashMap<String, BufferedImage>(256, 0.75f, true);
+    /** The number of bytes of the images in the cache. */
+    private static long imageCacheBytes;
+    /** The maximal number of bytes, or -1 if the property has not been read yet. */
+    private static long imageCacheMaxBytes = -1;
+    private static long imageCacheHits;
+    private static long imageCacheMisses;
+
+    private static long getImageCacheMaxBytes() {
+        try {
+            return Long.parseLong(QuaquaManager.getProperty("Quaqua.Images.cacheSize", "16777216"));
+        } catch (NumberFormatException e) {
+            return 16777216L;
         }
-        return image;
+    }
+
+    private static long getBytes(BufferedImage image) {
+        return (long) image.getWidth() * image.getHeight()
+                * ((image.getColorModel().getPixelSize() + 7) / 8);
+    }
+
+    /**
+     * Returns the number of requests for a resource image which have been
+     * served from the cache.
+     */
+    public static long getImageCacheHitCount() {
+        synchronized (imageCache) {
+            return imageCacheHits;
+        }
+    }
+
+    /**
+     * Returns the number of requests for a resource image which had to
+     * decode the image.
+     */
+    public static long getImageCacheMissCount() {
+        synchronized (imageCache) {
+            return imageCacheMisses;
+        }
+    }
+
+    /**
+     * Returns the number of bytes of the images in the cache.
+     */
+    public static long getImageCacheBytes() {
+        synchronized (imageCache) {
+            return imageCacheBytes;
+        }
+    }
+    /**
+     * Whether the graphite appearance is selected. This is null, if the
+     * preference has not been read yet.
+     */
+    private static volatile Boolean isGraphite;
+
+    /**
+     * Returns true, if the graphite appearance is selected in the global
+     * preferences. The preference is read only once, and again when
+     * {@link #updateGraphite} is called.
+     */
+    public static boolean isGraphite() {
+        Boolean b = isGraphite;
+        if (b == null) {
+            b = updateGraphite();
+        }
+        return b;
+    }
+
+    /**
+     * Reads the appearance from the global preferences again. The look and
+     * feel calls this method when it is installed, so that the preference
+     * is not read for each image.
+     *
+     * @return Returns true, if the graphite appearance is selected.
+     */
+    public static boolean updateGraphite() {
+        Boolean b = OSXPreferences.getString(OSXPreferences.GLOBAL_PREFERENCES, "AppleAquaColorVariant", "1").equals("6");
+        isGraphite = b;
+        return b;
     }
     private static volatile Properties canGraphite;
 
@@ -90,18 +266,34 @@ public class Images {
      * Code derived from the Java Developers Almanac 1.4
      * http://javaalmanac.com/egs/java.awt.image/Image2Buf.html?l=rel
      */
-    private static Image toGraphite(Image image) {
-        return Toolkit.getDefaultToolkit().
-                createImage(new FilteredImageSource(image.getSource(), getGraphiteFilter()));
+    private static BufferedImage toGraphite(Image image) {
+        return getGraphiteFilter().filter(image);
     }
 
     /**
      * The graphite filter converts Mac OS X artwork from "Blue Appearance" to
      * "Graphite Appearance" by desaturing the colors.
      */
-    public static class GraphiteFilter extends RGBImageFilter {
+    public static class GraphiteFilter extends RasterRGBFilter {
 
         private final static float saturationAdjust = 0.179f;
+        /**
+         * The products of the channel values with the weights of the color
+         * matrix. The sums of these products are the same as the sums which
+         * are computed by {@link #filterRGB(int, int, int)}.
+         */
+        private final static float[] aProducts = new float[256];
+        private final static float[] bProducts = new float[256];
+
+        static {
+            float weight = (1f - saturationAdjust) * 1f / 3f;
+            float a = weight + saturationAdjust;
+            float b = weight;
+            for (int i = 0; i < 256; i++) {
+                aProducts[i] = a * i;
+                bProducts[i] = b * i;
+            }
+        }
 
         public int filterRGB(int x, int y, int rgb) {
             int alpha = rgb & 0xff000000;
@@ -119,6 +311,22 @@ public class Images {
             int outputBlue = (int) (c * red + b * green + a * blue);
             return alpha | (outputRed << 16) | (outputGreen << 8) | (outputBlue);
         }
+
+        protected void filterRGB(int[] rgb, int off, int len) {
+            // The weights b and c are equal, so bProducts is used for both.
+            float[] ap = aProducts;
+            float[] bp = bProducts;
+            for (int i = off, n = off + len; i < n; i++) {
+                int p = rgb[i];
+                int red = (p >>> 16) & 0xff;
+                int green = (p >>> 8) & 0xff;
+                int blue = p & 0xff;
+                int outputRed = (int) (ap[red] + bp[green] + bp[blue]);
+                int outputGreen = (int) (bp[red] + ap[green] + bp[blue]);
+                int outputBlue = (int) (bp[red] + bp[green] + ap[blue]);
+                rgb[i] = p & 0xff000000 | (outputRed << 16) | (outputGreen << 8) | outputBlue;
+            }
+        }
     }
 
     public static BufferedImage toBufferedImage(RenderedImage rImg) {
@@ -145,10 +353,10 @@ public class Images {
         }
 
         // This code ensures that all the pixels in the image are loaded
-        image = new ImageIcon(image).getImage();
+        waitForImage(image);
 
         // Create a buffered image with a format that's compatible with the screen
-        BufferedImage bimage = null;
+        BufferedImage bimage;
 
         if (System.getProperty("java.version").startsWith("1.4.1_")) {
             // Workaround for Java 1.4.1 on Mac OS X.
@@ -168,34 +376,7 @@ public class Images {
                 // in order not to loose data.
                 hasAlpha = true;
             }
-
-
-            GraphicsEnvironment ge = GraphicsEnvironment.getLocalGraphicsEnvironment();
-            try {
-                // Determine the type of transparency of the new buffered image
-                int transparency = Transparency.OPAQUE;
-                if (hasAlpha) {
-                    transparency = Transparency.TRANSLUCENT;
-                }
-
-                // Create the buffered image
-                GraphicsDevice gs = ge.getDefaultScreenDevice();
-                GraphicsConfiguration gc = gs.getDefaultConfiguration();
-                bimage = gc.createCompatibleImage(
-                        image.getWidth(null), image.getHeight(null), transparency);
-            } catch (Exception e) {
-                //} catch (HeadlessException e) {
-                // The system does not have a screen
-            }
-
-            if (bimage == null) {
-                // Create a buffered image using the default color model
-                int type = BufferedImage.TYPE_INT_RGB;
-                if (hasAlpha) {
-                    type = BufferedImage.TYPE_INT_ARGB;
-                }
-                bimage = new BufferedImage(image.getWidth(null), image.getHeight(null), type);
-            }
+            bimage = createCompatibleImage(image.getWidth(null), image.getHeight(null), hasAlpha);
         }
 
         // Copy image to buffered image
@@ -237,6 +418,67 @@ public class Images {
         }*/
     }
 
+    /**
+     * Creates a buffered image with a format that's compatible with the
+     * screen. If there is no screen, an image with the default color model
+     * is created.
+     */
+    private static BufferedImage createCompatibleImage(int width, int height, boolean hasAlpha) {
+        if (!GraphicsEnvironment.isHeadless()) {
+            try {
+                GraphicsConfiguration gc = GraphicsEnvironment.getLocalGraphicsEnvironment().
+                        getDefaultScreenDevice().getDefaultConfiguration();
+                return gc.createCompatibleImage(width, height,
+                        hasAlpha ? Transparency.TRANSLUCENT : Transparency.OPAQUE);
+            } catch (Exception e) {
+                //} catch (HeadlessException e) {
+                // The system does not have a screen
+            }
+        }
+        return new BufferedImage(width, height,
+                hasAlpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+    }
+
+    /**
+     * Waits until the image is loaded completely, or until loading fails.
+     * Unlike a MediaTracker, this does not need a component, and it does
+     * not serialize the loading of images on different threads.
+     */
+    static void waitForImage(Image image) {
+        final Object lock = new Object();
+        final int doneFlags = ImageObserver.ALLBITS | ImageObserver.FRAMEBITS
+                | ImageObserver.ERROR | ImageObserver.ABORT;
+        ImageObserver observer = new ImageObserver() {
+
+            public boolean imageUpdate(Image img, int infoflags, int x, int y, int width, int height) {
+                if ((infoflags & doneFlags) != 0) {
+                    synchronized (lock) {
+                        lock.notifyAll();
+                    }
+                    return false;
+                }
+                return true;
+            }
+        };
+        Toolkit toolkit = Toolkit.getDefaultToolkit();
+        synchronized (lock) {
+            if (toolkit.prepareImage(image, -1, -1, observer)) {
+                return;
+            }
+            // The toolkit only holds a weak reference to the observer, and
+            // aborts loading when the observer is garbage collected. Passing
+            // the observer to checkImage keeps it reachable.
+            while ((toolkit.checkImage(image, -1, -1, observer) & doneFlags) == 0) {
+                try {
+                    lock.wait(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
     /**
      * This method returns true if the specified image has transparent pixels
      *
@@ -276,16 +518,33 @@ public class Images {
 
         BufferedImage[] parts = new BufferedImage[count];
         for (int i = 0; i < count; i++) {
-            if (isHorizontal) {
-                parts[i] = src.getSubimage(
-                        src.getWidth() / count * i, 0,
-                        src.getWidth() / count, src.getHeight());
-            } else {
-                parts[i] = src.getSubimage(
-                        0, src.getHeight() / count * i,
-                        src.getWidth(), src.getHeight() / count);
-            }
+            parts[i] = getPart(src, count, isHorizontal, i);
         }
         return parts;
     }
+
+    /**
+     * Returns the subimage with the specified index, as if the image had
+     * been split into count subimages. The subimage shares its pixels with
+     * the image.
+     */
+    public static BufferedImage split(Image image, int count, boolean isHorizontal, int index) {
+        BufferedImage src = Images.toBufferedImage(image);
+        if (count == 1) {
+            return src;
+        }
+        return getPart(src, count, isHorizontal, index);
+    }
+
+    private static BufferedImage getPart(BufferedImage src, int count, boolean isHorizontal, int i) {
+        if (isHorizontal) {
+            return src.getSubimage(
+                    src.getWidth() / count * i, 0,
+                    src.getWidth() / count, src.getHeight());
+        } else {
+            return src.getSubimage(
+                    0, src.getHeight() / count * i,
+                    src.getWidth(), src.getHeight() / count);
+        }
+    }
 }
@@ -0,0 +1,180 @@
+/*
+ * @(#)RasterRGBFilter.java
+ *
+ * Copyright (c) 2015 Werner Randelshofer, Switzerland.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package ch.randelshofer.quaqua.util;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.RenderingHints;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * An RGB filter which can be used as an {@code ImageFilter} with a
+ * {@code FilteredImageSource}, and as a {@code BufferedImageOp} on buffered
+ * images.
+ * <p>
+ * As a {@code BufferedImageOp}, the filter reads rows of pixels in the
+ * default RGB color model from the source image, filters them with
+ * {@link #filterRGB(int[], int, int)}, and writes them into the
+ * destination image. Both operations produce the same pixels.
+ * The rows of large images are filtered concurrently.
+ * <p>
+ * The raster data of the images is only accessed through the
+ * {@code Raster} API, so that the images stay managed.
+ *
+ * @author Werner Randelshofer
+ * @version $Id$
+ */
+public abstract class RasterRGBFilter extends RGBImageFilter implements BufferedImageOp {
+
+    /**
+     * Images with fewer pixels than this are filtered on the calling thread.
+     */
+    private final static int PARALLEL_THRESHOLD = 256 * 256;
+    /**
+     * The maximal number of pixels in a band of rows, which is filtered by
+     * a single thread.
+     */
+    private final static int BAND_SIZE = 128 * 128;
+
+    /**
+     * Filters the specified pixels in place.
+     *
+     * @param rgb Pixels in the default RGB color model.
+     * @param off The index of the first pixel.
+     * @param len The number of pixels.
+     */
+    protected abstract void filterRGB(int[] rgb, int off, int len);
+
+    /**
+     * Filters the specified image.
+     *
+     * @param image A buffered image, or an image which is loaded
+     * completely before it is filtered.
+     * @return A new image of type {@code TYPE_INT_ARGB}.
+     */
+    public BufferedImage filter(Image image) {
+        if (image instanceof BufferedImage) {
+            return filter((BufferedImage) image, null);
+        }
+        // This code ensures that all the pixels in the image are loaded
+        Images.waitForImage(image);
+        BufferedImage dst = new BufferedImage(image.getWidth(null), image.getHeight(null), BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = dst.createGraphics();
+        g.setComposite(AlphaComposite.Src);
+        g.drawImage(image, 0, 0, null);
+        g.dispose();
+        return filter(dst, dst);
+    }
+
+    /**
+     * Filters the source image into the destination image.
+     * The source image and the destination image may be the same.
+     *
+     * @param src The source image.
+     * @param dst The destination image, or null. The destination image must
+     * be at least as large as the source image.
+     * @return The destination image.
+     */
+    public BufferedImage filter(BufferedImage src, BufferedImage dst) {
+        if (dst == null) {
+            dst = createCompatibleDestImage(src, null);
+        }
+        int width = src.getWidth();
+        int height = src.getHeight();
+        if (width <= 0 || height <= 0) {
+            return dst;
+        }
+        if ((long) width * height < PARALLEL_THRESHOLD
+                || ForkJoinPool.getCommonPoolParallelism() < 2) {
+            filterRows(src, dst, width, 0, height);
+        } else {
+            ForkJoinPool.commonPool().invoke(new FilterTask(src, dst, width, 0, height));
+        }
+        return dst;
+    }
+
+    /**
+     * Filters the rows y0 to y1 - 1.
+     */
+    private void filterRows(BufferedImage src, BufferedImage dst, int width, int y0, int y1) {
+        int rows = Math.max(1, Math.min(y1 - y0, BAND_SIZE / width));
+        int[] rgb = new int[width * rows];
+        for (int y = y0; y < y1; y += rows) {
+            int h = Math.min(rows, y1 - y);
+            if (src.getType() == BufferedImage.TYPE_INT_ARGB) {
+                src.getRaster().getDataElements(0, y, width, h, rgb);
+            } else {
+                src.getRGB(0, y, width, h, rgb, 0, width);
+            }
+            filterRGB(rgb, 0, width * h);
+            if (dst.getType() == BufferedImage.TYPE_INT_ARGB) {
+                dst.getRaster().setDataElements(0, y, width, h, rgb);
+            } else {
+                dst.setRGB(0, y, width, h, rgb, 0, width);
+            }
+        }
+    }
+
+    /**
+     * Filters a band of rows. Splits the band in halves, if it contains more
+     * than {@code BAND_SIZE} pixels. The bands do not overlap, so they can
+     * be written concurrently.
+     */
+    private class FilterTask extends RecursiveAction {
+
+        private final BufferedImage src, dst;
+        private final int width, y0, y1;
+
+        FilterTask(BufferedImage src, BufferedImage dst, int width, int y0, int y1) {
+            this.src = src;
+            this.dst = dst;
+            this.width = width;
+            this.y0 = y0;
+            this.y1 = y1;
+        }
+
+        protected void compute() {
+            if (y1 - y0 > 1 && (long) width * (y1 - y0) > BAND_SIZE) {
+                int mid = (y0 + y1) >>> 1;
+                invokeAll(new FilterTask(src, dst, width, y0, mid),
+                        new FilterTask(src, dst, width, mid, y1));
+            } else {
+                filterRows(src, dst, width, y0, y1);
+            }
+        }
+    }
+
+    /**
+     * Creates an image of type {@code TYPE_INT_ARGB} with the size of the
+     * source image.
+     */
+    public BufferedImage createCompatibleDestImage(BufferedImage src, ColorModel destCM) {
+        return new BufferedImage(src.getWidth(), src.getHeight(), BufferedImage.TYPE_INT_ARGB);
+    }
+
+    public Rectangle2D getBounds2D(BufferedImage src) {
+        return src.getRaster().getBounds();
+    }
+
+    public Point2D getPoint2D(Point2D srcPt, Point2D dstPt) {
+        if (dstPt == null) {
+            dstPt = new Point2D.Float();
+        }
+        dstPt.setLocation(srcPt);
+        return dstPt;
+    }
+
+    public RenderingHints getRenderingHints() {
+        return null;
+    }
+}
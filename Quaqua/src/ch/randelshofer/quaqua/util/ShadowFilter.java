@@ -1,7 +1,7 @@
 /*
  * @(#)ShadowFilter.java  1.0  28 March 2005
  *
- * Copyright (c) 2004-2013 Werner Randelshofer, Switzerland.
+ * Copyright (c) 2004-2015 Werner Randelshofer, Switzerland.
  * You may not use, copy or modify this file, except in compliance with the
  * accompanying license terms.
  */
@@ -16,9 +16,10 @@ import java.awt.image.*;
  * This is used by the Quaqua Look and Feel, to create a shadow image.
  *
  * @author  Werner Randelshofer
- * @version 1.0  28 March 2005  Created.
+ * @version 1.1 2015-05-16 Filters buffered images directly.
+ * <br>1.0  28 March 2005  Created.
  */
-public class ShadowFilter extends RGBImageFilter {
+public class ShadowFilter extends RasterRGBFilter {
     
     /** Creates a new instance. */
     public ShadowFilter() {
@@ -29,13 +30,16 @@ public class ShadowFilter extends RGBImageFilter {
      * Creates a shadow image
      */
     public static Image createShadowImage (Image i) {
-	ImageFilter filter = new ShadowFilter();
-	ImageProducer prod = new FilteredImageSource(i.getSource(), filter);
-	Image filteredImage = Toolkit.getDefaultToolkit().createImage(prod);
-	return filteredImage;
+        return new ShadowFilter().filter(i);
     }
     
     public int filterRGB(int x, int y, int rgb) {
         return (rgb & 0xfe000000) >>> 1; 
     }    
+
+    protected void filterRGB(int[] rgb, int off, int len) {
+        for (int i = off, n = off + len; i < n; i++) {
+            rgb[i] = (rgb[i] & 0xfe000000) >>> 1;
+        }
+    }
 }
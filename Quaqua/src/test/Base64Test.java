@@ -0,0 +1,342 @@
+/*
+ * @(#)Base64Test.java
+ *
+ * Copyright (c) 2015 Werner Randelshofer, Switzerland.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package test;
+
+import ch.randelshofer.quaqua.ext.base64.Base64;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares the encoder and the decoder of {@link Base64} with the array
+ * based encoder and decoder of Base64 2.x, which Quaqua used before the
+ * buffer based methods were added.
+ * <p>
+ * The inputs cover all padding cases, lines which end exactly at the end
+ * of the input, the thresholds of the parallel encoder and decoder, heap
+ * and direct buffers, and encoded strings with inserted whitespace,
+ * misplaced padding, truncations and invalid characters.
+ * Run with {@code -Djava.util.concurrent.ForkJoinPool.common.parallelism=8}
+ * to test the parallel code on machines with a single processor.
+ * <p>
+ * Usage: java test.Base64Test
+ *
+ * @author Werner Randelshofer
+ * @version $Id$
+ */
+public class Base64Test {
+
+    private static int checkCount;
+    private static int failCount;
+
+    public static void main(String[] args) {
+        Random rnd = new Random(7);
+
+        List<Integer> lengths = new ArrayList<Integer>();
+        for (int i = 0; i < 400; i++) {
+            lengths.add(i);
+        }
+        int threshold = 1 << 20;
+        for (int d = -3; d <= 3; d++) {
+            lengths.add(threshold + d);
+            lengths.add(3 * threshold + d);
+            lengths.add(57 * 1024 * 40 + d);
+        }
+
+        for (int len : lengths) {
+            for (int options : new int[]{Base64.NO_OPTIONS, Base64.DONT_BREAK_LINES}) {
+                byte[] data = new byte[len + 7];
+                rnd.nextBytes(data);
+                String expected = OldBase64.encodeBytes(data, 3, len, options);
+                check("encodeBytes " + len, expected, Base64.encodeBytes(data, 3, len, options));
+                check("encodedLength " + len, expected.length(), Base64.encodedLength(len, options));
+                check("encode " + len, expected, encode(data, 3, len, options, (len & 1) == 0));
+                check("decode " + len, decodeOld(expected), decode(expected, (len & 1) == 0));
+                check("decode array " + len, decodeOld(expected), decodeArray(expected));
+
+                for (int i = 0; i < (len > 1000 ? 6 : 4); i++) {
+                    String mutated = mutate(expected, rnd);
+                    check("decode mutated " + len + " " + mutated.length(), decodeOld(mutated), decode(mutated, (i & 1) == 0));
+                }
+            }
+        }
+
+        String[] edgeCases = {
+            "", "=", "==", "A", "AA", "AAA", "AA==", "AAA=", "AAAA",
+            "QQ==", "QUI=", "QUJD", "QQ==QUJD", "QU=I", "Q===", "====",
+            "QUJD\n", "\nQUJD", "QU\r\nJD", " Q U J D ", "QUJD\tQUJD",
+            "QUJ", "QUJDQ", "QUJDQQ", "QUJDQQ=", "QU#D", "QUJD~",
+        };
+        for (String s : edgeCases) {
+            check("decode edge case \"" + s + "\"", decodeOld(s), decode(s, false));
+            check("decode edge case \"" + s + "\"", decodeOld(s), decode(s, true));
+            check("decode array edge case \"" + s + "\"", decodeOld(s), decodeArray(s));
+        }
+
+        System.out.println(checkCount + " checks, " + failCount + " failures");
+        System.exit(failCount == 0 ? 0 : 1);
+    }
+
+    /**
+     * Inserts a character, truncates, or removes a character.
+     */
+    private static String mutate(String s, Random rnd) {
+        StringBuilder buf = new StringBuilder(s);
+        int at = buf.length() == 0 ? 0 : rnd.nextInt(buf.length());
+        char[] insertions = {' ', '\n', '\t', '\r', '=', '=', 'A', '#', (char) 126};
+        switch (rnd.nextInt(3)) {
+            case 0:
+                buf.insert(at, insertions[rnd.nextInt(insertions.length)]);
+                break;
+            case 1:
+                buf.setLength(at);
+                break;
+            default:
+                if (buf.length() > 0) {
+                    buf.deleteCharAt(at);
+                }
+                break;
+        }
+        return buf.toString();
+    }
+
+    private static void check(String what, Object expected, Object actual) {
+        checkCount++;
+        boolean isEqual = (expected instanceof byte[] && actual instanceof byte[])
+                ? Arrays.equals((byte[]) expected, (byte[]) actual)
+                : expected == null ? actual == null : expected.equals(actual);
+        if (!isEqual) {
+            failCount++;
+            if (failCount <= 20) {
+                System.out.println("Failure: " + what);
+            }
+        }
+    }
+
+    /**
+     * Encodes with the buffer based encoder, from a sliced heap buffer or
+     * from a direct buffer into a char buffer at an offset.
+     */
+    private static String encode(byte[] data, int off, int len, int options, boolean isDirect) {
+        ByteBuffer src;
+        if (isDirect) {
+            src = ByteBuffer.allocateDirect(len + 4);
+            src.position(2);
+            src.put(data, off, len);
+            src.position(2);
+            src.limit(2 + len);
+        } else {
+            src = ByteBuffer.wrap(data, off, len).slice();
+        }
+        char[] out = new char[Base64.encodedLength(len, options) + 6];
+        CharBuffer dst = CharBuffer.wrap(out);
+        dst.position(3);
+        int n = Base64.encode(src, dst, options);
+        if (dst.position() != 3 + n || src.hasRemaining()) {
+            return null;
+        }
+        return new String(out, 3, n);
+    }
+
+    /**
+     * Decodes with the buffer based decoder, from a sliced char array or
+     * from a string into a heap or direct byte buffer at an offset.
+     * Returns null if the input is invalid.
+     */
+    private static byte[] decode(String s, boolean isDirect) {
+        String padded = "xx" + s + "y";
+        CharBuffer src;
+        ByteBuffer dst;
+        if (isDirect) {
+            src = CharBuffer.wrap(padded, 2, 2 + s.length());
+            dst = ByteBuffer.allocateDirect(s.length() + 10);
+        } else {
+            src = CharBuffer.wrap(padded.toCharArray(), 2, s.length()).slice();
+            dst = ByteBuffer.wrap(new byte[s.length() + 20], 3, s.length() + 10).slice();
+        }
+        dst.position(5);
+        int n = Base64.decode(src, dst);
+        if (n < 0) {
+            return null;
+        }
+        if (dst.position() != 5 + n || src.hasRemaining()) {
+            return new byte[0];
+        }
+        byte[] result = new byte[n];
+        dst.position(5);
+        dst.get(result);
+        return result;
+    }
+
+    private static byte[] decodeArray(String s) {
+        byte[] b = s.getBytes();
+        return Base64.decode(b, 0, b.length);
+    }
+
+    private static byte[] decodeOld(String s) {
+        byte[] b = s.getBytes();
+        return OldBase64.decode(b, 0, b.length);
+    }
+
+    /**
+     * The array based encoder and decoder of Base64 2.x, without GZIP
+     * support and without error messages.
+     */
+    private static class OldBase64 {
+
+        private final static int MAX_LINE_LENGTH = 76;
+        private final static byte EQUALS_SIGN = (byte) '=';
+        private final static byte NEW_LINE = (byte) '\n';
+        private final static byte[] ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".getBytes();
+        private final static byte[] DECODABET = {
+            -9, -9, -9, -9, -9, -9, -9, -9, -9, // Decimal  0 -  8
+            -5, -5, // Whitespace: Tab and Linefeed
+            -9, -9, // Decimal 11 - 12
+            -5, // Whitespace: Carriage Return
+            -9, -9, -9, -9, -9, -9, -9, -9, -9, -9, -9, -9, -9, // Decimal 14 - 26
+            -9, -9, -9, -9, -9, // Decimal 27 - 31
+            -5, // Whitespace: Space
+            -9, -9, -9, -9, -9, -9, -9, -9, -9, -9, // Decimal 33 - 42
+            62, // Plus sign at decimal 43
+            -9, -9, -9, // Decimal 44 - 46
+            63, // Slash at decimal 47
+            52, 53, 54, 55, 56, 57, 58, 59, 60, 61, // Numbers zero through nine
+            -9, -9, -9, // Decimal 58 - 60
+            -1, // Equals sign at decimal 61
+            -9, -9, -9, // Decimal 62 - 64
+            0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, // Letters 'A' through 'N'
+            14, 15, 16, 17, 18, 19, 20, 21, 22, 23, 24, 25, // Letters 'O' through 'Z'
+            -9, -9, -9, -9, -9, -9, // Decimal 91 - 96
+            26, 27, 28, 29, 30, 31, 32, 33, 34, 35, 36, 37, 38, // Letters 'a' through 'm'
+            39, 40, 41, 42, 43, 44, 45, 46, 47, 48, 49, 50, 51, // Letters 'n' through 'z'
+            -9, -9, -9, -9 // Decimal 123 - 126
+        };
+        private final static byte WHITE_SPACE_ENC = -5;
+        private final static byte EQUALS_SIGN_ENC = -1;
+
+        private static void encode3to4(byte[] source, int srcOffset, int numSigBytes,
+                byte[] destination, int destOffset) {
+            int inBuff = (numSigBytes > 0 ? ((source[srcOffset] << 24) >>> 8) : 0)
+                    | (numSigBytes > 1 ? ((source[srcOffset + 1] << 24) >>> 16) : 0)
+                    | (numSigBytes > 2 ? ((source[srcOffset + 2] << 24) >>> 24) : 0);
+
+            switch (numSigBytes) {
+                case 3:
+                    destination[destOffset] = ALPHABET[(inBuff >>> 18)];
+                    destination[destOffset + 1] = ALPHABET[(inBuff >>> 12) & 0x3f];
+                    destination[destOffset + 2] = ALPHABET[(inBuff >>> 6) & 0x3f];
+                    destination[destOffset + 3] = ALPHABET[(inBuff) & 0x3f];
+                    break;
+                case 2:
+                    destination[destOffset] = ALPHABET[(inBuff >>> 18)];
+                    destination[destOffset + 1] = ALPHABET[(inBuff >>> 12) & 0x3f];
+                    destination[destOffset + 2] = ALPHABET[(inBuff >>> 6) & 0x3f];
+                    destination[destOffset + 3] = EQUALS_SIGN;
+                    break;
+                case 1:
+                    destination[destOffset] = ALPHABET[(inBuff >>> 18)];
+                    destination[destOffset + 1] = ALPHABET[(inBuff >>> 12) & 0x3f];
+                    destination[destOffset + 2] = EQUALS_SIGN;
+                    destination[destOffset + 3] = EQUALS_SIGN;
+                    break;
+            }
+        }
+
+        static String encodeBytes(byte[] source, int off, int len, int options) {
+            boolean breakLines = (options & Base64.DONT_BREAK_LINES) == 0;
+
+            int len43 = len * 4 / 3;
+            byte[] outBuff = new byte[(len43)
+                    + ((len % 3) > 0 ? 4 : 0)
+                    + (breakLines ? (len43 / MAX_LINE_LENGTH) : 0)];
+            int d = 0;
+            int e = 0;
+            int len2 = len - 2;
+            int lineLength = 0;
+            for (; d < len2; d += 3, e += 4) {
+                encode3to4(source, d + off, 3, outBuff, e);
+
+                lineLength += 4;
+                if (breakLines && lineLength == MAX_LINE_LENGTH) {
+                    outBuff[e + 4] = NEW_LINE;
+                    e++;
+                    lineLength = 0;
+                }
+            }
+
+            if (d < len) {
+                encode3to4(source, d + off, len - d, outBuff, e);
+                e += 4;
+            }
+            return new String(outBuff, 0, e);
+        }
+
+        private static int decode4to3(byte[] source, int srcOffset, byte[] destination, int destOffset) {
+            if (source[srcOffset + 2] == EQUALS_SIGN) {
+                int outBuff = ((DECODABET[source[srcOffset]] & 0xFF) << 18)
+                        | ((DECODABET[source[srcOffset + 1]] & 0xFF) << 12);
+
+                destination[destOffset] = (byte) (outBuff >>> 16);
+                return 1;
+            } else if (source[srcOffset + 3] == EQUALS_SIGN) {
+                int outBuff = ((DECODABET[source[srcOffset]] & 0xFF) << 18)
+                        | ((DECODABET[source[srcOffset + 1]] & 0xFF) << 12)
+                        | ((DECODABET[source[srcOffset + 2]] & 0xFF) << 6);
+
+                destination[destOffset] = (byte) (outBuff >>> 16);
+                destination[destOffset + 1] = (byte) (outBuff >>> 8);
+                return 2;
+            } else {
+                int outBuff = ((DECODABET[source[srcOffset]] & 0xFF) << 18)
+                        | ((DECODABET[source[srcOffset + 1]] & 0xFF) << 12)
+                        | ((DECODABET[source[srcOffset + 2]] & 0xFF) << 6)
+                        | ((DECODABET[source[srcOffset + 3]] & 0xFF));
+
+                destination[destOffset] = (byte) (outBuff >> 16);
+                destination[destOffset + 1] = (byte) (outBuff >> 8);
+                destination[destOffset + 2] = (byte) (outBuff);
+                return 3;
+            }
+        }
+
+        static byte[] decode(byte[] source, int off, int len) {
+            int len34 = len * 3 / 4;
+            byte[] outBuff = new byte[len34];
+            int outBuffPosn = 0;
+
+            byte[] b4 = new byte[4];
+            int b4Posn = 0;
+            for (int i = off; i < off + len; i++) {
+                byte sbiCrop = (byte) (source[i] & 0x7f);
+                byte sbiDecode = DECODABET[sbiCrop];
+
+                if (sbiDecode >= WHITE_SPACE_ENC) {
+                    if (sbiDecode >= EQUALS_SIGN_ENC) {
+                        b4[b4Posn++] = sbiCrop;
+                        if (b4Posn > 3) {
+                            outBuffPosn += decode4to3(b4, 0, outBuff, outBuffPosn);
+                            b4Posn = 0;
+                            if (sbiCrop == EQUALS_SIGN) {
+                                break;
+                            }
+                        }
+                    }
+                } else {
+                    return null;
+                }
+            }
+
+            byte[] out = new byte[outBuffPosn];
+            System.arraycopy(outBuff, 0, out, 0, outBuffPosn);
+            return out;
+        }
+    }
+}
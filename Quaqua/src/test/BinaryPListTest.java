@@ -0,0 +1,173 @@
+/*
+ * @(#)BinaryPListTest.java
+ *
+ * Copyright (c) 2015 Werner Randelshofer, Switzerland.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package test;
+
+import ch.randelshofer.quaqua.ext.base64.Base64;
+import ch.randelshofer.quaqua.ext.nanoxml.XMLElement;
+import ch.randelshofer.quaqua.util.BinaryPList;
+import ch.randelshofer.quaqua.util.BinaryPListParser;
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.GregorianCalendar;
+
+/**
+ * Compares the objects read with {@link BinaryPList} with the XMLElement
+ * produced by {@link BinaryPListParser#parse}, and measures how fast both
+ * look up a single key in the top level dictionary.
+ * <p>
+ * The default input is {@code src/test/BinaryPListTest.plist}. This fixture
+ * was generated with the {@code plistlib} module of Python 3. Its top level
+ * dictionary has 602 keys, with nested dictionaries and arrays, ASCII and
+ * Unicode strings, small, large and negative integers, reals, booleans,
+ * dates, data and UIDs. Its last key is
+ * {@code NSNavPanelExpandedSizeForOpenMode}.
+ * <p>
+ * Usage: java test.BinaryPListTest [plist file] [lookups]
+ *
+ * @author Werner Randelshofer
+ * @version $Id$
+ */
+public class BinaryPListTest {
+
+    private final static String LOOKUP_KEY = "NSNavPanelExpandedSizeForOpenMode";
+    /** The time base of dates in binary PLists: 2001-01-01 00:00:00 UTC. */
+    private final static long DATE_TIMEBASE = 978307200000L;
+    private static int checkCount;
+    private static int failCount;
+
+    public static void main(String[] args) throws Exception {
+        File file = new File(args.length > 0 ? args[0] : "src/test/BinaryPListTest.plist");
+        int lookupCount = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+        XMLElement xml = new BinaryPListParser().parse(file);
+        BinaryPList plist = BinaryPListParser.parseLazily(file);
+        compare((XMLElement) xml.getChildren().get(0), plist, plist.getRoot(), "/");
+
+        String expected = null;
+        long start = System.nanoTime();
+        for (int i = 0; i < lookupCount; i++) {
+            expected = lookup(new BinaryPListParser().parse(file), LOOKUP_KEY);
+        }
+        long parseNanos = System.nanoTime() - start;
+
+        String actual = null;
+        start = System.nanoTime();
+        for (int i = 0; i < lookupCount; i++) {
+            BinaryPList p = BinaryPListParser.parseLazily(file);
+            int ref = p.getDictValue(p.getRoot(), LOOKUP_KEY);
+            actual = (ref == -1) ? null : p.getString(ref);
+        }
+        long lazyNanos = System.nanoTime() - start;
+        check(expected != null && expected.equals(actual), "lookup of " + LOOKUP_KEY + ": " + expected + " != " + actual);
+
+        System.out.printf("lookup of %s: parse %.3f ms, parseLazily %.3f ms%n",
+                LOOKUP_KEY, parseNanos / 1e6 / lookupCount, lazyNanos / 1e6 / lookupCount);
+        System.out.println(plist.getObjectCount() + " objects, " + checkCount + " checks, " + failCount + " failures");
+        System.exit(failCount == 0 ? 0 : 1);
+    }
+
+    /**
+     * Returns the string value of a key of the top level dictionary.
+     */
+    private static String lookup(XMLElement root, String key) {
+        ArrayList children = ((XMLElement) root.getChildren().get(0)).getChildren();
+        for (int i = 0; i < children.size(); i += 2) {
+            if (key.equals(((XMLElement) children.get(i)).getContent())) {
+                return ((XMLElement) children.get(i + 1)).getContent();
+            }
+        }
+        return null;
+    }
+
+    private static void compare(XMLElement elem, BinaryPList plist, int ref, String path) {
+        String name = elem.getName();
+        int type = plist.getType(ref);
+        checkCount++;
+        switch (type) {
+            case BinaryPList.TYPE_DICT: {
+                if (!check(name.equals("dict"), path + ": " + name + " is not a dict")) {
+                    return;
+                }
+                ArrayList children = elem.getChildren();
+                int count = plist.getCount(ref);
+                if (!check(children.size() == 2 * count, path + ": dict has " + children.size() / 2 + " entries instead of " + count)) {
+                    return;
+                }
+                for (int i = 0; i < count; i++) {
+                    String key = plist.getDictKey(ref, i);
+                    String xmlKey = ((XMLElement) children.get(2 * i)).getContent();
+                    if (check(key.equals(xmlKey), path + ": key " + i + " is " + key + " instead of " + xmlKey)) {
+                        compare((XMLElement) children.get(2 * i + 1), plist, plist.getDictValueAt(ref, i), path + key + "/");
+                        int valueRef = plist.getDictValue(ref, key);
+                        check(valueRef == plist.getDictValueAt(ref, i), path + ": getDictValue of " + key + " returns " + valueRef);
+                    }
+                }
+                break;
+            }
+            case BinaryPList.TYPE_ARRAY: {
+                if (!check(name.equals("array"), path + ": " + name + " is not an array")) {
+                    return;
+                }
+                ArrayList children = elem.getChildren();
+                int count = plist.getCount(ref);
+                if (!check(children.size() == count, path + ": array has " + children.size() + " elements instead of " + count)) {
+                    return;
+                }
+                for (int i = 0; i < count; i++) {
+                    compare((XMLElement) children.get(i), plist, plist.getArrayElement(ref, i), path + i + "/");
+                }
+                break;
+            }
+            case BinaryPList.TYPE_STRING:
+                compareValue(elem, "string", plist.getString(ref), path);
+                break;
+            case BinaryPList.TYPE_INTEGER:
+                compareValue(elem, "integer", Long.toString(plist.getLong(ref)), path);
+                break;
+            case BinaryPList.TYPE_REAL:
+                compareValue(elem, "real", plist.getNumber(ref).toString(), path);
+                break;
+            case BinaryPList.TYPE_BOOLEAN:
+                compareValue(elem, "boolean", Boolean.toString(plist.getBoolean(ref)), path);
+                break;
+            case BinaryPList.TYPE_DATA:
+                compareValue(elem, "data", Base64.encodeBytes(plist.getData(ref)), path);
+                break;
+            case BinaryPList.TYPE_UID:
+                compareValue(elem, "UID", Integer.toString(plist.getUID(ref)), path);
+                break;
+            case BinaryPList.TYPE_DATE: {
+                // BinaryPListParser formats dates in the local time zone,
+                // starting from 2001-01-01 01:00:00 local time.
+                long base = new GregorianCalendar(2001, 0, 1, 1, 0, 0).getTimeInMillis();
+                Date date = new Date(base + plist.getDate(ref).getTime() - DATE_TIMEBASE);
+                compareValue(elem, "date", new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'").format(date), path);
+                break;
+            }
+            default:
+                check(false, path + ": unexpected type " + type);
+                break;
+        }
+    }
+
+    private static void compareValue(XMLElement elem, String name, String value, String path) {
+        if (check(name.equals(elem.getName()), path + ": " + elem.getName() + " is not " + name)) {
+            check(value.equals(elem.getContent()), path + ": " + value + " instead of " + elem.getContent());
+        }
+    }
+
+    private static boolean check(boolean condition, String message) {
+        if (!condition) {
+            failCount++;
+            System.out.println("Failure: " + message);
+        }
+        return condition;
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * @(#)CollationKeySorterBenchmark.java
+ *
+ * Copyright (c) 2015 Werner Randelshofer, Switzerland.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package test;
+
+import ch.randelshofer.quaqua.filechooser.CollationKeySorter;
+import ch.randelshofer.quaqua.filechooser.OSXCollator;
+import java.text.CollationKey;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Measures how fast the {@link CollationKeySorter}, which is used by
+ * {@code FileSystemTreeModel.sortNodes}, sorts synthetic directory listings,
+ * and compares it with the previous path, which sorted the nodes with
+ * {@code Arrays.sort} and a comparator over their collation keys.
+ * <p>
+ * The names look like file names with mixed case, numbers and extensions.
+ * Every fifth name is a folder, and folders are sorted before files, like
+ * with the {@code FileChooser.orderByType} property. Both paths must
+ * produce the same order.
+ * <p>
+ * Usage: java test.CollationKeySorterBenchmark [rounds] [sizes...]
+ *
+ * @author Werner Randelshofer
+ * @version $Id$
+ */
+public class CollationKeySorterBenchmark {
+
+    private final static String[] WORDS = {
+        "Report", "report", "IMG_", "Invoice", "draft", "Backup", "notes",
+        "Screen Shot ", "photo", "Photo", "data", "Data-", "readme", "build",
+    };
+    private final static String[] EXTENSIONS = {
+        "", ".txt", ".pdf", ".jpg", ".JPG", ".java", ".png", ".tar.gz",
+    };
+
+    /**
+     * A file name with its collation key, like a node of the tree model.
+     */
+    private static class Item {
+
+        final String name;
+        final boolean isLeaf;
+        final CollationKey key;
+
+        Item(String name, boolean isLeaf, CollationKey key) {
+            this.name = name;
+            this.isLeaf = isLeaf;
+            this.key = key;
+        }
+    }
+
+    /**
+     * The folders first comparator of the previous path.
+     */
+    private final static Comparator<Item> FOLDERS_FIRST = new Comparator<Item>() {
+
+        public int compare(Item o1, Item o2) {
+            if (o1.isLeaf != o2.isLeaf) {
+                return o1.isLeaf ? 1 : -1;
+            }
+            return o1.key.compareTo(o2.key);
+        }
+    };
+
+    public static void main(String[] args) {
+        int roundCount = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        int[] sizes = {10000, 100000};
+        if (args.length > 1) {
+            sizes = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++) {
+                sizes[i - 1] = Integer.parseInt(args[i]);
+            }
+        }
+        OSXCollator collator = new OSXCollator(Locale.ENGLISH);
+        int failCount = 0;
+        for (int size : sizes) {
+            Item[] items = createItems(collator, size, new Random(size));
+            long bestOld = Long.MAX_VALUE;
+            long bestNew = Long.MAX_VALUE;
+            for (int round = 0; round < roundCount; round++) {
+                Item[] expected = items.clone();
+                long start = System.nanoTime();
+                Arrays.sort(expected, FOLDERS_FIRST);
+                bestOld = Math.min(bestOld, System.nanoTime() - start);
+
+                Item[] actual = items.clone();
+                start = System.nanoTime();
+                sortWithSorter(actual);
+                bestNew = Math.min(bestNew, System.nanoTime() - start);
+
+                if (!Arrays.equals(expected, actual)) {
+                    failCount++;
+                    System.out.println("Failure: different order for " + size + " names in round " + round);
+                }
+            }
+            System.out.printf("%d names: Arrays.sort %.2f ms, CollationKeySorter %.2f ms, speedup %.1fx%n",
+                    size, bestOld / 1e6, bestNew / 1e6, bestOld / (double) bestNew);
+        }
+        System.out.println(sizes.length + " sizes, " + failCount + " failures");
+        System.exit(failCount == 0 ? 0 : 1);
+    }
+
+    /**
+     * Sorts the items like {@code FileSystemTreeModel.sortNodes}.
+     */
+    private static void sortWithSorter(Item[] items) {
+        int n = items.length;
+        byte[][] keys = new byte[n][];
+        int[] groups = new int[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = items[i].key.toByteArray();
+            groups[i] = items[i].isLeaf ? 1 : 0;
+        }
+        int[] perm = CollationKeySorter.sort(keys, groups);
+        Item[] sorted = new Item[n];
+        for (int i = 0; i < n; i++) {
+            sorted[i] = items[perm[i]];
+        }
+        System.arraycopy(sorted, 0, items, 0, n);
+    }
+
+    private static Item[] createItems(OSXCollator collator, int size, Random rnd) {
+        Item[] items = new Item[size];
+        for (int i = 0; i < size; i++) {
+            StringBuilder buf = new StringBuilder();
+            buf.append(WORDS[rnd.nextInt(WORDS.length)]);
+            if (rnd.nextBoolean()) {
+                buf.append(rnd.nextInt(size));
+            } else {
+                buf.append((char) ('a' + rnd.nextInt(26)));
+                buf.append((char) ('A' + rnd.nextInt(26)));
+            }
+            boolean isLeaf = i % 5 != 0;
+            if (isLeaf) {
+                buf.append(EXTENSIONS[rnd.nextInt(EXTENSIONS.length)]);
+            }
+            String name = buf.toString();
+            items[i] = new Item(name, isLeaf, collator.getCollationKey(name));
+        }
+        return items;
+    }
+}
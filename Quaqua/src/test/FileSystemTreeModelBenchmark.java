@@ -0,0 +1,197 @@
+/*
+ * @(#)FileSystemTreeModelBenchmark.java
+ *
+ * Copyright (c) 2015 Werner Randelshofer, Switzerland.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package test;
+
+import ch.randelshofer.quaqua.filechooser.FileSystemTreeModel;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import javax.swing.JFileChooser;
+import javax.swing.SwingUtilities;
+import javax.swing.tree.TreePath;
+
+/**
+ * Measures how fast {@link FileSystemTreeModel#toPath} finds and inserts
+ * nodes in deep and in wide directory trees. {@code toPath} looks up each
+ * path component with {@code DirectoryNode.getIndexOfChildForFile}, and
+ * inserts missing nodes at the index returned by
+ * {@code getInsertionIndexForNode}.
+ * <p>
+ * The trees are created in a temporary directory. The deep tree is a chain
+ * of nested directories, each of which has sibling directories. The wide
+ * tree is a single directory with many files. Each file is first looked up
+ * when its node does not exist yet, and then again when it exists. The
+ * returned paths are compared with a linear search through the children,
+ * and the children must stay sorted.
+ * <p>
+ * The model is created for a file chooser of the default look and feel,
+ * because this benchmark does not need the user interface of Quaqua.
+ * <p>
+ * Usage: java test.FileSystemTreeModelBenchmark [depth] [siblings] [width]
+ *
+ * @author Werner Randelshofer
+ * @version $Id$
+ */
+public class FileSystemTreeModelBenchmark {
+
+    private static int checkCount;
+    private static int failCount;
+
+    public static void main(String[] args) throws Exception {
+        final int depth = args.length > 0 ? Integer.parseInt(args[0]) : 40;
+        final int siblingCount = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        final int width = args.length > 2 ? Integer.parseInt(args[2]) : 20000;
+        final File tmp = Files.createTempDirectory("FileSystemTreeModelBenchmark").toFile();
+        try {
+            final List<File> deepFiles = createDeepTree(new File(tmp, "deep"), depth, siblingCount);
+            final List<File> wideFiles = createWideTree(new File(tmp, "wide"), width);
+            SwingUtilities.invokeAndWait(new Runnable() {
+
+                public void run() {
+                    FileSystemTreeModel model = new FileSystemTreeModel(new JFileChooser());
+                    benchmark(model, "deep " + depth + "x" + siblingCount, deepFiles);
+                    benchmark(model, "wide " + width, wideFiles);
+                }
+            });
+        } finally {
+            delete(tmp);
+        }
+        System.out.println(checkCount + " checks, " + failCount + " failures");
+        System.exit(failCount == 0 ? 0 : 1);
+    }
+
+    private static void benchmark(FileSystemTreeModel model, String name, List<File> files) {
+        TreePath[] paths = new TreePath[files.size()];
+        long start = System.nanoTime();
+        for (int i = 0; i < paths.length; i++) {
+            paths[i] = model.toPath(files.get(i), null);
+        }
+        long insertNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < paths.length; i++) {
+            paths[i] = model.toPath(files.get(i), null);
+        }
+        long lookupNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < paths.length; i++) {
+            TreePath path = paths[i];
+            FileSystemTreeModel.Node parent = (FileSystemTreeModel.Node) path.getPathComponent(path.getPathCount() - 2);
+            FileSystemTreeModel.Node child = (FileSystemTreeModel.Node) path.getLastPathComponent();
+            int index = linearIndexOf(parent, files.get(i));
+            checkCount++;
+            if (index == -1 || parent.getChildAt(index) != child) {
+                failCount++;
+                System.out.println("Failure: " + name + " wrong node for " + files.get(i));
+            }
+        }
+        long linearNanos = System.nanoTime() - start;
+
+        Set<Object> checkedParents = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+        for (int i = 0; i < paths.length; i++) {
+            FileSystemTreeModel.Node parent = (FileSystemTreeModel.Node) paths[i].getPathComponent(paths[i].getPathCount() - 2);
+            if (checkedParents.add(parent)) {
+                checkSorted(name, parent);
+            }
+        }
+
+        System.out.printf("%-16s %6d files: toPath inserting %8.1f ms, toPath finding %8.1f ms, linear search %8.1f ms%n",
+                name, paths.length, insertNanos / 1e6, lookupNanos / 1e6, linearNanos / 1e6);
+    }
+
+    /**
+     * Returns the index of the first child with the specified file, like
+     * the linear search, which was used before the children were indexed.
+     */
+    private static int linearIndexOf(FileSystemTreeModel.Node parent, File file) {
+        for (int i = 0, n = parent.getChildCount(); i < n; i++) {
+            FileSystemTreeModel.Node child = (FileSystemTreeModel.Node) parent.getChildAt(i);
+            if (child.getFile().equals(file) || child.getResolvedFile().equals(file)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Checks that the children of the node are sorted by their collation
+     * keys. The nodes are created by toPath, so that folders and files are
+     * not distinguished.
+     */
+    private static void checkSorted(String name, FileSystemTreeModel.Node parent) {
+        for (int i = 1, n = parent.getChildCount(); i < n; i++) {
+            FileSystemTreeModel.Node a = (FileSystemTreeModel.Node) parent.getChildAt(i - 1);
+            FileSystemTreeModel.Node b = (FileSystemTreeModel.Node) parent.getChildAt(i);
+            checkCount++;
+            if (a.isLeaf() == b.isLeaf() && a.getCollationKey().compareTo(b.getCollationKey()) > 0) {
+                failCount++;
+                System.out.println("Failure: " + name + " children are not sorted at " + b.getFile());
+                return;
+            }
+        }
+    }
+
+    /**
+     * Creates a chain of nested directories, each of which has sibling
+     * directories. Returns the siblings and the innermost directory, in a
+     * shuffled order.
+     */
+    private static List<File> createDeepTree(File dir, int depth, int siblingCount) throws IOException {
+        List<File> files = new ArrayList<File>();
+        for (int d = 0; d < depth; d++) {
+            for (int s = 0; s < siblingCount; s++) {
+                File sibling = new File(dir, "sibling " + ((s * 37) % siblingCount));
+                mkdir(sibling);
+                files.add(sibling);
+            }
+            dir = new File(dir, "level " + d);
+            mkdir(dir);
+        }
+        files.add(dir);
+        return files;
+    }
+
+    /**
+     * Creates a directory with files, and returns the files in a shuffled
+     * order.
+     */
+    private static List<File> createWideTree(File dir, int width) throws IOException {
+        mkdir(dir);
+        List<File> files = new ArrayList<File>(width);
+        for (int i = 0; i < width; i++) {
+            File file = new File(dir, "File " + ((i * 7919L) % width) + ".txt");
+            if (!file.createNewFile()) {
+                throw new IOException("Couldn't create " + file);
+            }
+            files.add(file);
+        }
+        return files;
+    }
+
+    private static void mkdir(File dir) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Couldn't create " + dir);
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
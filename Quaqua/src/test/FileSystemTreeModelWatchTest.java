@@ -0,0 +1,278 @@
+/*
+ * @(#)FileSystemTreeModelWatchTest.java
+ *
+ * Copyright (c) 2015 Werner Randelshofer, Switzerland.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package test;
+
+import ch.randelshofer.quaqua.filechooser.FileSystemTreeModel;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import javax.swing.JFileChooser;
+import javax.swing.SwingUtilities;
+import javax.swing.event.TreeModelEvent;
+import javax.swing.event.TreeModelListener;
+import javax.swing.tree.TreePath;
+
+/**
+ * Checks that {@link FileSystemTreeModel} watches the expanded directories
+ * with a {@code java.nio.file.WatchService}, when the property
+ * {@code Quaqua.FileChooser.watch} is true.
+ * <p>
+ * The test works in a temporary directory. A directory is expanded by
+ * calling {@code validatePath} with its path. Files which are created or
+ * deleted in an expanded directory must become inserted or removed nodes,
+ * and a modified file must become a changed node, without validating the
+ * directory again. A directory which has been validated without being
+ * expanded must not be watched. When more directories are expanded than
+ * {@code Quaqua.FileChooser.maxWatchCount} allows, the least recently
+ * expanded directory is no longer watched.
+ * <p>
+ * The test needs a file system which supports watching, for example the
+ * file system of Linux. The model is created for a file chooser of the
+ * default look and feel, because this test does not need the user
+ * interface of Quaqua.
+ * <p>
+ * Usage: java test.FileSystemTreeModelWatchTest [timeout millis]
+ *
+ * @author Werner Randelshofer
+ * @version $Id$
+ */
+public class FileSystemTreeModelWatchTest {
+
+    private static int checkCount;
+    private static int failCount;
+    private static long timeoutMillis;
+    private static FileSystemTreeModel model;
+    private static int changeCount;
+
+    public static void main(String[] args) throws Exception {
+        timeoutMillis = args.length > 0 ? Long.parseLong(args[0]) : 5000;
+        final File tmp = Files.createTempDirectory("FileSystemTreeModelWatchTest").toFile().getCanonicalFile();
+        try {
+            createFile(new File(tmp, "a.txt"));
+            for (int i = 1; i <= 4; i++) {
+                mkdir(new File(tmp, "sub" + i));
+            }
+            // The ancestors of the temporary directory are watched as well,
+            // because they are on the expanded path.
+            int depth = 0;
+            for (File f = tmp; f != null; f = f.getParentFile()) {
+                depth++;
+            }
+            System.setProperty("Quaqua.FileChooser.watch", "true");
+            System.setProperty("Quaqua.FileChooser.maxWatchCount", Integer.toString(depth + 2));
+            test(tmp);
+        } finally {
+            SwingUtilities.invokeAndWait(new Runnable() {
+
+                public void run() {
+                    if (model != null) {
+                        model.stopValidation();
+                    }
+                }
+            });
+            delete(tmp);
+        }
+        System.out.println(checkCount + " checks, " + failCount + " failures");
+        System.exit(failCount == 0 ? 0 : 1);
+    }
+
+    private static void test(final File tmp) throws Exception {
+        final TreePath[] tmpPath = new TreePath[1];
+        SwingUtilities.invokeAndWait(new Runnable() {
+
+            public void run() {
+                model = new FileSystemTreeModel(new JFileChooser());
+                model.addTreeModelListener(new TreeModelListener() {
+
+                    public void treeNodesChanged(TreeModelEvent e) {
+                        for (Object child : e.getChildren()) {
+                            if (((FileSystemTreeModel.Node) child).getFile().getName().equals("a.txt")) {
+                                changeCount++;
+                            }
+                        }
+                    }
+
+                    public void treeNodesInserted(TreeModelEvent e) {
+                    }
+
+                    public void treeNodesRemoved(TreeModelEvent e) {
+                    }
+
+                    public void treeStructureChanged(TreeModelEvent e) {
+                    }
+                });
+                tmpPath[0] = model.toPath(tmp, null);
+                model.validatePath(tmpPath[0]);
+            }
+        });
+        check(waitForChild(tmp, "sub4", true), "the temporary directory was not validated");
+
+        // Created, deleted and modified files in an expanded directory
+        createFile(new File(tmp, "created.txt"));
+        check(waitForChild(tmp, "created.txt", true), "created file was not inserted");
+        new File(tmp, "created.txt").delete();
+        check(waitForChild(tmp, "created.txt", false), "deleted file was not removed");
+        final int oldChangeCount = getChangeCount();
+        FileOutputStream out = new FileOutputStream(new File(tmp, "a.txt"), true);
+        try {
+            out.write("modified".getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        check(waitFor(new Condition() {
+
+            public boolean isTrue() {
+                return changeCount > oldChangeCount;
+            }
+        }), "modified file was not changed");
+
+        // A directory which is validated, but not expanded, is not watched
+        final File sub4 = new File(tmp, "sub4");
+        SwingUtilities.invokeAndWait(new Runnable() {
+
+            public void run() {
+                getNode(sub4).validateChildren();
+            }
+        });
+        check(waitForChild(sub4, ".", false), "sub4 was not validated");
+        createFile(new File(sub4, "unwatched.txt"));
+        Thread.sleep(timeoutMillis / 4);
+        check(!waitForChild(sub4, "unwatched.txt", true, 0), "sub4 is watched, but it is not expanded");
+
+        // The least recently expanded directory is no longer watched
+        for (int i = 1; i <= 3; i++) {
+            File sub = new File(tmp, "sub" + i);
+            expand(sub);
+            check(waitForChild(sub, ".", false), sub.getName() + " was not validated");
+            createFile(new File(sub, "created.txt"));
+            check(waitForChild(sub, "created.txt", true), sub.getName() + " is not watched after it has been expanded");
+        }
+        File sub1 = new File(tmp, "sub1");
+        createFile(new File(sub1, "evicted.txt"));
+        Thread.sleep(timeoutMillis / 4);
+        check(!waitForChild(sub1, "evicted.txt", true, 0), "sub1 is still watched");
+        createFile(new File(tmp, "sub3/recent.txt"));
+        check(waitForChild(new File(tmp, "sub3"), "recent.txt", true), "sub3 is no longer watched");
+    }
+
+    private static void expand(final File dir) throws Exception {
+        SwingUtilities.invokeAndWait(new Runnable() {
+
+            public void run() {
+                model.validatePath(model.toPath(dir, null));
+            }
+        });
+    }
+
+    private static int getChangeCount() throws Exception {
+        final int[] count = new int[1];
+        SwingUtilities.invokeAndWait(new Runnable() {
+
+            public void run() {
+                count[0] = changeCount;
+            }
+        });
+        return count[0];
+    }
+
+    /**
+     * Returns the node of the specified file. Must be called on the AWT
+     * event dispatcher thread.
+     */
+    private static FileSystemTreeModel.Node getNode(File file) {
+        return (FileSystemTreeModel.Node) model.toPath(file, null).getLastPathComponent();
+    }
+
+    /**
+     * Waits until the directory has been validated, and until it has a child
+     * with the specified name, or not. The name "." denotes no child.
+     */
+    private static boolean waitForChild(File dir, String name, boolean isPresent) throws Exception {
+        return waitForChild(dir, name, isPresent, timeoutMillis);
+    }
+
+    private static boolean waitForChild(final File dir, final String name, final boolean isPresent, long timeout) throws Exception {
+        return waitFor(new Condition() {
+
+            public boolean isTrue() {
+                FileSystemTreeModel.Node node = getNode(dir);
+                if (node.isValidatingChildren()) {
+                    return false;
+                }
+                boolean isFound = false;
+                for (int i = 0, n = node.getChildCount(); i < n; i++) {
+                    if (((FileSystemTreeModel.Node) node.getChildAt(i)).getFile().getName().equals(name)) {
+                        isFound = true;
+                    }
+                }
+                return isFound == isPresent;
+            }
+        }, timeout);
+    }
+
+    private static boolean waitFor(Condition condition) throws Exception {
+        return waitFor(condition, timeoutMillis);
+    }
+
+    /**
+     * Evaluates the condition on the AWT event dispatcher thread until it is
+     * true, or until the timeout has elapsed.
+     */
+    private static boolean waitFor(final Condition condition, long timeout) throws Exception {
+        long deadline = System.currentTimeMillis() + timeout;
+        final boolean[] result = new boolean[1];
+        for (;;) {
+            SwingUtilities.invokeAndWait(new Runnable() {
+
+                public void run() {
+                    result[0] = condition.isTrue();
+                }
+            });
+            if (result[0] || System.currentTimeMillis() >= deadline) {
+                return result[0];
+            }
+            Thread.sleep(50);
+        }
+    }
+
+    private interface Condition {
+
+        public boolean isTrue();
+    }
+
+    private static void check(boolean condition, String message) {
+        checkCount++;
+        if (!condition) {
+            failCount++;
+            System.out.println("Failure: " + message);
+        }
+    }
+
+    private static void createFile(File file) throws IOException {
+        if (!file.createNewFile()) {
+            throw new IOException("Couldn't create " + file);
+        }
+    }
+
+    private static void mkdir(File dir) throws IOException {
+        if (!dir.mkdirs()) {
+            throw new IOException("Couldn't create " + dir);
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
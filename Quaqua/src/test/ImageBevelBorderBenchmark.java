@@ -0,0 +1,128 @@
+/*
+ * @(#)ImageBevelBorderBenchmark.java
+ *
+ * Copyright (c) 2015 Werner Randelshofer, Switzerland.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package test;
+
+import ch.randelshofer.quaqua.border.CachedImageBevelBorder;
+import ch.randelshofer.quaqua.border.ImageBevelBorder;
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.Insets;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Random;
+import javax.swing.JPanel;
+import javax.swing.border.Border;
+
+/**
+ * Measures how fast {@link ImageBevelBorder}, with and without pre-sliced
+ * tiles, and {@link CachedImageBevelBorder} paint borders of many sizes,
+ * and checks that the pre-sliced tiles paint the same pixels as the plain
+ * {@code ImageBevelBorder}.
+ * <p>
+ * Each round paints every border at a fixed set of sizes, which range from
+ * small buttons to large panels. Then it paints many borders at distinct
+ * sizes, and prints the number of bytes held by the shared strip cache of
+ * {@code ImageBevelBorder}, which must not exceed its budget.
+ * <p>
+ * Usage: java test.ImageBevelBorderBenchmark [rounds] [borders]
+ *
+ * @author Werner Randelshofer
+ * @version $Id$
+ */
+public class ImageBevelBorderBenchmark {
+
+    private final static int[][] SIZES = {
+        {22, 22}, {80, 22}, {120, 28}, {200, 32}, {300, 200}, {640, 480}, {1200, 900},
+    };
+
+    public static void main(String[] args) {
+        int roundCount = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int borderCount = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        BufferedImage image = createBevelImage(40, 40, new Random(1));
+        Insets insets = new Insets(8, 8, 8, 8);
+        JPanel c = new JPanel();
+        BufferedImage canvas = new BufferedImage(1300, 1000, BufferedImage.TYPE_INT_ARGB_PRE);
+
+        ImageBevelBorder plain = new ImageBevelBorder(image, insets, insets, true);
+        ImageBevelBorder preSliced = new ImageBevelBorder(image, insets, insets, true);
+        preSliced.setPreSliced(true);
+        CachedImageBevelBorder cached = new CachedImageBevelBorder(image, insets, insets, true);
+
+        int checkCount = 0;
+        int failCount = 0;
+        for (int[] size : SIZES) {
+            checkCount++;
+            paint(plain, c, canvas, size[0], size[1]);
+            int[] expected = canvas.getRGB(0, 0, size[0], size[1], null, 0, size[0]);
+            paint(preSliced, c, canvas, size[0], size[1]);
+            int[] actual = canvas.getRGB(0, 0, size[0], size[1], null, 0, size[0]);
+            if (!Arrays.equals(expected, actual)) {
+                failCount++;
+                System.out.println("Failure: pre-sliced border differs at " + size[0] + "x" + size[1]);
+            }
+        }
+
+        String[] names = {"ImageBevelBorder", "ImageBevelBorder pre-sliced", "CachedImageBevelBorder"};
+        Border[] borders = {plain, preSliced, cached};
+        for (int b = 0; b < borders.length; b++) {
+            long best = Long.MAX_VALUE;
+            for (int round = 0; round < roundCount; round++) {
+                long start = System.nanoTime();
+                for (int[] size : SIZES) {
+                    paint(borders[b], c, canvas, size[0], size[1]);
+                }
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            System.out.printf("%-28s %8.3f ms for %d sizes%n", names[b], best / 1e6, SIZES.length);
+        }
+
+        // Paint many pre-sliced borders at distinct sizes
+        long start = System.nanoTime();
+        for (int i = 0; i < borderCount; i++) {
+            ImageBevelBorder border = new ImageBevelBorder(image, insets, insets, true);
+            border.setPreSliced(true);
+            for (int k = 0; k < 8; k++) {
+                paint(border, c, canvas, 40 + (i * 7 + k * 31) % 250, 30 + (i * 13 + k * 17) % 250);
+            }
+        }
+        long manyNanos = System.nanoTime() - start;
+        checkCount++;
+        long bytes = ImageBevelBorder.getStripCacheBytes();
+        if (bytes > ImageBevelBorder.getMaxStripCacheBytes()) {
+            failCount++;
+            System.out.println("Failure: strip cache holds " + bytes + " bytes");
+        }
+        System.out.printf("%d pre-sliced borders at 8 sizes: %.1f ms, strip cache %d of %d bytes%n",
+                borderCount, manyNanos / 1e6, bytes, ImageBevelBorder.getMaxStripCacheBytes());
+        System.out.println(checkCount + " checks, " + failCount + " failures");
+        System.exit(failCount == 0 ? 0 : 1);
+    }
+
+    private static void paint(Border border, JPanel c, BufferedImage canvas, int w, int h) {
+        Graphics2D g = canvas.createGraphics();
+        g.setComposite(AlphaComposite.Clear);
+        g.fillRect(0, 0, w, h);
+        g.setComposite(AlphaComposite.SrcOver);
+        border.paintBorder(c, g, 0, 0, w, h);
+        g.dispose();
+    }
+
+    /**
+     * Creates a translucent image with noise, so that misplaced tiles are
+     * visible in the painted pixels.
+     */
+    private static BufferedImage createBevelImage(int w, int h, Random rnd) {
+        BufferedImage img = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                img.setRGB(x, y, (rnd.nextInt(256) << 24) | rnd.nextInt(0x1000000));
+            }
+        }
+        return img;
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * @(#)JBrowserBenchmark.java
+ *
+ * Copyright (c) 2015 Werner Randelshofer, Switzerland.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package test;
+
+import ch.randelshofer.quaqua.JBrowser;
+import javax.swing.SwingUtilities;
+import javax.swing.UIManager;
+import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.tree.DefaultTreeModel;
+import javax.swing.tree.TreePath;
+
+/**
+ * Measures how fast a {@link JBrowser} with 20 open columns processes tree
+ * model events.
+ * <p>
+ * Each round inserts 10'000 children into the deepest column with a single
+ * event, selects 200 of them, and removes them with a single event. Then it
+ * inserts and removes 10'000 children of a node, which is not open, one
+ * event at a time.
+ * <p>
+ * Usage: java test.JBrowserBenchmark [children] [rounds]
+ *
+ * @author Werner Randelshofer
+ * @version $Id$
+ */
+public class JBrowserBenchmark {
+
+    private final static int COLUMN_COUNT = 20;
+
+    public static void main(final String[] args) throws Exception {
+        final int childCount = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        final int roundCount = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        UIManager.setLookAndFeel("ch.randelshofer.quaqua.leopard.Quaqua15LeopardCrossPlatformLookAndFeel");
+        SwingUtilities.invokeAndWait(new Runnable() {
+
+            public void run() {
+                benchmark(childCount, roundCount);
+            }
+        });
+        System.exit(0);
+    }
+
+    private static void benchmark(int childCount, int roundCount) {
+        DefaultMutableTreeNode root = new DefaultMutableTreeNode("root");
+        DefaultTreeModel model = new DefaultTreeModel(root);
+        JBrowser browser = new JBrowser(model);
+
+        // Create a path of 20 nodes, each with a few siblings
+        DefaultMutableTreeNode deepest = root;
+        for (int i = 0; i < COLUMN_COUNT; i++) {
+            DefaultMutableTreeNode child = new DefaultMutableTreeNode("n" + i);
+            deepest.add(child);
+            for (int k = 0; k < 5; k++) {
+                deepest.add(new DefaultMutableTreeNode("s" + i + "_" + k));
+            }
+            deepest = child;
+        }
+        deepest.add(new DefaultMutableTreeNode("anchor"));
+        model.reload();
+        browser.setSelectionPath(new TreePath(((DefaultMutableTreeNode) deepest.getChildAt(0)).getPath()));
+        DefaultMutableTreeNode closed = (DefaultMutableTreeNode) ((DefaultMutableTreeNode) deepest.getParent()).getChildAt(1);
+        TreePath deepestPath = new TreePath(deepest.getPath());
+
+        for (int round = 0; round < roundCount; round++) {
+            // Insert the children into the deepest open column
+            int base = deepest.getChildCount();
+            int[] indices = new int[childCount];
+            for (int i = 0; i < childCount; i++) {
+                deepest.add(new DefaultMutableTreeNode("c" + i));
+                indices[i] = base + i;
+            }
+            long start = System.nanoTime();
+            model.nodesWereInserted(deepest, indices);
+            long insertNanos = System.nanoTime() - start;
+
+            // Select some of the children, and remove all of them
+            int selectionCount = Math.min(200, childCount);
+            TreePath[] selection = new TreePath[selectionCount];
+            for (int i = 0; i < selectionCount; i++) {
+                selection[i] = deepestPath.pathByAddingChild(deepest.getChildAt(base + i * (childCount / selectionCount)));
+            }
+            browser.setSelectionPaths(selection);
+            Object[] removed = new Object[childCount];
+            for (int i = 0; i < childCount; i++) {
+                removed[i] = deepest.getChildAt(base + i);
+            }
+            for (int i = childCount - 1; i >= 0; i--) {
+                deepest.remove(base + i);
+            }
+            start = System.nanoTime();
+            model.nodesWereRemoved(deepest, indices, removed);
+            long removeNanos = System.nanoTime() - start;
+
+            // Insert and remove children of a node which is not open
+            start = System.nanoTime();
+            for (int i = 0; i < childCount; i++) {
+                model.insertNodeInto(new DefaultMutableTreeNode("x" + i), closed, closed.getChildCount());
+            }
+            long singleInsertNanos = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < childCount; i++) {
+                model.removeNodeFromParent((DefaultMutableTreeNode) closed.getLastChild());
+            }
+            long singleRemoveNanos = System.nanoTime() - start;
+
+            System.out.printf("round %d: insert %.1f ms, remove with %d selected %.1f ms, "
+                    + "single inserts %.1f ms, single removes %.1f ms, selection %s%n",
+                    round, insertNanos / 1e6, selectionCount, removeNanos / 1e6,
+                    singleInsertNanos / 1e6, singleRemoveNanos / 1e6,
+                    browser.getSelectionPath().getLastPathComponent());
+        }
+    }
+}
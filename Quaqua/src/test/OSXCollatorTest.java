@@ -0,0 +1,111 @@
+/*
+ * @(#)OSXCollatorTest.java
+ *
+ * Copyright (c) 2015 Werner Randelshofer, Switzerland.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package test;
+
+import ch.randelshofer.quaqua.filechooser.OSXCollator;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Compares the ASCII fast path of {@link OSXCollator#compare} with the full
+ * collation, which is used by {@link OSXCollator#getCollationKey}.
+ * <p>
+ * The names consist of mixed case letters, digits and punctuation. Each
+ * locale is tested with a fixed set of names and with random pairs of
+ * names.
+ * <p>
+ * Usage: java test.OSXCollatorTest [pairs per locale]
+ *
+ * @author Werner Randelshofer
+ * @version $Id$
+ */
+public class OSXCollatorTest {
+
+    private final static String[] NAMES = {
+        "", "a", "A", "b", "B", "aa", "Aa", "aA", "AA", "ab", "aB", "Ab",
+        "a1", "a2", "a10", "a01", "a001", "A10", "a9b", "a10b", "1", "01",
+        "10", "100", "9", "file", "File", "FILE", "file.txt", "File.txt",
+        "file-1", "file 1", "file_1", "file~", "file.", ".file", "-file",
+        "_file", "~file", "file(1)", "file[1]", "file{1}", "file#1",
+        "file@1", "file+1", "file=1", "file,1", "file;1", "file'1",
+        "file!", "file?", "file$", "file%", "file&", "file*", "file/1",
+        "ch", "Ch", "CH", "cz", "ll", "Ll", "rr", "aa1", "Aa10", "dz",
+        "ij", "IJ", "ss", "th", "zz", "Z", "z", "Zz", "a b", "a-b", "a.b",
+    };
+    private final static String ALPHABET =
+            "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789 !#$%&'()+,-.;=@[]^_`{}~";
+    private final static Locale[] LOCALES = {
+        Locale.ENGLISH, Locale.GERMAN, new Locale("da"), Locale.FRENCH,
+        new Locale("sv"), new Locale("es"), new Locale("cs"), new Locale("tr"),
+        Locale.JAPANESE, new Locale("hu"),
+    };
+
+    public static void main(String[] args) {
+        int pairCount = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        int checkCount = 0;
+        int failCount = 0;
+        for (Locale locale : LOCALES) {
+            OSXCollator collator = new OSXCollator(locale);
+            for (String s1 : NAMES) {
+                for (String s2 : NAMES) {
+                    checkCount++;
+                    if (!check(collator, locale, s1, s2)) {
+                        failCount++;
+                    }
+                }
+            }
+            Random rnd = new Random(locale.hashCode());
+            for (int i = 0; i < pairCount; i++) {
+                String s1 = createName(rnd);
+                String s2 = rnd.nextInt(4) == 0 ? mutate(s1, rnd) : createName(rnd);
+                checkCount++;
+                if (!check(collator, locale, s1, s2)) {
+                    failCount++;
+                }
+            }
+        }
+        System.out.println(checkCount + " checks, " + failCount + " failures");
+        System.exit(failCount == 0 ? 0 : 1);
+    }
+
+    private static boolean check(OSXCollator collator, Locale locale, String s1, String s2) {
+        int expected = Integer.signum(collator.getCollationKey(s1).compareTo(collator.getCollationKey(s2)));
+        int actual = Integer.signum(collator.compare(s1, s2));
+        if (expected != actual) {
+            System.out.println("Failure: " + locale + " \"" + s1 + "\" \"" + s2 + "\" expected " + expected + " but was " + actual);
+            return false;
+        }
+        return true;
+    }
+
+    private static String createName(Random rnd) {
+        int length = rnd.nextInt(12);
+        StringBuilder buf = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            buf.append(ALPHABET.charAt(rnd.nextInt(ALPHABET.length())));
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Changes the case of a character, or replaces a character.
+     */
+    private static String mutate(String s, Random rnd) {
+        if (s.isEmpty()) {
+            return s;
+        }
+        char[] chars = s.toCharArray();
+        int i = rnd.nextInt(chars.length);
+        if (rnd.nextBoolean() && Character.isLetter(chars[i])) {
+            chars[i] = Character.isUpperCase(chars[i]) ? Character.toLowerCase(chars[i]) : Character.toUpperCase(chars[i]);
+        } else {
+            chars[i] = ALPHABET.charAt(rnd.nextInt(ALPHABET.length()));
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * @(#)RasterRGBFilterTest.java
+ *
+ * Copyright (c) 2015 Werner Randelshofer, Switzerland.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package test;
+
+import ch.randelshofer.quaqua.util.HalfbrightFilter;
+import ch.randelshofer.quaqua.util.Images;
+import ch.randelshofer.quaqua.util.RasterRGBFilter;
+import ch.randelshofer.quaqua.util.ShadowFilter;
+import java.awt.*;
+import java.awt.image.*;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import javax.swing.ImageIcon;
+
+/**
+ * Compares the images produced by the {@code BufferedImageOp} of the
+ * {@link RasterRGBFilter}s with the images produced by the same filters,
+ * when they are used as an {@code ImageFilter} with a
+ * {@code FilteredImageSource}.
+ * <p>
+ * The filters are applied to all PNG images in the directory given as the
+ * first argument, in several image types, and to a large random image,
+ * which is filtered concurrently.
+ * <p>
+ * Usage: java test.RasterRGBFilterTest [image directory]
+ *
+ * @author Werner Randelshofer
+ * @version $Id$
+ */
+public class RasterRGBFilterTest {
+
+    public static void main(String[] args) throws Exception {
+        File dir = new File(args.length > 0 ? args[0] : "src/ch/randelshofer/quaqua");
+        List<File> files = new ArrayList<File>();
+        collectImages(dir, files);
+
+        RasterRGBFilter[] filters = {
+            new ShadowFilter(), new HalfbrightFilter(), new Images.GraphiteFilter()
+        };
+
+        List<Image> images = new ArrayList<Image>();
+        images.add(createRandomImage(700, 600));
+        for (File f : files) {
+            Image toolkitImage = new ImageIcon(Toolkit.getDefaultToolkit().createImage(f.toURI().toURL())).getImage();
+            int w = toolkitImage.getWidth(null);
+            int h = toolkitImage.getHeight(null);
+            if (w <= 0 || h <= 0) {
+                continue;
+            }
+            BufferedImage argb = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = argb.createGraphics();
+            g.setComposite(AlphaComposite.Src);
+            g.drawImage(toolkitImage, 0, 0, null);
+            g.dispose();
+
+            images.add(toolkitImage);
+            images.add(argb);
+            images.add(convert(argb, BufferedImage.TYPE_INT_ARGB_PRE));
+            images.add(convert(argb, BufferedImage.TYPE_4BYTE_ABGR));
+            images.add(convert(argb, BufferedImage.TYPE_INT_RGB));
+            images.add(argb.getSubimage(1, 1, Math.max(1, w - 2), Math.max(1, h - 2)));
+        }
+
+        int caseCount = 0;
+        int diffCount = 0;
+        for (Image image : images) {
+            for (RasterRGBFilter filter : filters) {
+                int[] expected = grabPixels(Toolkit.getDefaultToolkit().createImage(
+                        new FilteredImageSource(image.getSource(), filter)));
+                BufferedImage result = filter.filter(image);
+                int[] actual = result.getRGB(0, 0, result.getWidth(), result.getHeight(), null, 0, result.getWidth());
+                caseCount++;
+                if (!Arrays.equals(expected, actual)) {
+                    diffCount++;
+                    System.out.println("Difference: " + filter.getClass().getName() + " " + image);
+                }
+            }
+        }
+        System.out.println(files.size() + " images, " + caseCount + " cases, " + diffCount + " differences");
+        System.exit(diffCount == 0 ? 0 : 1);
+    }
+
+    private static void collectImages(File dir, List<File> files) {
+        File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File f : children) {
+            if (f.isDirectory()) {
+                collectImages(f, files);
+            } else if (f.getName().endsWith(".png")) {
+                files.add(f);
+            }
+        }
+    }
+
+    private static BufferedImage createRandomImage(int w, int h) {
+        Random rnd = new Random(1);
+        BufferedImage image = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                image.setRGB(x, y, rnd.nextInt());
+            }
+        }
+        return image;
+    }
+
+    private static BufferedImage convert(BufferedImage src, int type) {
+        BufferedImage dst = new BufferedImage(src.getWidth(), src.getHeight(), type);
+        for (int y = 0; y < src.getHeight(); y++) {
+            for (int x = 0; x < src.getWidth(); x++) {
+                dst.setRGB(x, y, src.getRGB(x, y));
+            }
+        }
+        return dst;
+    }
+
+    private static int[] grabPixels(Image image) throws InterruptedException {
+        PixelGrabber pg = new PixelGrabber(image, 0, 0, -1, -1, true);
+        pg.grabPixels();
+        return (int[]) pg.getPixels();
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * @(#)SVGCompositeBenchmark.java
+ *
+ * Copyright (c) 2015 Werner Randelshofer, Switzerland.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package test;
+
+import ch.randelshofer.quaqua.ext.batik.ext.awt.image.CompositeRule;
+import ch.randelshofer.quaqua.ext.batik.ext.awt.image.SVGComposite;
+import java.awt.CompositeContext;
+import java.awt.Point;
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Measures how fast {@link SVGComposite} composes premultiplied int packed
+ * rasters with each {@link CompositeRule}, and compares the parallel
+ * composition of large rasters with the sequential composition.
+ * <p>
+ * The sequential result is produced by composing bands of rows, which are
+ * smaller than the parallel threshold of
+ * {@code AlphaPreCompositeContext_INT_PACK}. The parallel result is produced
+ * by composing the whole raster, which is split into bands by
+ * {@code PrecomposeTask}. Both results must be identical.
+ * Run with {@code -Djava.util.concurrent.ForkJoinPool.common.parallelism=8}
+ * to test the parallel code on machines with a single processor.
+ * <p>
+ * Usage: java test.SVGCompositeBenchmark [rounds] [sizes...]
+ *
+ * @author Werner Randelshofer
+ * @version $Id$
+ */
+public class SVGCompositeBenchmark {
+
+    /** Bands with fewer pixels than this are composed sequentially. */
+    private final static int SEQUENTIAL_BAND_SIZE = 128 * 128;
+    private final static String[] RULE_NAMES = {
+        "OVER", "IN", "OUT", "ATOP", "XOR", "ARITHMETIC", "MULTIPLY",
+        "SCREEN", "DARKEN", "LIGHTEN",
+    };
+    private final static CompositeRule[] RULES = {
+        CompositeRule.OVER, CompositeRule.IN, CompositeRule.OUT,
+        CompositeRule.ATOP, CompositeRule.XOR,
+        CompositeRule.ARITHMETIC(0.5f, 0.25f, 0.75f, 0.1f),
+        CompositeRule.MULTIPLY, CompositeRule.SCREEN, CompositeRule.DARKEN,
+        CompositeRule.LIGHTEN,
+    };
+
+    public static void main(String[] args) {
+        int roundCount = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        int[] sizes = {64, 256, 512, 1024, 2048};
+        if (args.length > 1) {
+            sizes = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++) {
+                sizes[i - 1] = Integer.parseInt(args[i]);
+            }
+        }
+        ColorModel cm = new DirectColorModel(ColorSpace.getInstance(ColorSpace.CS_sRGB),
+                32, 0x00ff0000, 0x0000ff00, 0x000000ff, 0xff000000, true, DataBuffer.TYPE_INT);
+
+        int checkCount = 0;
+        int failCount = 0;
+        for (int size : sizes) {
+            Random rnd = new Random(size);
+            WritableRaster src = createRaster(cm, size, rnd);
+            WritableRaster dstIn = createRaster(cm, size, rnd);
+            for (int r = 0; r < RULES.length; r++) {
+                CompositeContext context = new SVGComposite(RULES[r]).createContext(cm, cm, null);
+                long bestSequential = Long.MAX_VALUE;
+                long bestParallel = Long.MAX_VALUE;
+                for (int round = 0; round < roundCount; round++) {
+                    WritableRaster sequential = cm.createCompatibleWritableRaster(size, size);
+                    long start = System.nanoTime();
+                    composeSequentially(context, src, dstIn, sequential);
+                    bestSequential = Math.min(bestSequential, System.nanoTime() - start);
+
+                    WritableRaster parallel = cm.createCompatibleWritableRaster(size, size);
+                    start = System.nanoTime();
+                    context.compose(src, dstIn, parallel);
+                    bestParallel = Math.min(bestParallel, System.nanoTime() - start);
+
+                    checkCount++;
+                    if (!Arrays.equals(getData(sequential), getData(parallel))) {
+                        failCount++;
+                        System.out.println("Failure: " + RULE_NAMES[r] + " " + size + "x" + size
+                                + " parallel result differs from sequential result");
+                    }
+                }
+                context.dispose();
+                System.out.printf("%-10s %4dx%-4d sequential %8.3f ms, parallel %8.3f ms%n",
+                        RULE_NAMES[r], size, size, bestSequential / 1e6, bestParallel / 1e6);
+            }
+        }
+        System.out.println(checkCount + " checks, " + failCount + " failures");
+        System.exit(failCount == 0 ? 0 : 1);
+    }
+
+    /**
+     * Composes bands of rows, which are too small to be composed in
+     * parallel.
+     */
+    private static void composeSequentially(CompositeContext context, Raster src, Raster dstIn, WritableRaster dstOut) {
+        int w = dstOut.getWidth();
+        int h = dstOut.getHeight();
+        int bandHeight = Math.max(1, Math.min(h, SEQUENTIAL_BAND_SIZE / w - 1));
+        for (int y = 0; y < h; y += bandHeight) {
+            int bh = Math.min(bandHeight, h - y);
+            context.compose(
+                    src.createChild(0, y, w, bh, 0, y, null),
+                    dstIn.createChild(0, y, w, bh, 0, y, null),
+                    dstOut.createWritableChild(0, y, w, bh, 0, y, null));
+        }
+    }
+
+    private static int[] getData(Raster r) {
+        return ((DataBufferInt) r.getDataBuffer()).getData();
+    }
+
+    /**
+     * Creates a raster with random premultiplied pixels, including fully
+     * transparent and fully opaque pixels.
+     */
+    private static WritableRaster createRaster(ColorModel cm, int size, Random rnd) {
+        WritableRaster raster = cm.createCompatibleWritableRaster(size, size);
+        int[] data = getData(raster);
+        for (int i = 0; i < data.length; i++) {
+            int a;
+            switch (rnd.nextInt(4)) {
+                case 0:
+                    a = 0;
+                    break;
+                case 1:
+                    a = 255;
+                    break;
+                default:
+                    a = rnd.nextInt(256);
+                    break;
+            }
+            int r = rnd.nextInt(a + 1);
+            int g = rnd.nextInt(a + 1);
+            int b = rnd.nextInt(a + 1);
+            data[i] = (a << 24) | (r << 16) | (g << 8) | b;
+        }
+        return raster;
+    }
+}
@@ -0,0 +1,367 @@
+/*
+ * @(#)TIFFImageTest.java
+ *
+ * Copyright (c) 2015 Werner Randelshofer, Switzerland.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package test;
+
+import ch.randelshofer.quaqua.ext.batik.ext.awt.image.codec.tiff.TIFFDecodeParam;
+import ch.randelshofer.quaqua.ext.batik.ext.awt.image.codec.tiff.TIFFImage;
+import ch.randelshofer.quaqua.ext.batik.ext.awt.image.codec.tiff.TIFFImageDecoder;
+import ch.randelshofer.quaqua.ext.batik.ext.awt.image.codec.util.ByteBufferSeekableStream;
+import java.awt.Point;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+/**
+ * Compares the serial decoding of a multi-strip TIFF image, which fetches
+ * one strip after the other with {@code getTile}, with the parallel decoding
+ * of {@link TIFFImage#copyData}, and measures both.
+ * <p>
+ * The TIFF images are generated by this program. They are 8-bit gray and
+ * RGB images with 16 rows per strip, compressed with LZW, LZW with the
+ * horizontal predictor, Deflate and PackBits. The decoded pixels must be
+ * equal to the generated pixels.
+ * Run with {@code -Djava.util.concurrent.ForkJoinPool.common.parallelism=8}
+ * to test the parallel code on machines with a single processor.
+ * <p>
+ * Usage: java test.TIFFImageTest [width] [height] [rounds]
+ *
+ * @author Werner Randelshofer
+ * @version $Id$
+ */
+public class TIFFImageTest {
+
+    private final static int ROWS_PER_STRIP = 16;
+    private static int checkCount;
+    private static int failCount;
+
+    public static void main(String[] args) throws Exception {
+        int width = args.length > 0 ? Integer.parseInt(args[0]) : 1024;
+        int height = args.length > 1 ? Integer.parseInt(args[1]) : 1024;
+        int roundCount = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        int[][] compressions = {
+            {TIFFImage.COMP_LZW, 1}, {TIFFImage.COMP_LZW, 2},
+            {TIFFImage.COMP_DEFLATE, 1}, {TIFFImage.COMP_PACKBITS, 1},
+        };
+        for (int samplesPerPixel : new int[]{1, 3}) {
+            byte[] pixels = createPixels(width, height, samplesPerPixel, new Random(samplesPerPixel));
+            for (int[] compression : compressions) {
+                byte[] tiff = writeTIFF(pixels, width, height, samplesPerPixel, compression[0], compression[1]);
+                String name = (samplesPerPixel == 1 ? "gray " : "rgb ") + getCompressionName(compression[0], compression[1]);
+                long bestSerial = Long.MAX_VALUE;
+                long bestParallel = Long.MAX_VALUE;
+                for (int round = 0; round < roundCount; round++) {
+                    RenderedImage image = decode(tiff);
+                    long start = System.nanoTime();
+                    WritableRaster serial = decodeSerially(image);
+                    bestSerial = Math.min(bestSerial, System.nanoTime() - start);
+
+                    image = decode(tiff);
+                    start = System.nanoTime();
+                    WritableRaster parallel = image.copyData(createRaster(image));
+                    bestParallel = Math.min(bestParallel, System.nanoTime() - start);
+
+                    int[] expected = toInts(pixels);
+                    check(Arrays.equals(expected, getPixels(serial)), name + ": serial decoding differs from the generated pixels");
+                    check(Arrays.equals(expected, getPixels(parallel)), name + ": parallel decoding differs from the generated pixels");
+                }
+                System.out.printf("%-20s %7d bytes, serial %6.2f ms, parallel %6.2f ms%n",
+                        name, tiff.length, bestSerial / 1e6, bestParallel / 1e6);
+            }
+        }
+        System.out.println(checkCount + " checks, " + failCount + " failures");
+        System.exit(failCount == 0 ? 0 : 1);
+    }
+
+    private static String getCompressionName(int compression, int predictor) {
+        switch (compression) {
+            case TIFFImage.COMP_LZW:
+                return predictor == 2 ? "LZW predictor" : "LZW";
+            case TIFFImage.COMP_DEFLATE:
+                return "Deflate";
+            default:
+                return "PackBits";
+        }
+    }
+
+    private static RenderedImage decode(byte[] tiff) throws Exception {
+        return new TIFFImageDecoder(new ByteBufferSeekableStream(tiff), new TIFFDecodeParam()).decodeAsRenderedImage(0);
+    }
+
+    private static WritableRaster createRaster(RenderedImage image) {
+        return Raster.createWritableRaster(
+                image.getSampleModel().createCompatibleSampleModel(image.getWidth(), image.getHeight()),
+                new Point(image.getMinX(), image.getMinY()));
+    }
+
+    /**
+     * Decodes the strips one after the other on the current thread.
+     */
+    private static WritableRaster decodeSerially(RenderedImage image) {
+        WritableRaster wr = createRaster(image);
+        for (int ty = 0; ty < image.getNumYTiles(); ty++) {
+            for (int tx = 0; tx < image.getNumXTiles(); tx++) {
+                wr.setRect(image.getTile(image.getMinTileX() + tx, image.getMinTileY() + ty));
+            }
+        }
+        return wr;
+    }
+
+    private static int[] getPixels(Raster r) {
+        return r.getPixels(r.getMinX(), r.getMinY(), r.getWidth(), r.getHeight(), (int[]) null);
+    }
+
+    private static int[] toInts(byte[] b) {
+        int[] result = new int[b.length];
+        for (int i = 0; i < b.length; i++) {
+            result[i] = b[i] & 0xff;
+        }
+        return result;
+    }
+
+    private static void check(boolean condition, String message) {
+        checkCount++;
+        if (!condition) {
+            failCount++;
+            System.out.println("Failure: " + message);
+        }
+    }
+
+    /**
+     * Creates gradients with runs of equal pixels and some noise, so that
+     * all compressions have something to do.
+     */
+    private static byte[] createPixels(int width, int height, int samplesPerPixel, Random rnd) {
+        byte[] pixels = new byte[width * height * samplesPerPixel];
+        int i = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                for (int s = 0; s < samplesPerPixel; s++) {
+                    int value;
+                    if ((y / 64) % 3 == 0) {
+                        value = (x / 32) * 8 + s * 40;
+                    } else if ((y / 64) % 3 == 1) {
+                        value = x + y + s * 20 + rnd.nextInt(4);
+                    } else {
+                        value = rnd.nextInt(256);
+                    }
+                    pixels[i++] = (byte) value;
+                }
+            }
+        }
+        return pixels;
+    }
+
+    /**
+     * Writes a little-endian TIFF file with one image, which is divided
+     * into strips of {@code ROWS_PER_STRIP} rows.
+     */
+    private static byte[] writeTIFF(byte[] pixels, int width, int height, int samplesPerPixel,
+            int compression, int predictor) {
+        int rowBytes = width * samplesPerPixel;
+        int stripCount = (height + ROWS_PER_STRIP - 1) / ROWS_PER_STRIP;
+        List<byte[]> strips = new ArrayList<byte[]>();
+        for (int i = 0; i < stripCount; i++) {
+            int rows = Math.min(ROWS_PER_STRIP, height - i * ROWS_PER_STRIP);
+            byte[] strip = Arrays.copyOfRange(pixels, i * ROWS_PER_STRIP * rowBytes, (i * ROWS_PER_STRIP + rows) * rowBytes);
+            if (predictor == 2) {
+                for (int r = 0; r < rows; r++) {
+                    for (int k = rowBytes - 1; k >= samplesPerPixel; k--) {
+                        strip[r * rowBytes + k] -= strip[r * rowBytes + k - samplesPerPixel];
+                    }
+                }
+            }
+            switch (compression) {
+                case TIFFImage.COMP_LZW:
+                    strips.add(encodeLZW(strip));
+                    break;
+                case TIFFImage.COMP_DEFLATE:
+                    strips.add(encodeDeflate(strip));
+                    break;
+                default:
+                    strips.add(encodePackBits(strip, rowBytes));
+                    break;
+            }
+        }
+
+        int entryCount = predictor == 2 ? 11 : 10;
+        int ifdOffset = 8;
+        int dataOffset = ifdOffset + 2 + entryCount * 12 + 4;
+        int bitsOffset = dataOffset;
+        int offsetsOffset = bitsOffset + 2 * samplesPerPixel;
+        int countsOffset = offsetsOffset + 4 * stripCount;
+        int stripOffset = countsOffset + 4 * stripCount;
+        int size = stripOffset;
+        for (byte[] strip : strips) {
+            size += strip.length;
+        }
+        ByteBuffer buf = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        buf.put((byte) 'I').put((byte) 'I').putShort((short) 42).putInt(ifdOffset);
+        buf.putShort((short) entryCount);
+        putEntry(buf, 256, 4, 1, width);
+        putEntry(buf, 257, 4, 1, height);
+        if (samplesPerPixel == 1) {
+            putEntry(buf, 258, 3, 1, 8);
+        } else {
+            putEntry(buf, 258, 3, samplesPerPixel, bitsOffset);
+        }
+        putEntry(buf, 259, 3, 1, compression);
+        putEntry(buf, 262, 3, 1, samplesPerPixel == 1 ? 1 : 2);
+        putEntry(buf, 273, 4, stripCount, stripCount == 1 ? stripOffset : offsetsOffset);
+        putEntry(buf, 277, 3, 1, samplesPerPixel);
+        putEntry(buf, 278, 4, 1, ROWS_PER_STRIP);
+        putEntry(buf, 279, 4, stripCount, stripCount == 1 ? strips.get(0).length : countsOffset);
+        putEntry(buf, 284, 3, 1, 1);
+        if (predictor == 2) {
+            putEntry(buf, 317, 3, 1, 2);
+        }
+        buf.putInt(0);
+        for (int i = 0; i < samplesPerPixel; i++) {
+            buf.putShort((short) 8);
+        }
+        int offset = stripOffset;
+        for (byte[] strip : strips) {
+            buf.putInt(offset);
+            offset += strip.length;
+        }
+        for (byte[] strip : strips) {
+            buf.putInt(strip.length);
+        }
+        for (byte[] strip : strips) {
+            buf.put(strip);
+        }
+        return buf.array();
+    }
+
+    private static void putEntry(ByteBuffer buf, int tag, int type, int count, int value) {
+        buf.putShort((short) tag).putShort((short) type).putInt(count);
+        if (type == 3 && count == 1) {
+            buf.putShort((short) value).putShort((short) 0);
+        } else {
+            buf.putInt(value);
+        }
+    }
+
+    private static byte[] encodeDeflate(byte[] data) {
+        Deflater deflater = new Deflater();
+        deflater.setInput(data);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] chunk = new byte[8192];
+        while (!deflater.finished()) {
+            int n = deflater.deflate(chunk);
+            out.write(chunk, 0, n);
+        }
+        deflater.end();
+        return out.toByteArray();
+    }
+
+    /**
+     * Encodes each row separately, as required by the TIFF specification.
+     */
+    private static byte[] encodePackBits(byte[] data, int rowBytes) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int row = 0; row < data.length; row += rowBytes) {
+            int end = row + rowBytes;
+            int i = row;
+            while (i < end) {
+                int run = 1;
+                while (i + run < end && run < 128 && data[i + run] == data[i]) {
+                    run++;
+                }
+                if (run > 1) {
+                    out.write(1 - run);
+                    out.write(data[i]);
+                    i += run;
+                } else {
+                    int literal = 1;
+                    while (i + literal < end && literal < 128
+                            && (i + literal + 1 >= end || data[i + literal] != data[i + literal + 1])) {
+                        literal++;
+                    }
+                    out.write(literal - 1);
+                    out.write(data, i, literal);
+                    i += literal;
+                }
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Encodes the data with the LZW variant of the TIFF specification.
+     * The code width grows one code early, like in libtiff.
+     */
+    private static byte[] encodeLZW(byte[] data) {
+        LZWBitWriter out = new LZWBitWriter();
+        HashMap<Integer, Integer> table = new HashMap<Integer, Integer>();
+        int width = 9;
+        int nextCode = 258;
+        out.write(256, width);
+        int prefix = data[0] & 0xff;
+        for (int i = 1; i < data.length; i++) {
+            int c = data[i] & 0xff;
+            Integer code = table.get((prefix << 8) | c);
+            if (code != null) {
+                prefix = code;
+                continue;
+            }
+            out.write(prefix, width);
+            table.put((prefix << 8) | c, nextCode++);
+            if (nextCode == 4094) {
+                out.write(256, width);
+                table.clear();
+                nextCode = 258;
+                width = 9;
+            } else if (nextCode > (1 << width) - 1) {
+                width++;
+            }
+            prefix = c;
+        }
+        out.write(prefix, width);
+        nextCode++;
+        if (nextCode > (1 << width) - 1 && width < 12) {
+            width++;
+        }
+        out.write(257, width);
+        return out.toByteArray();
+    }
+
+    private static class LZWBitWriter {
+
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        private int bits;
+        private int bitCount;
+
+        void write(int code, int width) {
+            bits = (bits << width) | code;
+            bitCount += width;
+            while (bitCount >= 8) {
+                out.write(bits >>> (bitCount - 8));
+                bitCount -= 8;
+            }
+            bits &= (1 << bitCount) - 1;
+        }
+
+        byte[] toByteArray() {
+            if (bitCount > 0) {
+                out.write(bits << (8 - bitCount));
+                bitCount = 0;
+            }
+            return out.toByteArray();
+        }
+    }
+}
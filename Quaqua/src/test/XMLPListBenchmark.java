@@ -0,0 +1,196 @@
+/*
+ * @(#)XMLPListBenchmark.java
+ *
+ * Copyright (c) 2015 Werner Randelshofer, Switzerland.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package test;
+
+import ch.randelshofer.quaqua.ext.nanoxml.XMLElement;
+import ch.randelshofer.quaqua.ext.nanoxml.XMLPullParser;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Measures the throughput of {@link XMLElement#parseFromReader}, which
+ * builds a tree, and of {@link XMLPullParser}, which only reports events,
+ * on a large XML PList. Also measures how fast the pull parser finds the
+ * first key of the top level dictionary, and stops.
+ * <p>
+ * The default input is generated. Its top level dictionary has one entry
+ * for each of the specified number of items. Each item is a dictionary
+ * with strings, entities, CDATA, integers, reals, booleans, dates, data and
+ * an array. The tree must contain an element for each start element event
+ * of the pull parser, and must not change when the characters are read
+ * three at a time.
+ * <p>
+ * Usage: java test.XMLPListBenchmark [items|plist file] [rounds]
+ *
+ * @author Werner Randelshofer
+ * @version $Id$
+ */
+public class XMLPListBenchmark {
+
+    private static int checkCount;
+    private static int failCount;
+
+    public static void main(String[] args) throws IOException {
+        String xml;
+        if (args.length > 0 && new File(args[0]).isFile()) {
+            xml = read(new File(args[0]));
+        } else {
+            xml = createPList(args.length > 0 ? Integer.parseInt(args[0]) : 20000);
+        }
+        int roundCount = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        XMLElement tree = parseTree(new StringReader(xml));
+        check(countElements(tree) == countStartElements(new StringReader(xml)),
+                "the tree and the events have a different number of elements");
+        check(tree.toString().equals(parseTree(new SlowReader(xml)).toString()),
+                "the tree differs when the characters are read three at a time");
+        String firstKey = ((XMLElement) ((XMLElement) tree.getChildren().get(0)).getChildren().get(0)).getContent();
+        check(firstKey.equals(findFirstKey(new StringReader(xml))),
+                "the pull parser did not find the first key " + firstKey);
+
+        long bestTree = Long.MAX_VALUE;
+        long bestEvents = Long.MAX_VALUE;
+        long bestFirstKey = Long.MAX_VALUE;
+        for (int round = 0; round < roundCount; round++) {
+            long start = System.nanoTime();
+            parseTree(new StringReader(xml));
+            bestTree = Math.min(bestTree, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            countStartElements(new StringReader(xml));
+            bestEvents = Math.min(bestEvents, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            findFirstKey(new StringReader(xml));
+            bestFirstKey = Math.min(bestFirstKey, System.nanoTime() - start);
+        }
+        double megabytes = xml.length() / 1e6;
+        System.out.printf("%.1f million chars, %d elements%n", megabytes, countElements(tree));
+        System.out.printf("XMLElement.parseFromReader %8.1f ms, %6.1f million chars/s%n",
+                bestTree / 1e6, megabytes / (bestTree / 1e9));
+        System.out.printf("XMLPullParser all events   %8.1f ms, %6.1f million chars/s%n",
+                bestEvents / 1e6, megabytes / (bestEvents / 1e9));
+        System.out.printf("XMLPullParser first key    %8.3f ms%n", bestFirstKey / 1e6);
+        System.out.println(checkCount + " checks, " + failCount + " failures");
+        System.exit(failCount == 0 ? 0 : 1);
+    }
+
+    private static XMLElement parseTree(Reader reader) throws IOException {
+        XMLElement xml = new XMLElement(new HashMap(), false, false);
+        xml.parseFromReader(reader);
+        return xml;
+    }
+
+    private static int countStartElements(Reader reader) throws IOException {
+        XMLPullParser parser = new XMLPullParser(reader);
+        int count = 0;
+        for (int event = parser.next(); event != XMLPullParser.END_DOCUMENT; event = parser.next()) {
+            if (event == XMLPullParser.START_ELEMENT) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static int countElements(XMLElement elem) {
+        int count = 1;
+        ArrayList children = elem.getChildren();
+        for (int i = 0; i < children.size(); i++) {
+            count += countElements((XMLElement) children.get(i));
+        }
+        return count;
+    }
+
+    /**
+     * Returns the text of the first key element, and stops parsing.
+     */
+    private static String findFirstKey(Reader reader) throws IOException {
+        XMLPullParser parser = new XMLPullParser(reader);
+        for (int event = parser.next(); event != XMLPullParser.END_DOCUMENT; event = parser.next()) {
+            if (event == XMLPullParser.START_ELEMENT && parser.getName().equals("key")) {
+                return parser.next() == XMLPullParser.TEXT ? parser.getText() : "";
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Creates an XML PList with the specified number of items.
+     */
+    private static String createPList(int itemCount) {
+        StringBuilder buf = new StringBuilder(itemCount * 600);
+        buf.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        buf.append("<!DOCTYPE plist PUBLIC \"-//Apple//DTD PLIST 1.0//EN\" \"http://www.apple.com/DTDs/PropertyList-1.0.dtd\">\n");
+        buf.append("<plist version=\"1.0\">\n<dict>\n");
+        for (int i = 0; i < itemCount; i++) {
+            buf.append("\t<key>Item ").append(i).append("</key>\n");
+            buf.append("\t<dict>\n");
+            buf.append("\t\t<key>Name</key>\n\t\t<string>Document ").append(i).append(" &amp; copy é中</string>\n");
+            buf.append("\t\t<key>Path</key>\n\t\t<string>/Users/werner/Documents/Folder ").append(i % 97).append("/File ").append(i).append(".txt</string>\n");
+            buf.append("\t\t<key>Script</key>\n\t\t<string><![CDATA[if (a < b && c > d)]]></string>\n");
+            buf.append("\t\t<key>Size</key>\n\t\t<integer>").append(i * 7919L).append("</integer>\n");
+            buf.append("\t\t<key>Ratio</key>\n\t\t<real>").append(i / 7.0).append("</real>\n");
+            buf.append("\t\t<key>Visible</key>\n\t\t").append(i % 3 == 0 ? "<false/>" : "<true/>").append('\n');
+            buf.append("\t\t<key>Modified</key>\n\t\t<date>2015-05-").append(10 + i % 20).append("T12:34:56Z</date>\n");
+            buf.append("\t\t<key>Bookmark</key>\n\t\t<data>\n\t\tYm9va21hcmsgZGF0YSBmb3IgYW4gYWxpYXM=\n\t\t</data>\n");
+            buf.append("\t\t<key>Tags</key>\n\t\t<array>\n");
+            for (int j = 0; j < i % 4; j++) {
+                buf.append("\t\t\t<string>Tag ").append(j).append("</string>\n");
+            }
+            buf.append("\t\t</array>\n");
+            buf.append("\t</dict>\n");
+        }
+        buf.append("</dict>\n</plist>\n");
+        return buf.toString();
+    }
+
+    private static String read(File file) throws IOException {
+        Reader in = new InputStreamReader(new FileInputStream(file), "UTF-8");
+        try {
+            StringBuilder buf = new StringBuilder();
+            char[] chars = new char[8192];
+            for (int n; (n = in.read(chars)) != -1;) {
+                buf.append(chars, 0, n);
+            }
+            return buf.toString();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        checkCount++;
+        if (!condition) {
+            failCount++;
+            System.out.println("Failure: " + message);
+        }
+    }
+
+    /**
+     * Returns at most three characters with each read, so that the parser
+     * has to refill its buffer in the middle of names, text and entities.
+     */
+    private static class SlowReader extends FilterReader {
+
+        SlowReader(String s) {
+            super(new StringReader(s));
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            return super.read(cbuf, off, Math.min(len, 3));
+        }
+    }
+}